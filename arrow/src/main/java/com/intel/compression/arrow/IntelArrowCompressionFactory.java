@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.arrow;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.arrow.vector.compression.CompressionCodec;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.compression.NoCompressionCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.intel.compression.util.IntelCompressionCodecCapabilities;
+
+/**
+ * Arrow compression factory compressing LZ4_FRAME and ZSTD IPC buffers with
+ * the native library, in the standard formats any Arrow reader understands.
+ * The buffers are compressed straight between their native memory, without
+ * the heap copies of Arrow's own codecs. Codecs whose library is missing are
+ * served by the fallback factory. The codecs are thread-safe and cached, so
+ * one factory can serve all writers and readers. Closing the factory destroys
+ * the native contexts of the cached codecs.
+ * <p>
+ * Pass it to <code>ArrowStreamWriter</code>, <code>ArrowFileWriter</code>
+ * and the matching readers.
+ */
+public class IntelArrowCompressionFactory implements CompressionCodec.Factory, Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IntelArrowCompressionFactory.class);
+
+  /** Arrow's default zstd level. */
+  public static final int DEFAULT_ZSTD_LEVEL = 3;
+
+  private final CompressionCodec.Factory fallback;
+  private volatile IntelLz4FrameCompressionCodec lz4Frame;
+  private final ConcurrentMap<Integer, IntelZstdCompressionCodec> zstd =
+      new ConcurrentHashMap<Integer, IntelZstdCompressionCodec>();
+
+  public IntelArrowCompressionFactory() {
+    this(NoCompressionCodec.Factory.INSTANCE);
+  }
+
+  /**
+   * @param fallback  the factory serving the codecs whose library is missing,
+   *                  such as <code>CommonsCompressionFactory.INSTANCE</code>
+   */
+  public IntelArrowCompressionFactory(CompressionCodec.Factory fallback) {
+    this.fallback = fallback;
+  }
+
+  @Override
+  public CompressionCodec createCodec(CompressionUtil.CodecType codecType) {
+    return createCodec(codecType, DEFAULT_ZSTD_LEVEL);
+  }
+
+  /**
+   * @param compressionLevel  the zstd level, LZ4_FRAME has a single level
+   */
+  @Override
+  public CompressionCodec createCodec(CompressionUtil.CodecType codecType, int compressionLevel) {
+    switch (codecType) {
+      case NO_COMPRESSION:
+        return NoCompressionCodec.INSTANCE;
+      case LZ4_FRAME:
+        if (!isAvailable("lz4-ipp", codecType)) {
+          return fallback.createCodec(codecType, compressionLevel);
+        }
+        IntelLz4FrameCompressionCodec lz4Codec = lz4Frame;
+        if (lz4Codec == null) {
+          synchronized (this) {
+            lz4Codec = lz4Frame;
+            if (lz4Codec == null) {
+              lz4Codec = lz4Frame = new IntelLz4FrameCompressionCodec();
+            }
+          }
+        }
+        return lz4Codec;
+      case ZSTD:
+        if (!isAvailable("zstd", codecType)) {
+          return fallback.createCodec(codecType, compressionLevel);
+        }
+        IntelZstdCompressionCodec zstdCodec = zstd.get(compressionLevel);
+        if (zstdCodec == null) {
+          synchronized (this) {
+            zstdCodec = zstd.get(compressionLevel);
+            if (zstdCodec == null) {
+              zstdCodec = new IntelZstdCompressionCodec(compressionLevel);
+              zstd.put(compressionLevel, zstdCodec);
+            }
+          }
+        }
+        return zstdCodec;
+      default:
+        return fallback.createCodec(codecType, compressionLevel);
+    }
+  }
+
+  /**
+   * Destroy the native contexts of the cached codecs. Codecs created before
+   * can still decompress, but not compress, later calls create new codecs.
+   * The factory must not be closed while its codecs are compressing.
+   */
+  @Override
+  public synchronized void close() {
+    if (lz4Frame != null) {
+      lz4Frame.close();
+      lz4Frame = null;
+    }
+    for (IntelZstdCompressionCodec codec : zstd.values()) {
+      codec.close();
+    }
+    zstd.clear();
+  }
+
+  private static boolean isAvailable(String codec, CompressionUtil.CodecType codecType) {
+    if (!IntelCompressionCodecCapabilities.isAvailable(codec)) {
+      LOG.warn("Library of codec " + codec + " is missing, " + codecType
+          + " buffers use the fallback compression factory");
+      return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.arrow;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.util.MemoryUtil;
+import org.apache.arrow.vector.compression.AbstractCompressionCodec;
+import org.apache.arrow.vector.compression.CompressionUtil;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+import com.intel.compression.util.IntelCompressionCodecHeader;
+import com.intel.compression.util.XXHash32;
+
+import static com.intel.compression.arrow.IntelZstdCompressionCodec.checkContext;
+import static com.intel.compression.arrow.IntelZstdCompressionCodec.checkLength;
+
+/**
+ * Arrow LZ4_FRAME buffer codec. The LZ4 frame format is written and parsed
+ * here while the blocks are compressed by the native lz4-ipp codec, straight
+ * between the memory of the Arrow buffers.
+ * <p>
+ * Frames are written with independent 4MB blocks and no checksums, blocks
+ * which don't shrink are stored uncompressed. Any frame without a dictionary
+ * can be read: linked blocks, block and content checksums, the content size,
+ * concatenated frames and skippable frames are all supported, though linked
+ * blocks need <code>LZ4_decompress_safe_usingDict</code> in liblz4. The
+ * native compress context only holds the codec and level, so one instance can
+ * be shared by all threads. Once {@link #close()}d it can still decompress,
+ * but not compress.
+ */
+final class IntelLz4FrameCompressionCodec extends AbstractCompressionCodec {
+
+  private static final int MAGIC = 0x184D2204;
+  private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+  private static final int SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+
+  private static final int FLG_VERSION_MASK = 0xC0;
+  private static final int FLG_VERSION = 0x40;
+  private static final int FLG_BLOCK_INDEPENDENCE = 0x20;
+  private static final int FLG_BLOCK_CHECKSUM = 0x10;
+  private static final int FLG_CONTENT_SIZE = 0x08;
+  private static final int FLG_CONTENT_CHECKSUM = 0x04;
+  private static final int FLG_RESERVED = 0x02;
+  private static final int FLG_DICTIONARY_ID = 0x01;
+  private static final int BD_BLOCK_SIZE_MASK = 0x70;
+  private static final int BD_RESERVED = 0x8F;
+
+  private static final int BLOCK_SIZE_ID = 7;
+  private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+  private static final int UNCOMPRESSED_BLOCK = 0x80000000;
+  private static final int MAX_PREFIX = 64 * 1024;
+
+  private static final int WRITE_FLG = FLG_VERSION | FLG_BLOCK_INDEPENDENCE;
+  private static final int WRITE_BD = BLOCK_SIZE_ID << 4;
+  private static final int WRITE_HC = headerChecksum(new byte[] {(byte) WRITE_FLG, (byte) WRITE_BD});
+  /** Magic, FLG, BD and HC. */
+  private static final int FRAME_HEADER_LENGTH = 7;
+  private static final int INT_LENGTH = 4;
+
+  private volatile long context;
+
+  IntelLz4FrameCompressionCodec() {
+    this.context = IntelCompressionCodecJNI.createCompressContext("lz4-ipp", 1);
+  }
+
+  @Override
+  protected ArrowBuf doCompress(BufferAllocator allocator, ArrowBuf uncompressedBuffer) {
+    final long context = checkContext(this.context, this);
+    final long srcLen = uncompressedBuffer.writerIndex();
+    final long blocks = (srcLen + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    final int blockBound = IntelCompressionCodecJNI.compressBound(context,
+        (int) Math.min(srcLen, BLOCK_SIZE)) - IntelCompressionCodecHeader.HEADER_LENGTH;
+    ArrowBuf compressedBuffer = allocator.buffer(CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH
+        + FRAME_HEADER_LENGTH + blocks * (INT_LENGTH + blockBound) + INT_LENGTH);
+    try {
+      final long srcAddress = uncompressedBuffer.memoryAddress();
+      final long dstAddress = compressedBuffer.memoryAddress();
+      long op = CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH;
+      setIntLE(compressedBuffer, op, MAGIC);
+      compressedBuffer.setByte(op + 4, WRITE_FLG);
+      compressedBuffer.setByte(op + 5, WRITE_BD);
+      compressedBuffer.setByte(op + 6, WRITE_HC);
+      op += FRAME_HEADER_LENGTH;
+
+      for (long ip = 0; ip < srcLen; ip += BLOCK_SIZE) {
+        final int blockLen = (int) Math.min(srcLen - ip, BLOCK_SIZE);
+        final int compressedLen = IntelCompressionCodecJNI.compressBlock(context,
+            srcAddress + ip, blockLen, dstAddress + op + INT_LENGTH, blockBound);
+        if (compressedLen < blockLen) {
+          setIntLE(compressedBuffer, op, compressedLen);
+          op += INT_LENGTH + compressedLen;
+        } else {
+          setIntLE(compressedBuffer, op, blockLen | UNCOMPRESSED_BLOCK);
+          compressedBuffer.setBytes(op + INT_LENGTH, uncompressedBuffer, ip, blockLen);
+          op += INT_LENGTH + blockLen;
+        }
+      }
+      setIntLE(compressedBuffer, op, 0);
+      compressedBuffer.writerIndex(op + INT_LENGTH);
+      return compressedBuffer;
+    } catch (RuntimeException | Error e) {
+      compressedBuffer.close();
+      throw e;
+    }
+  }
+
+  @Override
+  protected ArrowBuf doDecompress(BufferAllocator allocator, ArrowBuf compressedBuffer) {
+    final long decompressedLen = readUncompressedLength(compressedBuffer);
+    if (decompressedLen < 0) {
+      throw new RuntimeException("Corrupted LZ4 frame, decompressed length " + decompressedLen);
+    }
+    ArrowBuf uncompressedBuffer = allocator.buffer(decompressedLen);
+    try {
+      new FrameReader(compressedBuffer, uncompressedBuffer, decompressedLen).read();
+      uncompressedBuffer.writerIndex(decompressedLen);
+      return uncompressedBuffer;
+    } catch (InternalError e) {
+      uncompressedBuffer.close();
+      throw new RuntimeException("Corrupted LZ4 frame", e);
+    } catch (RuntimeException | Error e) {
+      uncompressedBuffer.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public CompressionUtil.CodecType getCodecType() {
+    return CompressionUtil.CodecType.LZ4_FRAME;
+  }
+
+  /**
+   * Destroy the native context, codecs must not be closed while compressing.
+   */
+  synchronized void close() {
+    if (context != 0) {
+      IntelCompressionCodecJNI.destroyContext(context);
+      context = 0;
+    }
+  }
+
+  private static int headerChecksum(byte[] descriptor) {
+    return (XXHash32.hash(descriptor, 0, descriptor.length, 0) >>> 8) & 0xFF;
+  }
+
+  private static int getIntLE(ArrowBuf buf, long index) {
+    int i = buf.getInt(index);
+    return MemoryUtil.LITTLE_ENDIAN ? i : Integer.reverseBytes(i);
+  }
+
+  private static void setIntLE(ArrowBuf buf, long index, int i) {
+    buf.setInt(index, MemoryUtil.LITTLE_ENDIAN ? i : Integer.reverseBytes(i));
+  }
+
+  /**
+   * Decoder of the frames in one compressed buffer.
+   */
+  private static final class FrameReader {
+
+    private final ArrowBuf src;
+    private final long srcEnd;
+    private final ArrowBuf dst;
+    private final long dstEnd;
+    private long ip = CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH;
+    private long op;
+
+    FrameReader(ArrowBuf src, ArrowBuf dst, long dstEnd) {
+      this.src = src;
+      this.srcEnd = src.writerIndex();
+      this.dst = dst;
+      this.dstEnd = dstEnd;
+    }
+
+    void read() {
+      while (ip < srcEnd) {
+        final int magic = readInt();
+        if ((magic & SKIPPABLE_MAGIC_MASK) == SKIPPABLE_MAGIC) {
+          final long skip = readInt() & 0xFFFFFFFFL;
+          require(skip);
+          ip += skip;
+        } else if (magic == MAGIC) {
+          readFrame();
+        } else {
+          throw corrupted("wrong magic " + Integer.toHexString(magic));
+        }
+      }
+      if (op != dstEnd) {
+        throw new RuntimeException("Expected != actual decompressed length: "
+            + dstEnd + " != " + op);
+      }
+    }
+
+    private void readFrame() {
+      require(3);
+      final long descriptorOffset = ip;
+      final int flg = src.getByte(ip++) & 0xFF;
+      final int bd = src.getByte(ip++) & 0xFF;
+      if ((flg & FLG_VERSION_MASK) != FLG_VERSION || (flg & FLG_RESERVED) != 0
+          || (bd & BD_RESERVED) != 0 || (bd & BD_BLOCK_SIZE_MASK) >>> 4 < 4) {
+        throw corrupted("unsupported frame descriptor");
+      }
+      if ((flg & FLG_DICTIONARY_ID) != 0) {
+        throw new UnsupportedOperationException("LZ4 frames with a dictionary are not supported");
+      }
+      final int maxBlockSize = 1 << (8 + 2 * ((bd & BD_BLOCK_SIZE_MASK) >>> 4));
+      long contentSize = -1;
+      if ((flg & FLG_CONTENT_SIZE) != 0) {
+        require(8 + 1);
+        contentSize = (readInt() & 0xFFFFFFFFL) | ((long) readInt() << 32);
+      }
+      final int descriptorLen = (int) (ip - descriptorOffset);
+      if ((XXHash32.hash(src.nioBuffer(descriptorOffset, descriptorLen), 0, descriptorLen, 0)
+          >>> 8 & 0xFF) != (src.getByte(ip++) & 0xFF)) {
+        throw corrupted("wrong header checksum");
+      }
+
+      final long frameStart = op;
+      for (int blockLen = readInt(); blockLen != 0; blockLen = readInt()) {
+        final boolean uncompressed = (blockLen & UNCOMPRESSED_BLOCK) != 0;
+        blockLen &= ~UNCOMPRESSED_BLOCK;
+        if (blockLen > maxBlockSize) {
+          throw corrupted("block of " + blockLen + " bytes");
+        }
+        require(blockLen);
+        final int maxLen = (int) Math.min(maxBlockSize, dstEnd - op);
+        int len;
+        if (uncompressed) {
+          if (blockLen > maxLen) {
+            throw corrupted("block exceeds the decompressed length");
+          }
+          dst.setBytes(op, src, ip, blockLen);
+          len = blockLen;
+        } else if ((flg & FLG_BLOCK_INDEPENDENCE) != 0) {
+          len = IntelCompressionCodecJNI.decompressBlock(IntelCompressionCodecHeader.CODEC_LZ4_IPP,
+              src.memoryAddress() + ip, blockLen, dst.memoryAddress() + op, maxLen);
+        } else {
+          len = IntelCompressionCodecJNI.decompressLZ4BlockWithPrefix(src.memoryAddress() + ip,
+              blockLen, dst.memoryAddress() + op, maxLen, (int) Math.min(MAX_PREFIX, op - frameStart));
+        }
+        if ((flg & FLG_BLOCK_CHECKSUM) != 0) {
+          final long blockOffset = ip;
+          ip += blockLen;
+          checksum(src, blockOffset, blockLen, "block");
+        } else {
+          ip += blockLen;
+        }
+        op += len;
+      }
+
+      if (contentSize >= 0 && op - frameStart != contentSize) {
+        throw corrupted("content size " + contentSize + " != " + (op - frameStart));
+      }
+      if ((flg & FLG_CONTENT_CHECKSUM) != 0) {
+        checksum(dst, frameStart, checkLength(op - frameStart), "content");
+      }
+    }
+
+    /**
+     * Check the checksum following the input against the hash of the data.
+     */
+    private void checksum(ArrowBuf buf, long offset, int len, String what) {
+      if (readInt() != XXHash32.hash(buf.nioBuffer(offset, len), 0, len, 0)) {
+        throw corrupted("wrong " + what + " checksum");
+      }
+    }
+
+    private int readInt() {
+      require(INT_LENGTH);
+      final int i = getIntLE(src, ip);
+      ip += INT_LENGTH;
+      return i;
+    }
+
+    private void require(long len) {
+      if (len > srcEnd - ip) {
+        throw corrupted("truncated frame");
+      }
+    }
+
+    private static RuntimeException corrupted(String reason) {
+      return new RuntimeException("Corrupted LZ4 frame, " + reason);
+    }
+  }
+}
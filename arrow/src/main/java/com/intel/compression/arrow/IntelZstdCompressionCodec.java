@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.arrow;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.compression.AbstractCompressionCodec;
+import org.apache.arrow.vector.compression.CompressionUtil;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+import com.intel.compression.util.IntelCompressionCodecHeader;
+
+/**
+ * Arrow ZSTD buffer codec, compressing straight between the memory of the
+ * Arrow buffers into a standard zstd frame. The native compress context only
+ * holds the codec and level, so one instance can be shared by all threads.
+ * Once {@link #close()}d it can still decompress, but not compress.
+ */
+final class IntelZstdCompressionCodec extends AbstractCompressionCodec {
+
+  private volatile long context;
+
+  IntelZstdCompressionCodec(int level) {
+    this.context = IntelCompressionCodecJNI.createCompressContext("zstd", level);
+  }
+
+  @Override
+  protected ArrowBuf doCompress(BufferAllocator allocator, ArrowBuf uncompressedBuffer) {
+    final long context = checkContext(this.context, this);
+    final int srcLen = checkLength(uncompressedBuffer.writerIndex());
+    final int bound = IntelCompressionCodecJNI.compressBound(context, srcLen)
+        - IntelCompressionCodecHeader.HEADER_LENGTH;
+    if (bound <= 0) {
+      throw new IllegalArgumentException("Buffer of " + srcLen + " bytes is too large to compress");
+    }
+    ArrowBuf compressedBuffer = allocator.buffer(CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH + bound);
+    try {
+      final int compressedLen = IntelCompressionCodecJNI.compressBlock(context,
+          uncompressedBuffer.memoryAddress(), srcLen,
+          compressedBuffer.memoryAddress() + CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH, bound);
+      compressedBuffer.writerIndex(CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH + compressedLen);
+      return compressedBuffer;
+    } catch (RuntimeException | Error e) {
+      compressedBuffer.close();
+      throw e;
+    }
+  }
+
+  @Override
+  protected ArrowBuf doDecompress(BufferAllocator allocator, ArrowBuf compressedBuffer) {
+    final int decompressedLen = checkLength(readUncompressedLength(compressedBuffer));
+    final int srcLen = checkLength(compressedBuffer.writerIndex()
+        - CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH);
+    ArrowBuf uncompressedBuffer = allocator.buffer(decompressedLen);
+    try {
+      final int len = IntelCompressionCodecJNI.decompressBlock(IntelCompressionCodecHeader.CODEC_ZSTD,
+          compressedBuffer.memoryAddress() + CompressionUtil.SIZE_OF_UNCOMPRESSED_LENGTH, srcLen,
+          uncompressedBuffer.memoryAddress(), decompressedLen);
+      if (len != decompressedLen) {
+        throw new RuntimeException("Expected != actual decompressed length: "
+            + decompressedLen + " != " + len);
+      }
+      uncompressedBuffer.writerIndex(decompressedLen);
+      return uncompressedBuffer;
+    } catch (InternalError e) {
+      uncompressedBuffer.close();
+      throw new RuntimeException("Corrupted zstd frame", e);
+    } catch (RuntimeException | Error e) {
+      uncompressedBuffer.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public CompressionUtil.CodecType getCodecType() {
+    return CompressionUtil.CodecType.ZSTD;
+  }
+
+  /**
+   * Destroy the native context, codecs must not be closed while compressing.
+   */
+  synchronized void close() {
+    if (context != 0) {
+      IntelCompressionCodecJNI.destroyContext(context);
+      context = 0;
+    }
+  }
+
+  static long checkContext(long context, AbstractCompressionCodec codec) {
+    if (context == 0) {
+      throw new IllegalStateException(codec.getCodecType() + " codec is closed");
+    }
+    return context;
+  }
+
+  static int checkLength(long length) {
+    if (length < 0 || length > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Buffer length " + length + " is out of range");
+    }
+    return (int) length;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intel.compression.parquet;
+
+import java.util.*;
+
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.intel.compression.util.IntelCompressionCodecCapabilities;
+import com.intel.compression.util.IntelCompressionCodecHeader;
+
+/**
+ * Parquet codec factory compressing ZSTD and LZ4_RAW pages with the native
+ * library, in the standard formats any Parquet reader understands. Other
+ * codecs, and these ones when their library is missing, are served by the
+ * fallback factory. Like Parquet's own factories, it caches one compressor and
+ * decompressor per codec, which keep their native context and pooled buffers
+ * until {@link #release()}. This class is not thread-safe.
+ * <p>
+ * Pass it to <code>ParquetWriter.Builder.withCodecFactory</code> and
+ * <code>ParquetReadOptions.Builder.withCodecFactory</code>.
+ */
+public class IntelParquetCodecFactory implements CompressionCodecFactory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IntelParquetCodecFactory.class);
+
+  /** Parquet's default zstd level. */
+  public static final int DEFAULT_ZSTD_LEVEL = 3;
+
+  private final CompressionCodecFactory fallback;
+  private final int zstdLevel;
+  private final Map<CompressionCodecName, BytesInputCompressor> compressors =
+      new EnumMap<CompressionCodecName, BytesInputCompressor>(CompressionCodecName.class);
+  private final Map<CompressionCodecName, BytesInputDecompressor> decompressors =
+      new EnumMap<CompressionCodecName, BytesInputDecompressor>(CompressionCodecName.class);
+
+  public IntelParquetCodecFactory(CompressionCodecFactory fallback) {
+    this(fallback, DEFAULT_ZSTD_LEVEL);
+  }
+
+  /**
+   * @param fallback   the factory serving the codecs without a native bare format
+   * @param zstdLevel  the zstd compression level
+   */
+  public IntelParquetCodecFactory(CompressionCodecFactory fallback, int zstdLevel) {
+    this.fallback = fallback;
+    this.zstdLevel = zstdLevel;
+  }
+
+  @Override
+  public BytesInputCompressor getCompressor(CompressionCodecName codecName) {
+    BytesInputCompressor compressor = compressors.get(codecName);
+    if (compressor == null) {
+      String codec = nativeCodec(codecName);
+      compressor = codec == null ? fallback.getCompressor(codecName)
+          : new IntelParquetCompressor(codecName, codec,
+              codecName == CompressionCodecName.ZSTD ? zstdLevel : 1);
+      compressors.put(codecName, compressor);
+    }
+    return compressor;
+  }
+
+  @Override
+  public BytesInputDecompressor getDecompressor(CompressionCodecName codecName) {
+    BytesInputDecompressor decompressor = decompressors.get(codecName);
+    if (decompressor == null) {
+      String codec = nativeCodec(codecName);
+      decompressor = codec == null ? fallback.getDecompressor(codecName)
+          : new IntelParquetDecompressor(codecName, codecName == CompressionCodecName.ZSTD
+              ? IntelCompressionCodecHeader.CODEC_ZSTD : IntelCompressionCodecHeader.CODEC_LZ4_IPP);
+      decompressors.put(codecName, decompressor);
+    }
+    return decompressor;
+  }
+
+  @Override
+  public void release() {
+    for (BytesInputCompressor compressor : compressors.values()) {
+      compressor.release();
+    }
+    compressors.clear();
+    for (BytesInputDecompressor decompressor : decompressors.values()) {
+      decompressor.release();
+    }
+    decompressors.clear();
+    fallback.release();
+  }
+
+  /**
+   * @return the native codec writing the Parquet format of the codec, null if
+   *         there is none or its library is missing
+   */
+  private static String nativeCodec(CompressionCodecName codecName) {
+    String codec;
+    switch (codecName) {
+      case ZSTD:
+        codec = "zstd";
+        break;
+      case LZ4_RAW:
+        codec = "lz4-ipp";
+        break;
+      default:
+        return null;
+    }
+    if (!IntelCompressionCodecCapabilities.isAvailable(codec)) {
+      LOG.warn("Library of codec " + codec + " is missing, " + codecName
+          + " pages use the fallback codec factory");
+      return null;
+    }
+    return codec;
+  }
+}
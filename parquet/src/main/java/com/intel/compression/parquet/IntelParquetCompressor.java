@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intel.compression.parquet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.compression.CompressionCodecFactory.BytesInputCompressor;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+import com.intel.compression.util.IntelCompressionCodecHeader;
+
+/**
+ * Compress Parquet pages into the bare format of the codec: a zstd frame for
+ * ZSTD, an LZ4 block for LZ4_RAW. The page is read in place when it is already
+ * in direct memory, and compressed into a pooled direct buffer which the
+ * returned bytes refer to until the next call. This class is not thread-safe.
+ */
+final class IntelParquetCompressor implements BytesInputCompressor {
+
+  private final CompressionCodecName codecName;
+  private long context;
+  private final ScratchBuffer input = new ScratchBuffer();
+  private final ScratchBuffer output = new ScratchBuffer();
+
+  IntelParquetCompressor(CompressionCodecName codecName, String codec, int level) {
+    this.codecName = codecName;
+    this.context = IntelCompressionCodecJNI.createCompressContext(codec, level);
+  }
+
+  @Override
+  public BytesInput compress(BytesInput bytes) throws IOException {
+    if (context == 0) {
+      throw new IllegalStateException("Compressor of " + codecName + " is released");
+    }
+    ByteBuffer src = bytes.toByteBuffer();
+    final int srcLen = src.remaining();
+    if (!src.isDirect()) {
+      ByteBuffer copy = input.get(srcLen);
+      copy.put(src);
+      copy.flip();
+      src = copy;
+    }
+    final int bound = IntelCompressionCodecJNI.compressBound(context, srcLen)
+        - IntelCompressionCodecHeader.HEADER_LENGTH;
+    ByteBuffer dst = output.get(bound);
+    final int compressedLen = IntelCompressionCodecJNI.compressBlock(context,
+        ScratchBuffer.address(src), srcLen, ScratchBuffer.address(dst), bound);
+    dst.limit(compressedLen);
+    return BytesInput.from(dst);
+  }
+
+  @Override
+  public CompressionCodecName getCodecName() {
+    return codecName;
+  }
+
+  @Override
+  public void release() {
+    input.release();
+    output.release();
+    if (context != 0) {
+      IntelCompressionCodecJNI.destroyContext(context);
+      context = 0;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intel.compression.parquet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.compression.CompressionCodecFactory.BytesInputDecompressor;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+
+/**
+ * Decompress Parquet pages written in the bare format of the codec. Direct
+ * buffers are decompressed in place. Pages given as {@link BytesInput} are
+ * decompressed through a pooled direct buffer into a new array, because the
+ * readers of the columns of a row group share one decompressor and keep their
+ * pages while the others read. This class is not thread-safe.
+ */
+final class IntelParquetDecompressor implements BytesInputDecompressor {
+
+  private final CompressionCodecName codecName;
+  private final int codec;
+  private final ScratchBuffer input = new ScratchBuffer();
+  private final ScratchBuffer output = new ScratchBuffer();
+
+  /**
+   * @param codec  the codec id of the block header, which has a bare format
+   */
+  IntelParquetDecompressor(CompressionCodecName codecName, int codec) {
+    this.codecName = codecName;
+    this.codec = codec;
+  }
+
+  @Override
+  public BytesInput decompress(BytesInput bytes, int uncompressedSize) throws IOException {
+    ByteBuffer src = bytes.toByteBuffer();
+    if (!src.isDirect()) {
+      ByteBuffer copy = input.get(src.remaining());
+      copy.put(src);
+      copy.flip();
+      src = copy;
+    }
+    ByteBuffer dst = output.get(uncompressedSize);
+    decompress(src, src.remaining(), dst, uncompressedSize);
+    byte[] page = new byte[uncompressedSize];
+    dst.get(page);
+    return BytesInput.from(page);
+  }
+
+  /**
+   * Decompress compressedSize bytes at the position of input to the position
+   * of output, whose limit is set past the page. Both buffers must be direct.
+   */
+  @Override
+  public void decompress(ByteBuffer input, int compressedSize, ByteBuffer output,
+      int uncompressedSize) throws IOException {
+    if (!input.isDirect() || !output.isDirect()) {
+      throw new IllegalArgumentException("Native codec needs direct buffers");
+    }
+    if (compressedSize > input.remaining() || uncompressedSize > output.remaining()) {
+      throw new IllegalArgumentException("Page of " + compressedSize + " -> " + uncompressedSize
+          + " bytes doesn't fit buffers of " + input.remaining() + " -> " + output.remaining());
+    }
+    final int len;
+    try {
+      len = IntelCompressionCodecJNI.decompressBlock(codec,
+          ScratchBuffer.address(input), compressedSize,
+          ScratchBuffer.address(output), uncompressedSize);
+    } catch (InternalError e) {
+      throw new IOException("Corrupted " + codecName + " page", e);
+    }
+    if (len != uncompressedSize) {
+      throw new IOException("Corrupted " + codecName + " page, uncompressed size should be "
+          + uncompressedSize + " but is " + len);
+    }
+    output.limit(output.position() + len);
+  }
+
+  @Override
+  public void release() {
+    input.release();
+    output.release();
+  }
+}
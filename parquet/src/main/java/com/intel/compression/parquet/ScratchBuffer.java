@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intel.compression.parquet;
+
+import java.nio.ByteBuffer;
+
+import com.intel.compression.util.buffer.BufferAllocator;
+import com.intel.compression.util.buffer.CachedBufferAllocator;
+import sun.nio.ch.DirectBuffer;
+
+/**
+ * Direct buffer taken from the cached allocators and grown in powers of two,
+ * so pages of similar sizes share the pooled buffers. This class is not
+ * thread-safe.
+ */
+final class ScratchBuffer {
+
+  private static final int MIN_CAPACITY = 64 * 1024;
+
+  private BufferAllocator allocator;
+  private ByteBuffer buffer;
+
+  /**
+   * @return the buffer holding at least the capacity, cleared
+   */
+  ByteBuffer get(int capacity) {
+    if (buffer == null || buffer.capacity() < capacity) {
+      release();
+      int size = MIN_CAPACITY;
+      while (size < capacity && size > 0) {
+        size <<= 1;
+      }
+      if (size <= 0) {
+        size = capacity;
+      }
+      allocator = CachedBufferAllocator.getBufferAllocatorFactory().getBufferAllocator(size);
+      buffer = allocator.allocateDirectByteBuffer(false, size, 64);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  void release() {
+    if (buffer != null) {
+      allocator.releaseDirectByteBuffer(buffer);
+      buffer = null;
+      allocator = null;
+    }
+  }
+
+  /**
+   * @return the native address of the position of a direct buffer
+   */
+  static long address(ByteBuffer buffer) {
+    return ((DirectBuffer) buffer).address() + buffer.position();
+  }
+}
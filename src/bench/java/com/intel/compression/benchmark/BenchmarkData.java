@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.benchmark;
+
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Input shared by the benchmarks.
+ */
+final class BenchmarkData {
+
+  private BenchmarkData() {
+  }
+
+  /**
+   * @return text-like bytes from a small vocabulary, which compress about 3:1
+   */
+  static byte[] generate(int size) {
+    Random random = new Random(42);
+    String[] words = new String[512];
+    for (int i = 0; i < words.length; i++) {
+      StringBuilder word = new StringBuilder();
+      for (int j = 3 + random.nextInt(8); j > 0; j--) {
+        word.append((char) ('a' + random.nextInt(26)));
+      }
+      words[i] = word.append(' ').toString();
+    }
+    byte[] data = new byte[size];
+    int off = 0;
+    while (off < size) {
+      String word = words[random.nextInt(words.length)];
+      for (int i = 0; i < word.length() && off < size; i++) {
+        data[off++] = (byte) word.charAt(i);
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Sink counting the bytes written to it.
+   */
+  static final class NullOutputStream extends OutputStream {
+    long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * JMH profiler measuring how long the benchmark threads are blocked on
+ * monitors. The JVM's thread contention monitoring gives the total blocked
+ * time and count of each iteration, while a sampler attributes the blocked
+ * threads to the method they wait in, which tells the static
+ * {@code CachedBufferAllocator.getAllocator} lock from the per-allocator
+ * monitors and Hadoop's {@code CodecPool}.
+ * <p>
+ * Enable it with {@code -prof com.intel.compression.benchmark.BlockedTimeProfiler}.
+ */
+public class BlockedTimeProfiler implements InternalProfiler {
+
+  static final String BLOCKED_TIME = "blocked.time";
+  static final String BLOCKED_COUNT = "blocked.count";
+  static final String BLOCKED_SAMPLES = "blocked.samples.";
+
+  private static final String WORKER_THREAD = "jmh-worker";
+  private static final long SAMPLE_INTERVAL_MS = 1;
+  private static final int STACK_DEPTH = 8;
+
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final Map<Long, long[]> startCounters = new HashMap<Long, long[]>();
+  private final Map<String, Integer> samples = new TreeMap<String, Integer>();
+  private Thread sampler;
+
+  @Override
+  public String getDescription() {
+    return "Time the benchmark threads spend blocked on monitors, by codec call site";
+  }
+
+  @Override
+  public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+    if (threads.isThreadContentionMonitoringSupported()) {
+      threads.setThreadContentionMonitoringEnabled(true);
+    }
+    startCounters.clear();
+    startCounters.putAll(blockedCounters());
+    synchronized (samples) {
+      samples.clear();
+    }
+    sampler = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+          sample();
+          try {
+            Thread.sleep(SAMPLE_INTERVAL_MS);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    }, "blocked-time-sampler");
+    sampler.setDaemon(true);
+    sampler.start();
+  }
+
+  @Override
+  public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+      IterationParams iterationParams, IterationResult result) {
+    sampler.interrupt();
+    try {
+      sampler.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    long blockedTime = 0;
+    long blockedCount = 0;
+    for (Map.Entry<Long, long[]> counters : blockedCounters().entrySet()) {
+      long[] start = startCounters.get(counters.getKey());
+      blockedTime += counters.getValue()[0] - (start == null ? 0 : start[0]);
+      blockedCount += counters.getValue()[1] - (start == null ? 0 : start[1]);
+    }
+
+    List<Result> results = new ArrayList<Result>();
+    results.add(new ScalarResult(BLOCKED_TIME, blockedTime, "ms", AggregationPolicy.SUM));
+    results.add(new ScalarResult(BLOCKED_COUNT, blockedCount, "#", AggregationPolicy.SUM));
+    synchronized (samples) {
+      for (Map.Entry<String, Integer> site : samples.entrySet()) {
+        results.add(new ScalarResult(BLOCKED_SAMPLES + site.getKey(), site.getValue(), "#",
+            AggregationPolicy.SUM));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * @return the blocked time in ms and blocked count of each benchmark thread
+   */
+  private Map<Long, long[]> blockedCounters() {
+    Map<Long, long[]> counters = new HashMap<Long, long[]>();
+    for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+      if (info != null && info.getThreadName().contains(WORKER_THREAD)) {
+        counters.put(info.getThreadId(),
+            new long[] {Math.max(info.getBlockedTime(), 0), info.getBlockedCount()});
+      }
+    }
+    return counters;
+  }
+
+  /**
+   * Count the blocked benchmark threads by the method holding the monitor they wait on.
+   */
+  private void sample() {
+    for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds(), STACK_DEPTH)) {
+      if (info == null || info.getThreadState() != Thread.State.BLOCKED
+          || !info.getThreadName().contains(WORKER_THREAD)) {
+        continue;
+      }
+      StackTraceElement[] stack = info.getStackTrace();
+      String site = "unknown";
+      if (stack.length > 0) {
+        String className = stack[0].getClassName();
+        site = className.substring(className.lastIndexOf('.') + 1) + "." + stack[0].getMethodName();
+      }
+      synchronized (samples) {
+        Integer count = samples.get(site);
+        samples.put(site, count == null ? 1 : count + 1);
+      }
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.benchmark;
+
+import java.util.*;
+
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the concurrency benchmarks at increasing thread counts and prints, for
+ * every benchmark and parameter set, the throughput, its speedup and
+ * efficiency against one thread, and the share of the threads' time spent
+ * blocked on monitors with the call sites blocked on most.
+ * <p>
+ * System properties:
+ * <ul>
+ *   <li>bench.include: benchmark regex, default {@value #DEFAULT_INCLUDE}</li>
+ *   <li>bench.threads: comma separated thread counts, default the powers of
+ *       two up to the number of processors, and that number</li>
+ *   <li>bench.forks, bench.warmups, bench.iterations, bench.time: JMH forks,
+ *       warmup and measurement iterations and iteration seconds</li>
+ *   <li>bench.params: extra JMH parameters as name=value;name=value</li>
+ * </ul>
+ */
+public final class ConcurrencyBenchmarkMain {
+
+  static final String DEFAULT_INCLUDE = "ConcurrencyBenchmark";
+
+  private ConcurrencyBenchmarkMain() {
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    final String include = property("bench.include", DEFAULT_INCLUDE);
+    final int[] threadCounts = threadCounts(property("bench.threads", ""));
+    final int forks = Integer.parseInt(property("bench.forks", "1"));
+    final int iterations = Integer.parseInt(property("bench.iterations", "5"));
+    final int seconds = Integer.parseInt(property("bench.time", "2"));
+
+    // benchmark and parameters -> thread count -> result
+    Map<String, SortedMap<Integer, RunResult>> results =
+        new TreeMap<String, SortedMap<Integer, RunResult>>();
+    for (int threads : threadCounts) {
+      ChainedOptionsBuilder options = new OptionsBuilder()
+          .include(include)
+          .threads(threads)
+          .forks(forks)
+          .warmupIterations(Integer.parseInt(property("bench.warmups", "3")))
+          .warmupTime(TimeValue.seconds(seconds))
+          .measurementIterations(iterations)
+          .measurementTime(TimeValue.seconds(seconds))
+          .addProfiler(BlockedTimeProfiler.class);
+      String params = property("bench.params", "");
+      for (String param : params.split(";")) {
+        int eq = param.indexOf('=');
+        if (eq > 0) {
+          options.param(param.substring(0, eq).trim(), param.substring(eq + 1).trim().split(","));
+        }
+      }
+      for (RunResult result : new Runner(options.build()).run()) {
+        String key = key(result);
+        SortedMap<Integer, RunResult> byThreads = results.get(key);
+        if (byThreads == null) {
+          byThreads = new TreeMap<Integer, RunResult>();
+          results.put(key, byThreads);
+        }
+        byThreads.put(threads, result);
+      }
+    }
+
+    System.out.println();
+    System.out.println("Scalability, blocked is the share of the threads' measured time");
+    for (Map.Entry<String, SortedMap<Integer, RunResult>> benchmark : results.entrySet()) {
+      System.out.println();
+      System.out.println(benchmark.getKey());
+      System.out.println(String.format("%8s %14s %8s %10s %9s  %s",
+          "threads", "ops/s", "speedup", "efficiency", "blocked", "blocked at"));
+      RunResult first = benchmark.getValue().get(benchmark.getValue().firstKey());
+      double base = first.getPrimaryResult().getScore() / benchmark.getValue().firstKey();
+      for (Map.Entry<Integer, RunResult> entry : benchmark.getValue().entrySet()) {
+        final int threads = entry.getKey();
+        final RunResult result = entry.getValue();
+        final double score = result.getPrimaryResult().getScore();
+        final double measuredMs = 1000.0 * seconds * iterations * forks * threads;
+        System.out.println(String.format("%8d %14.1f %8.2f %9.0f%% %8.2f%%  %s",
+            threads, score, score / base, 100.0 * score / base / threads,
+            100.0 * secondary(result, BlockedTimeProfiler.BLOCKED_TIME) / measuredMs,
+            blockedSites(result)));
+      }
+    }
+  }
+
+  private static String property(String name, String defaultValue) {
+    String value = System.getProperty(name);
+    return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+  }
+
+  private static int[] threadCounts(String value) {
+    List<Integer> counts = new ArrayList<Integer>();
+    if (value.isEmpty()) {
+      final int processors = Runtime.getRuntime().availableProcessors();
+      for (int threads = 1; threads < processors; threads <<= 1) {
+        counts.add(threads);
+      }
+      counts.add(processors);
+    } else {
+      for (String count : value.split(",")) {
+        counts.add(Integer.parseInt(count.trim()));
+      }
+    }
+    int[] result = new int[counts.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = counts.get(i);
+    }
+    return result;
+  }
+
+  private static String key(RunResult result) {
+    StringBuilder key = new StringBuilder(result.getParams().getBenchmark());
+    for (String param : result.getParams().getParamsKeys()) {
+      key.append(' ').append(param).append('=').append(result.getParams().getParam(param));
+    }
+    return key.toString();
+  }
+
+  private static double secondary(RunResult result, String label) {
+    Result secondary = result.getSecondaryResults().get(label);
+    return secondary == null ? 0 : secondary.getScore();
+  }
+
+  /**
+   * @return the call sites the threads were sampled blocked in, most first
+   */
+  private static String blockedSites(RunResult result) {
+    List<Map.Entry<String, Double>> sites = new ArrayList<Map.Entry<String, Double>>();
+    double total = 0;
+    for (Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+      if (secondary.getKey().startsWith(BlockedTimeProfiler.BLOCKED_SAMPLES)) {
+        sites.add(new AbstractMap.SimpleEntry<String, Double>(
+            secondary.getKey().substring(BlockedTimeProfiler.BLOCKED_SAMPLES.length()),
+            secondary.getValue().getScore()));
+        total += secondary.getValue().getScore();
+      }
+    }
+    Collections.sort(sites, new Comparator<Map.Entry<String, Double>>() {
+      @Override
+      public int compare(Map.Entry<String, Double> a, Map.Entry<String, Double> b) {
+        return Double.compare(b.getValue(), a.getValue());
+      }
+    });
+    StringBuilder text = new StringBuilder();
+    for (Map.Entry<String, Double> site : sites) {
+      if (text.length() > 0) {
+        text.append(", ");
+      }
+      text.append(site.getKey()).append(String.format(" %.0f%%", 100.0 * site.getValue() / total));
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.Compressor;
+import org.openjdk.jmh.annotations.*;
+
+import com.intel.compression.hadoop.IntelCompressionCodec;
+import com.intel.compression.hadoop.conf.IntelCompressionCodecConfigurationKeys;
+
+/**
+ * Compresses one buffer per invocation with the Hadoop compressor from
+ * concurrent threads, either creating and ending a compressor each time, as
+ * short lived writers do, or borrowing one from Hadoop's {@link CodecPool}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class HadoopCompressorConcurrencyBenchmark {
+
+  @Param({"lz4-ipp", "zstd"})
+  public String codec;
+
+  @Param({"65536", "1048576"})
+  public int inputSize;
+
+  @Param({"false", "true"})
+  public boolean useNativeBuffer;
+
+  @Param("262144")
+  public int bufferSize;
+
+  private byte[] data;
+  private IntelCompressionCodec hadoopCodec;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    data = BenchmarkData.generate(inputSize);
+    Configuration conf = new Configuration();
+    conf.set(IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_KEY, codec);
+    conf.setInt(IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_BUFFER_SIZE_KEY,
+        bufferSize);
+    conf.setBoolean(IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_USE_NATIVE_BUFFER_KEY,
+        useNativeBuffer);
+    hadoopCodec = new IntelCompressionCodec();
+    hadoopCodec.setConf(conf);
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    final byte[] output = new byte[64 * 1024];
+  }
+
+  @Benchmark
+  public long newCompressor(ThreadState state) throws IOException {
+    Compressor compressor = hadoopCodec.createCompressor();
+    try {
+      return compress(compressor, state.output);
+    } finally {
+      compressor.end();
+    }
+  }
+
+  @Benchmark
+  public long codecPool(ThreadState state) throws IOException {
+    Compressor compressor = CodecPool.getCompressor(hadoopCodec, hadoopCodec.getConf());
+    try {
+      return compress(compressor, state.output);
+    } finally {
+      CodecPool.returnCompressor(compressor);
+    }
+  }
+
+  private long compress(Compressor compressor, byte[] output) throws IOException {
+    compressor.setInput(data, 0, data.length);
+    compressor.finish();
+    long total = 0;
+    while (!compressor.finished()) {
+      total += compressor.compress(output, 0, output.length);
+    }
+    return total;
+  }
+}
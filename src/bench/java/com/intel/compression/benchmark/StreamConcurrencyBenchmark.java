@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.intel.compression.spark.IntelCompressionCodecBlockInputStream;
+import com.intel.compression.spark.IntelCompressionCodecBlockOutputStream;
+
+/**
+ * Creates, writes and closes Spark block streams from concurrent threads, the
+ * way shuffle tasks do. Every stream takes its buffers from the shared
+ * {@link com.intel.compression.util.buffer.CachedBufferAllocator}s, so the
+ * throughput across thread counts shows how the allocator locks scale.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class StreamConcurrencyBenchmark {
+
+  @Param({"lz4-ipp", "zstd"})
+  public String codec;
+
+  @Param({"65536", "1048576"})
+  public int streamSize;
+
+  @Param({"false", "true"})
+  public boolean useNativeBuffer;
+
+  @Param("32768")
+  public int blockSize;
+
+  private byte[] data;
+  private byte[] compressed;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    data = BenchmarkData.generate(streamSize);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    OutputStream out = new IntelCompressionCodecBlockOutputStream(bytes, codec, 1,
+        blockSize, useNativeBuffer);
+    out.write(data);
+    out.close();
+    compressed = bytes.toByteArray();
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    final byte[] readBuffer = new byte[64 * 1024];
+  }
+
+  @Benchmark
+  public long writeStream() throws IOException {
+    BenchmarkData.NullOutputStream sink = new BenchmarkData.NullOutputStream();
+    OutputStream out = new IntelCompressionCodecBlockOutputStream(sink, codec, 1,
+        blockSize, useNativeBuffer);
+    out.write(data);
+    out.close();
+    return sink.count;
+  }
+
+  @Benchmark
+  public long readStream(ThreadState state) throws IOException {
+    InputStream in = new IntelCompressionCodecBlockInputStream(
+        new ByteArrayInputStream(compressed), blockSize, useNativeBuffer);
+    long total = 0;
+    int n;
+    while ((n = in.read(state.readBuffer)) > 0) {
+      total += n;
+    }
+    in.close();
+    return total;
+  }
+}
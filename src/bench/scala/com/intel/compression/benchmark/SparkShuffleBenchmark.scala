@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.benchmark
+
+import java.io.PrintWriter
+import java.lang.management.ManagementFactory
+import java.util.Random
+
+import scala.collection.JavaConverters._
+
+import com.intel.compression.util.IntelCompressionCodecCapabilities
+
+import org.apache.spark.{HashPartitioner, SparkConf, SparkContext}
+import org.apache.spark.rdd.RDD
+import org.apache.spark.scheduler.{SparkListener, SparkListenerJobEnd, SparkListenerTaskEnd}
+
+/**
+ * Runs a groupBy and a sort job over generated rows in Spark local mode, once
+ * per codec, so the shuffle pays for the serializer and codec together. The
+ * Intel codec runs under every available native codec, next to Spark's own
+ * lz4, zstd and snappy. For each codec and job it prints the averages of the
+ * wall time, the shuffle write time and bytes, the run time of the tasks
+ * reading the shuffle with the time they waited on fetches, the shuffle read
+ * bytes and the GC time of the JVM.
+ *
+ * System properties:
+ *  - bench.spark.codecs: comma separated codecs, Spark's short names or
+ *    intel:<codec>, default all of them
+ *  - bench.spark.rows, bench.spark.partitions: the generated rows and the
+ *    map and reduce partitions, default 4000000 and 32
+ *  - bench.spark.master: default local[*]
+ *  - bench.spark.serializer: default Kryo
+ *  - bench.spark.warmups, bench.spark.iterations: runs of each job before and
+ *    while measuring, default 1 and 3
+ *  - bench.spark.output: file to also write the results to as CSV
+ */
+object SparkShuffleBenchmark {
+
+  private val IntelCodec = "com.intel.compression.spark.IntelCompressionCodec"
+  private val IntelPrefix = "intel:"
+
+  /** Shuffle and GC counters, summed over tasks and runs. */
+  private case class Totals(
+      jobs: Long = 0,
+      wallNanos: Long = 0,
+      shuffleWriteNanos: Long = 0,
+      shuffleWriteBytes: Long = 0,
+      shuffleReadTaskMillis: Long = 0,
+      fetchWaitMillis: Long = 0,
+      shuffleReadBytes: Long = 0,
+      gcMillis: Long = 0) {
+
+    def -(o: Totals): Totals = Totals(jobs - o.jobs, wallNanos - o.wallNanos,
+      shuffleWriteNanos - o.shuffleWriteNanos, shuffleWriteBytes - o.shuffleWriteBytes,
+      shuffleReadTaskMillis - o.shuffleReadTaskMillis, fetchWaitMillis - o.fetchWaitMillis,
+      shuffleReadBytes - o.shuffleReadBytes, gcMillis - o.gcMillis)
+  }
+
+  /** Sums the shuffle metrics of the tasks, its totals are complete once the jobs ended. */
+  private class ShuffleMetricsListener extends SparkListener {
+    private var totals = Totals()
+
+    override def onTaskEnd(taskEnd: SparkListenerTaskEnd): Unit = synchronized {
+      val metrics = taskEnd.taskMetrics
+      if (metrics != null) {
+        val write = metrics.shuffleWriteMetrics
+        val read = metrics.shuffleReadMetrics
+        val readTaskMillis = if (read.recordsRead > 0) metrics.executorRunTime else 0L
+        totals = totals.copy(
+          shuffleWriteNanos = totals.shuffleWriteNanos + write.writeTime,
+          shuffleWriteBytes = totals.shuffleWriteBytes + write.bytesWritten,
+          shuffleReadTaskMillis = totals.shuffleReadTaskMillis + readTaskMillis,
+          fetchWaitMillis = totals.fetchWaitMillis + read.fetchWaitTime,
+          shuffleReadBytes = totals.shuffleReadBytes + read.totalBytesRead)
+      }
+    }
+
+    override def onJobEnd(jobEnd: SparkListenerJobEnd): Unit = synchronized {
+      totals = totals.copy(jobs = totals.jobs + 1)
+      notifyAll()
+    }
+
+    /** @return the totals once the listener has seen the given number of jobs end */
+    def await(jobs: Long): Totals = synchronized {
+      while (totals.jobs < jobs) {
+        wait()
+      }
+      totals
+    }
+  }
+
+  private val jobs: Seq[(String, RDD[(Long, String)] => Long)] = Seq(
+    "groupBy" -> ((rows: RDD[(Long, String)]) =>
+      rows.groupByKey(partitions).mapValues(_.size).count()),
+    "sort" -> ((rows: RDD[(Long, String)]) =>
+      rows.repartitionAndSortWithinPartitions(new HashPartitioner(partitions)).count()))
+
+  private def property(name: String, default: String): String =
+    Option(System.getProperty(name)).map(_.trim).filter(_.nonEmpty).getOrElse(default)
+
+  private lazy val rowCount = property("bench.spark.rows", "4000000").toLong
+  private lazy val partitions = property("bench.spark.partitions", "32").toInt
+
+  def main(args: Array[String]): Unit = {
+    val codecs = property("bench.spark.codecs", "").split(",").map(_.trim).filter(_.nonEmpty)
+    val runCodecs = if (codecs.nonEmpty) codecs.toSeq else {
+      Seq("lz4", "zstd", "snappy") ++ IntelCompressionCodecCapabilities.getCapabilities.asScala
+        .filter(_.isAvailable).map(IntelPrefix + _.getCodec)
+    }
+    val warmups = property("bench.spark.warmups", "1").toInt
+    val iterations = property("bench.spark.iterations", "3").toInt
+
+    val results = for (codec <- runCodecs; (job, averages) <- run(codec, warmups, iterations))
+      yield (codec, job, averages)
+
+    val header = Seq("codec", "job", "wall ms", "write ms", "write MB", "read task ms",
+      "fetch wait ms", "read MB", "GC ms")
+    val rows = results.map { case (codec, job, t) =>
+      Seq(codec, job, ms(t.wallNanos), ms(t.shuffleWriteNanos), mb(t.shuffleWriteBytes),
+        t.shuffleReadTaskMillis.toString, t.fetchWaitMillis.toString, mb(t.shuffleReadBytes),
+        t.gcMillis.toString)
+    }
+    println()
+    println(s"Spark shuffle of $rowCount rows in $partitions partitions, averages of " +
+      s"$iterations runs")
+    val widths = header.indices.map(i => (header +: rows).map(_(i).length).max)
+    (header +: rows).foreach { row =>
+      println(row.zip(widths).map { case (cell, width) => s"%${width}s".format(cell) }.mkString("  "))
+    }
+    Option(System.getProperty("bench.spark.output")).filter(_.nonEmpty).foreach { file =>
+      val out = new PrintWriter(file, "UTF-8")
+      try {
+        (header +: rows).foreach(row => out.println(row.mkString(",")))
+      } finally {
+        out.close()
+      }
+    }
+  }
+
+  private def ms(nanos: Long): String = (nanos / 1000000).toString
+
+  private def mb(bytes: Long): String = "%.1f".format(bytes / 1024.0 / 1024.0)
+
+  /**
+   * Run every job with the codec in a context of its own.
+   *
+   * @return the averages of the measured runs of each job
+   */
+  private def run(codec: String, warmups: Int, iterations: Int): Seq[(String, Totals)] = {
+    val conf = new SparkConf()
+      .setMaster(property("bench.spark.master", "local[*]"))
+      .setAppName("SparkShuffleBenchmark " + codec)
+      .set("spark.ui.enabled", "false")
+      .set("spark.serializer",
+        property("bench.spark.serializer", "org.apache.spark.serializer.KryoSerializer"))
+    if (codec.startsWith(IntelPrefix)) {
+      conf.set("spark.io.compression.codec", IntelCodec)
+        .set("spark.io.compression.codec.intel.codec", codec.substring(IntelPrefix.length))
+    } else {
+      conf.set("spark.io.compression.codec", codec)
+    }
+
+    val sc = new SparkContext(conf)
+    try {
+      val listener = new ShuffleMetricsListener
+      sc.addSparkListener(listener)
+      val rows = generate(sc)
+      var jobsRun = 0L
+      jobs.map { case (name, job) =>
+        for (_ <- 0 until warmups) {
+          job(rows)
+          jobsRun += 1
+        }
+        val start = listener.await(jobsRun).copy(gcMillis = gcMillis())
+        val startNanos = System.nanoTime()
+        for (_ <- 0 until iterations) {
+          job(rows)
+          jobsRun += 1
+        }
+        val wallNanos = System.nanoTime() - startNanos
+        val end = listener.await(jobsRun).copy(wallNanos = wallNanos, gcMillis = gcMillis())
+        val total = end - start
+        name -> Totals(iterations, total.wallNanos / iterations,
+          total.shuffleWriteNanos / iterations, total.shuffleWriteBytes / iterations,
+          total.shuffleReadTaskMillis / iterations, total.fetchWaitMillis / iterations,
+          total.shuffleReadBytes / iterations, total.gcMillis / iterations)
+      }
+    } finally {
+      sc.stop()
+    }
+  }
+
+  private def gcMillis(): Long =
+    ManagementFactory.getGarbageCollectorMXBeans.asScala.map(_.getCollectionTime.max(0L)).sum
+
+  /**
+   * @return the same rows on every run: keys with about ten rows each and text
+   *         values from a small vocabulary, so they compress like real records
+   */
+  private def generate(sc: SparkContext): RDD[(Long, String)] = {
+    val rowsPerPartition = rowCount / partitions
+    val keys = math.max(rowCount / 10, 1L)
+    sc.parallelize(0 until partitions, partitions).flatMap { partition =>
+      val random = new Random(partition)
+      val words = Array.tabulate(512) { i =>
+        val wordRandom = new Random(i)
+        Seq.fill(3 + wordRandom.nextInt(8))(('a' + wordRandom.nextInt(26)).toChar).mkString
+      }
+      Iterator.fill(rowsPerPartition.toInt) {
+        val key = (random.nextLong() & Long.MaxValue) % keys
+        val value = Seq.fill(12)(words(random.nextInt(words.length))).mkString(" ")
+        (key, value)
+      }
+    }
+  }
+}
@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.codec;
+
+import java.io.Closeable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+import com.intel.compression.spark.IntelCompressionCodecException;
+import com.intel.compression.util.IntelCompressionCodecCapabilities;
+import com.intel.compression.util.IntelCompressionCodecHeader;
+
+/**
+ * Block compression of byte buffers for code that doesn't deal in streams.
+ * <p>
+ * A block is the native block format, a 16-byte header followed by the codec
+ * payload, so any reader of this library can decompress it. Every thread using
+ * an instance keeps a compress and a decompress context, created on first use
+ * and destroyed once the thread is gone or the instance is closed, so calls
+ * don't allocate contexts. Direct buffers are passed to the codec as they are,
+ * heap buffers are copied through per-thread direct scratch buffers, of which a
+ * thread keeps up to {@value #MAX_SCRATCH_CAPACITY} bytes between calls. Buffer
+ * positions are advanced past the bytes consumed and produced. This class is
+ * thread-safe, but must not be closed while calls are running.
+ */
+public final class IntelCodec implements Closeable {
+
+  /** The capacity of the largest scratch buffer a thread keeps between calls. */
+  private static final int MAX_SCRATCH_CAPACITY = 1 << 20;
+  private static final int MIN_SCRATCH_CAPACITY = 64 * 1024;
+
+  private static final ConcurrentHashMap<String, IntelCodec> instances =
+      new ConcurrentHashMap<String, IntelCodec>();
+
+  /** States of threads that are gone, released when the next one is created. */
+  private static final ReferenceQueue<ThreadState> staleStates = new ReferenceQueue<ThreadState>();
+
+  private final String codec;
+  private final int level;
+  private final String key;
+  // the states of the threads using the instance, guarded by itself
+  private final Set<StateReference> liveStates = new HashSet<StateReference>();
+  private volatile boolean closed;
+  private final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+    @Override
+    protected ThreadState initialValue() {
+      return newThreadState();
+    }
+  };
+
+  private IntelCodec(String codec, int level, String key) {
+    this.codec = codec;
+    this.level = level;
+    this.key = key;
+  }
+
+  /**
+   * @param codec  the compression codec, falling back if its library is missing
+   * @param level  the compression level
+   * @return the facade shared by every caller of the codec and level, a new
+   *         one once the previous one is closed
+   */
+  public static IntelCodec getInstance(String codec, int level) {
+    final String resolved = IntelCompressionCodecCapabilities.resolve(codec);
+    final String key = resolved + ":" + level;
+    IntelCodec instance = instances.get(key);
+    if (instance == null) {
+      final IntelCodec created = new IntelCodec(resolved, level, key);
+      instance = instances.putIfAbsent(key, created);
+      if (instance == null) {
+        instance = created;
+      }
+    }
+    return instance;
+  }
+
+  public String getCodec() {
+    return codec;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Compress the remaining bytes of src into one block at the position of dst.
+   *
+   * @param dst  buffer with room for {@link #maxCompressedLength(int)} bytes
+   * @return the length of the block written to dst
+   */
+  public int compress(ByteBuffer src, ByteBuffer dst) {
+    final StateReference state = state();
+    final long context = compressContext(state);
+    final int srcLen = src.remaining();
+    final int bound = IntelCompressionCodecJNI.compressBound(context, srcLen);
+    if (dst.remaining() < bound) {
+      throw new IllegalArgumentException("Output buffer of " + dst.remaining()
+          + " bytes can't hold a block of " + srcLen + " bytes, needs " + bound);
+    }
+    final ByteBuffer in = src.isDirect() ? src : copyToScratch(state, src, 0);
+    final ByteBuffer out = dst.isDirect() ? dst : scratch(state, 1, bound);
+    final int compressedLen = IntelCompressionCodecJNI.compress(context,
+        in, in.position(), srcLen, out, out.position(), out.remaining());
+    src.position(src.limit());
+    advance(out, dst, compressedLen);
+    return compressedLen;
+  }
+
+  /**
+   * Decompress the block at the position of src into dst.
+   *
+   * @param dst  buffer with room for {@link #uncompressedLength(ByteBuffer)} bytes
+   * @return the uncompressed length written to dst
+   */
+  public int decompress(ByteBuffer src, ByteBuffer dst) {
+    final StateReference state = state();
+    final int compressedLen = checkBlock(src, dst);
+    final ByteBuffer in = src.isDirect() ? src : copyToScratch(state, src, 0);
+    final ByteBuffer out = dst.isDirect() ? dst : scratch(state, 1, dst.remaining());
+    final int uncompressedLen = IntelCompressionCodecJNI.decompress(decompressContext(state),
+        in, in.position(), compressedLen, out, out.position(), out.remaining());
+    src.position(src.position() + compressedLen);
+    advance(out, dst, uncompressedLen);
+    return uncompressedLen;
+  }
+
+  /**
+   * @return the largest block {@link #compress} writes for srcLen bytes
+   */
+  public int maxCompressedLength(int srcLen) {
+    return IntelCompressionCodecJNI.compressBound(compressContext(state()), srcLen);
+  }
+
+  /**
+   * @return the uncompressed length of the block at the position of src
+   */
+  public static int uncompressedLength(ByteBuffer src) {
+    if (src.remaining() < IntelCompressionCodecHeader.HEADER_LENGTH) {
+      throw new IntelCompressionCodecException("Block of " + src.remaining()
+          + " bytes is shorter than its header");
+    }
+    final int uncompressedLen = IntelCompressionCodecHeader.getUncompressedSize(src, src.position());
+    if (uncompressedLen < 0) {
+      throw new IntelCompressionCodecException("Corrupted block header");
+    }
+    return uncompressedLen;
+  }
+
+  /**
+   * Destroy the contexts and drop the scratch buffers of every thread, and
+   * stop sharing the instance. Calls on a closed instance throw
+   * {@link IllegalStateException}.
+   */
+  @Override
+  public void close() {
+    synchronized (liveStates) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      for (StateReference state : new ArrayList<StateReference>(liveStates)) {
+        state.release();
+      }
+    }
+    instances.remove(key, this);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(codec=" + codec + ", level=" + level + ")";
+  }
+
+  /**
+   * Validate the header of the block at the position of src.
+   *
+   * @return the compressed length of the block
+   */
+  static int checkBlock(ByteBuffer src, ByteBuffer dst) {
+    final int uncompressedLen = uncompressedLength(src);
+    final int compressedLen = IntelCompressionCodecHeader.getCompressedSize(src, src.position());
+    if (compressedLen < IntelCompressionCodecHeader.HEADER_LENGTH
+        || compressedLen > src.remaining()) {
+      throw new IntelCompressionCodecException("Corrupted block header");
+    }
+    if (uncompressedLen > dst.remaining()) {
+      throw new IllegalArgumentException("Output buffer of " + dst.remaining()
+          + " bytes can't hold a block of " + uncompressedLen + " bytes");
+    }
+    return compressedLen;
+  }
+
+  /**
+   * @return a direct buffer of at least the capacity, cleared, kept by the
+   *         thread for its next calls unless it is too large
+   */
+  private static ByteBuffer scratch(StateReference state, int index, int capacity) {
+    ByteBuffer buffer = state.scratch[index];
+    if (buffer == null || buffer.capacity() < capacity) {
+      buffer = ByteBuffer.allocateDirect(Math.max(capacity, MIN_SCRATCH_CAPACITY));
+      if (buffer.capacity() <= MAX_SCRATCH_CAPACITY) {
+        state.scratch[index] = buffer;
+      }
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  private static ByteBuffer copyToScratch(StateReference state, ByteBuffer src, int index) {
+    final ByteBuffer buffer = scratch(state, index, src.remaining());
+    buffer.put(src.duplicate());
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Advance dst past the bytes written, copying them in when the codec wrote
+   * to a scratch buffer.
+   */
+  private static void advance(ByteBuffer out, ByteBuffer dst, int len) {
+    if (out != dst) {
+      out.limit(out.position() + len);
+      dst.put(out);
+    } else {
+      dst.position(dst.position() + len);
+    }
+  }
+
+  private StateReference state() {
+    if (closed) {
+      throw new IllegalStateException(this + " is closed");
+    }
+    return threadState.get().ref;
+  }
+
+  private ThreadState newThreadState() {
+    Reference<? extends ThreadState> stale;
+    while ((stale = staleStates.poll()) != null) {
+      ((StateReference) stale).release();
+    }
+    final ThreadState state = new ThreadState(liveStates);
+    synchronized (liveStates) {
+      if (closed) {
+        throw new IllegalStateException(this + " is closed");
+      }
+      liveStates.add(state.ref);
+    }
+    return state;
+  }
+
+  private long compressContext(StateReference state) {
+    if (state.compressContext == 0) {
+      final long context = IntelCompressionCodecJNI.createCompressContext(codec, level);
+      synchronized (liveStates) {
+        if (closed) {
+          IntelCompressionCodecJNI.destroyContext(context);
+          throw new IllegalStateException(this + " is closed");
+        }
+        state.compressContext = context;
+      }
+    }
+    return state.compressContext;
+  }
+
+  private long decompressContext(StateReference state) {
+    if (state.decompressContext == 0) {
+      final long context = IntelCompressionCodecJNI.createDecompressContext();
+      synchronized (liveStates) {
+        if (closed) {
+          IntelCompressionCodecJNI.destroyContext(context);
+          throw new IllegalStateException(this + " is closed");
+        }
+        state.decompressContext = context;
+      }
+    }
+    return state.decompressContext;
+  }
+
+  /**
+   * The thread-local value, unreachable once its thread is gone. It doesn't
+   * reference the instance, so a closed instance can be collected.
+   */
+  private static final class ThreadState {
+    final StateReference ref;
+
+    ThreadState(Set<StateReference> liveStates) {
+      this.ref = new StateReference(this, liveStates);
+    }
+  }
+
+  /** The native contexts and scratch buffers of a thread state. */
+  private static final class StateReference extends PhantomReference<ThreadState> {
+    private final Set<StateReference> liveStates;
+    final ByteBuffer[] scratch = new ByteBuffer[2];
+    long compressContext;
+    long decompressContext;
+
+    StateReference(ThreadState state, Set<StateReference> liveStates) {
+      super(state, staleStates);
+      this.liveStates = liveStates;
+    }
+
+    /**
+     * Destroy the contexts and drop the scratch buffers, once whether the
+     * thread is gone or the instance is closed first.
+     */
+    void release() {
+      synchronized (liveStates) {
+        if (!liveStates.remove(this)) {
+          return;
+        }
+        if (compressContext != 0) {
+          IntelCompressionCodecJNI.destroyContext(compressContext);
+          compressContext = 0;
+        }
+        if (decompressContext != 0) {
+          IntelCompressionCodecJNI.destroyContext(decompressContext);
+          decompressContext = 0;
+        }
+        Arrays.fill(scratch, null);
+      }
+    }
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.codec;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+import com.intel.compression.util.IntelCompressionCodecCapabilities;
+
+/**
+ * Asynchronous compression of direct buffers into native blocks.
+ * <p>
+ * Each call runs on an executor with a native context borrowed from a pool, so
+ * event-loop threads can hand codec work off and overlap it with their I/O.
+ * The pool keeps one context per concurrent call, which is at most the number
+ * of threads of the executor. The buffers must not be touched until the
+ * returned future completes, their positions are then advanced past the bytes
+ * consumed and produced. This class is thread-safe.
+ */
+public final class IntelCodecAsync implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IntelCodecAsync.class);
+
+  private static ExecutorService defaultExecutor;
+
+  private final String codec;
+  private final int level;
+  private final Executor executor;
+  private final ConcurrentLinkedQueue<Long> compressContexts = new ConcurrentLinkedQueue<Long>();
+  private final ConcurrentLinkedQueue<Long> decompressContexts = new ConcurrentLinkedQueue<Long>();
+  private volatile boolean closed;
+
+  /**
+   * Run on the shared executor of the library, whose daemon threads match the
+   * number of processors.
+   *
+   * @param codec  the compression codec, falling back if its library is missing
+   * @param level  the compression level
+   */
+  public IntelCodecAsync(String codec, int level) {
+    this(codec, level, getDefaultExecutor());
+  }
+
+  /**
+   * @param codec     the compression codec, falling back if its library is missing
+   * @param level     the compression level
+   * @param executor  the executor running the native calls
+   */
+  public IntelCodecAsync(String codec, int level, Executor executor) {
+    if (executor == null) {
+      throw new NullPointerException("executor");
+    }
+    this.codec = IntelCompressionCodecCapabilities.resolve(codec);
+    this.level = level;
+    this.executor = executor;
+  }
+
+  /**
+   * @return the executor shared by the instances created without one
+   */
+  public static synchronized ExecutorService getDefaultExecutor() {
+    if (defaultExecutor == null) {
+      final AtomicInteger threads = new AtomicInteger();
+      defaultExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "intel-codec-async-" + threads.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    return defaultExecutor;
+  }
+
+  public String getCodec() {
+    return codec;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Compress the remaining bytes of src into one block at the position of dst.
+   *
+   * @param src  direct buffer holding the data
+   * @param dst  direct buffer with room for {@link #maxCompressedLength(int)} bytes
+   * @return the future length of the block written to dst
+   */
+  public CompletableFuture<Integer> compress(final ByteBuffer src, final ByteBuffer dst) {
+    checkDirect(src, dst);
+    checkOpen();
+    return CompletableFuture.supplyAsync(new Supplier<Integer>() {
+      @Override
+      public Integer get() {
+        final long context = borrowCompressContext();
+        try {
+          final int srcLen = src.remaining();
+          final int bound = IntelCompressionCodecJNI.compressBound(context, srcLen);
+          if (dst.remaining() < bound) {
+            throw new IllegalArgumentException("Output buffer of " + dst.remaining()
+                + " bytes can't hold a block of " + srcLen + " bytes, needs " + bound);
+          }
+          final int compressedLen = IntelCompressionCodecJNI.compress(context,
+              src, src.position(), srcLen, dst, dst.position(), dst.remaining());
+          src.position(src.limit());
+          dst.position(dst.position() + compressedLen);
+          return compressedLen;
+        } finally {
+          release(compressContexts, context);
+        }
+      }
+    }, executor);
+  }
+
+  /**
+   * Decompress the block at the position of src into dst.
+   *
+   * @param src  direct buffer holding a block written by {@link #compress}
+   *             or any other writer of the native block format
+   * @param dst  direct buffer with room for the uncompressed data
+   * @return the future uncompressed length written to dst
+   */
+  public CompletableFuture<Integer> decompress(final ByteBuffer src, final ByteBuffer dst) {
+    checkDirect(src, dst);
+    checkOpen();
+    return CompletableFuture.supplyAsync(new Supplier<Integer>() {
+      @Override
+      public Integer get() {
+        final int compressedLen = IntelCodec.checkBlock(src, dst);
+        final long context = borrowDecompressContext();
+        try {
+          final int uncompressedLen = IntelCompressionCodecJNI.decompress(context,
+              src, src.position(), compressedLen, dst, dst.position(), dst.remaining());
+          src.position(src.position() + compressedLen);
+          dst.position(dst.position() + uncompressedLen);
+          return uncompressedLen;
+        } finally {
+          release(decompressContexts, context);
+        }
+      }
+    }, executor);
+  }
+
+  /**
+   * @return the largest block {@link #compress} writes for srcLen bytes
+   */
+  public int maxCompressedLength(int srcLen) {
+    final long context = borrowCompressContext();
+    try {
+      return IntelCompressionCodecJNI.compressBound(context, srcLen);
+    } finally {
+      release(compressContexts, context);
+    }
+  }
+
+  /**
+   * Destroy the pooled contexts, calls still running destroy theirs when they
+   * complete. The executor is not shut down.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    destroyAll(compressContexts);
+    destroyAll(decompressContexts);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(codec=" + codec + ", level=" + level + ")";
+  }
+
+  private static void checkDirect(ByteBuffer src, ByteBuffer dst) {
+    if (!src.isDirect() || !dst.isDirect()) {
+      throw new IllegalArgumentException("Native codec needs direct buffers");
+    }
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException(this + " is closed");
+    }
+  }
+
+  private long borrowCompressContext() {
+    Long context = compressContexts.poll();
+    if (context != null) {
+      return context;
+    }
+    LOG.debug("Create compress context for " + this);
+    return IntelCompressionCodecJNI.createCompressContext(codec, level);
+  }
+
+  private long borrowDecompressContext() {
+    Long context = decompressContexts.poll();
+    if (context != null) {
+      return context;
+    }
+    return IntelCompressionCodecJNI.createDecompressContext();
+  }
+
+  private void release(ConcurrentLinkedQueue<Long> pool, long context) {
+    pool.offer(context);
+    // a context returned after close would leak, drain it back out
+    if (closed) {
+      destroyAll(pool);
+    }
+  }
+
+  private static void destroyAll(ConcurrentLinkedQueue<Long> pool) {
+    Long context;
+    while ((context = pool.poll()) != null) {
+      IntelCompressionCodecJNI.destroyContext(context);
+    }
+  }
+}
@@ -28,6 +28,10 @@ import org.apache.hadoop.io.compress.*;
 
 import com.intel.compression.jni.IntelCompressionCodecJNI;
 import com.intel.compression.hadoop.conf.IntelCompressionCodecConfigurationKeys;
+import com.intel.compression.util.CodecParameters;
+import com.intel.compression.util.IntelCompressionCodecCapabilities;
+import com.intel.compression.util.buffer.CachedBufferAllocator;
+import com.intel.compression.util.buffer.HugePageBufferAllocator;
 
 /**
  * This class creates IntelCompressionCodec compressors/decompressors.
@@ -44,6 +48,12 @@ public class IntelCompressionCodec implements Configurable, CompressionCodec {
   @Override
   public void setConf(Configuration conf) {
     this.conf = conf;
+    if (conf.getBoolean(
+        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_USE_HUGE_PAGE_BUFFER_KEY,
+        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_USE_HUGE_PAGE_BUFFER_DEFAULT)) {
+      CachedBufferAllocator.setBufferAllocatorFactory(
+          HugePageBufferAllocator.getHugePageBufferAllocatorFactory());
+    }
   }
 
   /**
@@ -60,6 +70,10 @@ public class IntelCompressionCodec implements Configurable, CompressionCodec {
     return IntelCompressionCodecJNI.getLibraryName(codec);
   }
 
+  public static String getLibraryVersion(int codec) {
+    return IntelCompressionCodecJNI.getLibraryVersion(codec);
+  }
+
   /**
    * Create a {@link CompressionOutputStream} that will write to the given
    * {@link OutputStream}.
@@ -86,9 +100,7 @@ public class IntelCompressionCodec implements Configurable, CompressionCodec {
   @Override
   public CompressionOutputStream createOutputStream(OutputStream out, Compressor compressor)
       throws IOException {
-    int bufferSize = conf.getInt(
-        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_BUFFER_SIZE_KEY,
-        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_BUFFER_SIZE_DEFAULT);
+    int bufferSize = getBufferSize(conf);
 
     int compressionOverhead = 0; //(bufferSize / 6) + 32;
 
@@ -112,20 +124,45 @@ public class IntelCompressionCodec implements Configurable, CompressionCodec {
    */
   @Override
   public Compressor createCompressor() {
-    String codec = conf.get(
+    String codec = getCodec(conf);
+    return new IntelCompressionCodecCompressor(codec, getLevel(conf, codec),
+        getBufferSize(conf), getUseNativeBuffer(conf), getParameters(conf, codec));
+  }
+
+  /**
+   * @return the configured codec, or the codec it falls back to
+   */
+  static String getCodec(Configuration conf) {
+    return IntelCompressionCodecCapabilities.resolve(conf.get(
         IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_KEY,
-        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_DEFAULT);
-    int level = conf.getInt(
+        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_DEFAULT));
+  }
+
+  static int getLevel(Configuration conf, String codec) {
+    return conf.getInt(
         IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_LEVEL_KEY + codec,
         IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_LEVEL_DEFAULT);
-    int bufferSize = conf.getInt(
+  }
+
+  /**
+   * @throws IllegalArgumentException if a parameter configured for the codec
+   *                                  is unsupported or out of range
+   */
+  static CodecParameters getParameters(Configuration conf, String codec) {
+    return new CodecParameters(codec, conf.getPropsWithPrefix(
+        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_PARAM_KEY + codec + "."));
+  }
+
+  static int getBufferSize(Configuration conf) {
+    return conf.getInt(
         IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_BUFFER_SIZE_KEY,
         IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_BUFFER_SIZE_DEFAULT);
-    boolean useNativeBuffer = conf.getBoolean(
+  }
+
+  static boolean getUseNativeBuffer(Configuration conf) {
+    return conf.getBoolean(
         IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_USE_NATIVE_BUFFER_KEY,
         IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_USE_NATIVE_BUFFER_DEFAULT);
-
-    return new IntelCompressionCodecCompressor(codec, level, bufferSize, useNativeBuffer);
   }
 
   /**
@@ -155,9 +192,7 @@ public class IntelCompressionCodec implements Configurable, CompressionCodec {
   public CompressionInputStream createInputStream(InputStream in,
       Decompressor decompressor) throws IOException {
 
-    int bufferSize = conf.getInt(
-        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_BUFFER_SIZE_KEY,
-        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_BUFFER_SIZE_DEFAULT);
+    int bufferSize = getBufferSize(conf);
 
     return new BlockDecompressorStream(in, decompressor, bufferSize);
   }
@@ -179,13 +214,7 @@ public class IntelCompressionCodec implements Configurable, CompressionCodec {
    */
   @Override
   public Decompressor createDecompressor() {
-    int bufferSize = conf.getInt(
-        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_BUFFER_SIZE_KEY,
-        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_BUFFER_SIZE_DEFAULT);
-    boolean useNativeBuffer = conf.getBoolean(
-        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_USE_NATIVE_BUFFER_KEY,
-        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_USE_NATIVE_BUFFER_DEFAULT);
-    return new IntelCompressionCodecDecompressor(bufferSize, useNativeBuffer);
+    return new IntelCompressionCodecDecompressor(getBufferSize(conf), getUseNativeBuffer(conf));
   }
 
   /**
@@ -24,10 +24,13 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.Compressor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sun.nio.ch.DirectBuffer;
 
 import com.intel.compression.jni.IntelCompressionCodecJNI;
+import com.intel.compression.util.CodecParameters;
 import com.intel.compression.util.NativeCodeLoader;
 import com.intel.compression.util.buffer.*;
+import com.intel.compression.util.jfr.IntelCompressionCodecEvents;
 
 public class IntelCompressionCodecCompressor implements Compressor {
   private static final Logger LOG =
@@ -35,10 +38,11 @@ public class IntelCompressionCodecCompressor implements Compressor {
 
   private int uncompressedDirectBufferSize;
   private ByteBuffer compressedDirectBuffer = null;
-  private final BufferAllocator compressedBufferAllocator;
+  private BufferAllocator compressedBufferAllocator;
   private int compressedDirectBufferSize;
   private ByteBuffer uncompressedDirectBuffer = null;
-  private final BufferAllocator uncompressedBufferAllocator;
+  private BufferAllocator uncompressedBufferAllocator;
+  private boolean useNativeBuffer;
   private int uncompressedBytesInBuffer;
   private byte[] userBuf = null;
   private int userBufOff = 0, userBufLen = 0;
@@ -48,6 +52,10 @@ public class IntelCompressionCodecCompressor implements Compressor {
   private long bytesWritten = 0L;
 
   private long context = 0L;
+  private String codec;
+  private int level;
+  private CodecParameters parameters;
+  private final boolean bare;
 
   static {
     if (!NativeCodeLoader.isNativeCodeLoaded()) {
@@ -69,8 +77,44 @@ public class IntelCompressionCodecCompressor implements Compressor {
    */
   public IntelCompressionCodecCompressor(String codec, int level,
           int directBufferSize, boolean useNativeBuffer) {
+    this(codec, level, directBufferSize, useNativeBuffer, null);
+  }
+
+  /**
+   * Creates a new compressor with the tuning parameters of the codec.
+   *
+   * @param parameters the tuning parameters of the codec, null for the defaults
+   * @throws IllegalArgumentException if the library of the codec can't apply
+   *                                  the parameters
+   */
+  public IntelCompressionCodecCompressor(String codec, int level,
+          int directBufferSize, boolean useNativeBuffer, CodecParameters parameters) {
+    this(codec, level, directBufferSize, useNativeBuffer, parameters, false);
+  }
+
+  /**
+   * @param bare whether the blocks are written without the codec header, as
+   *             the plain blocks of the codec's own format
+   */
+  IntelCompressionCodecCompressor(String codec, int level, int directBufferSize,
+          boolean useNativeBuffer, CodecParameters parameters, boolean bare) {
+    this.bare = bare;
+    this.codec = codec;
+    this.level = level;
+    this.parameters = parameters != null ? parameters : new CodecParameters(codec);
+    this.useNativeBuffer = useNativeBuffer;
     this.uncompressedDirectBufferSize = directBufferSize;
-    this.compressedDirectBufferSize = directBufferSize * 3 / 2;
+    context = CodecParameters.createCompressContext(parameters, codec, level);
+    allocateBuffers();
+  }
+
+  /**
+   * Take the direct buffers from the allocators, the compressed buffer holds
+   * the largest block the codec writes for a full uncompressed buffer.
+   */
+  private void allocateBuffers() {
+    this.compressedDirectBufferSize = Math.max(uncompressedDirectBufferSize * 3 / 2,
+        IntelCompressionCodecJNI.compressBound(context, uncompressedDirectBufferSize));
     this.uncompressedBufferAllocator = CachedBufferAllocator
         .getBufferAllocatorFactory().getBufferAllocator(uncompressedDirectBufferSize);
     this.compressedBufferAllocator = CachedBufferAllocator
@@ -88,8 +132,20 @@ public class IntelCompressionCodecCompressor implements Compressor {
       compressedDirectBuffer.clear();
       compressedDirectBuffer.position(compressedDirectBufferSize);
     }
+  }
 
-    context = IntelCompressionCodecJNI.createCompressContext(codec, level);
+  /**
+   * Return the direct buffers to the allocators they came from.
+   */
+  private void releaseBuffers() {
+    if (uncompressedDirectBuffer != null) {
+      uncompressedBufferAllocator.releaseDirectByteBuffer(uncompressedDirectBuffer);
+      uncompressedDirectBuffer = null;
+    }
+    if (compressedDirectBuffer != null) {
+      compressedBufferAllocator.releaseDirectByteBuffer(compressedDirectBuffer);
+      compressedDirectBuffer = null;
+    }
   }
 
   /**
@@ -230,9 +286,18 @@ public class IntelCompressionCodecCompressor implements Compressor {
 
     // Re-initialize the codec's output direct-buffer
     compressedDirectBuffer.clear();
-    n = IntelCompressionCodecJNI.compress(context,
+    final long compressStart = System.nanoTime();
+    if (bare) {
+      n = IntelCompressionCodecJNI.compressBlock(context,
+            ((DirectBuffer) uncompressedDirectBuffer).address(), uncompressedBytesInBuffer,
+            ((DirectBuffer) compressedDirectBuffer).address(), compressedDirectBufferSize);
+    } else {
+      n = IntelCompressionCodecJNI.compress(context,
             uncompressedDirectBuffer, 0, uncompressedBytesInBuffer,
             compressedDirectBuffer, 0, compressedDirectBufferSize);
+    }
+    IntelCompressionCodecEvents.blockCompressed(codec, level, uncompressedBytesInBuffer, n,
+        System.nanoTime() - compressStart, 0L);
     compressedDirectBuffer.limit(n);
     uncompressedDirectBuffer.clear(); // codec consumes all buffer input
     uncompressedBytesInBuffer = 0;
@@ -257,9 +322,13 @@ public class IntelCompressionCodecCompressor implements Compressor {
   public void reset() {
     finish = false;
     finished = false;
-    uncompressedDirectBuffer.clear();
-    compressedDirectBuffer.clear();
-    compressedDirectBuffer.limit(0);
+    if (uncompressedDirectBuffer != null) {
+      uncompressedDirectBuffer.clear();
+    }
+    if (compressedDirectBuffer != null) {
+      compressedDirectBuffer.clear();
+      compressedDirectBuffer.limit(0);
+    }
     uncompressedBytesInBuffer = 0;
     userBufOff = userBufLen = 0;
     bytesRead = bytesWritten = 0L;
@@ -267,12 +336,56 @@ public class IntelCompressionCodecCompressor implements Compressor {
 
   /**
    * Prepare the compressor to be used in a new stream with settings defined in
-   * the given Configuration
+   * the given Configuration. A new level is set on the existing context and the
+   * buffers are kept unless their size changes, only a new codec needs a new
+   * context. A compressor ended by {@link #end()} is brought back to life.
    *
    * @param conf Configuration from which new setting are fetched
    */
   @Override
   public void reinit(Configuration conf) {
+    if (conf != null) {
+      String newCodec = IntelCompressionCodec.getCodec(conf);
+      reinit(newCodec, IntelCompressionCodec.getLevel(conf, newCodec),
+          IntelCompressionCodec.getParameters(conf, newCodec),
+          IntelCompressionCodec.getBufferSize(conf), IntelCompressionCodec.getUseNativeBuffer(conf));
+    } else if (uncompressedDirectBuffer != null) {
+      reset();
+    }
+  }
+
+  /**
+   * Apply the settings of a new stream as described by
+   * {@link #reinit(Configuration)} and reset the compressor.
+   */
+  void reinit(String newCodec, int newLevel, CodecParameters newParameters,
+      int newBufferSize, boolean newUseNativeBuffer) {
+    if (context == 0 || !newCodec.equals(codec) || !newParameters.equals(parameters)) {
+      if (context != 0) {
+        IntelCompressionCodecJNI.destroyContext(context);
+        context = 0;
+      }
+      context = CodecParameters.createCompressContext(newParameters, newCodec, newLevel);
+      LOG.debug("Reinit compressor with codec " + newCodec + ", level " + newLevel
+          + ", parameters " + newParameters);
+    } else if (newLevel != level) {
+      IntelCompressionCodecJNI.setLevel(context, newLevel);
+      LOG.debug("Reinit compressor with level " + newLevel);
+    }
+    codec = newCodec;
+    level = newLevel;
+    parameters = newParameters;
+
+    if (uncompressedDirectBuffer == null
+        || newBufferSize != uncompressedDirectBufferSize
+        || newUseNativeBuffer != useNativeBuffer
+        || IntelCompressionCodecJNI.compressBound(context, newBufferSize)
+            > compressedDirectBufferSize) {
+      releaseBuffers();
+      uncompressedDirectBufferSize = newBufferSize;
+      useNativeBuffer = newUseNativeBuffer;
+      allocateBuffers();
+    }
     reset();
   }
 
@@ -293,10 +406,18 @@ public class IntelCompressionCodecCompressor implements Compressor {
   }
 
   /**
-   * Closes the compressor and discards any unprocessed input.
+   * Closes the compressor and discards any unprocessed input, destroying the
+   * native context and returning the buffers to their allocators.
    */
   @Override
   public void end() {
+    releaseBuffers();
+    userBuf = null;
+    userBufOff = userBufLen = 0;
+    if (context != 0) {
+      IntelCompressionCodecJNI.destroyContext(context);
+      context = 0;
+    }
   }
 
   private void checkContext() {
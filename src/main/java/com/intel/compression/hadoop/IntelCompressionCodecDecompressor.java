@@ -24,10 +24,13 @@ import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.io.compress.DirectDecompressor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sun.nio.ch.DirectBuffer;
 
 import com.intel.compression.jni.IntelCompressionCodecJNI;
 import com.intel.compression.util.NativeCodeLoader;
+import com.intel.compression.util.IntelCompressionCodecHeader;
 import com.intel.compression.util.buffer.*;
+import com.intel.compression.util.jfr.IntelCompressionCodecEvents;
 
 public class IntelCompressionCodecDecompressor implements Decompressor {
   private static final Logger LOG =
@@ -45,6 +48,7 @@ public class IntelCompressionCodecDecompressor implements Decompressor {
   private boolean finished;
 
   private long context = 0L;
+  private final int bareCodec;
 
   static {
     if (!NativeCodeLoader.isNativeCodeLoaded()) {
@@ -63,6 +67,17 @@ public class IntelCompressionCodecDecompressor implements Decompressor {
    * @param directBufferSize size of the direct buffer to be used.
    */
   public IntelCompressionCodecDecompressor(int directBufferSize, boolean useNativeBuffer) {
+    this(directBufferSize, useNativeBuffer, -1);
+  }
+
+  /**
+   * @param bareCodec the codec of the blocks when they come without the codec
+   *                  header, as the plain blocks of the codec's own format,
+   *                  -1 when they have it
+   */
+  IntelCompressionCodecDecompressor(int directBufferSize, boolean useNativeBuffer,
+      int bareCodec) {
+    this.bareCodec = bareCodec;
     this.uncompressedDirectBufferSize = directBufferSize;
     this.compressedDirectBufferSize = directBufferSize * 3 / 2;
     this.uncompressedBufferAllocator = CachedBufferAllocator
@@ -231,9 +246,19 @@ public class IntelCompressionCodecDecompressor implements Decompressor {
       uncompressedDirectBuffer.limit(uncompressedDirectBufferSize);
 
       // Decompress data
-      n = IntelCompressionCodecJNI.decompress(context,
+      final long decompressStart = System.nanoTime();
+      if (bareCodec >= 0) {
+        n = IntelCompressionCodecJNI.decompressBlock(bareCodec,
+            ((DirectBuffer) compressedDirectBuffer).address(), compressedBytesInBuffer,
+            ((DirectBuffer) uncompressedDirectBuffer).address(), uncompressedDirectBufferSize);
+      } else {
+        n = IntelCompressionCodecJNI.decompress(context,
             compressedDirectBuffer, 0, compressedBytesInBuffer,
             uncompressedDirectBuffer, 0, uncompressedDirectBufferSize);
+      }
+      IntelCompressionCodecEvents.blockDecompressed(bareCodec >= 0 ? bareCodec
+          : IntelCompressionCodecHeader.getCodec(compressedDirectBuffer, 0),
+          compressedBytesInBuffer, n, System.nanoTime() - decompressStart, 0L);
       uncompressedDirectBuffer.limit(n);
       compressedBytesInBuffer = 0;
 
@@ -264,18 +289,33 @@ public class IntelCompressionCodecDecompressor implements Decompressor {
   public void reset() {
     finished = false;
     compressedBytesInBuffer = 0;
-    uncompressedDirectBuffer.limit(uncompressedDirectBufferSize);
-    uncompressedDirectBuffer.position(uncompressedDirectBufferSize);
+    if (uncompressedDirectBuffer != null) {
+      uncompressedDirectBuffer.limit(uncompressedDirectBufferSize);
+      uncompressedDirectBuffer.position(uncompressedDirectBufferSize);
+    }
     userBufOff = userBufLen = 0;
   }
 
   /**
-   * Resets decompressor and input and output buffers so that a new set of
-   * input data can be processed.
+   * Closes the decompressor and discards any unprocessed input, destroying the
+   * native context and returning the buffers to their allocators.
    */
   @Override
   public void end() {
-    // do nothing
+    if (uncompressedDirectBuffer != null) {
+      uncompressedBufferAllocator.releaseDirectByteBuffer(uncompressedDirectBuffer);
+      uncompressedDirectBuffer = null;
+    }
+    if (compressedDirectBuffer != null) {
+      compressedBufferAllocator.releaseDirectByteBuffer(compressedDirectBuffer);
+      compressedDirectBuffer = null;
+    }
+    userBuf = null;
+    userBufOff = userBufLen = 0;
+    if (context != 0) {
+      IntelCompressionCodecJNI.destroyContext(context);
+      context = 0;
+    }
   }
 
   private void checkContext() {
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.hadoop;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.*;
+
+import com.intel.compression.hadoop.conf.IntelCompressionCodecConfigurationKeys;
+import com.intel.compression.util.buffer.CachedBufferAllocator;
+import com.intel.compression.util.buffer.HugePageBufferAllocator;
+
+/**
+ * This class creates gzip compressors/decompressors backed by isal. The files
+ * are standard gzip, so the codec can replace Hadoop's GzipCodec for the
+ * <code>.gz</code> extension, and the files written by either are read by
+ * the other.
+ */
+public class IntelGzipCodec implements Configurable, CompressionCodec {
+
+  /** Name of the codec the {@code io.compression.codec.intel.param.} keys are read for. */
+  static final String PARAMETER_CODEC = "igzip";
+
+  Configuration conf;
+
+  /**
+   * Set the configuration to be used by this object.
+   *
+   * @param conf the configuration object.
+   */
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    if (conf.getBoolean(
+        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_USE_HUGE_PAGE_BUFFER_KEY,
+        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_USE_HUGE_PAGE_BUFFER_DEFAULT)) {
+      CachedBufferAllocator.setBufferAllocatorFactory(
+          HugePageBufferAllocator.getHugePageBufferAllocatorFactory());
+    }
+  }
+
+  /**
+   * Return the configuration used by this object.
+   *
+   * @return the configuration object used by this objec.
+   */
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  /**
+   * Create a {@link CompressionOutputStream} that will write to the given
+   * {@link OutputStream}.
+   *
+   * @param out the location for the final output stream
+   * @return a stream the user can write uncompressed data to have it compressed
+   * @throws IOException
+   */
+  @Override
+  public CompressionOutputStream createOutputStream(OutputStream out)
+      throws IOException {
+    return createOutputStream(out, createCompressor());
+  }
+
+  /**
+   * Create a {@link CompressionOutputStream} that will write to the given
+   * {@link OutputStream} with the given {@link Compressor}.
+   *
+   * @param out        the location for the final output stream
+   * @param compressor compressor to use
+   * @return a stream the user can write uncompressed data to have it compressed
+   * @throws IOException
+   */
+  @Override
+  public CompressionOutputStream createOutputStream(OutputStream out, Compressor compressor)
+      throws IOException {
+    return new CompressorStream(out, compressor, IntelCompressionCodec.getBufferSize(conf));
+  }
+
+  /**
+   * Get the type of {@link Compressor} needed by this {@link CompressionCodec}.
+   *
+   * @return the type of compressor needed by this codec.
+   */
+  @Override
+  public Class<? extends Compressor> getCompressorType() {
+    return IntelGzipCompressor.class;
+  }
+
+  /**
+   * Create a new {@link Compressor} for use by this {@link CompressionCodec}.
+   *
+   * @return a new compressor for use by this codec
+   */
+  @Override
+  public Compressor createCompressor() {
+    return new IntelGzipCompressor(getLevel(conf), IntelCompressionCodec.getBufferSize(conf),
+        IntelCompressionCodec.getUseNativeBuffer(conf),
+        IntelCompressionCodec.getParameters(conf, PARAMETER_CODEC));
+  }
+
+  static int getLevel(Configuration conf) {
+    return conf.getInt(
+        IntelCompressionCodecConfigurationKeys.INTEL_GZIP_CODEC_LEVEL_KEY,
+        IntelCompressionCodecConfigurationKeys.INTEL_GZIP_CODEC_LEVEL_DEFAULT);
+  }
+
+  /**
+   * Create a {@link CompressionInputStream} that will read from the given
+   * input stream.
+   *
+   * @param in the stream to read compressed bytes from
+   * @return a stream to read uncompressed bytes from
+   * @throws IOException
+   */
+  @Override
+  public CompressionInputStream createInputStream(InputStream in)
+      throws IOException {
+    return createInputStream(in, createDecompressor());
+  }
+
+  /**
+   * Create a {@link CompressionInputStream} that will read from the given
+   * {@link InputStream} with the given {@link Decompressor}.
+   *
+   * @param in           the stream to read compressed bytes from
+   * @param decompressor decompressor to use
+   * @return a stream to read uncompressed bytes from
+   * @throws IOException
+   */
+  @Override
+  public CompressionInputStream createInputStream(InputStream in,
+      Decompressor decompressor) throws IOException {
+    return new DecompressorStream(in, decompressor, IntelCompressionCodec.getBufferSize(conf));
+  }
+
+  /**
+   * Get the type of {@link Decompressor} needed by this {@link CompressionCodec}.
+   *
+   * @return the type of decompressor needed by this codec.
+   */
+  @Override
+  public Class<? extends Decompressor> getDecompressorType() {
+    return IntelGzipDecompressor.class;
+  }
+
+  /**
+   * Create a new {@link Decompressor} for use by this {@link CompressionCodec}.
+   *
+   * @return a new decompressor for use by this codec
+   */
+  @Override
+  public Decompressor createDecompressor() {
+    return new IntelGzipDecompressor(IntelCompressionCodec.getBufferSize(conf),
+        IntelCompressionCodec.getUseNativeBuffer(conf));
+  }
+
+  /**
+   * Get the default filename extension for this kind of compression.
+   *
+   * @return <code>.gz</code>.
+   */
+  @Override
+  public String getDefaultExtension() {
+    return ".gz";
+  }
+}
@@ -0,0 +1,406 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.hadoop;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import org.apache.hadoop.io.compress.Decompressor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+import com.intel.compression.util.NativeCodeLoader;
+import com.intel.compression.util.buffer.*;
+
+/**
+ * Decompressor reading a standard gzip member with the stateful inflate of
+ * isal. The header and trailer are parsed here, the crc32 and length of the
+ * output are checked against the trailer. The bytes following the member are
+ * left for {@link #getRemaining()}, so the decompressor stream goes on with
+ * the next member of a concatenated gzip file.
+ */
+public class IntelGzipDecompressor implements Decompressor {
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IntelGzipDecompressor.class.getName());
+
+  private static final int GZIP_MAGIC = 0x8b1f;
+  private static final int DEFLATE_METHOD = 8;
+  private static final int FHCRC = 0x02;
+  private static final int FEXTRA = 0x04;
+  private static final int FNAME = 0x08;
+  private static final int FCOMMENT = 0x10;
+  private static final int FRESERVED = 0xE0;
+  private static final int FIXED_HEADER_SIZE = 10;
+  private static final int TRAILER_SIZE = 8;
+
+  /** Parts of the member, in the order they are read. */
+  private enum State {
+    FIXED_HEADER, EXTRA_LENGTH, EXTRA, NAME, COMMENT, HEADER_CRC, DEFLATE, TRAILER, FINISHED
+  }
+
+  private final int directBufferSize;
+  private final BufferAllocator bufferAllocator;
+  private ByteBuffer compressedDirectBuffer = null;
+  private ByteBuffer uncompressedDirectBuffer = null;
+  private int compressedOff, compressedLen;
+  private byte[] userBuf = null;
+  private int userBufOff = 0, userBufLen = 0;
+  // the output buffer was filled, so the native stream may hold more output
+  private boolean outputPending;
+
+  private State state = State.FIXED_HEADER;
+  private final byte[] fieldBuffer = new byte[FIXED_HEADER_SIZE];
+  private int fieldLength;
+  private int flags;
+  private int extraRemaining;
+  private final CRC32 headerCrc = new CRC32();
+  private final int[] progress = new int[3];
+  private int memberCrc;
+  private long memberLength;
+
+  private long inflater = 0L;
+
+  static {
+    if (!NativeCodeLoader.isNativeCodeLoaded()) {
+      try {
+        LOG.info("try to load native library");
+        NativeCodeLoader.load();
+      } catch (Throwable t) {
+        LOG.error("failed to load native library", t);
+      }
+    }
+  }
+
+  /**
+   * Creates a new decompressor.
+   *
+   * @param directBufferSize size of the direct buffers to be used
+   * @param useNativeBuffer  whether the direct buffers are allocated natively
+   */
+  public IntelGzipDecompressor(int directBufferSize, boolean useNativeBuffer) {
+    this.directBufferSize = directBufferSize;
+    this.bufferAllocator = CachedBufferAllocator
+        .getBufferAllocatorFactory().getBufferAllocator(directBufferSize);
+    this.compressedDirectBuffer = bufferAllocator
+        .allocateDirectByteBuffer(useNativeBuffer, directBufferSize, 64);
+    this.uncompressedDirectBuffer = bufferAllocator
+        .allocateDirectByteBuffer(useNativeBuffer, directBufferSize, 64);
+    uncompressedDirectBuffer.clear();
+    uncompressedDirectBuffer.limit(0);
+    inflater = IntelCompressionCodecJNI.createGzipInflater();
+  }
+
+  /**
+   * Sets input data for decompression, which must stay unmodified until
+   * {@link #needsInput()} returns <code>true</code>.
+   *
+   * @param b   Input data
+   * @param off Start offset
+   * @param len Length
+   */
+  @Override
+  public void setInput(byte[] b, int off, int len) {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    userBuf = b;
+    userBufOff = off;
+    userBufLen = len;
+  }
+
+  /**
+   * Load the next part of the user data into the direct buffer once the
+   * previous one is consumed.
+   */
+  private void setInputFromSavedData() {
+    compressedLen = Math.min(userBufLen, directBufferSize);
+    compressedOff = 0;
+    compressedDirectBuffer.clear();
+    compressedDirectBuffer.put(userBuf, userBufOff, compressedLen);
+    userBufOff += compressedLen;
+    userBufLen -= compressedLen;
+  }
+
+  @Override
+  public boolean needsInput() {
+    return state != State.FINISHED && uncompressedDirectBuffer.remaining() == 0
+        && compressedLen == 0 && userBufLen == 0 && !outputPending;
+  }
+
+  /**
+   * Gzip has no preset dictionary.
+   */
+  @Override
+  public void setDictionary(byte[] b, int off, int len) {
+    throw new UnsupportedOperationException("Gzip doesn't support a dictionary");
+  }
+
+  @Override
+  public boolean needsDictionary() {
+    return false;
+  }
+
+  /**
+   * @return <code>true</code> once the trailer of the member is checked and
+   *         its output consumed
+   */
+  @Override
+  public boolean finished() {
+    return state == State.FINISHED && uncompressedDirectBuffer.remaining() == 0;
+  }
+
+  /**
+   * Fills the buffer with uncompressed data, a return value of 0 indicates
+   * that {@link #needsInput()} or {@link #finished()} should be called.
+   *
+   * @param b   Buffer for the uncompressed data
+   * @param off Start offset of the data
+   * @param len Size of the buffer
+   * @return The actual number of bytes of uncompressed data.
+   * @throws IOException if the input isn't a valid gzip member
+   */
+  @Override
+  public int decompress(byte[] b, int off, int len) throws IOException {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    checkInflater();
+
+    while (uncompressedDirectBuffer.remaining() == 0 && state != State.FINISHED) {
+      if (compressedLen == 0 && !outputPending) {
+        if (userBufLen == 0) {
+          return 0;
+        }
+        setInputFromSavedData();
+      }
+      if (state == State.DEFLATE) {
+        inflate();
+      } else {
+        readHeaderOrTrailer();
+      }
+    }
+
+    int n = Math.min(uncompressedDirectBuffer.remaining(), len);
+    uncompressedDirectBuffer.get(b, off, n);
+    return n;
+  }
+
+  private void inflate() throws IOException {
+    uncompressedDirectBuffer.clear();
+    int n = IntelCompressionCodecJNI.gzipInflate(inflater,
+        compressedDirectBuffer, compressedOff, compressedLen,
+        uncompressedDirectBuffer, 0, directBufferSize, progress);
+    uncompressedDirectBuffer.limit(n);
+    compressedOff += progress[0];
+    compressedLen -= progress[0];
+    memberLength += n;
+    outputPending = progress[1] == 0 && n == directBufferSize;
+    if (progress[1] != 0) {
+      memberCrc = progress[2];
+      state = State.TRAILER;
+      fieldLength = 0;
+    } else if (n == 0 && compressedLen > 0) {
+      throw new IOException("Gzip inflate made no progress on " + compressedLen + " bytes");
+    }
+  }
+
+  /**
+   * Consume the bytes of the header or the trailer from the direct buffer.
+   */
+  private void readHeaderOrTrailer() throws IOException {
+    while (compressedLen > 0 && state != State.DEFLATE && state != State.FINISHED) {
+      final int b = compressedDirectBuffer.get(compressedOff++) & 0xFF;
+      compressedLen--;
+      if (state != State.TRAILER && state != State.HEADER_CRC) {
+        headerCrc.update(b);
+      }
+      switch (state) {
+        case FIXED_HEADER:
+          fieldBuffer[fieldLength++] = (byte) b;
+          if (fieldLength == FIXED_HEADER_SIZE) {
+            checkFixedHeader();
+            fieldLength = 0;
+            nextHeaderField(State.EXTRA_LENGTH);
+          }
+          break;
+        case EXTRA_LENGTH:
+          fieldBuffer[fieldLength++] = (byte) b;
+          if (fieldLength == 2) {
+            extraRemaining = readShortLE(fieldBuffer, 0);
+            fieldLength = 0;
+            state = State.EXTRA;
+            if (extraRemaining == 0) {
+              nextHeaderField(State.NAME);
+            }
+          }
+          break;
+        case EXTRA:
+          if (--extraRemaining == 0) {
+            nextHeaderField(State.NAME);
+          }
+          break;
+        case NAME:
+          if (b == 0) {
+            nextHeaderField(State.COMMENT);
+          }
+          break;
+        case COMMENT:
+          if (b == 0) {
+            nextHeaderField(State.HEADER_CRC);
+          }
+          break;
+        case HEADER_CRC:
+          fieldBuffer[fieldLength++] = (byte) b;
+          if (fieldLength == 2) {
+            if (readShortLE(fieldBuffer, 0) != ((int) headerCrc.getValue() & 0xFFFF)) {
+              throw new IOException("Gzip header CRC mismatch");
+            }
+            fieldLength = 0;
+            state = State.DEFLATE;
+          }
+          break;
+        case TRAILER:
+          fieldBuffer[fieldLength++] = (byte) b;
+          if (fieldLength == TRAILER_SIZE) {
+            checkTrailer();
+            state = State.FINISHED;
+          }
+          break;
+        default:
+          throw new IllegalStateException(state.toString());
+      }
+    }
+  }
+
+  private void checkFixedHeader() throws IOException {
+    if (readShortLE(fieldBuffer, 0) != GZIP_MAGIC) {
+      throw new IOException("Not in gzip format");
+    }
+    if ((fieldBuffer[2] & 0xFF) != DEFLATE_METHOD) {
+      throw new IOException("Unsupported gzip compression method " + (fieldBuffer[2] & 0xFF));
+    }
+    flags = fieldBuffer[3] & 0xFF;
+    if ((flags & FRESERVED) != 0) {
+      throw new IOException("Reserved gzip flags are set " + flags);
+    }
+  }
+
+  /**
+   * Move on to the first optional header field from the given one which the
+   * flags call for, or to the deflate stream when there is none.
+   */
+  private void nextHeaderField(State from) {
+    if (from.compareTo(State.EXTRA_LENGTH) <= 0 && (flags & FEXTRA) != 0) {
+      state = State.EXTRA_LENGTH;
+    } else if (from.compareTo(State.NAME) <= 0 && (flags & FNAME) != 0) {
+      state = State.NAME;
+    } else if (from.compareTo(State.COMMENT) <= 0 && (flags & FCOMMENT) != 0) {
+      state = State.COMMENT;
+    } else if ((flags & FHCRC) != 0) {
+      state = State.HEADER_CRC;
+    } else {
+      state = State.DEFLATE;
+    }
+  }
+
+  private void checkTrailer() throws IOException {
+    final int crc = readIntLE(fieldBuffer, 0);
+    final int length = readIntLE(fieldBuffer, 4);
+    if (crc != memberCrc) {
+      throw new IOException("Gzip trailer CRC mismatch, expected "
+          + Integer.toHexString(crc) + " but got " + Integer.toHexString(memberCrc));
+    }
+    if (length != (int) memberLength) {
+      throw new IOException("Gzip trailer length mismatch, expected "
+          + (length & 0xFFFFFFFFL) + " but got " + (memberLength & 0xFFFFFFFFL));
+    }
+  }
+
+  private static int readShortLE(byte[] b, int off) {
+    return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8;
+  }
+
+  private static int readIntLE(byte[] b, int off) {
+    return readShortLE(b, off) | readShortLE(b, off + 2) << 16;
+  }
+
+  /**
+   * @return the number of bytes of input following the member
+   */
+  @Override
+  public int getRemaining() {
+    return compressedLen + userBufLen;
+  }
+
+  /**
+   * Resets the decompressor to read a new member, discarding any input left.
+   */
+  @Override
+  public void reset() {
+    checkInflater();
+    IntelCompressionCodecJNI.resetGzipInflater(inflater);
+    state = State.FIXED_HEADER;
+    fieldLength = 0;
+    flags = 0;
+    extraRemaining = 0;
+    headerCrc.reset();
+    memberCrc = 0;
+    memberLength = 0;
+    compressedOff = compressedLen = 0;
+    userBufOff = userBufLen = 0;
+    outputPending = false;
+    uncompressedDirectBuffer.clear();
+    uncompressedDirectBuffer.limit(0);
+  }
+
+  /**
+   * Closes the decompressor and discards any unprocessed input, destroying the
+   * native inflater and returning the buffers to their allocator.
+   */
+  @Override
+  public void end() {
+    if (compressedDirectBuffer != null) {
+      bufferAllocator.releaseDirectByteBuffer(compressedDirectBuffer);
+      compressedDirectBuffer = null;
+    }
+    if (uncompressedDirectBuffer != null) {
+      bufferAllocator.releaseDirectByteBuffer(uncompressedDirectBuffer);
+      uncompressedDirectBuffer = null;
+    }
+    userBuf = null;
+    userBufOff = userBufLen = 0;
+    if (inflater != 0) {
+      IntelCompressionCodecJNI.destroyGzipInflater(inflater);
+      inflater = 0;
+    }
+  }
+
+  private void checkInflater() {
+    if (inflater == 0) {
+      throw new NullPointerException("Gzip decompressor inflater not initialized");
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.hadoop;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.io.compress.*;
+
+import com.intel.compression.hadoop.conf.IntelCompressionCodecConfigurationKeys;
+import com.intel.compression.util.buffer.CachedBufferAllocator;
+import com.intel.compression.util.buffer.HugePageBufferAllocator;
+
+/**
+ * This class creates LZ4 compressors/decompressors writing the block stream of
+ * Hadoop's Lz4Codec, so it can replace Lz4Codec for the <code>.lz4</code>
+ * extension, and the files written by either are read by the other. The
+ * buffer size and the choice of the high compression encoder are read from
+ * the keys of Lz4Codec.
+ */
+public class IntelLz4Codec implements Configurable, CompressionCodec {
+
+  Configuration conf;
+
+  /**
+   * Set the configuration to be used by this object.
+   *
+   * @param conf the configuration object.
+   */
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    if (conf.getBoolean(
+        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_USE_HUGE_PAGE_BUFFER_KEY,
+        IntelCompressionCodecConfigurationKeys.INTEL_COMPRESSION_CODEC_USE_HUGE_PAGE_BUFFER_DEFAULT)) {
+      CachedBufferAllocator.setBufferAllocatorFactory(
+          HugePageBufferAllocator.getHugePageBufferAllocatorFactory());
+    }
+  }
+
+  /**
+   * Return the configuration used by this object.
+   *
+   * @return the configuration object used by this objec.
+   */
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  /**
+   * Create a {@link CompressionOutputStream} that will write to the given
+   * {@link OutputStream}.
+   *
+   * @param out the location for the final output stream
+   * @return a stream the user can write uncompressed data to have it compressed
+   * @throws IOException
+   */
+  @Override
+  public CompressionOutputStream createOutputStream(OutputStream out)
+      throws IOException {
+    return createOutputStream(out, createCompressor());
+  }
+
+  /**
+   * Create a {@link CompressionOutputStream} that will write to the given
+   * {@link OutputStream} with the given {@link Compressor}.
+   *
+   * @param out        the location for the final output stream
+   * @param compressor compressor to use
+   * @return a stream the user can write uncompressed data to have it compressed
+   * @throws IOException
+   */
+  @Override
+  public CompressionOutputStream createOutputStream(OutputStream out, Compressor compressor)
+      throws IOException {
+    int bufferSize = getBufferSize(conf);
+
+    // the overhead Lz4Codec reserves, which keeps the blocks readable by it
+    int compressionOverhead = bufferSize / 255 + 16;
+
+    return new BlockCompressorStream(out, compressor, bufferSize, compressionOverhead);
+  }
+
+  /**
+   * Get the type of {@link Compressor} needed by this {@link CompressionCodec}.
+   *
+   * @return the type of compressor needed by this codec.
+   */
+  @Override
+  public Class<? extends Compressor> getCompressorType() {
+    return IntelLz4Compressor.class;
+  }
+
+  /**
+   * Create a new {@link Compressor} for use by this {@link CompressionCodec}.
+   *
+   * @return a new compressor for use by this codec
+   */
+  @Override
+  public Compressor createCompressor() {
+    String codec = getCodec(conf);
+    return new IntelLz4Compressor(codec, IntelCompressionCodec.getLevel(conf, codec),
+        getBufferSize(conf), IntelCompressionCodec.getUseNativeBuffer(conf),
+        IntelCompressionCodec.getParameters(conf, codec));
+  }
+
+  /**
+   * @return lz4-hc-ipp when Lz4Codec is configured for its high compression
+   *         encoder, else lz4-ipp
+   */
+  static String getCodec(Configuration conf) {
+    return conf.getBoolean(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_LZ4_USELZ4HC_KEY,
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_LZ4_USELZ4HC_DEFAULT)
+        ? "lz4-hc-ipp" : "lz4-ipp";
+  }
+
+  static int getBufferSize(Configuration conf) {
+    return conf.getInt(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_LZ4_BUFFERSIZE_KEY,
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_LZ4_BUFFERSIZE_DEFAULT);
+  }
+
+  /**
+   * Create a {@link CompressionInputStream} that will read from the given
+   * input stream.
+   *
+   * @param in the stream to read compressed bytes from
+   * @return a stream to read uncompressed bytes from
+   * @throws IOException
+   */
+  @Override
+  public CompressionInputStream createInputStream(InputStream in)
+      throws IOException {
+    return createInputStream(in, createDecompressor());
+  }
+
+  /**
+   * Create a {@link CompressionInputStream} that will read from the given
+   * {@link InputStream} with the given {@link Decompressor}.
+   *
+   * @param in           the stream to read compressed bytes from
+   * @param decompressor decompressor to use
+   * @return a stream to read uncompressed bytes from
+   * @throws IOException
+   */
+  @Override
+  public CompressionInputStream createInputStream(InputStream in,
+      Decompressor decompressor) throws IOException {
+    return new BlockDecompressorStream(in, decompressor, getBufferSize(conf));
+  }
+
+  /**
+   * Get the type of {@link Decompressor} needed by this {@link CompressionCodec}.
+   *
+   * @return the type of decompressor needed by this codec.
+   */
+  @Override
+  public Class<? extends Decompressor> getDecompressorType() {
+    return IntelLz4Decompressor.class;
+  }
+
+  /**
+   * Create a new {@link Decompressor} for use by this {@link CompressionCodec}.
+   *
+   * @return a new decompressor for use by this codec
+   */
+  @Override
+  public Decompressor createDecompressor() {
+    return new IntelLz4Decompressor(getBufferSize(conf),
+        IntelCompressionCodec.getUseNativeBuffer(conf));
+  }
+
+  /**
+   * Get the default filename extension for this kind of compression.
+   *
+   * @return <code>.lz4</code>.
+   */
+  @Override
+  public String getDefaultExtension() {
+    return ".lz4";
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+
+import com.intel.compression.util.CodecParameters;
+
+/**
+ * Compressor writing plain LZ4 blocks, which {@link IntelLz4Codec} frames
+ * the way Hadoop's Lz4Codec does. It is a class of its own so the codec pool
+ * never hands it out for {@link IntelCompressionCodec}.
+ */
+public class IntelLz4Compressor extends IntelCompressionCodecCompressor {
+
+  /**
+   * Creates a new compressor.
+   *
+   * @param codec lz4-ipp, or lz4-hc-ipp for the high compression encoder
+   */
+  public IntelLz4Compressor(String codec, int level, int directBufferSize,
+      boolean useNativeBuffer, CodecParameters parameters) {
+    super(codec, level, directBufferSize, useNativeBuffer, parameters, true);
+  }
+
+  /**
+   * Prepare the compressor to be used in a new stream with the settings of
+   * {@link IntelLz4Codec} defined in the given Configuration.
+   *
+   * @param conf Configuration from which new setting are fetched
+   */
+  @Override
+  public void reinit(Configuration conf) {
+    if (conf == null) {
+      super.reinit(null);
+      return;
+    }
+    String newCodec = IntelLz4Codec.getCodec(conf);
+    reinit(newCodec, IntelCompressionCodec.getLevel(conf, newCodec),
+        IntelCompressionCodec.getParameters(conf, newCodec),
+        IntelLz4Codec.getBufferSize(conf), IntelCompressionCodec.getUseNativeBuffer(conf));
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.hadoop;
+
+import com.intel.compression.util.IntelCompressionCodecHeader;
+
+/**
+ * Decompressor reading the plain LZ4 blocks of Hadoop's Lz4Codec and of
+ * {@link IntelLz4Codec}.
+ */
+public class IntelLz4Decompressor extends IntelCompressionCodecDecompressor {
+
+  /**
+   * Creates a new decompressor.
+   *
+   * @param directBufferSize size of the direct buffer to be used, at least the
+   *                         buffer size the files were written with
+   */
+  public IntelLz4Decompressor(int directBufferSize, boolean useNativeBuffer) {
+    super(directBufferSize, useNativeBuffer, IntelCompressionCodecHeader.CODEC_LZ4_IPP);
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.hadoop;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.Compressor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+import com.intel.compression.util.CodecParameters;
+import com.intel.compression.util.NativeCodeLoader;
+import com.intel.compression.util.buffer.*;
+
+/**
+ * Compressor writing a standard zstd frame with the streaming API of zstd,
+ * readable by the zstd tool and by Hadoop's ZStandardCodec.
+ */
+public class IntelZStandardCompressor implements Compressor {
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IntelZStandardCompressor.class.getName());
+
+  private static final String CODEC = "zstd";
+
+  private int directBufferSize;
+  private boolean useNativeBuffer;
+  private BufferAllocator bufferAllocator;
+  private ByteBuffer uncompressedDirectBuffer = null;
+  private ByteBuffer compressedDirectBuffer = null;
+  private int uncompressedOff, uncompressedLen;
+  private byte[] userBuf = null;
+  private int userBufOff = 0, userBufLen = 0;
+  private boolean finish, finished;
+  private final int[] progress = new int[2];
+
+  private long bytesRead = 0L;
+  private long bytesWritten = 0L;
+
+  private long cstream = 0L;
+  private int level;
+  private CodecParameters parameters;
+
+  static {
+    if (!NativeCodeLoader.isNativeCodeLoaded()) {
+      try {
+        LOG.info("try to load native library");
+        NativeCodeLoader.load();
+      } catch (Throwable t) {
+        LOG.error("failed to load native library", t);
+      }
+    }
+  }
+
+  /**
+   * Creates a new compressor.
+   *
+   * @param level            the zstd compression level
+   * @param directBufferSize size of the direct buffers to be used
+   * @param useNativeBuffer  whether the direct buffers are allocated natively
+   * @param parameters       the zstd parameters, null for the defaults
+   * @throws IllegalArgumentException if the zstd library can't apply the
+   *                                  parameters
+   */
+  public IntelZStandardCompressor(int level, int directBufferSize, boolean useNativeBuffer,
+          CodecParameters parameters) {
+    this.level = level;
+    this.parameters = parameters != null ? parameters : new CodecParameters(CODEC);
+    this.directBufferSize = directBufferSize;
+    this.useNativeBuffer = useNativeBuffer;
+    cstream = createCStream(level, this.parameters);
+    allocateBuffers();
+  }
+
+  /**
+   * The stream takes the level and the parameters of a compress context,
+   * which is only needed while the stream is created.
+   */
+  private static long createCStream(int level, CodecParameters parameters) {
+    long context = CodecParameters.createCompressContext(parameters, CODEC, level);
+    try {
+      return IntelCompressionCodecJNI.createZstdCStream(context);
+    } finally {
+      IntelCompressionCodecJNI.destroyContext(context);
+    }
+  }
+
+  private void allocateBuffers() {
+    bufferAllocator = CachedBufferAllocator
+        .getBufferAllocatorFactory().getBufferAllocator(directBufferSize);
+    uncompressedDirectBuffer = bufferAllocator
+        .allocateDirectByteBuffer(useNativeBuffer, directBufferSize, 64);
+    compressedDirectBuffer = bufferAllocator
+        .allocateDirectByteBuffer(useNativeBuffer, directBufferSize, 64);
+    uncompressedOff = uncompressedLen = 0;
+    compressedDirectBuffer.clear();
+    compressedDirectBuffer.limit(0);
+  }
+
+  private void releaseBuffers() {
+    if (uncompressedDirectBuffer != null) {
+      bufferAllocator.releaseDirectByteBuffer(uncompressedDirectBuffer);
+      uncompressedDirectBuffer = null;
+    }
+    if (compressedDirectBuffer != null) {
+      bufferAllocator.releaseDirectByteBuffer(compressedDirectBuffer);
+      compressedDirectBuffer = null;
+    }
+  }
+
+  /**
+   * Sets input data for compression, which must stay unmodified until
+   * {@link #needsInput()} returns <code>true</code>.
+   *
+   * @param b   Input data
+   * @param off Start offset
+   * @param len Length
+   */
+  @Override
+  public void setInput(byte[] b, int off, int len) {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    finished = false;
+    userBuf = b;
+    userBufOff = off;
+    userBufLen = len;
+    bytesRead += len;
+  }
+
+  /**
+   * Load the next part of the user data into the direct buffer once zstd has
+   * consumed the previous one.
+   */
+  private void setInputFromSavedData() {
+    uncompressedLen = Math.min(userBufLen, directBufferSize);
+    uncompressedOff = 0;
+    uncompressedDirectBuffer.clear();
+    uncompressedDirectBuffer.put(userBuf, userBufOff, uncompressedLen);
+    userBufOff += uncompressedLen;
+    userBufLen -= uncompressedLen;
+  }
+
+  /**
+   * Does nothing.
+   */
+  @Override
+  public void setDictionary(byte[] b, int off, int len) {
+    // do nothing
+  }
+
+  /**
+   * @return <code>true</code> once the compressed data are consumed and every
+   *         byte of input is given to zstd
+   */
+  @Override
+  public boolean needsInput() {
+    return compressedDirectBuffer.remaining() == 0 && uncompressedLen == 0 && userBufLen == 0;
+  }
+
+  /**
+   * When called, indicates that the frame should end with the current
+   * contents of the input.
+   */
+  @Override
+  public void finish() {
+    finish = true;
+  }
+
+  /**
+   * @return <code>true</code> once the end of the frame is consumed
+   */
+  @Override
+  public boolean finished() {
+    return finish && finished && compressedDirectBuffer.remaining() == 0;
+  }
+
+  /**
+   * Fills the buffer with compressed data, a return value of 0 indicates
+   * that {@link #needsInput()} should be called to know whether more input
+   * is required.
+   *
+   * @param b   Buffer for the compressed data
+   * @param off Start offset of the data
+   * @param len Size of the buffer
+   * @return The actual number of bytes of compressed data.
+   */
+  @Override
+  public int compress(byte[] b, int off, int len) throws IOException {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    checkCStream();
+
+    int n = compressedDirectBuffer.remaining();
+    if (n == 0) {
+      if (uncompressedLen == 0 && userBufLen > 0) {
+        setInputFromSavedData();
+      }
+      if (finished || (uncompressedLen == 0 && !finish)) {
+        return 0;
+      }
+      compressedDirectBuffer.clear();
+      n = IntelCompressionCodecJNI.zstdCompressStream(cstream,
+          uncompressedDirectBuffer, uncompressedOff, uncompressedLen,
+          compressedDirectBuffer, 0, directBufferSize, finish && userBufLen == 0, progress);
+      uncompressedOff += progress[0];
+      uncompressedLen -= progress[0];
+      finished = progress[1] != 0;
+      compressedDirectBuffer.limit(n);
+    }
+
+    n = Math.min(n, len);
+    compressedDirectBuffer.get(b, off, n);
+    bytesWritten += n;
+    return n;
+  }
+
+  /**
+   * Resets the compressor to write a new frame.
+   */
+  @Override
+  public void reset() {
+    checkCStream();
+    IntelCompressionCodecJNI.resetZstdCStream(cstream);
+    finish = false;
+    finished = false;
+    uncompressedOff = uncompressedLen = 0;
+    compressedDirectBuffer.clear();
+    compressedDirectBuffer.limit(0);
+    userBufOff = userBufLen = 0;
+    bytesRead = bytesWritten = 0L;
+  }
+
+  /**
+   * Prepare the compressor to be used in a new stream with the level,
+   * parameters and buffer size defined in the given Configuration. A
+   * compressor ended by {@link #end()} is brought back to life.
+   *
+   * @param conf Configuration from which new setting are fetched
+   */
+  @Override
+  public void reinit(Configuration conf) {
+    if (conf != null) {
+      int newLevel = IntelZStandardCodec.getLevel(conf);
+      CodecParameters newParameters = IntelCompressionCodec.getParameters(conf, CODEC);
+      int newBufferSize = IntelCompressionCodec.getBufferSize(conf);
+      boolean newUseNativeBuffer = IntelCompressionCodec.getUseNativeBuffer(conf);
+
+      if (cstream == 0 || newLevel != level || !newParameters.equals(parameters)) {
+        if (cstream != 0) {
+          IntelCompressionCodecJNI.destroyZstdCStream(cstream);
+          cstream = 0;
+        }
+        cstream = createCStream(newLevel, newParameters);
+        LOG.debug("Reinit zstd compressor with level " + newLevel
+            + ", parameters " + newParameters);
+      }
+      level = newLevel;
+      parameters = newParameters;
+
+      if (uncompressedDirectBuffer == null || newBufferSize != directBufferSize
+          || newUseNativeBuffer != useNativeBuffer) {
+        releaseBuffers();
+        directBufferSize = newBufferSize;
+        useNativeBuffer = newUseNativeBuffer;
+        allocateBuffers();
+      }
+    }
+    if (uncompressedDirectBuffer != null) {
+      reset();
+    }
+  }
+
+  /**
+   * Return number of bytes given to this compressor since last reset.
+   */
+  @Override
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Return number of bytes consumed by callers of compress since last reset.
+   */
+  @Override
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * Closes the compressor and discards any unprocessed input, destroying the
+   * native stream and returning the buffers to their allocator.
+   */
+  @Override
+  public void end() {
+    releaseBuffers();
+    userBuf = null;
+    userBufOff = userBufLen = 0;
+    if (cstream != 0) {
+      IntelCompressionCodecJNI.destroyZstdCStream(cstream);
+      cstream = 0;
+    }
+  }
+
+  private void checkCStream() {
+    if (cstream == 0) {
+      throw new NullPointerException("Zstd compressor stream not initialized");
+    }
+  }
+}
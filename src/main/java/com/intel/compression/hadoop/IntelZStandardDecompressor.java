@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.hadoop;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.io.compress.Decompressor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+import com.intel.compression.util.NativeCodeLoader;
+import com.intel.compression.util.buffer.*;
+
+/**
+ * Decompressor reading a standard zstd frame with the streaming API of zstd,
+ * whatever encoder wrote it. The bytes following the frame are left for
+ * {@link #getRemaining()}, so the decompressor stream goes on with the next
+ * frame of a file of concatenated frames.
+ */
+public class IntelZStandardDecompressor implements Decompressor {
+  private static final Logger LOG =
+    LoggerFactory.getLogger(IntelZStandardDecompressor.class.getName());
+
+  private final int directBufferSize;
+  private final BufferAllocator bufferAllocator;
+  private ByteBuffer compressedDirectBuffer = null;
+  private ByteBuffer uncompressedDirectBuffer = null;
+  private int compressedOff, compressedLen;
+  private byte[] userBuf = null;
+  private int userBufOff = 0, userBufLen = 0;
+  // the output buffer was filled, so the native stream may hold more output
+  private boolean outputPending;
+  private boolean frameEnded;
+  private final int[] progress = new int[2];
+
+  private long dstream = 0L;
+
+  static {
+    if (!NativeCodeLoader.isNativeCodeLoaded()) {
+      try {
+        LOG.info("try to load native library");
+        NativeCodeLoader.load();
+      } catch (Throwable t) {
+        LOG.error("failed to load native library", t);
+      }
+    }
+  }
+
+  /**
+   * Creates a new decompressor.
+   *
+   * @param directBufferSize size of the direct buffers to be used
+   * @param useNativeBuffer  whether the direct buffers are allocated natively
+   */
+  public IntelZStandardDecompressor(int directBufferSize, boolean useNativeBuffer) {
+    this.directBufferSize = directBufferSize;
+    this.bufferAllocator = CachedBufferAllocator
+        .getBufferAllocatorFactory().getBufferAllocator(directBufferSize);
+    this.compressedDirectBuffer = bufferAllocator
+        .allocateDirectByteBuffer(useNativeBuffer, directBufferSize, 64);
+    this.uncompressedDirectBuffer = bufferAllocator
+        .allocateDirectByteBuffer(useNativeBuffer, directBufferSize, 64);
+    uncompressedDirectBuffer.clear();
+    uncompressedDirectBuffer.limit(0);
+    dstream = IntelCompressionCodecJNI.createZstdDStream();
+  }
+
+  /**
+   * Sets input data for decompression, which must stay unmodified until
+   * {@link #needsInput()} returns <code>true</code>.
+   *
+   * @param b   Input data
+   * @param off Start offset
+   * @param len Length
+   */
+  @Override
+  public void setInput(byte[] b, int off, int len) {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    userBuf = b;
+    userBufOff = off;
+    userBufLen = len;
+  }
+
+  /**
+   * Load the next part of the user data into the direct buffer once the
+   * previous one is consumed.
+   */
+  private void setInputFromSavedData() {
+    compressedLen = Math.min(userBufLen, directBufferSize);
+    compressedOff = 0;
+    compressedDirectBuffer.clear();
+    compressedDirectBuffer.put(userBuf, userBufOff, compressedLen);
+    userBufOff += compressedLen;
+    userBufLen -= compressedLen;
+  }
+
+  @Override
+  public boolean needsInput() {
+    return !frameEnded && uncompressedDirectBuffer.remaining() == 0
+        && compressedLen == 0 && userBufLen == 0 && !outputPending;
+  }
+
+  /**
+   * Dictionaries are not supported.
+   */
+  @Override
+  public void setDictionary(byte[] b, int off, int len) {
+    throw new UnsupportedOperationException("Zstd dictionaries are not supported");
+  }
+
+  @Override
+  public boolean needsDictionary() {
+    return false;
+  }
+
+  /**
+   * @return <code>true</code> once the frame is decoded and its output consumed
+   */
+  @Override
+  public boolean finished() {
+    return frameEnded && uncompressedDirectBuffer.remaining() == 0;
+  }
+
+  /**
+   * Fills the buffer with uncompressed data, a return value of 0 indicates
+   * that {@link #needsInput()} or {@link #finished()} should be called.
+   *
+   * @param b   Buffer for the uncompressed data
+   * @param off Start offset of the data
+   * @param len Size of the buffer
+   * @return The actual number of bytes of uncompressed data.
+   * @throws IOException if the input isn't a valid zstd frame
+   */
+  @Override
+  public int decompress(byte[] b, int off, int len) throws IOException {
+    if (b == null) {
+      throw new NullPointerException();
+    }
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    checkDStream();
+
+    while (uncompressedDirectBuffer.remaining() == 0 && !frameEnded) {
+      if (compressedLen == 0 && !outputPending) {
+        if (userBufLen == 0) {
+          return 0;
+        }
+        setInputFromSavedData();
+      }
+      uncompressedDirectBuffer.clear();
+      int n = IntelCompressionCodecJNI.zstdDecompressStream(dstream,
+          compressedDirectBuffer, compressedOff, compressedLen,
+          uncompressedDirectBuffer, 0, directBufferSize, progress);
+      uncompressedDirectBuffer.limit(n);
+      compressedOff += progress[0];
+      compressedLen -= progress[0];
+      frameEnded = progress[1] != 0;
+      outputPending = !frameEnded && n == directBufferSize;
+      if (n == 0 && progress[0] == 0 && !frameEnded && compressedLen > 0) {
+        throw new IOException("Zstd decompress made no progress on " + compressedLen + " bytes");
+      }
+    }
+
+    int n = Math.min(uncompressedDirectBuffer.remaining(), len);
+    uncompressedDirectBuffer.get(b, off, n);
+    return n;
+  }
+
+  /**
+   * @return the number of bytes of input following the frame
+   */
+  @Override
+  public int getRemaining() {
+    return compressedLen + userBufLen;
+  }
+
+  /**
+   * Resets the decompressor to read a new frame, discarding any input left.
+   */
+  @Override
+  public void reset() {
+    checkDStream();
+    IntelCompressionCodecJNI.resetZstdDStream(dstream);
+    frameEnded = false;
+    compressedOff = compressedLen = 0;
+    userBufOff = userBufLen = 0;
+    outputPending = false;
+    uncompressedDirectBuffer.clear();
+    uncompressedDirectBuffer.limit(0);
+  }
+
+  /**
+   * Closes the decompressor and discards any unprocessed input, destroying the
+   * native stream and returning the buffers to their allocator.
+   */
+  @Override
+  public void end() {
+    if (compressedDirectBuffer != null) {
+      bufferAllocator.releaseDirectByteBuffer(compressedDirectBuffer);
+      compressedDirectBuffer = null;
+    }
+    if (uncompressedDirectBuffer != null) {
+      bufferAllocator.releaseDirectByteBuffer(uncompressedDirectBuffer);
+      uncompressedDirectBuffer = null;
+    }
+    userBuf = null;
+    userBufOff = userBufLen = 0;
+    if (dstream != 0) {
+      IntelCompressionCodecJNI.destroyZstdDStream(dstream);
+      dstream = 0;
+    }
+  }
+
+  private void checkDStream() {
+    if (dstream == 0) {
+      throw new NullPointerException("Zstd decompressor stream not initialized");
+    }
+  }
+}
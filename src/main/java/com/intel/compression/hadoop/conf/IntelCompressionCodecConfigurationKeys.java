@@ -42,6 +42,20 @@ public class IntelCompressionCodecConfigurationKeys extends CommonConfigurationK
   /** Default value for INTEL_COMPRESSION_CODEC_LEVEL_KEY. */
   public static final int INTEL_COMPRESSION_CODEC_LEVEL_DEFAULT = 1;
 
+  /**
+   * Prefix of the tuning parameters of a codec, followed by the codec and the
+   * parameter name, e.g. io.compression.codec.intel.param.zstd.windowLog.
+   */
+  public static final String INTEL_COMPRESSION_CODEC_PARAM_KEY =
+    "io.compression.codec.intel.param.";
+
+  /** isal compression level of the Intel gzip codec, 0 to 3. */
+  public static final String INTEL_GZIP_CODEC_LEVEL_KEY =
+    "io.compression.codec.intel.gzip.level";
+
+  /** Default value for INTEL_GZIP_CODEC_LEVEL_KEY. */
+  public static final int INTEL_GZIP_CODEC_LEVEL_DEFAULT = 1;
+
   /** Intel Compression Codec buffer size. */
   public static final String INTEL_COMPRESSION_CODEC_BUFFER_SIZE_KEY =
     "io.compression.codec.intel.bufferSize";
@@ -58,5 +72,13 @@ public class IntelCompressionCodecConfigurationKeys extends CommonConfigurationK
   public static final boolean
     INTEL_COMPRESSION_CODEC_USE_NATIVE_BUFFER_DEFAULT = false;
 
+  /** Intel Compression Codec huge page buffer. */
+  public static final String INTEL_COMPRESSION_CODEC_USE_HUGE_PAGE_BUFFER_KEY =
+    "io.compression.codec.intel.useHugePageBuffer";
+
+  /** Default value for INTEL_COMPRESSION_CODEC_USE_HUGE_PAGE_BUFFER_KEY */
+  public static final boolean
+    INTEL_COMPRESSION_CODEC_USE_HUGE_PAGE_BUFFER_DEFAULT = false;
+
 }
 
@@ -17,6 +17,7 @@
 
 package com.intel.compression.jni;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import com.intel.compression.util.NativeCodeLoader;
@@ -28,18 +29,58 @@ public enum IntelCompressionCodecJNI {
   ;
   static {
     NativeCodeLoader.load();
-    init();
   }
 
-  static native void init();
   public static native Object allocNativeBuffer(int capacity, int align);
+  public static native Object allocArenaBuffer(int capacity, int align);
+  public static native boolean isHugePageArena();
+  public static native String[] getCodecNames();
+  public static native boolean isCodecAvailable(int codec);
+  public static native int resolveCodec(String codec);
   public static native long createCompressContext(String codec, int level);
+  public static native long createCompressContextWithParams(String codec, int level,
+          int[] params);
   public static native long createDecompressContext();
+  public static native void setLevel(long context, int level);
   public static native void destroyContext(long context);
+  public static native int compressBound(long context, int srcLen);
   public static native int compress(long context, ByteBuffer srcBuffer, int srcOff, int srcLen,
           ByteBuffer destBuffer, int destOff, int maxDestLen);
   public static native int decompress(long context, ByteBuffer srcBuffer, int srcOff, int srcLen,
           ByteBuffer destBuffer, int destOff, int destLen);
+  public static native int compressBlock(long context, long srcAddress, int srcLen,
+          long destAddress, int maxDestLen);
+  public static native int decompressBlock(int codec, long srcAddress, int srcLen,
+          long destAddress, int maxDestLen);
+  public static native int decompressLZ4BlockWithPrefix(long srcAddress, int srcLen,
+          long destAddress, int maxDestLen, int prefixLen);
+  public static native int applyFilter(int filter, int elementSize, ByteBuffer src, int srcOff,
+          ByteBuffer dest, int destOff, int len);
+  public static native int reverseFilter(int filter, int elementSize, ByteBuffer src, int srcOff,
+          ByteBuffer dest, int destOff, int len);
+  public static native long createGzipDeflater(int level, int levelBufferSize);
+  public static native void resetGzipDeflater(long deflater);
+  public static native int gzipDeflate(long deflater, ByteBuffer srcBuffer, int srcOff, int srcLen,
+          ByteBuffer destBuffer, int destOff, int destLen, boolean finish, int[] progress);
+  public static native void destroyGzipDeflater(long deflater);
+  public static native long createGzipInflater();
+  public static native void resetGzipInflater(long inflater);
+  public static native int gzipInflate(long inflater, ByteBuffer srcBuffer, int srcOff, int srcLen,
+          ByteBuffer destBuffer, int destOff, int destLen, int[] progress) throws IOException;
+  public static native void destroyGzipInflater(long inflater);
+  public static native long createZstdCStream(long context);
+  public static native void resetZstdCStream(long cstream);
+  public static native int zstdCompressStream(long cstream, ByteBuffer srcBuffer, int srcOff,
+          int srcLen, ByteBuffer destBuffer, int destOff, int destLen, boolean finish,
+          int[] progress);
+  public static native void destroyZstdCStream(long cstream);
+  public static native long createZstdDStream();
+  public static native void resetZstdDStream(long dstream);
+  public static native int zstdDecompressStream(long dstream, ByteBuffer srcBuffer, int srcOff,
+          int srcLen, ByteBuffer destBuffer, int destOff, int destLen, int[] progress)
+          throws IOException;
+  public static native void destroyZstdDStream(long dstream);
   public static native String getLibraryName(int codec);
+  public static native String getLibraryVersion(int codec);
 }
 
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.spark;
+
+import java.nio.ByteBuffer;
+
+import com.intel.compression.util.XXHash32;
+import com.intel.compression.util.buffer.BufferAllocator;
+import com.intel.compression.util.buffer.CachedBufferAllocator;
+
+/**
+ * The most recent uncompressed blocks of a stream, which later blocks with the
+ * same content refer to instead of being compressed again. The writer looks up
+ * every block by its hash and compares the content, so hash collisions can't
+ * produce a wrong reference. The reader keeps the same blocks to resolve the
+ * references. Blocks are numbered in the order they are added, a reference is
+ * the distance back from the next block number, 1 for the last block added.
+ * This class is not thread-safe.
+ */
+final class BlockDedupWindow {
+
+  private final int capacity;
+  private final boolean useNativeBuffer;
+  private final ByteBuffer[] blocks;
+  private final BufferAllocator[] allocators;
+  private final int[] lengths;
+  private final int[] hashes;
+  private long added;
+
+  /**
+   * @param capacity the number of blocks kept
+   */
+  BlockDedupWindow(int capacity, boolean useNativeBuffer) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Dedup window of " + capacity + " blocks");
+    }
+    this.capacity = capacity;
+    this.useNativeBuffer = useNativeBuffer;
+    this.blocks = new ByteBuffer[capacity];
+    this.allocators = new BufferAllocator[capacity];
+    this.lengths = new int[capacity];
+    this.hashes = new int[capacity];
+  }
+
+  static int hash(ByteBuffer src, int off, int len) {
+    return XXHash32.hash(src, off, len, 0);
+  }
+
+  /**
+   * @return the distance of a kept block with the content of len bytes of src
+   *         from offset 0, 0 if there is none
+   */
+  int find(ByteBuffer src, int len, int hash) {
+    final int kept = (int) Math.min(added, capacity);
+    for (int distance = 1; distance <= kept; distance++) {
+      final int slot = slot(distance);
+      if (hashes[slot] == hash && lengths[slot] == len && equal(blocks[slot], src, len)) {
+        return distance;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Copy len bytes of src from offset 0 into the window, evicting the oldest
+   * block once the window is full.
+   *
+   * @param bufferSize the size of the buffer to hold the block, at least len,
+   *                   so blocks of a stream share the buffer pool
+   */
+  void add(ByteBuffer src, int len, int hash, int bufferSize) {
+    final int slot = (int) (added % capacity);
+    if (blocks[slot] != null && blocks[slot].capacity() < len) {
+      release(slot);
+    }
+    if (blocks[slot] == null) {
+      allocators[slot] = CachedBufferAllocator.getBufferAllocatorFactory()
+          .getBufferAllocator(bufferSize);
+      blocks[slot] = allocators[slot].allocateDirectByteBuffer(useNativeBuffer, bufferSize, 64);
+    }
+    ByteBuffer block = src.duplicate();
+    block.position(0);
+    block.limit(len);
+    blocks[slot].clear();
+    blocks[slot].put(block);
+    lengths[slot] = len;
+    hashes[slot] = hash;
+    added++;
+  }
+
+  /**
+   * @return a view of the kept block at the distance, null if it is not kept
+   */
+  ByteBuffer get(int distance) {
+    if (distance <= 0 || distance > Math.min(added, capacity)) {
+      return null;
+    }
+    final int slot = slot(distance);
+    ByteBuffer block = blocks[slot].duplicate();
+    block.position(0);
+    block.limit(lengths[slot]);
+    return block;
+  }
+
+  void release() {
+    for (int slot = 0; slot < capacity; slot++) {
+      release(slot);
+    }
+    added = 0;
+  }
+
+  private void release(int slot) {
+    if (blocks[slot] != null) {
+      allocators[slot].releaseDirectByteBuffer(blocks[slot]);
+      blocks[slot] = null;
+      allocators[slot] = null;
+    }
+  }
+
+  private int slot(int distance) {
+    return (int) ((added - distance) % capacity);
+  }
+
+  private static boolean equal(ByteBuffer block, ByteBuffer src, int len) {
+    ByteBuffer a = block.duplicate();
+    a.position(0);
+    a.limit(len);
+    ByteBuffer b = src.duplicate();
+    b.position(0);
+    b.limit(len);
+    return a.equals(b);
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.spark;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.intel.compression.util.BlockFilter;
+
+/**
+ * Reads the frame headers of the blocks of a stream in either block framing,
+ * see {@link IntelCompressionCodecBlockFrame}, detecting the framing on the
+ * first block. The caller consumes the payload of each block, whose length
+ * the header gives, before reading the next header, as no byte beyond the
+ * frame header is read from the stream. Offsets count the bytes of the
+ * stream from where the reader started. This class is not thread-safe.
+ */
+final class BlockHeaderReader {
+
+  private final byte[] headerBuffer = new byte[IntelCompressionCodecBlockFrame.V1_LENGTH_SIZE
+      + IntelCompressionCodecBlockFrame.MAX_V2_HEADER_LENGTH];
+  private boolean frameDetected;
+  private boolean compactFrame;
+  private long position;
+  private long blockOffset;
+  private int payloadLength;
+  private int codec;
+  private int filterByte;
+  private int uncompressedLength;
+  private int refDistance;
+  private int bufferPosition;
+  private int bufferLimit;
+  // the number of bytes the frame header being read has at least left
+  private int headerRemaining;
+
+  /**
+   * Read the frame header of the next block.
+   *
+   * @return false if the stream ends before the next block
+   * @throws IOException if the frame header is truncated or malformed
+   */
+  boolean next(InputStream in) throws IOException {
+    position += payloadLength;
+    payloadLength = 0;
+    blockOffset = position;
+    headerRemaining = frameDetected && compactFrame
+        ? IntelCompressionCodecBlockFrame.MIN_V2_HEADER_LENGTH
+        : IntelCompressionCodecBlockFrame.V1_LENGTH_SIZE;
+    if (!fillHeader(in)) {
+      // the stream ends at a frame boundary
+      return false;
+    }
+    int length;
+    if (!frameDetected) {
+      length = readIntLE(in);
+      frameDetected = true;
+      compactFrame = length == IntelCompressionCodecBlockFrame.STREAM_MAGIC_V2;
+      if (compactFrame) {
+        headerRemaining = IntelCompressionCodecBlockFrame.MIN_V2_HEADER_LENGTH;
+        length = readVarInt(in);
+      }
+    } else if (compactFrame) {
+      length = readVarInt(in);
+    } else {
+      length = readIntLE(in);
+    }
+    filterByte = 0;
+    refDistance = 0;
+    if (!compactFrame) {
+      if (length < 0) {
+        throw new IOException("Input Stream is corrupted, negative block length " + length);
+      }
+      codec = -1;
+      uncompressedLength = -1;
+      payloadLength = length;
+      return true;
+    }
+
+    final int codecFlags = readByte(in);
+    final int flags = codecFlags & IntelCompressionCodecBlockFrame.FLAGS_MASK;
+    codec = codecFlags & IntelCompressionCodecBlockFrame.CODEC_MASK;
+    if (codec == IntelCompressionCodecBlockFrame.CODEC_BLOCK_REF) {
+      if (length <= 0 || length > IntelCompressionCodecBlockFrame.MAX_VARINT_SIZE) {
+        throw new IOException("Input Stream is corrupted, malformed block reference");
+      }
+      headerRemaining += length;
+      uncompressedLength = readVarInt(in);
+      refDistance = readVarInt(in);
+      if (flags != 0 || refDistance == 0
+          || length != IntelCompressionCodecBlockFrame.varIntLength(refDistance)) {
+        throw new IOException("Input Stream is corrupted, malformed block reference");
+      }
+      return true;
+    }
+    if ((flags & ~IntelCompressionCodecBlockFrame.FLAG_FILTERED) != 0) {
+      throw new IOException("Input Stream is corrupted, unsupported block flags " + codecFlags);
+    }
+    if (flags == IntelCompressionCodecBlockFrame.FLAG_FILTERED) {
+      headerRemaining++;
+      filterByte = readByte(in);
+      if (IntelCompressionCodecBlockFrame.filterOf(filterByte) == null) {
+        throw new IOException("Input Stream is corrupted, unknown block filter " + filterByte);
+      }
+    }
+    uncompressedLength = readVarInt(in);
+    payloadLength = length;
+    return true;
+  }
+
+  boolean isCompactFrame() {
+    return compactFrame;
+  }
+
+  /** @return the offset of the frame header of the block, including the stream magic */
+  long getBlockOffset() {
+    return blockOffset;
+  }
+
+  /** @return the offset following the frame header of the block */
+  long getPayloadOffset() {
+    return position;
+  }
+
+  /** @return the length of the block following the frame header */
+  int getPayloadLength() {
+    return payloadLength;
+  }
+
+  /** @return the codec id of a v2 block, -1 for a v1 block */
+  int getCodec() {
+    return codec;
+  }
+
+  /** @return the filter byte of a filtered block, 0 if it isn't filtered */
+  int getFilterByte() {
+    return filterByte;
+  }
+
+  BlockFilter getFilter() {
+    return filterByte == 0 ? null : IntelCompressionCodecBlockFrame.filterOf(filterByte);
+  }
+
+  int getFilterElementSize() {
+    return IntelCompressionCodecBlockFrame.elementSizeOf(filterByte);
+  }
+
+  /** @return the uncompressed length of a v2 block, -1 for a v1 block */
+  int getUncompressedLength() {
+    return uncompressedLength;
+  }
+
+  /** @return the distance of the block a block reference repeats, 0 for other blocks */
+  int getRefDistance() {
+    return refDistance;
+  }
+
+  private int readByte(InputStream in) throws IOException {
+    if (bufferPosition == bufferLimit && !fillHeader(in)) {
+      throw new EOFException("Unexpected end of block header in input stream");
+    }
+    position++;
+    if (headerRemaining > 0) {
+      headerRemaining--;
+    }
+    return headerBuffer[bufferPosition++] & 0xFF;
+  }
+
+  /**
+   * Read the bytes the frame header has at least left, one byte when their
+   * number isn't known. Nothing beyond the frame header is read, so the
+   * stream is at the payload of the block once the header is read.
+   *
+   * @return false if the stream has ended
+   */
+  private boolean fillHeader(InputStream in) throws IOException {
+    final int len = Math.max(1, Math.min(headerRemaining, headerBuffer.length));
+    int n;
+    do {
+      n = in.read(headerBuffer, 0, len);
+    } while (n == 0);
+    bufferPosition = 0;
+    bufferLimit = Math.max(n, 0);
+    return n > 0;
+  }
+
+  private int readIntLE(InputStream in) throws IOException {
+    return readByte(in) | (readByte(in) << 8) | (readByte(in) << 16) | (readByte(in) << 24);
+  }
+
+  /**
+   * Read a non-negative varint.
+   *
+   * @throws EOFException if the stream ends within the varint
+   */
+  private int readVarInt(InputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 7 * IntelCompressionCodecBlockFrame.MAX_VARINT_SIZE; shift += 7) {
+      final int b = readByte(in);
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        if (value < 0) {
+          break;
+        }
+        return value;
+      }
+      // the varint has at least one more byte
+      headerRemaining++;
+    }
+    throw new IOException("Input Stream is corrupted, malformed block length");
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.spark;
+
+import com.intel.compression.util.BlockFilter;
+
+/**
+ * Block framing of {@link IntelCompressionCodecBlockOutputStream}.
+ * <p>
+ * A v1 stream is a sequence of blocks, each a 4-byte little-endian length
+ * followed by the native block (the 16-byte <code>intel_codec_header_t</code>
+ * and the codec payload).
+ * <p>
+ * A v2 stream starts with {@link #STREAM_MAGIC_V2}, whose last byte has the high
+ * bit set so it can never be mistaken for a v1 block length. Each block is then
+ * a varint payload length, one codec/flags byte (codec id in the low nibble,
+ * flags in the high nibble), a varint uncompressed length and the codec payload
+ * without the native header, which the reader rebuilds before decompressing.
+ * <p>
+ * With {@link #FLAG_FILTERED} set, the codec/flags byte is followed by a filter
+ * byte, the {@link BlockFilter} id in the high nibble and the element size
+ * minus one in the low nibble, and the reader reverses the filter after
+ * decompressing the block.
+ * <p>
+ * A block with the codec {@link #CODEC_BLOCK_REF} repeats an earlier block of
+ * the stream, its payload is the varint distance back to that block as counted
+ * by {@link BlockDedupWindow}.
+ */
+final class IntelCompressionCodecBlockFrame {
+
+  /** "ICL" followed by the format version with the high bit set. */
+  static final int STREAM_MAGIC_V2 = 'I' | ('C' << 8) | ('L' << 16) | (0x82 << 24);
+
+  static final int V1_LENGTH_SIZE = 4;
+  static final int MAX_VARINT_SIZE = 5;
+  static final int MAX_V2_HEADER_LENGTH = MAX_VARINT_SIZE + 2 + MAX_VARINT_SIZE;
+  static final int MIN_V2_HEADER_LENGTH = 3;
+
+  static final int CODEC_MASK = 0x0F;
+  static final int FLAGS_MASK = 0xF0;
+  static final int FLAG_FILTERED = 0x10;
+  static final int CODEC_BLOCK_REF = 0x0F;
+
+  private IntelCompressionCodecBlockFrame() {
+  }
+
+  static void writeIntLE(int i, byte[] buf, int off) {
+    buf[off] = (byte) i;
+    buf[off + 1] = (byte) (i >>> 8);
+    buf[off + 2] = (byte) (i >>> 16);
+    buf[off + 3] = (byte) (i >>> 24);
+  }
+
+  /**
+   * Write the header of a v2 block.
+   *
+   * @param filterByte the filter byte of a filtered block, 0 if it isn't filtered
+   * @return the offset following the header
+   */
+  static int writeV2Header(byte[] buf, int off, int payloadLength, int codec, int filterByte,
+      int uncompressedLength) {
+    off = writeVarInt(buf, off, payloadLength);
+    if (filterByte == 0) {
+      buf[off++] = (byte) (codec & CODEC_MASK);
+    } else {
+      buf[off++] = (byte) ((codec & CODEC_MASK) | FLAG_FILTERED);
+      buf[off++] = (byte) filterByte;
+    }
+    return writeVarInt(buf, off, uncompressedLength);
+  }
+
+  static int filterByte(BlockFilter filter, int elementSize) {
+    return (filter.getId() << 4) | (elementSize - 1);
+  }
+
+  /**
+   * @return the filter of the filter byte, null if it is unknown
+   */
+  static BlockFilter filterOf(int filterByte) {
+    return BlockFilter.forId((filterByte >>> 4) & 0x0F);
+  }
+
+  static int elementSizeOf(int filterByte) {
+    return (filterByte & 0x0F) + 1;
+  }
+
+  static int varIntLength(int value) {
+    int length = 1;
+    while ((value & ~0x7F) != 0) {
+      value >>>= 7;
+      length++;
+    }
+    return length;
+  }
+
+  static int writeVarInt(byte[] buf, int off, int value) {
+    while ((value & ~0x7F) != 0) {
+      buf[off++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buf[off++] = (byte) value;
+    return off;
+  }
+}
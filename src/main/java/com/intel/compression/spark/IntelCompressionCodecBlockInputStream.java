@@ -19,33 +19,63 @@ package com.intel.compression.spark;
 
 import java.io.IOException;
 import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.FilterInputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.SelectableChannel;
 
 import com.intel.compression.util.buffer.*;
 import com.intel.compression.jni.IntelCompressionCodecJNI;
+import com.intel.compression.util.BlockFilter;
+import com.intel.compression.util.DecompressedBlockCache;
+import com.intel.compression.util.IntelCompressionCodecHeader;
+import com.intel.compression.util.jfr.IntelCompressionCodecEvents;
 
 /**
  * {@link InputStream} implementation to decompress data written with
- * {@link IntelCompressionCodecBlockOutputStream}. This class is not
- * thread-safe and does not support {@link #mark(int)}/{@link #reset()}.
+ * {@link IntelCompressionCodecBlockOutputStream}, in either block framing.
+ * This class is not thread-safe and does not support
+ * {@link #mark(int)}/{@link #reset()}.
  * @see IntelCompressionCodecBlockOutputStream
  */
 public final class IntelCompressionCodecBlockInputStream extends FilterInputStream {
   private long context;
   private int compressedBlockSize;
   private int uncompressedBlockSize;
+  private int uncompressedBufferSize;
+  private final boolean useNativeBuffer;
+  private final boolean borrowBuffers;
   private final BufferAllocator compressedBufferAllocator;
-  private final BufferAllocator uncompressedBufferAllocator;
-  private final ByteBuffer compressedBuffer;
-  private final ByteBuffer uncompressedBuffer;
+  private BufferAllocator uncompressedBufferAllocator;
+  private ByteBuffer compressedBuffer;
+  private ByteBuffer uncompressedBuffer;
+  private BufferAllocator filterBufferAllocator;
+  private ByteBuffer filterBuffer;
+  private int filterBufferSize;
+  private final BlockDedupWindow dedupWindow;
+  private final DecompressedBlockCache blockCache;
+  private final String cacheSource;
   private int originalLen;
   private int uncompressedBufferPosition;
   private boolean closed;
   private boolean eof;
   private byte[] tempBuffer;
   private final BufferAllocator tempBufferAllocator;
+  private final int smallBlockThreshold;
+  private SmallBlockCodec smallBlockCodec;
+  private final BlockHeaderReader headerReader = new BlockHeaderReader();
+  private final ReadableByteChannel channel;
+  private int lastCodec = -1;
+  private long totalBlocks;
+  private long totalUncompressedBytes;
+  private long totalCompressedBytes;
+  private long totalDecompressNanos;
+  private long totalReadNanos;
 
   /**
    * Create a new {@link InputStream}.
@@ -55,35 +85,147 @@ public final class IntelCompressionCodecBlockInputStream extends FilterInputStre
    *                          must be >= 32k
    */
   public IntelCompressionCodecBlockInputStream(InputStream in, int blockSize, boolean useNativeBuffer) {
+    this(in, blockSize, useNativeBuffer, 0);
+  }
+
+  /**
+   * Create a new {@link InputStream} with the optional features of the codec.
+   *
+   * @param in                  the {@link InputStream} to poll
+   * @param blockSize           the maximum number of bytes to try to compress at once,
+   *                            must be >= 32k
+   * @param smallBlockThreshold raw and LZ4 blocks up to this compressed size are
+   *                            decompressed in Java instead of the native codec,
+   *                            0 to disable
+   */
+  public IntelCompressionCodecBlockInputStream(InputStream in, int blockSize,
+      boolean useNativeBuffer, int smallBlockThreshold) {
+    this(in, blockSize, useNativeBuffer, smallBlockThreshold, false);
+  }
+
+  /**
+   * Create a new {@link InputStream} with the optional features of the codec.
+   *
+   * @param in                  the {@link InputStream} to poll
+   * @param blockSize           the maximum number of bytes to try to compress at once,
+   *                            must be >= 32k
+   * @param smallBlockThreshold raw and LZ4 blocks up to this compressed size are
+   *                            decompressed in Java instead of the native codec,
+   *                            0 to disable
+   * @param borrowBuffers       borrow the compressed buffers from the pool only while
+   *                            a block is read, and size the uncompressed buffer by
+   *                            the blocks instead of the block size
+   */
+  public IntelCompressionCodecBlockInputStream(InputStream in, int blockSize,
+      boolean useNativeBuffer, int smallBlockThreshold, boolean borrowBuffers) {
+    this(in, blockSize, useNativeBuffer, smallBlockThreshold, borrowBuffers, 0);
+  }
+
+  /**
+   * Create a new {@link InputStream} resolving the block references of streams
+   * written with a dedup window.
+   *
+   * @param dedupWindow the number of recent blocks kept to resolve block
+   *                    references, at least the window of the writer, 0 to
+   *                    fail on block references
+   * @see #IntelCompressionCodecBlockInputStream(InputStream, int, boolean, int, boolean)
+   */
+  public IntelCompressionCodecBlockInputStream(InputStream in, int blockSize,
+      boolean useNativeBuffer, int smallBlockThreshold, boolean borrowBuffers, int dedupWindow) {
+    this(in, blockSize, useNativeBuffer, smallBlockThreshold, borrowBuffers, dedupWindow,
+        null, null);
+  }
+
+  /**
+   * Create a new {@link InputStream} looking up blocks in a cache of
+   * decompressed blocks before decompressing them, and caching the blocks it
+   * decompresses. Blocks are cached by the source and their offset from where
+   * the stream starts, cached blocks are skipped in the underlying stream.
+   *
+   * @param blockCache  the cache of decompressed blocks, null for none
+   * @param cacheSource the identity of the compressed bytes the stream starts at,
+   *                    which must change whenever the bytes do
+   * @see #IntelCompressionCodecBlockInputStream(InputStream, int, boolean, int, boolean, int)
+   */
+  public IntelCompressionCodecBlockInputStream(InputStream in, int blockSize,
+      boolean useNativeBuffer, int smallBlockThreshold, boolean borrowBuffers, int dedupWindow,
+      DecompressedBlockCache blockCache, String cacheSource) {
+    this(in, channelOf(in), blockSize, useNativeBuffer, smallBlockThreshold, borrowBuffers,
+        dedupWindow, blockCache, cacheSource);
+  }
+
+  /**
+   * Create a new stream reading the compressed blocks from the channel.
+   *
+   * @throws IllegalBlockingModeException if the channel is in non-blocking mode
+   * @see IntelCompressionCodecBlockReadableChannel
+   */
+  IntelCompressionCodecBlockInputStream(ReadableByteChannel channel, int blockSize,
+      boolean useNativeBuffer, int smallBlockThreshold, boolean borrowBuffers, int dedupWindow,
+      DecompressedBlockCache blockCache, String cacheSource) {
+    this(Channels.newInputStream(checkBlocking(channel)), channel, blockSize, useNativeBuffer,
+        smallBlockThreshold, borrowBuffers, dedupWindow, blockCache, cacheSource);
+  }
+
+  private IntelCompressionCodecBlockInputStream(InputStream in, ReadableByteChannel channel,
+      int blockSize, boolean useNativeBuffer, int smallBlockThreshold, boolean borrowBuffers,
+      int dedupWindow, DecompressedBlockCache blockCache, String cacheSource) {
     super(in);
+    if (blockCache != null && cacheSource == null) {
+      throw new IllegalArgumentException("Caching blocks needs the source of the stream");
+    }
+    this.channel = channel;
+    this.smallBlockThreshold = smallBlockThreshold;
+    this.useNativeBuffer = useNativeBuffer;
+    this.borrowBuffers = borrowBuffers;
+    this.dedupWindow = dedupWindow > 0 ? new BlockDedupWindow(dedupWindow, useNativeBuffer) : null;
+    this.blockCache = blockCache;
+    this.cacheSource = cacheSource;
     this.uncompressedBlockSize = blockSize;
     this.compressedBlockSize = blockSize * 3 / 2;
-    this.uncompressedBufferAllocator = CachedBufferAllocator
-        .getBufferAllocatorFactory().getBufferAllocator(uncompressedBlockSize);
     this.compressedBufferAllocator = CachedBufferAllocator
         .getBufferAllocatorFactory().getBufferAllocator(compressedBlockSize);
-    this.uncompressedBuffer = uncompressedBufferAllocator
-        .allocateDirectByteBuffer(useNativeBuffer, uncompressedBlockSize, 64);
-    this.compressedBuffer = compressedBufferAllocator
-        .allocateDirectByteBuffer(useNativeBuffer, compressedBlockSize, 64);
+    this.tempBufferAllocator = CachedBufferAllocator
+        .getBufferAllocatorFactory().getBufferAllocator(compressedBlockSize);
+    uncompressedBufferPosition = originalLen = 0;
+    closed = false;
+    eof = false;
 
-    if(uncompressedBuffer != null) {
-      uncompressedBuffer.clear();
+    if (!borrowBuffers) {
+      ensureUncompressedCapacity(uncompressedBlockSize);
+      borrowCompressedBuffers();
     }
 
-    if(compressedBuffer != null) {
-      compressedBuffer.clear();
+    context = IntelCompressionCodecJNI.createDecompressContext();
+    IntelCompressionCodecEvents.streamOpened(getClass().getSimpleName(), null, 0, blockSize);
+  }
+
+  /**
+   * @return the channel under the stream when compressed blocks can be read
+   *         from it straight into direct memory, null otherwise
+   */
+  private static ReadableByteChannel channelOf(InputStream in) {
+    if (in instanceof FileInputStream) {
+      return ((FileInputStream) in).getChannel();
+    } else if (in instanceof ReadableByteChannel && isBlocking((ReadableByteChannel) in)) {
+      return (ReadableByteChannel) in;
     }
+    return null;
+  }
 
-    uncompressedBufferPosition = originalLen = 0;
-    closed = false;
-    eof = false;
-    tempBufferAllocator = CachedBufferAllocator
-        .getBufferAllocatorFactory().getBufferAllocator(compressedBlockSize);
-    tempBuffer = tempBufferAllocator
-        .allocateByteArray(compressedBlockSize);
+  /**
+   * A non-blocking channel may return no bytes, the blocks are only read
+   * from blocking channels.
+   */
+  private static boolean isBlocking(ReadableByteChannel channel) {
+    return !(channel instanceof SelectableChannel) || ((SelectableChannel) channel).isBlocking();
+  }
 
-    context = IntelCompressionCodecJNI.createDecompressContext();
+  private static ReadableByteChannel checkBlocking(ReadableByteChannel channel) {
+    if (!isBlocking(channel)) {
+      throw new IllegalBlockingModeException();
+    }
+    return channel;
   }
 
   private void checkStream() {
@@ -124,6 +266,28 @@ public final class IntelCompressionCodecBlockInputStream extends FilterInputStre
     return len;
   }
 
+  /**
+   * Read decompressed data into the remaining space of the buffer, heap or direct.
+   *
+   * @return the number of bytes read, -1 at the end of the stream
+   */
+  public int read(ByteBuffer dst) throws IOException {
+    checkStream();
+    if (uncompressedBufferPosition == originalLen) {
+      refill();
+    }
+    if (eof) {
+      return -1;
+    }
+    final int len = Math.min(dst.remaining(), originalLen - uncompressedBufferPosition);
+    ByteBuffer src = uncompressedBuffer.duplicate();
+    src.limit(src.position() + len);
+    dst.put(src);
+    uncompressedBuffer.position(src.position());
+    uncompressedBufferPosition += len;
+    return len;
+  }
+
   @Override
   public int read(byte[] b) throws IOException {
     return read(b, 0, b.length);
@@ -140,60 +304,423 @@ public final class IntelCompressionCodecBlockInputStream extends FilterInputStre
     }
   }
 
+  /**
+   * Skip up to n uncompressed bytes. Blocks which end within the skip are
+   * passed over from their headers without being decompressed, except for
+   * the blocks a dedup window has to keep.
+   *
+   * @return the number of bytes skipped, 0 at the end of the stream
+   */
   @Override
   public long skip(long n) throws IOException {
     checkStream();
-    if (uncompressedBufferPosition == originalLen) {
-      refill();
-    }
-    if (eof) {
-      return -1;
+    long skipped = 0;
+    while (skipped < n) {
+      if (uncompressedBufferPosition == originalLen) {
+        final long blockSkipped = refill(n - skipped);
+        if (eof) {
+          break;
+        }
+        if (blockSkipped > 0) {
+          skipped += blockSkipped;
+          continue;
+        }
+      }
+      final int len = (int) Math.min(n - skipped, originalLen - uncompressedBufferPosition);
+      uncompressedBufferPosition += len;
+      uncompressedBuffer.position(uncompressedBufferPosition);
+      skipped += len;
     }
-    final int skipped = (int) Math.min(n, originalLen - uncompressedBufferPosition);
-    uncompressedBufferPosition += skipped;
-    uncompressedBuffer.position(uncompressedBufferPosition);
     return skipped;
   }
 
+  /**
+   * Read the total uncompressed length of the blocks of a stream from their
+   * headers without decompressing them, reading the stream to its end. Only
+   * the native header of v1 blocks is read, the payloads of the blocks are
+   * skipped.
+   */
+  public static long uncompressedLength(InputStream in) throws IOException {
+    final BlockHeaderReader header = new BlockHeaderReader();
+    final byte[] nativeHeader = new byte[IntelCompressionCodecHeader.HEADER_LENGTH];
+    long length = 0;
+    while (header.next(in)) {
+      int uncompressedLen = header.getUncompressedLength();
+      long payloadLen = header.getPayloadLength();
+      if (uncompressedLen < 0) {
+        if (payloadLen < IntelCompressionCodecHeader.HEADER_LENGTH) {
+          throw new IOException("Input Stream is corrupted, block of " + payloadLen + " bytes");
+        }
+        readFully(in, nativeHeader);
+        payloadLen -= IntelCompressionCodecHeader.HEADER_LENGTH;
+        uncompressedLen = IntelCompressionCodecHeader.getUncompressedSize(
+            ByteBuffer.wrap(nativeHeader), 0);
+        if (uncompressedLen < 0) {
+          throw new IOException("Input Stream is corrupted, negative uncompressed length");
+        }
+      }
+      skipFully(in, payloadLen);
+      length += uncompressedLen;
+    }
+    return length;
+  }
+
   private void refill() throws IOException {
-    int compressedLen = 0;
-    try {
-       compressedLen = readCompressedBlockLength();
-    } catch (IOException e) {
-        eof = true;
-        return;
+    refill(0);
+  }
+
+  /**
+   * @param skipLimit the number of bytes left to skip, 0 when reading
+   * @return the length of the next block if it was skipped without being
+   *         decompressed, 0 if it was decompressed
+   */
+  private long refill(long skipLimit) throws IOException {
+    if (borrowBuffers) {
+      borrowCompressedBuffers();
+      try {
+        return decompressBlock(skipLimit);
+      } finally {
+        releaseCompressedBuffers();
+        releaseFilterBuffer();
+        if (eof) {
+          releaseUncompressedBuffer();
+        }
+      }
+    } else {
+      return decompressBlock(skipLimit);
     }
-    if (compressedBuffer.capacity() < compressedLen) {
-      throw new IOException("Input Stream is corrupted, compressed length large than " + compressedBlockSize);
+  }
+
+  private long decompressBlock(long skipLimit) throws IOException {
+    final long readStart = System.nanoTime();
+    if (!headerReader.next(in)) {
+      eof = true;
+      return 0;
+    }
+    int compressedLen = -1;
+    if (skipLimit > 0) {
+      final boolean isRef = headerReader.getRefDistance() > 0;
+      int uncompressedLen = headerReader.getUncompressedLength();
+      int payloadLeft = headerReader.getPayloadLength();
+      if (uncompressedLen < 0) {
+        // the uncompressed length of a v1 block is in its native header
+        uncompressedLen = readNativeHeader();
+        payloadLeft -= IntelCompressionCodecHeader.HEADER_LENGTH;
+      }
+      if (uncompressedLen > 0 && uncompressedLen <= skipLimit
+          && (isRef || dedupWindow == null || !headerReader.isCompactFrame())) {
+        if (!isRef) {
+          skipCompressedData(payloadLeft);
+        }
+        return uncompressedLen;
+      }
+      if (payloadLeft < headerReader.getPayloadLength()) {
+        compressedLen = headerReader.getPayloadLength();
+        readCompressedData(compressedBuffer, IntelCompressionCodecHeader.HEADER_LENGTH, payloadLeft);
+      }
+    }
+    if (headerReader.getRefDistance() > 0) {
+      resolveBlockRef();
+      totalBlocks++;
+      totalUncompressedBytes += originalLen;
+      totalReadNanos += System.nanoTime() - readStart;
+      return 0;
+    }
+    if (compressedLen < 0) {
+      if (blockCache != null && readCachedBlock()) {
+        totalBlocks++;
+        totalUncompressedBytes += originalLen;
+        totalCompressedBytes += headerReader.getPayloadLength();
+        totalReadNanos += System.nanoTime() - readStart;
+        blockDecoded();
+        return 0;
+      }
+      compressedLen = readCompressedBlock();
+    }
+    final long decompressStart = System.nanoTime();
+    if (borrowBuffers) {
+      final int uncompressedLen = IntelCompressionCodecHeader.getUncompressedSize(compressedBuffer, 0);
+      if (uncompressedLen < 0 || uncompressedLen > uncompressedBlockSize) {
+        throw new IOException("Input Stream is corrupted, uncompressed length large than "
+            + uncompressedBlockSize);
+      }
+      ensureUncompressedCapacity(uncompressedLen);
+    }
+    // filtered blocks are decompressed into filterBuffer and the filter is
+    // reversed into uncompressedBuffer
+    final BlockFilter blockFilter = headerReader.getFilter();
+    final ByteBuffer target;
+    if (blockFilter != null) {
+      ensureFilterCapacity();
+      target = filterBuffer;
+    } else {
+      target = uncompressedBuffer;
     }
-    readCompressedData(compressedBuffer, compressedLen);
     try {
-      final int uncompressed_size = IntelCompressionCodecJNI.decompress(context,
-          compressedBuffer, 0, compressedLen,
-          uncompressedBuffer, 0, uncompressedBlockSize);
+      final int uncompressed_size;
+      if (compressedLen <= smallBlockThreshold
+          && SmallBlockCodec.canDecompress(compressedBuffer, 0, compressedLen)) {
+        if (smallBlockCodec == null) {
+          smallBlockCodec = new SmallBlockCodec();
+        }
+        uncompressed_size = smallBlockCodec.decompress(
+            compressedBuffer, 0, compressedLen,
+            target, 0, uncompressedBufferSize);
+      } else {
+        uncompressed_size = IntelCompressionCodecJNI.decompress(context,
+            compressedBuffer, 0, compressedLen,
+            target, 0, uncompressedBufferSize);
+      }
+      if (blockFilter != null) {
+        blockFilter.reverse(headerReader.getFilterElementSize(), filterBuffer, 0,
+            uncompressedBuffer, 0, uncompressed_size);
+      }
       originalLen = uncompressed_size;
     } catch (IntelCompressionCodecException e) {
       throw new IOException("Input Stream is corrupted, can't decompress", e);
     }
+    final long readNanos = decompressStart - readStart;
+    final long decompressNanos = System.nanoTime() - decompressStart;
+    lastCodec = IntelCompressionCodecHeader.getCodec(compressedBuffer, 0);
+    IntelCompressionCodecEvents.blockDecompressed(lastCodec, compressedLen, originalLen,
+        decompressNanos, readNanos);
+    totalBlocks++;
+    totalUncompressedBytes += originalLen;
+    totalCompressedBytes += compressedLen;
+    totalDecompressNanos += decompressNanos;
+    totalReadNanos += readNanos;
+    if (blockCache != null) {
+      blockCache.put(cacheSource, headerReader.getBlockOffset(), uncompressedBuffer, 0,
+          originalLen);
+    }
+    blockDecoded();
+    return 0;
+  }
+
+  /**
+   * Keep the block just decoded into the uncompressed buffer for block
+   * references and make it readable.
+   */
+  private void blockDecoded() {
+    if (dedupWindow != null) {
+      dedupWindow.add(uncompressedBuffer, originalLen, 0, uncompressedBufferSize);
+    }
+    uncompressedBuffer.position(0);
+    uncompressedBuffer.limit(originalLen);
+    uncompressedBufferPosition = 0;
+  }
+
+  /**
+   * Copy the block from the block cache into the uncompressed buffer and skip
+   * its payload.
+   *
+   * @return false if the block is not cached
+   */
+  private boolean readCachedBlock() throws IOException {
+    if (borrowBuffers) {
+      final int uncompressedLen = headerReader.getUncompressedLength();
+      ensureUncompressedCapacity(uncompressedLen < 0 ? uncompressedBlockSize : uncompressedLen);
+    }
+    final int len = blockCache.get(cacheSource, headerReader.getBlockOffset(),
+        uncompressedBuffer, 0);
+    if (len < 0) {
+      return false;
+    }
+    skipCompressedData(headerReader.getPayloadLength());
+    originalLen = len;
+    return true;
+  }
+
+  /**
+   * Copy the kept block the block reference read last refers to into the
+   * uncompressed buffer.
+   */
+  private void resolveBlockRef() throws IOException {
+    final int distance = headerReader.getRefDistance();
+    final int length = headerReader.getUncompressedLength();
+    final ByteBuffer block = dedupWindow == null ? null : dedupWindow.get(distance);
+    if (block == null) {
+      throw new IOException("Input Stream is corrupted or written with a larger dedup window,"
+          + " block " + distance + " back is not kept");
+    }
+    if (block.remaining() != length) {
+      throw new IOException("Input Stream is corrupted, block reference of " + length
+          + " bytes to a block of " + block.remaining() + " bytes");
+    }
+    if (borrowBuffers) {
+      ensureUncompressedCapacity(length);
+    }
+    uncompressedBuffer.clear();
+    uncompressedBuffer.put(block);
+    originalLen = length;
     uncompressedBuffer.position(0);
     uncompressedBuffer.limit(originalLen);
     uncompressedBufferPosition = 0;
   }
 
-  private int readCompressedBlockLength() throws IOException {
-    int b1 = in.read();
-    int b2 = in.read();
-    int b3 = in.read();
-    int b4 = in.read();
-    if ((b1 | b2 | b3 | b4) < 0)
-      throw new EOFException();
-    return ((b4 << 24) + (b3 << 16) + (b2 << 8) + (b1 << 0));
+  /**
+   * Read the payload of the block whose header was read last into
+   * compressedBuffer in the native block format.
+   *
+   * @return the length of the native block
+   */
+  private int readCompressedBlock() throws IOException {
+    final int payloadLen = headerReader.getPayloadLength();
+    if (!headerReader.isCompactFrame()) {
+      checkCompressedLength(payloadLen);
+      readCompressedData(compressedBuffer, 0, payloadLen);
+      return payloadLen;
+    }
+    final int compressedLen = IntelCompressionCodecHeader.HEADER_LENGTH + payloadLen;
+    checkCompressedLength(compressedLen);
+    readCompressedData(compressedBuffer, IntelCompressionCodecHeader.HEADER_LENGTH, payloadLen);
+    IntelCompressionCodecHeader.write(compressedBuffer, 0, headerReader.getCodec(),
+        compressedLen, headerReader.getUncompressedLength());
+    return compressedLen;
   }
 
-  private void readCompressedData(ByteBuffer b, int len) throws IOException {
+  /**
+   * Read the native header of the v1 block whose header was read last into
+   * compressedBuffer, leaving the rest of the payload unread.
+   *
+   * @return the uncompressed length of the block
+   */
+  private int readNativeHeader() throws IOException {
+    final int payloadLen = headerReader.getPayloadLength();
+    if (payloadLen < IntelCompressionCodecHeader.HEADER_LENGTH) {
+      throw new IOException("Input Stream is corrupted, block of " + payloadLen + " bytes");
+    }
+    checkCompressedLength(payloadLen);
+    readCompressedData(compressedBuffer, 0, IntelCompressionCodecHeader.HEADER_LENGTH);
+    return IntelCompressionCodecHeader.getUncompressedSize(compressedBuffer, 0);
+  }
+
+  /**
+   * Skip len bytes of compressed data, seeking the channel where it can.
+   */
+  private void skipCompressedData(long len) throws IOException {
+    if (channel instanceof SeekableByteChannel) {
+      final SeekableByteChannel seekable = (SeekableByteChannel) channel;
+      seekable.position(seekable.position() + len);
+      return;
+    }
+    skipFully(in, len);
+  }
+
+  private static void skipFully(InputStream in, long len) throws IOException {
+    while (len > 0) {
+      final long skipped = in.skip(len);
+      if (skipped > 0) {
+        len -= skipped;
+      } else if (in.read() < 0) {
+        throw new EOFException("Unexpected end of block in input stream");
+      } else {
+        len--;
+      }
+    }
+  }
+
+  private static void readFully(InputStream in, byte[] b) throws IOException {
     int read = 0;
-    assert b.capacity() >= len;
+    while (read < b.length) {
+      final int r = in.read(b, read, b.length - read);
+      if (r < 0) {
+        throw new EOFException("Unexpected end of block in input stream");
+      }
+      read += r;
+    }
+  }
+
+  /**
+   * Make sure the uncompressed buffer holds the required number of bytes. Sizes
+   * double from the initial buffer size of the output stream up to the block
+   * size, so that buffers of streams with small blocks are pooled together.
+   */
+  private void ensureUncompressedCapacity(int required) {
+    if (uncompressedBuffer != null && required <= uncompressedBufferSize) {
+      return;
+    }
+    int size = Math.min(IntelCompressionCodecBlockOutputStream.INITIAL_BUFFER_SIZE,
+        uncompressedBlockSize);
+    while (size < required) {
+      size = (int) Math.min(2L * size, uncompressedBlockSize);
+    }
+    releaseUncompressedBuffer();
+    uncompressedBufferAllocator = CachedBufferAllocator
+        .getBufferAllocatorFactory().getBufferAllocator(size);
+    uncompressedBuffer = uncompressedBufferAllocator
+        .allocateDirectByteBuffer(useNativeBuffer, size, 64);
+    uncompressedBuffer.clear();
+    uncompressedBufferSize = size;
+  }
+
+  private void releaseUncompressedBuffer() {
+    if (uncompressedBuffer != null) {
+      uncompressedBufferAllocator.releaseDirectByteBuffer(uncompressedBuffer);
+      uncompressedBuffer = null;
+      uncompressedBufferSize = 0;
+    }
+  }
+
+  /**
+   * Size the buffer filtered blocks are decompressed into by the uncompressed buffer.
+   */
+  private void ensureFilterCapacity() {
+    if (uncompressedBufferSize <= filterBufferSize) {
+      return;
+    }
+    releaseFilterBuffer();
+    filterBufferAllocator = CachedBufferAllocator
+        .getBufferAllocatorFactory().getBufferAllocator(uncompressedBufferSize);
+    filterBuffer = filterBufferAllocator
+        .allocateDirectByteBuffer(useNativeBuffer, uncompressedBufferSize, 64);
+    filterBuffer.clear();
+    filterBufferSize = uncompressedBufferSize;
+  }
+
+  private void releaseFilterBuffer() {
+    if (filterBuffer != null) {
+      filterBufferAllocator.releaseDirectByteBuffer(filterBuffer);
+      filterBuffer = null;
+      filterBufferSize = 0;
+    }
+  }
+
+  private void borrowCompressedBuffers() {
+    compressedBuffer = compressedBufferAllocator
+        .allocateDirectByteBuffer(useNativeBuffer, compressedBlockSize, 64);
+    compressedBuffer.clear();
+    if (channel == null) {
+      tempBuffer = tempBufferAllocator.allocateByteArray(compressedBlockSize);
+    }
+  }
+
+  private void releaseCompressedBuffers() {
+    if (compressedBuffer != null) {
+      compressedBufferAllocator.releaseDirectByteBuffer(compressedBuffer);
+      compressedBuffer = null;
+    }
+    if (tempBuffer != null) {
+      tempBufferAllocator.releaseByteArray(tempBuffer);
+      tempBuffer = null;
+    }
+  }
+
+  private void checkCompressedLength(int compressedLen) throws IOException {
+    if (compressedLen < 0 || compressedBuffer.capacity() < compressedLen) {
+      throw new IOException("Input Stream is corrupted, compressed length large than " + compressedBlockSize);
+    }
+  }
+
+  private void readCompressedData(ByteBuffer b, int off, int len) throws IOException {
+    if (channel != null) {
+      readCompressedData(channel, b, off, len);
+      return;
+    }
+    int read = 0;
+    assert b.capacity() >= off + len;
     b.clear();
+    b.position(off);
     while (read < len) {
       final int bytesToRead = Math.min(len - read, tempBuffer.length);
       final int r = in.read(tempBuffer, 0, bytesToRead);
@@ -206,6 +733,23 @@ public final class IntelCompressionCodecBlockInputStream extends FilterInputStre
     b.flip();
   }
 
+  /**
+   * Read the block straight into the direct buffer. Only the bytes of the
+   * block are read, the stream may end after it.
+   */
+  private void readCompressedData(ReadableByteChannel channel, ByteBuffer b, int off, int len)
+      throws IOException {
+    b.clear();
+    b.position(off);
+    b.limit(off + len);
+    while (b.hasRemaining()) {
+      if (channel.read(b) < 0) {
+        throw new EOFException("Unexpected end of block in input stream");
+      }
+    }
+    b.flip();
+  }
+
   @Override
   public boolean markSupported() {
     return false;
@@ -232,14 +776,18 @@ public final class IntelCompressionCodecBlockInputStream extends FilterInputStre
       in.close();
     }
     finally {
-      uncompressedBufferAllocator.releaseDirectByteBuffer(uncompressedBuffer);
-      compressedBufferAllocator.releaseDirectByteBuffer(compressedBuffer);
-      tempBufferAllocator.releaseByteArray(tempBuffer);
-      tempBuffer = null;
+      releaseUncompressedBuffer();
+      releaseCompressedBuffers();
+      releaseFilterBuffer();
+      if (dedupWindow != null) {
+        dedupWindow.release();
+      }
       in = null;
       IntelCompressionCodecJNI.destroyContext(context);
       context = 0;
       closed = true;
+      IntelCompressionCodecEvents.streamClosed(getClass().getSimpleName(), lastCodec, totalBlocks,
+          totalUncompressedBytes, totalCompressedBytes, totalDecompressNanos, totalReadNanos);
     }
   }
 
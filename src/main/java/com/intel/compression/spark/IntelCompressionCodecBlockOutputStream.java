@@ -19,15 +19,26 @@ package com.intel.compression.spark;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.FileOutputStream;
 import java.io.FilterOutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
 
+import com.intel.compression.util.AdaptiveLevelController;
+import com.intel.compression.util.BlockFilter;
+import com.intel.compression.util.CodecParameters;
+import com.intel.compression.util.IntelCompressionCodecHeader;
 import com.intel.compression.util.Platform;
 import io.netty.buffer.ByteBuf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.intel.compression.util.buffer.*;
+import com.intel.compression.util.jfr.IntelCompressionCodecEvents;
 import com.intel.compression.jni.IntelCompressionCodecJNI;
 import sun.nio.ch.DirectBuffer;
 
@@ -47,6 +58,8 @@ public final class IntelCompressionCodecBlockOutputStream extends FilterOutputSt
   private int level;
   private int compressedBlockSize;
   private int uncompressedBlockSize;
+  private int uncompressedBufferSize;
+  private final boolean useNativeBuffer;
   private BufferAllocator compressedBufferAllocator;
   private BufferAllocator uncompressedBufferAllocator;
   private ByteBuffer compressedBuffer;
@@ -54,8 +67,27 @@ public final class IntelCompressionCodecBlockOutputStream extends FilterOutputSt
   private boolean closed;
   private int uncompressedBufferPosition;
   private byte[] tempBuffer;
-  private final BufferAllocator tempBufferAllocator;
+  private BufferAllocator tempBufferAllocator;
+  private final AdaptiveLevelController levelController;
+  private final int smallBlockThreshold;
+  private SmallBlockCodec smallBlockCodec;
+  private final boolean compactFrame;
+  private final BlockFilter filter;
+  private final int filterElementSize;
+  private BufferAllocator filterBufferAllocator;
+  private ByteBuffer filterBuffer;
+  private int filterBufferSize;
+  private final BlockDedupWindow dedupWindow;
+  private boolean streamHeaderWritten;
+  private final WritableByteChannel channel;
+  private final byte[] frameHeader;
+  private long totalBlocks;
+  private long totalUncompressedBytes;
+  private long totalCompressedBytes;
+  private long totalCompressNanos;
+  private long totalWriteNanos;
   static final int HEADER_LENGTH = 4;         // decompressed length
+  static final int INITIAL_BUFFER_SIZE = 64 * 1024;
 
   /**
    * Create a new {@link OutputStream} with configurable codec, level and block size. Large
@@ -70,37 +102,170 @@ public final class IntelCompressionCodecBlockOutputStream extends FilterOutputSt
    */
   public IntelCompressionCodecBlockOutputStream(OutputStream out, String codec,
           int level, int blockSize, boolean useNativeBuffer) {
+    this(out, codec, level, blockSize, useNativeBuffer, null, 0, false);
+  }
+
+  /**
+   * Create a new {@link OutputStream} with the optional features of the codec.
+   *
+   * @param out                 the {@link OutputStream} to feed
+   * @param codec               the compression codec used to compress data
+   * @param level               the compression codec level
+   * @param blockSize           the maximum number of bytes to try to compress at once,
+   *                            must be >= 32 K
+   * @param levelController     the controller adjusting the level, null to keep it fixed
+   * @param smallBlockThreshold blocks smaller than this are compressed in Java
+   *                            instead of the native codec, 0 to disable
+   * @param compactFrame        write the compact v2 block framing, which older
+   *                            readers can't read
+   */
+  public IntelCompressionCodecBlockOutputStream(OutputStream out, String codec,
+          int level, int blockSize, boolean useNativeBuffer,
+          AdaptiveLevelController levelController, int smallBlockThreshold,
+          boolean compactFrame) {
+    this(out, codec, level, blockSize, useNativeBuffer, levelController,
+        smallBlockThreshold, compactFrame, null, 0);
+  }
+
+  /**
+   * Create a new {@link OutputStream} running a pre-filter over every block
+   * before compressing it. Filtered blocks need the compact v2 block framing,
+   * which a filter turns on.
+   *
+   * @param filter            the filter of the blocks, null for none
+   * @param filterElementSize the element size of the filter in bytes
+   * @see #IntelCompressionCodecBlockOutputStream(OutputStream, String, int, int, boolean,
+   *      AdaptiveLevelController, int, boolean)
+   */
+  public IntelCompressionCodecBlockOutputStream(OutputStream out, String codec,
+          int level, int blockSize, boolean useNativeBuffer,
+          AdaptiveLevelController levelController, int smallBlockThreshold,
+          boolean compactFrame, BlockFilter filter, int filterElementSize) {
+    this(out, codec, level, blockSize, useNativeBuffer, levelController,
+        smallBlockThreshold, compactFrame, filter, filterElementSize, 0);
+  }
+
+  /**
+   * Create a new {@link OutputStream} writing blocks which repeat one of the
+   * recent blocks of the stream as a reference to that block instead of
+   * compressing them again. Block references need the compact v2 block
+   * framing, which a dedup window turns on.
+   *
+   * @param dedupWindow the number of recent blocks kept to look up repeated
+   *                    blocks, 0 to disable, readers need a window at least
+   *                    this large
+   * @see #IntelCompressionCodecBlockOutputStream(OutputStream, String, int, int, boolean,
+   *      AdaptiveLevelController, int, boolean, BlockFilter, int)
+   */
+  public IntelCompressionCodecBlockOutputStream(OutputStream out, String codec,
+          int level, int blockSize, boolean useNativeBuffer,
+          AdaptiveLevelController levelController, int smallBlockThreshold,
+          boolean compactFrame, BlockFilter filter, int filterElementSize, int dedupWindow) {
+    this(out, codec, level, blockSize, useNativeBuffer, levelController,
+        smallBlockThreshold, compactFrame, filter, filterElementSize, dedupWindow, null);
+  }
+
+  /**
+   * Create a new {@link OutputStream} compressing with the tuning parameters
+   * of the codec set on the native context.
+   *
+   * @param parameters the tuning parameters of the codec, null for the defaults
+   * @throws IllegalArgumentException if the library of the codec can't apply
+   *                                  the parameters
+   * @see #IntelCompressionCodecBlockOutputStream(OutputStream, String, int, int, boolean,
+   *      AdaptiveLevelController, int, boolean, BlockFilter, int, int)
+   */
+  public IntelCompressionCodecBlockOutputStream(OutputStream out, String codec,
+          int level, int blockSize, boolean useNativeBuffer,
+          AdaptiveLevelController levelController, int smallBlockThreshold,
+          boolean compactFrame, BlockFilter filter, int filterElementSize, int dedupWindow,
+          CodecParameters parameters) {
+    this(out, channelOf(out), codec, level, blockSize, useNativeBuffer,
+        levelController, smallBlockThreshold, compactFrame, filter, filterElementSize,
+        dedupWindow, parameters);
+  }
+
+  /**
+   * Create a new stream writing the compressed blocks to the channel.
+   *
+   * @throws IllegalBlockingModeException if the channel is in non-blocking mode
+   * @see IntelCompressionCodecBlockWritableChannel
+   */
+  IntelCompressionCodecBlockOutputStream(WritableByteChannel channel, String codec,
+          int level, int blockSize, boolean useNativeBuffer,
+          AdaptiveLevelController levelController, int smallBlockThreshold,
+          boolean compactFrame, BlockFilter filter, int filterElementSize, int dedupWindow,
+          CodecParameters parameters) {
+    this(Channels.newOutputStream(checkBlocking(channel)), channel, codec, level, blockSize,
+        useNativeBuffer, levelController, smallBlockThreshold, compactFrame,
+        filter, filterElementSize, dedupWindow, parameters);
+  }
+
+  private IntelCompressionCodecBlockOutputStream(OutputStream out,
+          WritableByteChannel channel, String codec,
+          int level, int blockSize, boolean useNativeBuffer,
+          AdaptiveLevelController levelController, int smallBlockThreshold,
+          boolean compactFrame, BlockFilter filter, int filterElementSize, int dedupWindow,
+          CodecParameters parameters) {
     super(out);
+    if (filter != null) {
+      BlockFilter.checkElementSize(filterElementSize);
+    }
+    this.channel = channel;
+    this.frameHeader = new byte[IntelCompressionCodecBlockFrame.V1_LENGTH_SIZE
+        + IntelCompressionCodecBlockFrame.MAX_V2_HEADER_LENGTH
+        + IntelCompressionCodecBlockFrame.MAX_VARINT_SIZE];
+    if (levelController != null) {
+      level = levelController.getLevel();
+    }
     this.codec = codec;
     this.level = level;
+    this.levelController = levelController;
+    this.smallBlockThreshold = smallBlockThreshold;
+    this.compactFrame = compactFrame || filter != null || dedupWindow > 0;
+    this.filter = filter;
+    this.filterElementSize = filterElementSize;
+    this.dedupWindow = dedupWindow > 0 ? new BlockDedupWindow(dedupWindow, useNativeBuffer) : null;
     this.uncompressedBlockSize = blockSize;
-    this.compressedBlockSize = blockSize * 3 / 2;
-    this.uncompressedBufferAllocator = CachedBufferAllocator.
-            getBufferAllocatorFactory().getBufferAllocator(uncompressedBlockSize);
-    this.compressedBufferAllocator = CachedBufferAllocator.
-            getBufferAllocatorFactory().getBufferAllocator(compressedBlockSize);
-    this.uncompressedBuffer = uncompressedBufferAllocator.
-            allocateDirectByteBuffer(useNativeBuffer, uncompressedBlockSize, 64);
-    this.compressedBuffer = compressedBufferAllocator.
-            allocateDirectByteBuffer(useNativeBuffer, compressedBlockSize, 64);
+    this.useNativeBuffer = useNativeBuffer;
+    // buffers are acquired on first write, see ensureUncompressedCapacity
+    uncompressedBufferSize = 0;
+    compressedBlockSize = 0;
+    uncompressedBufferPosition = 0;
+    closed = false;
 
-    if(uncompressedBuffer != null) {
-      uncompressedBuffer.clear();
-    }
+    context = CodecParameters.createCompressContext(parameters, codec, level);
+    LOG.debug("Create OutputStream with codec " + codec + ", level " + level
+        + (parameters == null ? "" : ", parameters " + parameters));
+    IntelCompressionCodecEvents.streamOpened(getClass().getSimpleName(), codec, level, blockSize);
+  }
 
-    if(compressedBuffer != null) {
-      compressedBuffer.clear();
+  /**
+   * @return the channel under the stream when compressed blocks can be
+   *         written to it straight from direct memory, null otherwise
+   */
+  private static WritableByteChannel channelOf(OutputStream out) {
+    if (out instanceof FileOutputStream) {
+      return ((FileOutputStream) out).getChannel();
+    } else if (out instanceof WritableByteChannel && isBlocking((WritableByteChannel) out)) {
+      return (WritableByteChannel) out;
     }
+    return null;
+  }
 
-    uncompressedBufferPosition = 0;
-    closed = false;
-
-    tempBufferAllocator = CachedBufferAllocator.getBufferAllocatorFactory().
-            getBufferAllocator(compressedBlockSize);
-    tempBuffer = tempBufferAllocator.allocateByteArray(compressedBlockSize);
+  /**
+   * A non-blocking channel may accept no bytes, the blocks are only written
+   * to blocking channels.
+   */
+  private static boolean isBlocking(WritableByteChannel channel) {
+    return !(channel instanceof SelectableChannel) || ((SelectableChannel) channel).isBlocking();
+  }
 
-    context = IntelCompressionCodecJNI.createCompressContext(codec, level);
-    LOG.debug("Create OutputStream with codec " + codec + ", level " + level);
+  private static WritableByteChannel checkBlocking(WritableByteChannel channel) {
+    if (!isBlocking(channel)) {
+      throw new IllegalBlockingModeException();
+    }
+    return channel;
   }
 
   private void checkStream() {
@@ -124,6 +289,7 @@ public final class IntelCompressionCodecBlockOutputStream extends FilterOutputSt
       throw new ArrayIndexOutOfBoundsException("BlockOutputStream write requested length " + len
               + " from offset " + off + " in buffer of size " + byteBuf.readableBytes());
     }
+    ensureUncompressedCapacity(uncompressedBufferPosition + len);
     DirectBuffer directUncompressedBuffer = (DirectBuffer) uncompressedBuffer;
 
     while (uncompressedBufferPosition + len > uncompressedBlockSize) {
@@ -154,6 +320,7 @@ public final class IntelCompressionCodecBlockOutputStream extends FilterOutputSt
           + " from offset " + off + " in buffer of size " + b.length);
     }
 
+    ensureUncompressedCapacity(uncompressedBufferPosition + len);
     while (uncompressedBufferPosition + len > uncompressedBlockSize) {
       int left = uncompressedBlockSize - uncompressedBufferPosition;
       uncompressedBuffer.put(b, off, left);
@@ -166,6 +333,31 @@ public final class IntelCompressionCodecBlockOutputStream extends FilterOutputSt
     uncompressedBufferPosition += len;
   }
 
+  /**
+   * Write the remaining bytes of the buffer, heap or direct.
+   *
+   * @return the number of bytes written
+   */
+  public int write(ByteBuffer src) throws IOException {
+    checkStream();
+    final int written = src.remaining();
+    int len = written;
+    ensureUncompressedCapacity(uncompressedBufferPosition + len);
+    while (uncompressedBufferPosition + len > uncompressedBlockSize) {
+      int left = uncompressedBlockSize - uncompressedBufferPosition;
+      ByteBuffer chunk = src.duplicate();
+      chunk.limit(chunk.position() + left);
+      uncompressedBuffer.put(chunk);
+      src.position(chunk.position());
+      uncompressedBufferPosition = uncompressedBlockSize;
+      compressBufferedData();
+      len -= left;
+    }
+    uncompressedBuffer.put(src);
+    uncompressedBufferPosition += len;
+    return written;
+  }
+
   @Override
   public void write(byte[] b) throws IOException {
     write(b, 0, b.length);
@@ -189,13 +381,20 @@ public final class IntelCompressionCodecBlockOutputStream extends FilterOutputSt
     }
     finally {
       closed = true;
-      uncompressedBufferAllocator.releaseDirectByteBuffer(uncompressedBuffer);
-      compressedBufferAllocator.releaseDirectByteBuffer(compressedBuffer);
-      tempBufferAllocator.releaseByteArray(tempBuffer);
-      tempBuffer = null;
+      if (uncompressedBuffer != null) {
+        uncompressedBufferAllocator.releaseDirectByteBuffer(uncompressedBuffer);
+        uncompressedBuffer = null;
+      }
+      releaseCompressedBuffers();
+      releaseFilterBuffer();
+      if (dedupWindow != null) {
+        dedupWindow.release();
+      }
       out = null;
       IntelCompressionCodecJNI.destroyContext(context);
       context = 0;
+      IntelCompressionCodecEvents.streamClosed(getClass().getSimpleName(), codec, totalBlocks,
+          totalUncompressedBytes, totalCompressedBytes, totalCompressNanos, totalWriteNanos);
     }
     LOG.debug("Close OutputStream with codec " + codec + ", level " + level);
   }
@@ -204,24 +403,233 @@ public final class IntelCompressionCodecBlockOutputStream extends FilterOutputSt
     if (uncompressedBufferPosition == 0) {
       return;
     }
-    int compressedLength = IntelCompressionCodecJNI.compress(context,
-        uncompressedBuffer, 0, uncompressedBufferPosition,
-        compressedBuffer, 0, compressedBlockSize);
-    writeIntLE(compressedLength, tempBuffer, 0);
-    compressedBuffer.position(0);
+    final long compressStart = System.nanoTime();
+    int blockHash = 0;
+    if (dedupWindow != null) {
+      blockHash = BlockDedupWindow.hash(uncompressedBuffer, 0, uncompressedBufferPosition);
+      final int distance = dedupWindow.find(uncompressedBuffer, uncompressedBufferPosition,
+          blockHash);
+      if (distance > 0) {
+        writeBlockRef(distance, compressStart);
+        return;
+      }
+    }
+    ensureCompressedCapacity();
+    int compressedLength;
+    int filterByte = 0;
+    if (uncompressedBufferPosition < smallBlockThreshold) {
+      if (smallBlockCodec == null) {
+        smallBlockCodec = new SmallBlockCodec();
+      }
+      compressedLength = smallBlockCodec.compress(
+          uncompressedBuffer, 0, uncompressedBufferPosition,
+          compressedBuffer, 0, compressedBlockSize);
+    } else if (filter != null) {
+      ensureFilterCapacity();
+      filter.apply(filterElementSize, uncompressedBuffer, 0,
+          filterBuffer, 0, uncompressedBufferPosition);
+      compressedLength = IntelCompressionCodecJNI.compress(context,
+          filterBuffer, 0, uncompressedBufferPosition,
+          compressedBuffer, 0, compressedBlockSize);
+      filterByte = IntelCompressionCodecBlockFrame.filterByte(filter, filterElementSize);
+    } else {
+      compressedLength = IntelCompressionCodecJNI.compress(context,
+          uncompressedBuffer, 0, uncompressedBufferPosition,
+          compressedBuffer, 0, compressedBlockSize);
+    }
+    final long writeStart = System.nanoTime();
+    final int frameHeaderLength = writeFrameHeader(compressedLength, filterByte);
+    final int dataOffset = compactFrame ? IntelCompressionCodecHeader.HEADER_LENGTH : 0;
+    compressedBuffer.position(dataOffset);
     compressedBuffer.limit(compressedLength);
+    if (channel != null) {
+      writeToChannel(frameHeaderLength);
+    } else {
+      writeToStream(frameHeaderLength, compressedLength - dataOffset);
+    }
+    final long compressNanos = writeStart - compressStart;
+    final long writeNanos = System.nanoTime() - writeStart;
+    final int frameLength = frameHeaderLength + compressedLength - dataOffset;
+    IntelCompressionCodecEvents.blockCompressed(codec, level, uncompressedBufferPosition,
+        frameLength, compressNanos, writeNanos);
+    totalBlocks++;
+    totalUncompressedBytes += uncompressedBufferPosition;
+    totalCompressedBytes += frameLength;
+    totalCompressNanos += compressNanos;
+    totalWriteNanos += writeNanos;
+    if (levelController != null) {
+      adjustLevel(compressNanos, writeNanos);
+    }
+    if (dedupWindow != null) {
+      dedupWindow.add(uncompressedBuffer, uncompressedBufferPosition, blockHash,
+          uncompressedBufferSize);
+    }
+    uncompressedBuffer.clear();
+    compressedBuffer.clear();
+    uncompressedBufferPosition = 0;
+  }
+
+  /**
+   * Write the buffered block as a reference to the kept block at the distance.
+   */
+  private void writeBlockRef(int distance, long compressStart) throws IOException {
+    final long writeStart = System.nanoTime();
+    int off = writeStreamHeader();
+    off = IntelCompressionCodecBlockFrame.writeV2Header(frameHeader, off,
+        IntelCompressionCodecBlockFrame.varIntLength(distance),
+        IntelCompressionCodecBlockFrame.CODEC_BLOCK_REF, 0, uncompressedBufferPosition);
+    final int frameLength = IntelCompressionCodecBlockFrame.writeVarInt(frameHeader, off, distance);
+    if (channel != null) {
+      ByteBuffer frame = ByteBuffer.wrap(frameHeader, 0, frameLength);
+      while (frame.hasRemaining()) {
+        channel.write(frame);
+      }
+    } else {
+      out.write(frameHeader, 0, frameLength);
+    }
+    final long compressNanos = writeStart - compressStart;
+    final long writeNanos = System.nanoTime() - writeStart;
+    IntelCompressionCodecEvents.blockCompressed(codec, level, uncompressedBufferPosition,
+        frameLength, compressNanos, writeNanos);
+    totalBlocks++;
+    totalUncompressedBytes += uncompressedBufferPosition;
+    totalCompressedBytes += frameLength;
+    totalCompressNanos += compressNanos;
+    totalWriteNanos += writeNanos;
+    uncompressedBuffer.clear();
+    uncompressedBufferPosition = 0;
+  }
+
+  /**
+   * Grow the uncompressed buffer to hold the required number of bytes, capped
+   * at the block size. The buffer is acquired on first write and doubled from
+   * {@link #INITIAL_BUFFER_SIZE}, so short streams never hold a whole block.
+   */
+  private void ensureUncompressedCapacity(int required) {
+    required = Math.min(required, uncompressedBlockSize);
+    if (uncompressedBuffer != null && required <= uncompressedBufferSize) {
+      return;
+    }
+    int size = uncompressedBufferSize == 0
+        ? Math.min(INITIAL_BUFFER_SIZE, uncompressedBlockSize) : uncompressedBufferSize;
+    while (size < required) {
+      size = (int) Math.min(2L * size, uncompressedBlockSize);
+    }
+
+    BufferAllocator allocator = CachedBufferAllocator.
+            getBufferAllocatorFactory().getBufferAllocator(size);
+    ByteBuffer buffer = allocator.allocateDirectByteBuffer(useNativeBuffer, size, 64);
+    buffer.clear();
+    if (uncompressedBuffer != null) {
+      uncompressedBuffer.flip();
+      buffer.put(uncompressedBuffer);
+      uncompressedBufferAllocator.releaseDirectByteBuffer(uncompressedBuffer);
+    }
+    uncompressedBufferAllocator = allocator;
+    uncompressedBuffer = buffer;
+    uncompressedBufferSize = size;
+  }
+
+  /**
+   * Size the compressed buffer and tempBuffer by the compress bound of the
+   * codec for the current uncompressed buffer. Streams over a channel write
+   * the compressed buffer directly and need no tempBuffer.
+   */
+  private void ensureCompressedCapacity() {
+    int size = IntelCompressionCodecJNI.compressBound(context, uncompressedBufferSize);
+    if (size <= compressedBlockSize) {
+      return;
+    }
+    releaseCompressedBuffers();
+    compressedBufferAllocator = CachedBufferAllocator.
+            getBufferAllocatorFactory().getBufferAllocator(size);
+    compressedBuffer = compressedBufferAllocator.
+            allocateDirectByteBuffer(useNativeBuffer, size, 64);
+    compressedBuffer.clear();
+    if (channel == null) {
+      tempBufferAllocator = CachedBufferAllocator.getBufferAllocatorFactory().
+              getBufferAllocator(size);
+      tempBuffer = tempBufferAllocator.allocateByteArray(size);
+    }
+    compressedBlockSize = size;
+  }
+
+  /**
+   * Size the buffer the filter writes into by the uncompressed buffer.
+   */
+  private void ensureFilterCapacity() {
+    if (uncompressedBufferSize <= filterBufferSize) {
+      return;
+    }
+    releaseFilterBuffer();
+    filterBufferAllocator = CachedBufferAllocator.
+            getBufferAllocatorFactory().getBufferAllocator(uncompressedBufferSize);
+    filterBuffer = filterBufferAllocator.
+            allocateDirectByteBuffer(useNativeBuffer, uncompressedBufferSize, 64);
+    filterBuffer.clear();
+    filterBufferSize = uncompressedBufferSize;
+  }
+
+  private void releaseFilterBuffer() {
+    if (filterBuffer != null) {
+      filterBufferAllocator.releaseDirectByteBuffer(filterBuffer);
+      filterBuffer = null;
+    }
+    filterBufferSize = 0;
+  }
+
+  private void releaseCompressedBuffers() {
+    if (compressedBuffer != null) {
+      compressedBufferAllocator.releaseDirectByteBuffer(compressedBuffer);
+      compressedBuffer = null;
+    }
+    if (tempBuffer != null) {
+      tempBufferAllocator.releaseByteArray(tempBuffer);
+      tempBuffer = null;
+    }
+    compressedBlockSize = 0;
+  }
+
+  private void writeToStream(int frameHeaderLength, int dataLength) throws IOException {
+    System.arraycopy(frameHeader, 0, tempBuffer, 0, frameHeaderLength);
+    int off = frameHeaderLength;
     int totalWritten = 0;
-    int off = 4;
-    while (totalWritten < compressedLength) {
-      int bytesToWrite = Math.min((compressedLength - totalWritten), tempBuffer.length - off);
+    do {
+      int bytesToWrite = Math.min((dataLength - totalWritten), tempBuffer.length - off);
       compressedBuffer.get(tempBuffer, off, bytesToWrite);
       out.write(tempBuffer, 0, bytesToWrite + off);
       totalWritten += bytesToWrite;
       off = 0;
+    } while (totalWritten < dataLength);
+  }
+
+  /**
+   * Write the frame header and the block straight from the direct buffer,
+   * in one gathering write when the channel supports it.
+   */
+  private void writeToChannel(int frameHeaderLength) throws IOException {
+    ByteBuffer header = ByteBuffer.wrap(frameHeader, 0, frameHeaderLength);
+    if (channel instanceof GatheringByteChannel) {
+      ByteBuffer[] srcs = new ByteBuffer[] { header, compressedBuffer };
+      while (header.hasRemaining() || compressedBuffer.hasRemaining()) {
+        ((GatheringByteChannel) channel).write(srcs);
+      }
+    } else {
+      while (header.hasRemaining()) {
+        channel.write(header);
+      }
+      while (compressedBuffer.hasRemaining()) {
+        channel.write(compressedBuffer);
+      }
+    }
+  }
+
+  private void adjustLevel(long compressNanos, long writeNanos) {
+    int nextLevel = levelController.update(compressNanos, writeNanos);
+    if (nextLevel != level) {
+      IntelCompressionCodecJNI.setLevel(context, nextLevel);
+      level = nextLevel;
     }
-    uncompressedBuffer.clear();
-    compressedBuffer.clear();
-    uncompressedBufferPosition = 0;
   }
 
   public void finish() throws IOException {
@@ -230,18 +638,44 @@ public final class IntelCompressionCodecBlockOutputStream extends FilterOutputSt
     out.flush();
   }
 
-  private static void writeIntLE(int i, byte [] buf, int off) {
-    buf[off] = (byte)i;
-    buf[off + 1]= (byte)(i >>> 8);
-    buf[off + 2]= (byte)(i >>> 16);
-    buf[off + 3]= (byte)(i >>> 24);
-    //buf.putInt(off, i);
+  /**
+   * Write the frame header of the compressed block into frameHeader.
+   *
+   * @param filterByte the filter byte of a filtered block, 0 if it isn't filtered
+   * @return the length of the frame header
+   */
+  private int writeFrameHeader(int compressedLength, int filterByte) {
+    if (!compactFrame) {
+      IntelCompressionCodecBlockFrame.writeIntLE(compressedLength, frameHeader, 0);
+      return IntelCompressionCodecBlockFrame.V1_LENGTH_SIZE;
+    }
+    return IntelCompressionCodecBlockFrame.writeV2Header(frameHeader, writeStreamHeader(),
+        compressedLength - IntelCompressionCodecHeader.HEADER_LENGTH,
+        IntelCompressionCodecHeader.getCodec(compressedBuffer, 0), filterByte,
+        IntelCompressionCodecHeader.getUncompressedSize(compressedBuffer, 0));
+  }
+
+  /**
+   * Write the v2 stream magic into frameHeader ahead of the first block.
+   *
+   * @return the offset of the block header in frameHeader
+   */
+  private int writeStreamHeader() {
+    if (streamHeaderWritten) {
+      return 0;
+    }
+    IntelCompressionCodecBlockFrame.writeIntLE(
+        IntelCompressionCodecBlockFrame.STREAM_MAGIC_V2, frameHeader, 0);
+    streamHeaderWritten = true;
+    return IntelCompressionCodecBlockFrame.V1_LENGTH_SIZE;
   }
 
   @Override
   public String toString() {
     return getClass().getSimpleName() + "(out=" + out
         + ", codec=" + codec + ", level=" + level
-        + ", blockSize=" + uncompressedBlockSize + ")";
+        + ", blockSize=" + uncompressedBlockSize
+        + (filter == null ? "" : ", filter=" + filter.getFilterName() + "/" + filterElementSize)
+        + ")";
   }
 }
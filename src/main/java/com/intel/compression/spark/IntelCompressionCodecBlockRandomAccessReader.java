@@ -0,0 +1,441 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.spark;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+import com.intel.compression.util.BlockFilter;
+import com.intel.compression.util.DecompressedBlockCache;
+import com.intel.compression.util.IntelCompressionCodecHeader;
+import com.intel.compression.util.buffer.BufferAllocator;
+import com.intel.compression.util.buffer.CachedBufferAllocator;
+
+/**
+ * Random access to the uncompressed data of a file or channel written with
+ * {@link IntelCompressionCodecBlockOutputStream}, in either block framing.
+ * The frame headers of all blocks are read when the reader is opened, each
+ * read then decompresses only the blocks it spans, looking them up in the
+ * optional cache of decompressed blocks first. This class is not thread-safe.
+ */
+public final class IntelCompressionCodecBlockRandomAccessReader implements Closeable {
+
+  private final SeekableByteChannel channel;
+  private final String source;
+  private final boolean useNativeBuffer;
+  private final DecompressedBlockCache blockCache;
+  private final List<Block> blocks = new ArrayList<Block>();
+  private long length;
+  private long context;
+  private int compressedBufferSize;
+  private int uncompressedBufferSize;
+  private BufferAllocator compressedBufferAllocator;
+  private BufferAllocator uncompressedBufferAllocator;
+  private BufferAllocator filterBufferAllocator;
+  private ByteBuffer compressedBuffer;
+  private ByteBuffer uncompressedBuffer;
+  private ByteBuffer filterBuffer;
+  private Block currentBlock;
+
+  /**
+   * Open the file, blocks are cached by the absolute path, length and
+   * modification time of the file.
+   *
+   * @param blockCache the cache of decompressed blocks, null for none
+   */
+  public IntelCompressionCodecBlockRandomAccessReader(Path path, boolean useNativeBuffer,
+      DecompressedBlockCache blockCache) throws IOException {
+    this(FileChannel.open(path, StandardOpenOption.READ),
+        path.toAbsolutePath() + "@" + Files.size(path) + "@" + Files.getLastModifiedTime(path).toMillis(),
+        useNativeBuffer, blockCache);
+  }
+
+  /**
+   * Read the blocks of the channel from position 0, the reader closes the
+   * channel when it is closed.
+   *
+   * @param source     the identity of the content of the channel the blocks are
+   *                   cached by, which must change whenever the content does
+   * @param blockCache the cache of decompressed blocks, null for none
+   */
+  public IntelCompressionCodecBlockRandomAccessReader(SeekableByteChannel channel, String source,
+      boolean useNativeBuffer, DecompressedBlockCache blockCache) throws IOException {
+    if (blockCache != null && source == null) {
+      throw new IllegalArgumentException("Caching blocks needs the source of the channel");
+    }
+    this.channel = channel;
+    this.source = source;
+    this.useNativeBuffer = useNativeBuffer;
+    this.blockCache = blockCache;
+    try {
+      scanBlocks();
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    context = IntelCompressionCodecJNI.createDecompressContext();
+  }
+
+  /**
+   * @return the number of uncompressed bytes
+   */
+  public long length() {
+    return length;
+  }
+
+  public int getBlockCount() {
+    return blocks.size();
+  }
+
+  /**
+   * Read the uncompressed bytes from the position into the remaining space of
+   * the buffer, heap or direct.
+   *
+   * @return the number of bytes read, -1 if the position is at the end
+   */
+  public int read(long position, ByteBuffer dst) throws IOException {
+    checkReader();
+    if (position < 0) {
+      throw new IllegalArgumentException("Negative position " + position);
+    }
+    if (position >= length) {
+      return -1;
+    }
+    int read = 0;
+    int index = blockIndex(position);
+    while (dst.hasRemaining() && index < blocks.size()) {
+      final Block block = blocks.get(index);
+      final Block stored = block.ref != null ? block.ref : block;
+      loadBlock(stored);
+      final int off = (int) (position - block.uncompressedStart);
+      final int len = Math.min(dst.remaining(), block.uncompressedLength - off);
+      ByteBuffer src = uncompressedBuffer.duplicate();
+      src.limit(off + len);
+      src.position(off);
+      dst.put(src);
+      read += len;
+      position += len;
+      index++;
+    }
+    return read;
+  }
+
+  public int read(long position, byte[] b, int off, int len) throws IOException {
+    return read(position, ByteBuffer.wrap(b, off, len));
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (context == 0) {
+      return;
+    }
+    try {
+      channel.close();
+    } finally {
+      release();
+      IntelCompressionCodecJNI.destroyContext(context);
+      context = 0;
+    }
+  }
+
+  private void checkReader() {
+    if (context == 0) {
+      throw new IllegalStateException("This reader is already closed");
+    }
+  }
+
+  /**
+   * @return the index of the last block starting at or before the position
+   */
+  private int blockIndex(long position) {
+    int low = 0;
+    int high = blocks.size() - 1;
+    while (low < high) {
+      final int mid = (low + high + 1) >>> 1;
+      if (blocks.get(mid).uncompressedStart <= position) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Index the blocks from their frame headers, reading only the native header
+   * of v1 blocks and seeking past every payload.
+   */
+  private void scanBlocks() throws IOException {
+    final long size = channel.size();
+    final ChannelInputStream in = new ChannelInputStream(channel);
+    final BlockHeaderReader header = new BlockHeaderReader();
+    final List<Block> stored = new ArrayList<Block>();
+    final byte[] nativeHeader = new byte[IntelCompressionCodecHeader.HEADER_LENGTH];
+    while (header.next(in)) {
+      final int distance = header.getRefDistance();
+      Block ref = null;
+      int uncompressedLength = header.getUncompressedLength();
+      if (distance > 0) {
+        if (distance > stored.size()
+            || stored.get(stored.size() - distance).uncompressedLength != uncompressedLength) {
+          throw new IOException("Input Stream is corrupted, malformed block reference");
+        }
+        ref = stored.get(stored.size() - distance);
+      } else if (header.getPayloadOffset() + header.getPayloadLength() > size) {
+        throw new EOFException("Unexpected end of block in input stream");
+      } else if (uncompressedLength < 0) {
+        if (header.getPayloadLength() < IntelCompressionCodecHeader.HEADER_LENGTH) {
+          throw new IOException("Input Stream is corrupted, block of "
+              + header.getPayloadLength() + " bytes");
+        }
+        in.readFully(nativeHeader);
+        in.skip(header.getPayloadLength() - IntelCompressionCodecHeader.HEADER_LENGTH);
+        uncompressedLength = IntelCompressionCodecHeader.getUncompressedSize(
+            ByteBuffer.wrap(nativeHeader), 0);
+      } else {
+        in.skip(header.getPayloadLength());
+      }
+      if (uncompressedLength < 0) {
+        throw new IOException("Input Stream is corrupted, negative uncompressed length");
+      }
+      final Block block = new Block(header, length, uncompressedLength, ref);
+      blocks.add(block);
+      if (ref == null) {
+        stored.add(block);
+        compressedBufferSize = Math.max(compressedBufferSize, block.compressedLength());
+        uncompressedBufferSize = Math.max(uncompressedBufferSize, uncompressedLength);
+      }
+      length += uncompressedLength;
+    }
+  }
+
+  /**
+   * Decompress the block into the uncompressed buffer unless it is there.
+   */
+  private void loadBlock(Block block) throws IOException {
+    if (block == currentBlock) {
+      return;
+    }
+    ensureBuffers();
+    currentBlock = null;
+    if (blockCache != null
+        && blockCache.get(source, block.offset, uncompressedBuffer, 0) == block.uncompressedLength) {
+      currentBlock = block;
+      return;
+    }
+
+    final int dataOffset = block.codec < 0 ? 0 : IntelCompressionCodecHeader.HEADER_LENGTH;
+    compressedBuffer.clear();
+    compressedBuffer.position(dataOffset);
+    compressedBuffer.limit(dataOffset + block.payloadLength);
+    channel.position(block.payloadOffset);
+    while (compressedBuffer.hasRemaining()) {
+      if (channel.read(compressedBuffer) < 0) {
+        throw new EOFException("Unexpected end of block in input stream");
+      }
+    }
+    final int compressedLength = block.compressedLength();
+    if (block.codec >= 0) {
+      IntelCompressionCodecHeader.write(compressedBuffer, 0, block.codec, compressedLength,
+          block.uncompressedLength);
+    }
+
+    final BlockFilter filter = block.filterByte == 0
+        ? null : IntelCompressionCodecBlockFrame.filterOf(block.filterByte);
+    final ByteBuffer target = filter == null ? uncompressedBuffer : filterBuffer;
+    final int uncompressedLength;
+    try {
+      uncompressedLength = IntelCompressionCodecJNI.decompress(context,
+          compressedBuffer, 0, compressedLength, target, 0, uncompressedBufferSize);
+    } catch (IntelCompressionCodecException e) {
+      throw new IOException("Input Stream is corrupted, can't decompress", e);
+    }
+    if (uncompressedLength != block.uncompressedLength) {
+      throw new IOException("Input Stream is corrupted, block of " + uncompressedLength
+          + " bytes instead of " + block.uncompressedLength);
+    }
+    if (filter != null) {
+      filter.reverse(IntelCompressionCodecBlockFrame.elementSizeOf(block.filterByte),
+          filterBuffer, 0, uncompressedBuffer, 0, uncompressedLength);
+    }
+    if (blockCache != null) {
+      blockCache.put(source, block.offset, uncompressedBuffer, 0, uncompressedLength);
+    }
+    currentBlock = block;
+  }
+
+  private void ensureBuffers() {
+    if (uncompressedBuffer != null) {
+      return;
+    }
+    compressedBufferAllocator = CachedBufferAllocator.getBufferAllocatorFactory()
+        .getBufferAllocator(compressedBufferSize);
+    compressedBuffer = compressedBufferAllocator
+        .allocateDirectByteBuffer(useNativeBuffer, compressedBufferSize, 64);
+    uncompressedBufferAllocator = CachedBufferAllocator.getBufferAllocatorFactory()
+        .getBufferAllocator(uncompressedBufferSize);
+    uncompressedBuffer = uncompressedBufferAllocator
+        .allocateDirectByteBuffer(useNativeBuffer, uncompressedBufferSize, 64);
+    uncompressedBuffer.clear();
+    for (Block block : blocks) {
+      if (block.filterByte != 0) {
+        filterBufferAllocator = uncompressedBufferAllocator;
+        filterBuffer = filterBufferAllocator
+            .allocateDirectByteBuffer(useNativeBuffer, uncompressedBufferSize, 64);
+        filterBuffer.clear();
+        break;
+      }
+    }
+  }
+
+  private void release() {
+    if (compressedBuffer != null) {
+      compressedBufferAllocator.releaseDirectByteBuffer(compressedBuffer);
+      compressedBuffer = null;
+    }
+    if (uncompressedBuffer != null) {
+      uncompressedBufferAllocator.releaseDirectByteBuffer(uncompressedBuffer);
+      uncompressedBuffer = null;
+    }
+    if (filterBuffer != null) {
+      filterBufferAllocator.releaseDirectByteBuffer(filterBuffer);
+      filterBuffer = null;
+    }
+    currentBlock = null;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(source=" + source + ", length=" + length
+        + ", blocks=" + blocks.size() + ")";
+  }
+
+  /**
+   * A block of the stream, block references point to the block they repeat.
+   */
+  private static final class Block {
+    final long offset;
+    final long payloadOffset;
+    final int payloadLength;
+    final int codec;
+    final int filterByte;
+    final long uncompressedStart;
+    final int uncompressedLength;
+    final Block ref;
+
+    Block(BlockHeaderReader header, long uncompressedStart, int uncompressedLength, Block ref) {
+      this.offset = header.getBlockOffset();
+      this.payloadOffset = header.getPayloadOffset();
+      this.payloadLength = header.getPayloadLength();
+      this.codec = header.getCodec();
+      this.filterByte = header.getFilterByte();
+      this.uncompressedStart = uncompressedStart;
+      this.uncompressedLength = uncompressedLength;
+      this.ref = ref;
+    }
+
+    /** @return the length of the block in the native block format */
+    int compressedLength() {
+      return codec < 0 ? payloadLength : IntelCompressionCodecHeader.HEADER_LENGTH + payloadLength;
+    }
+  }
+
+  /**
+   * Buffered reads of the frame headers, skips seek the channel.
+   */
+  private static final class ChannelInputStream extends InputStream {
+    private final SeekableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private long position;
+
+    ChannelInputStream(SeekableByteChannel channel) {
+      this.channel = channel;
+      buffer.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!buffer.hasRemaining() && fill() < 0) {
+        return -1;
+      }
+      return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining() && fill() < 0) {
+        return -1;
+      }
+      len = Math.min(len, buffer.remaining());
+      buffer.get(b, off, len);
+      return len;
+    }
+
+    void readFully(byte[] b) throws IOException {
+      int read = 0;
+      while (read < b.length) {
+        final int r = read(b, read, b.length - read);
+        if (r < 0) {
+          throw new EOFException("Unexpected end of block in input stream");
+        }
+        read += r;
+      }
+    }
+
+    @Override
+    public long skip(long n) {
+      final int buffered = (int) Math.min(buffer.remaining(), n);
+      buffer.position(buffer.position() + buffered);
+      if (n > buffered) {
+        position += n - buffered;
+        buffer.clear();
+        buffer.flip();
+      }
+      return n;
+    }
+
+    private int fill() throws IOException {
+      buffer.clear();
+      channel.position(position);
+      final int r;
+      try {
+        r = channel.read(buffer);
+      } finally {
+        buffer.flip();
+      }
+      if (r > 0) {
+        position += r;
+      }
+      return r;
+    }
+  }
+}
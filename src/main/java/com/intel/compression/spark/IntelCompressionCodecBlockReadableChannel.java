@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.spark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * {@link ReadableByteChannel} decompressing data written with
+ * {@link IntelCompressionCodecBlockOutputStream} or
+ * {@link IntelCompressionCodecBlockWritableChannel}, in either block framing.
+ * Compressed blocks are read from the underlying channel straight into direct
+ * memory. This class is not thread-safe.
+ * @see IntelCompressionCodecBlockWritableChannel
+ */
+public final class IntelCompressionCodecBlockReadableChannel implements ReadableByteChannel {
+
+  private final IntelCompressionCodecBlockInputStream in;
+  private boolean open = true;
+
+  /**
+   * @param channel     the {@link ReadableByteChannel} to poll
+   * @param blockSize   the maximum number of bytes to try to compress at once,
+   *                    must be >= 32k
+   * @throws java.nio.channels.IllegalBlockingModeException if the channel is
+   *         in non-blocking mode
+   */
+  public IntelCompressionCodecBlockReadableChannel(ReadableByteChannel channel, int blockSize,
+      boolean useNativeBuffer) {
+    this(channel, blockSize, useNativeBuffer, 0, false);
+  }
+
+  /**
+   * @see IntelCompressionCodecBlockInputStream#IntelCompressionCodecBlockInputStream(
+   *      java.io.InputStream, int, boolean, int, boolean)
+   */
+  public IntelCompressionCodecBlockReadableChannel(ReadableByteChannel channel, int blockSize,
+      boolean useNativeBuffer, int smallBlockThreshold, boolean borrowBuffers) {
+    this.in = new IntelCompressionCodecBlockInputStream(channel, blockSize, useNativeBuffer,
+        smallBlockThreshold, borrowBuffers, 0, null, null);
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+    return in.read(dst);
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!open) {
+      return;
+    }
+    open = false;
+    in.close();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(" + in + ")";
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.spark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+import com.intel.compression.util.AdaptiveLevelController;
+
+/**
+ * {@link WritableByteChannel} compressing data into the blocks of
+ * {@link IntelCompressionCodecBlockOutputStream}. Compressed blocks are written
+ * to the underlying channel straight from direct memory. This class is not
+ * thread-safe.
+ * @see IntelCompressionCodecBlockReadableChannel
+ */
+public final class IntelCompressionCodecBlockWritableChannel implements WritableByteChannel {
+
+  private final IntelCompressionCodecBlockOutputStream out;
+  private boolean open = true;
+
+  /**
+   * @param channel     the {@link WritableByteChannel} to feed
+   * @param codec       the compression codec used to compress data
+   * @param level       the compression codec level
+   * @param blockSize   the maximum number of bytes to try to compress at once,
+   *                    must be >= 32 K
+   * @throws java.nio.channels.IllegalBlockingModeException if the channel is
+   *         in non-blocking mode
+   */
+  public IntelCompressionCodecBlockWritableChannel(WritableByteChannel channel, String codec,
+          int level, int blockSize, boolean useNativeBuffer) {
+    this(channel, codec, level, blockSize, useNativeBuffer, null, 0, false);
+  }
+
+  /**
+   * @see IntelCompressionCodecBlockOutputStream#IntelCompressionCodecBlockOutputStream(
+   *      java.io.OutputStream, String, int, int, boolean, AdaptiveLevelController, int, boolean)
+   */
+  public IntelCompressionCodecBlockWritableChannel(WritableByteChannel channel, String codec,
+          int level, int blockSize, boolean useNativeBuffer,
+          AdaptiveLevelController levelController, int smallBlockThreshold,
+          boolean compactFrame) {
+    this.out = new IntelCompressionCodecBlockOutputStream(channel, codec, level, blockSize,
+        useNativeBuffer, levelController, smallBlockThreshold, compactFrame, null, 0, 0, null);
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+    return out.write(src);
+  }
+
+  /**
+   * Compress and write the buffered data without closing the channel.
+   */
+  public void finish() throws IOException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+    out.finish();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!open) {
+      return;
+    }
+    open = false;
+    out.close();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(" + out + ")";
+  }
+}
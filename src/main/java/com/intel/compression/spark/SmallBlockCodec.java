@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.spark;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.intel.compression.util.IntelCompressionCodecHeader.*;
+
+/**
+ * Pure Java codec for blocks too small to be worth a JNI call and the native
+ * codec setup. Blocks are encoded in the LZ4 block format, or stored raw when
+ * that does not pay off, behind the same header the native codecs write, so
+ * the native decompressor can read them as well. This class is not thread-safe.
+ */
+final class SmallBlockCodec {
+
+  private static final int MIN_MATCH = 4;
+  private static final int LAST_LITERALS = 5;
+  private static final int MF_LIMIT = 12;
+  private static final int MAX_DISTANCE = 0xFFFF;
+  private static final int HASH_LOG = 12;
+  private static final int RUN_MASK = 0x0F;
+
+  private final int[] hashTable = new int[1 << HASH_LOG];
+
+  /**
+   * Compress a block into the native block format.
+   *
+   * @return the compressed length including the header
+   */
+  int compress(ByteBuffer src, int srcOff, int srcLen,
+      ByteBuffer dst, int dstOff, int maxDstLen) {
+    if (maxDstLen < HEADER_LENGTH + srcLen) {
+      throw new IntelCompressionCodecException("Output buffer of " + maxDstLen
+          + " bytes can't hold a block of " + srcLen + " bytes");
+    }
+    // anything not smaller than the raw block is stored raw
+    int compressedLen = compressLZ4(src, srcOff, srcLen,
+        dst, dstOff + HEADER_LENGTH, srcLen - 1);
+    if (compressedLen < 0) {
+      for (int i = 0; i < srcLen; i++) {
+        dst.put(dstOff + HEADER_LENGTH + i, src.get(srcOff + i));
+      }
+      write(dst, dstOff, CODEC_RAW, HEADER_LENGTH + srcLen, srcLen);
+      return HEADER_LENGTH + srcLen;
+    }
+    write(dst, dstOff, CODEC_LZ4_IPP, HEADER_LENGTH + compressedLen, srcLen);
+    return HEADER_LENGTH + compressedLen;
+  }
+
+  /**
+   * @return whether the block at the offset can be decompressed by this codec
+   */
+  static boolean canDecompress(ByteBuffer src, int srcOff, int srcLen) {
+    if (srcLen < HEADER_LENGTH) {
+      return false;
+    }
+    int codec = getCodec(src, srcOff);
+    return (codec == CODEC_RAW || codec == CODEC_LZ4_IPP || codec == CODEC_LZ4_HC_IPP)
+        && getMagic(src, srcOff) == magic(codec);
+  }
+
+  /**
+   * Decompress a raw or LZ4 block written by this codec or the native codec.
+   *
+   * @return the uncompressed length
+   */
+  int decompress(ByteBuffer src, int srcOff, int srcLen,
+      ByteBuffer dst, int dstOff, int maxDstLen) {
+    final int compressedSize = getCompressedSize(src, srcOff);
+    final int uncompressedSize = getUncompressedSize(src, srcOff);
+    if (compressedSize < HEADER_LENGTH || compressedSize > srcLen
+        || uncompressedSize < 0 || uncompressedSize > maxDstLen) {
+      throw new IntelCompressionCodecException("Corrupted block header");
+    }
+    if (getCodec(src, srcOff) == CODEC_RAW) {
+      if (compressedSize - HEADER_LENGTH != uncompressedSize) {
+        throw new IntelCompressionCodecException("Corrupted raw block");
+      }
+      for (int i = 0; i < uncompressedSize; i++) {
+        dst.put(dstOff + i, src.get(srcOff + HEADER_LENGTH + i));
+      }
+      return uncompressedSize;
+    }
+    int len = decompressLZ4(src, srcOff + HEADER_LENGTH, compressedSize - HEADER_LENGTH,
+        dst, dstOff, uncompressedSize);
+    if (len != uncompressedSize) {
+      throw new IntelCompressionCodecException("Wrong uncompressed size for LZ4 block, should "
+          + uncompressedSize + " but after decompress is " + len);
+    }
+    return len;
+  }
+
+  private static int hash(int sequence) {
+    return (sequence * -1640531535) >>> (32 - HASH_LOG);
+  }
+
+  /**
+   * Greedy single-pass LZ4 block encoder.
+   *
+   * @return the encoded length, or -1 if it would exceed maxDstLen
+   */
+  private int compressLZ4(ByteBuffer src, int srcOff, int srcLen,
+      ByteBuffer dst, int dstOff, int maxDstLen) {
+    final int srcEnd = srcOff + srcLen;
+    final int matchLimit = srcEnd - LAST_LITERALS;
+    final int mfLimit = srcEnd - MF_LIMIT;
+    final int dstEnd = dstOff + maxDstLen;
+    int anchor = srcOff;
+    int ip = srcOff;
+    int op = dstOff;
+
+    Arrays.fill(hashTable, -1);
+    while (ip < mfLimit) {
+      final int sequence = src.getInt(ip);
+      final int h = hash(sequence);
+      final int ref = hashTable[h];
+      hashTable[h] = ip;
+      if (ref < 0 || ip - ref > MAX_DISTANCE || src.getInt(ref) != sequence) {
+        ip++;
+        continue;
+      }
+
+      int matchLen = MIN_MATCH;
+      while (ip + matchLen < matchLimit && src.get(ref + matchLen) == src.get(ip + matchLen)) {
+        matchLen++;
+      }
+      op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLen, dst, op, dstEnd);
+      if (op < 0) {
+        return -1;
+      }
+      ip += matchLen;
+      anchor = ip;
+    }
+    op = writeSequence(src, anchor, srcEnd - anchor, 0, 0, dst, op, dstEnd);
+    return op < 0 ? -1 : op - dstOff;
+  }
+
+  /**
+   * Write one sequence, a match length of 0 writes the trailing literals.
+   *
+   * @return the new output offset, or -1 if the sequence doesn't fit
+   */
+  private static int writeSequence(ByteBuffer src, int literalOff, int literalLen,
+      int distance, int matchLen, ByteBuffer dst, int op, int dstEnd) {
+    final int extraMatchLen = matchLen - MIN_MATCH;
+    final int required = 1 + literalLen + literalLen / 255 + 1
+        + (matchLen == 0 ? 0 : 2 + extraMatchLen / 255 + 1);
+    if (op + required > dstEnd) {
+      return -1;
+    }
+
+    final int tokenOff = op++;
+    int token;
+    if (literalLen >= RUN_MASK) {
+      token = RUN_MASK << 4;
+      op = writeLength(dst, op, literalLen - RUN_MASK);
+    } else {
+      token = literalLen << 4;
+    }
+    for (int i = 0; i < literalLen; i++) {
+      dst.put(op++, src.get(literalOff + i));
+    }
+    if (matchLen > 0) {
+      dst.put(op++, (byte) distance);
+      dst.put(op++, (byte) (distance >>> 8));
+      if (extraMatchLen >= RUN_MASK) {
+        token |= RUN_MASK;
+        op = writeLength(dst, op, extraMatchLen - RUN_MASK);
+      } else {
+        token |= extraMatchLen;
+      }
+    }
+    dst.put(tokenOff, (byte) token);
+    return op;
+  }
+
+  private static int writeLength(ByteBuffer dst, int op, int len) {
+    while (len >= 255) {
+      dst.put(op++, (byte) 255);
+      len -= 255;
+    }
+    dst.put(op++, (byte) len);
+    return op;
+  }
+
+  private static int decompressLZ4(ByteBuffer src, int srcOff, int srcLen,
+      ByteBuffer dst, int dstOff, int maxDstLen) {
+    final int srcEnd = srcOff + srcLen;
+    final int dstEnd = dstOff + maxDstLen;
+    int ip = srcOff;
+    int op = dstOff;
+
+    while (ip < srcEnd) {
+      final int token = src.get(ip++) & 0xFF;
+      int literalLen = token >>> 4;
+      if (literalLen == RUN_MASK) {
+        int b;
+        do {
+          if (ip >= srcEnd) {
+            throw new IntelCompressionCodecException("Malformed LZ4 block");
+          }
+          b = src.get(ip++) & 0xFF;
+          literalLen += b;
+        } while (b == 255);
+      }
+      if (literalLen > srcEnd - ip || literalLen > dstEnd - op) {
+        throw new IntelCompressionCodecException("Malformed LZ4 block");
+      }
+      for (int i = 0; i < literalLen; i++) {
+        dst.put(op++, src.get(ip++));
+      }
+      if (ip == srcEnd) {
+        break;
+      }
+
+      if (srcEnd - ip < 2) {
+        throw new IntelCompressionCodecException("Malformed LZ4 block");
+      }
+      final int distance = (src.get(ip) & 0xFF) | ((src.get(ip + 1) & 0xFF) << 8);
+      ip += 2;
+      int matchLen = token & RUN_MASK;
+      if (matchLen == RUN_MASK) {
+        int b;
+        do {
+          if (ip >= srcEnd) {
+            throw new IntelCompressionCodecException("Malformed LZ4 block");
+          }
+          b = src.get(ip++) & 0xFF;
+          matchLen += b;
+        } while (b == 255);
+      }
+      matchLen += MIN_MATCH;
+      if (distance == 0 || distance > op - dstOff || matchLen > dstEnd - op) {
+        throw new IntelCompressionCodecException("Malformed LZ4 block");
+      }
+      for (int i = 0; i < matchLen; i++, op++) {
+        dst.put(op, dst.get(op - distance));
+      }
+    }
+    return op - dstOff;
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.util;
+
+import java.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Feedback controller that moves the compression level within configured bounds.
+ * <p>
+ * Writers report the time spent in native compress and the time blocked writing
+ * the compressed block downstream. When writing dominates, the disk or network
+ * is the bottleneck and the level is raised to trade CPU for fewer bytes; when
+ * compressing dominates, the level is lowered. The level is not needed for
+ * decompression, so readers are unaffected. This class is thread-safe, one
+ * instance can be shared by all the streams of a process.
+ */
+public class AdaptiveLevelController {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AdaptiveLevelController.class);
+
+  /** Number of blocks observed before the level is reconsidered. */
+  static final int WINDOW_BLOCKS = 8;
+  /** Write time above this multiple of compress time raises the level. */
+  static final double IO_BOUND_RATIO = 2.0;
+  /** Write time below this multiple of compress time lowers the level. */
+  static final double CPU_BOUND_RATIO = 0.5;
+
+  private static final Map<String, AdaptiveLevelController> processControllers =
+      new HashMap<String, AdaptiveLevelController>();
+
+  private final String codec;
+  private final int minLevel;
+  private final int maxLevel;
+  private final int strongerStep;
+  private int level;
+  private int blocks;
+  private long compressNanos;
+  private long writeNanos;
+
+  /**
+   * @param codec     the compression codec the level applies to
+   * @param level     the initial compression level
+   * @param minLevel  the lowest level the controller may choose
+   * @param maxLevel  the highest level the controller may choose
+   */
+  public AdaptiveLevelController(String codec, int level, int minLevel, int maxLevel) {
+    if (minLevel > maxLevel) {
+      throw new IllegalArgumentException("Adaptive level bounds for codec " + codec
+          + " are inverted: " + minLevel + " > " + maxLevel);
+    }
+    this.codec = codec;
+    this.minLevel = minLevel;
+    this.maxLevel = maxLevel;
+    // lz4-ipp passes the level as LZ4 acceleration, a lower value compresses harder
+    this.strongerStep = codec.startsWith("lz4-ipp") ? -1 : 1;
+    this.level = Math.max(minLevel, Math.min(maxLevel, level));
+  }
+
+  /**
+   * Return the controller shared by every stream of this process using the codec,
+   * creating it with the given settings on first use.
+   */
+  public static synchronized AdaptiveLevelController getProcessController(String codec,
+      int level, int minLevel, int maxLevel) {
+    AdaptiveLevelController controller = processControllers.get(codec);
+    if (controller == null) {
+      controller = new AdaptiveLevelController(codec, level, minLevel, maxLevel);
+      processControllers.put(codec, controller);
+    }
+    return controller;
+  }
+
+  /**
+   * Default lower bound of the level for the codec.
+   */
+  public static int defaultMinLevel(String codec) {
+    if (codec.startsWith("igzip")) {
+      return 0;
+    }
+    return 1;
+  }
+
+  /**
+   * Default upper bound of the level for the codec.
+   */
+  public static int defaultMaxLevel(String codec) {
+    if (codec.startsWith("lz4-hc-ipp")) {
+      return 12;
+    } else if (codec.startsWith("lz4-ipp")) {
+      return 16;
+    } else if (codec.startsWith("igzip")) {
+      return 1;
+    }
+    return 9;
+  }
+
+  /**
+   * @return the level writers should use for their next block
+   */
+  public synchronized int getLevel() {
+    return level;
+  }
+
+  /**
+   * Record one compressed block and adjust the level once enough blocks are seen.
+   *
+   * @param blockCompressNanos  time spent compressing the block
+   * @param blockWriteNanos     time blocked writing the block downstream
+   * @return the level writers should use for their next block
+   */
+  public synchronized int update(long blockCompressNanos, long blockWriteNanos) {
+    compressNanos += blockCompressNanos;
+    writeNanos += blockWriteNanos;
+    if (++blocks < WINDOW_BLOCKS) {
+      return level;
+    }
+
+    int next = level;
+    if (writeNanos > compressNanos * IO_BOUND_RATIO) {
+      next = level + strongerStep;
+    } else if (writeNanos < compressNanos * CPU_BOUND_RATIO) {
+      next = level - strongerStep;
+    }
+    next = Math.max(minLevel, Math.min(maxLevel, next));
+    if (next != level) {
+      LOG.debug("Adjust " + codec + " level from " + level + " to " + next
+          + " (compress " + compressNanos + "ns, write " + writeNanos + "ns)");
+      level = next;
+    }
+    blocks = 0;
+    compressNanos = writeNanos = 0L;
+    return level;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(codec=" + codec + ", level=" + getLevel()
+        + ", minLevel=" + minLevel + ", maxLevel=" + maxLevel + ")";
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.util;
+
+import java.nio.ByteBuffer;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+
+/**
+ * Pre-filters transforming blocks of fixed-width elements, such as the longs
+ * and doubles of serialized rows, so the codec finds more matches. The filters
+ * run in the native library over direct buffers, trailing bytes which don't
+ * fill an element are left as they are.
+ */
+public enum BlockFilter {
+  /** Group the n-th byte of every element together. */
+  SHUFFLE(1, "shuffle"),
+  /** Group the n-th bit of every element together. */
+  BITSHUFFLE(2, "bitshuffle"),
+  /** Replace every byte by its difference to the byte one element before. */
+  DELTA(3, "delta");
+
+  public static final int MAX_ELEMENT_SIZE = 16;
+
+  private final int id;
+  private final String filterName;
+
+  BlockFilter(int id, String filterName) {
+    this.id = id;
+    this.filterName = filterName;
+  }
+
+  /** @return the id recorded in the block frame, must match the native filter ids */
+  public int getId() {
+    return id;
+  }
+
+  public String getFilterName() {
+    return filterName;
+  }
+
+  /**
+   * @return the filter of the name, null for "none" or an empty name
+   * @throws IllegalArgumentException if there is no such filter
+   */
+  public static BlockFilter forName(String name) {
+    if (name == null || name.isEmpty() || name.equalsIgnoreCase("none")) {
+      return null;
+    }
+    for (BlockFilter filter : values()) {
+      if (filter.filterName.equalsIgnoreCase(name)) {
+        return filter;
+      }
+    }
+    throw new IllegalArgumentException("Unknown block filter " + name);
+  }
+
+  /**
+   * @return the filter of the id, null if there is none
+   */
+  public static BlockFilter forId(int id) {
+    for (BlockFilter filter : values()) {
+      if (filter.id == id) {
+        return filter;
+      }
+    }
+    return null;
+  }
+
+  public static void checkElementSize(int elementSize) {
+    if (elementSize < 1 || elementSize > MAX_ELEMENT_SIZE) {
+      throw new IllegalArgumentException("Filter element size " + elementSize
+          + " is not between 1 and " + MAX_ELEMENT_SIZE);
+    }
+  }
+
+  /**
+   * Filter len bytes of the direct buffer src into the direct buffer dst.
+   */
+  public void apply(int elementSize, ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff,
+      int len) {
+    checkElementSize(elementSize);
+    checkRange(src, srcOff, dst, dstOff, len);
+    IntelCompressionCodecJNI.applyFilter(id, elementSize, src, srcOff, dst, dstOff, len);
+  }
+
+  /**
+   * Restore len bytes filtered with the same element size from the direct
+   * buffer src into the direct buffer dst.
+   */
+  public void reverse(int elementSize, ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff,
+      int len) {
+    checkElementSize(elementSize);
+    checkRange(src, srcOff, dst, dstOff, len);
+    IntelCompressionCodecJNI.reverseFilter(id, elementSize, src, srcOff, dst, dstOff, len);
+  }
+
+  private static void checkRange(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int len) {
+    if (!src.isDirect() || !dst.isDirect()) {
+      throw new IllegalArgumentException("Filters need direct buffers");
+    }
+    if (len < 0 || srcOff < 0 || dstOff < 0
+        || srcOff > src.capacity() - len || dstOff > dst.capacity() - len) {
+      throw new IndexOutOfBoundsException("Filter of " + len + " bytes from offset " + srcOff
+          + " to offset " + dstOff + " exceeds the buffers");
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.util;
+
+/**
+ * Tuning parameters of the codecs beyond the level, set on the native context
+ * when it is created. A parameter applies to one codec only, and a parameter
+ * left unset keeps the default of the library of the codec.
+ */
+public enum CodecParameter {
+  /**
+   * LZ4 acceleration, higher is faster with a lower ratio. lz4-ipp otherwise
+   * passes the level as acceleration, this takes precedence over it.
+   */
+  LZ4_ACCELERATION(0, "lz4-ipp", "acceleration", 1, 65537),
+  /**
+   * Log2 of the largest match distance of zstd, needs zstd 1.4.0 or later. It
+   * stops at 27, the largest window zstd decoders accept by default.
+   */
+  ZSTD_WINDOW_LOG(1, "zstd", "windowLog", 10, 27),
+  /** zstd strategy from 1 (fast) to 9 (btultra2), needs zstd 1.4.0 or later. */
+  ZSTD_STRATEGY(2, "zstd", "strategy", 1, 9),
+  /** zstd long-distance matching, 1 or true to enable, needs zstd 1.4.0 or later. */
+  ZSTD_LONG_DISTANCE_MATCHING(3, "zstd", "longDistanceMatching", 0, 1),
+  /** Memory of the zlib compression state, from 1 (least) to 9. */
+  ZLIB_MEM_LEVEL(4, "zlib-ipp", "memLevel", 1, 9),
+  /** zlib strategy: 0 default, 1 filtered, 2 Huffman only, 3 RLE, 4 fixed. */
+  ZLIB_STRATEGY(5, "zlib-ipp", "strategy", 0, 4),
+  /** Bytes of the isal level buffer, larger buffers compress better. */
+  IGZIP_LEVEL_BUFFER_SIZE(6, "igzip", "levelBufferSize", 1, Integer.MAX_VALUE);
+
+  private final int id;
+  private final String codec;
+  private final String parameterName;
+  private final int min;
+  private final int max;
+
+  CodecParameter(int id, String codec, String parameterName, int min, int max) {
+    this.id = id;
+    this.codec = codec;
+    this.parameterName = parameterName;
+    this.min = min;
+    this.max = max;
+  }
+
+  /** @return the index of the parameter in the native context */
+  public int getId() {
+    return id;
+  }
+
+  /** @return the codec the parameter applies to */
+  public String getCodec() {
+    return codec;
+  }
+
+  public String getParameterName() {
+    return parameterName;
+  }
+
+  public int getMin() {
+    return min;
+  }
+
+  public int getMax() {
+    return max;
+  }
+
+  /**
+   * @return whether the parameter applies to the codec, named the way streams
+   *         are configured with
+   */
+  public boolean appliesTo(String codec) {
+    return codec.startsWith(this.codec);
+  }
+
+  /**
+   * @return the parameter of the codec with the name
+   * @throws IllegalArgumentException if the codec has no such parameter
+   */
+  public static CodecParameter forName(String codec, String name) {
+    StringBuilder supported = new StringBuilder();
+    for (CodecParameter parameter : values()) {
+      if (parameter.appliesTo(codec)) {
+        if (parameter.parameterName.equals(name)) {
+          return parameter;
+        }
+        supported.append(supported.length() == 0 ? "" : ", ").append(parameter.parameterName);
+      }
+    }
+    throw new IllegalArgumentException("Unsupported parameter " + name + " for codec " + codec
+        + (supported.length() == 0 ? ", it has none" : ", supported are " + supported));
+  }
+
+  /**
+   * Parse the value of the parameter, a boolean for a parameter which is
+   * either 0 or 1.
+   *
+   * @throws IllegalArgumentException if the value is malformed or out of range
+   */
+  public int parse(String value) {
+    value = value.trim();
+    if (min == 0 && max == 1
+        && (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false"))) {
+      return Boolean.parseBoolean(value) ? 1 : 0;
+    }
+    final int parsed;
+    try {
+      parsed = Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Malformed value " + value + " of parameter "
+          + parameterName + " for codec " + codec);
+    }
+    checkValue(parsed);
+    return parsed;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the value is out of range
+   */
+  public void checkValue(int value) {
+    if (value < min || value > max) {
+      throw new IllegalArgumentException("Parameter " + parameterName + " for codec " + codec
+          + " is " + value + ", it should be between " + min + " and " + max);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.util;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+
+/**
+ * The tuning parameters of a codec, see {@link CodecParameter}, validated as
+ * they are set so a misconfigured parameter is reported rather than ignored.
+ * Parameters are configured with keys ending in the codec and the parameter
+ * name, such as {@code spark.io.compression.codec.intel.param.zstd.windowLog}.
+ * This class is not thread-safe.
+ */
+public final class CodecParameters {
+
+  private final String codec;
+  private final int[] values = new int[CodecParameter.values().length];
+
+  /**
+   * @param codec the codec the parameters apply to
+   */
+  public CodecParameters(String codec) {
+    this.codec = codec;
+  }
+
+  /**
+   * @param codec      the codec the parameters apply to
+   * @param properties the values of the parameters by parameter name
+   * @throws IllegalArgumentException if the codec has no such parameter or the
+   *                                  value is out of range
+   */
+  public CodecParameters(String codec, Map<String, String> properties) {
+    this(codec);
+    for (Map.Entry<String, String> property : properties.entrySet()) {
+      set(property.getKey(), property.getValue());
+    }
+  }
+
+  public String getCodec() {
+    return codec;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the parameter doesn't apply to the
+   *                                  codec or the value is out of range
+   */
+  public void set(CodecParameter parameter, int value) {
+    if (!parameter.appliesTo(codec)) {
+      throw new IllegalArgumentException("Unsupported parameter "
+          + parameter.getParameterName() + " for codec " + codec);
+    }
+    parameter.checkValue(value);
+    values[parameter.getId()] = value;
+  }
+
+  /**
+   * Set the parameter of the name from its configured value.
+   *
+   * @throws IllegalArgumentException if the codec has no such parameter or the
+   *                                  value is malformed or out of range
+   */
+  public void set(String name, String value) {
+    CodecParameter parameter = CodecParameter.forName(codec, name);
+    values[parameter.getId()] = parameter.parse(value);
+  }
+
+  /** @return the value of the parameter, 0 if it is unset */
+  public int get(CodecParameter parameter) {
+    return values[parameter.getId()];
+  }
+
+  public boolean isEmpty() {
+    for (int value : values) {
+      if (value != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Create a compress context of the codec with these parameters, the caller
+   * destroys it.
+   *
+   * @throws IllegalArgumentException if the library of the codec can't apply
+   *                                  the parameters
+   */
+  public long createCompressContext(int level) {
+    return createCompressContext(this, codec, level);
+  }
+
+  /**
+   * Create a compress context of the codec, with the parameters unless they
+   * are null.
+   *
+   * @throws IllegalArgumentException if the parameters are of another codec or
+   *                                  the library of the codec can't apply them
+   */
+  public static long createCompressContext(CodecParameters parameters, String codec, int level) {
+    if (parameters == null || parameters.isEmpty()) {
+      return IntelCompressionCodecJNI.createCompressContext(codec, level);
+    }
+    if (!parameters.codec.equals(codec)) {
+      throw new IllegalArgumentException("Parameters " + parameters + " don't apply to codec "
+          + codec);
+    }
+    return IntelCompressionCodecJNI.createCompressContextWithParams(codec, level,
+        parameters.values.clone());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof CodecParameters)) {
+      return false;
+    }
+    CodecParameters other = (CodecParameters) o;
+    return codec.equals(other.codec) && Arrays.equals(values, other.values);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * codec.hashCode() + Arrays.hashCode(values);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(codec).append('(');
+    String separator = "";
+    for (CodecParameter parameter : CodecParameter.values()) {
+      if (values[parameter.getId()] != 0) {
+        sb.append(separator).append(parameter.getParameterName()).append('=')
+            .append(values[parameter.getId()]);
+        separator = ", ";
+      }
+    }
+    return sb.append(')').toString();
+  }
+}
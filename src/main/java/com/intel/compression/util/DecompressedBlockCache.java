@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.util;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sun.nio.ch.DirectBuffer;
+
+/**
+ * Off-heap cache of decompressed blocks, keyed by the identity of the
+ * compressed source and the offset of the block in it, so blocks read over
+ * and over are decompressed once. Blocks are copied in and out of memory
+ * allocated outside of the Java heap, within a byte budget split over
+ * segments which each evict their least recently used blocks. The source
+ * identity must change whenever the content of the source does, e.g. a file
+ * path with its length and modification time. This class is thread-safe.
+ */
+public final class DecompressedBlockCache {
+
+  private static final int MAX_SEGMENTS = 16;
+  private static final long MIN_SEGMENT_CAPACITY = 16L * 1024 * 1024;
+
+  private static DecompressedBlockCache instance;
+
+  private final long capacity;
+  private final Segment[] segments;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * @param capacity the number of bytes of decompressed blocks held at most
+   */
+  public DecompressedBlockCache(long capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Block cache capacity " + capacity);
+    }
+    int segmentCount = 1;
+    while (segmentCount < MAX_SEGMENTS && capacity / (2 * segmentCount) >= MIN_SEGMENT_CAPACITY) {
+      segmentCount *= 2;
+    }
+    this.capacity = capacity;
+    this.segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment(capacity / segmentCount);
+    }
+  }
+
+  /**
+   * @return the cache shared by the process, created with the capacity on the
+   *         first call, later calls get the same cache whatever their capacity
+   */
+  public static synchronized DecompressedBlockCache getProcessCache(long capacity) {
+    if (instance == null) {
+      instance = new DecompressedBlockCache(capacity);
+    }
+    return instance;
+  }
+
+  /**
+   * Copy the cached block into dst from the absolute offset, the position and
+   * limit of dst are left alone.
+   *
+   * @return the length of the block, -1 if it is not cached
+   * @throws IndexOutOfBoundsException if the block doesn't fit into dst
+   */
+  public int get(String source, long offset, ByteBuffer dst, int dstOff) {
+    final Key key = new Key(source, offset);
+    final int length = segmentOf(key).get(key, dst, dstOff);
+    (length < 0 ? misses : hits).incrementAndGet();
+    return length;
+  }
+
+  /**
+   * Copy len bytes of src from the absolute offset into the cache, replacing
+   * the block cached for the same source and offset. Blocks larger than a
+   * segment of the cache are not cached.
+   */
+  public void put(String source, long offset, ByteBuffer src, int srcOff, int len) {
+    final Key key = new Key(source, offset);
+    evictions.addAndGet(segmentOf(key).put(key, src, srcOff, len));
+  }
+
+  /**
+   * Drop every cached block.
+   */
+  public void clear() {
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  /** @return the number of bytes of the cached blocks */
+  public long getSize() {
+    long size = 0;
+    for (Segment segment : segments) {
+      size += segment.getSize();
+    }
+    return size;
+  }
+
+  public int getBlockCount() {
+    int count = 0;
+    for (Segment segment : segments) {
+      count += segment.getBlockCount();
+    }
+    return count;
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  private Segment segmentOf(Key key) {
+    int h = key.hashCode();
+    h ^= h >>> 16;
+    return segments[h & (segments.length - 1)];
+  }
+
+  private static long addressOf(ByteBuffer buf, int off, int len) {
+    if (off < 0 || len < 0 || off > buf.capacity() - len) {
+      throw new IndexOutOfBoundsException("Block of " + len + " bytes at offset " + off
+          + " exceeds the buffer of " + buf.capacity() + " bytes");
+    }
+    return ((DirectBuffer) buf).address() + off;
+  }
+
+  private static void copyFrom(long address, ByteBuffer dst, int dstOff, int len) {
+    if (dst.hasArray()) {
+      Platform.copyMemory(null, address, dst.array(),
+          Platform.BYTE_ARRAY_OFFSET + dst.arrayOffset() + dstOff, len);
+    } else {
+      Platform.copyMemory(null, address, null, addressOf(dst, dstOff, len), len);
+    }
+  }
+
+  private static void copyTo(ByteBuffer src, int srcOff, long address, int len) {
+    if (src.hasArray()) {
+      Platform.copyMemory(src.array(), Platform.BYTE_ARRAY_OFFSET + src.arrayOffset() + srcOff,
+          null, address, len);
+    } else {
+      Platform.copyMemory(null, addressOf(src, srcOff, len), null, address, len);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(capacity=" + capacity + ", size=" + getSize()
+        + ", blocks=" + getBlockCount() + ", hits=" + getHitCount()
+        + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + ")";
+  }
+
+  private static final class Key {
+    private final String source;
+    private final long offset;
+
+    Key(String source, long offset) {
+      if (source == null) {
+        throw new NullPointerException("source");
+      }
+      this.source = source;
+      this.offset = offset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return offset == other.offset && source.equals(other.source);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * source.hashCode() + (int) (offset ^ (offset >>> 32));
+    }
+  }
+
+  private static final class Block {
+    private final long address;
+    private final int length;
+
+    Block(long address, int length) {
+      this.address = address;
+      this.length = length;
+    }
+  }
+
+  /**
+   * A share of the budget with its own lock and LRU order. Blocks are copied
+   * under the lock, so a block is never freed while it is copied.
+   */
+  private static final class Segment {
+    private final long capacity;
+    private final LinkedHashMap<Key, Block> blocks =
+        new LinkedHashMap<Key, Block>(16, 0.75f, true);
+    private long size;
+
+    Segment(long capacity) {
+      this.capacity = capacity;
+    }
+
+    synchronized int get(Key key, ByteBuffer dst, int dstOff) {
+      final Block block = blocks.get(key);
+      if (block == null) {
+        return -1;
+      }
+      if (dstOff < 0 || dstOff > dst.capacity() - block.length) {
+        throw new IndexOutOfBoundsException("Cached block of " + block.length
+            + " bytes doesn't fit at offset " + dstOff + " of a buffer of "
+            + dst.capacity() + " bytes");
+      }
+      copyFrom(block.address, dst, dstOff, block.length);
+      return block.length;
+    }
+
+    /**
+     * @return the number of blocks evicted
+     */
+    synchronized int put(Key key, ByteBuffer src, int srcOff, int len) {
+      if (len > capacity) {
+        return 0;
+      }
+      if (srcOff < 0 || len < 0 || srcOff > src.capacity() - len) {
+        throw new IndexOutOfBoundsException("Block of " + len + " bytes at offset " + srcOff
+            + " exceeds the buffer of " + src.capacity() + " bytes");
+      }
+      final long address = Platform.allocateMemory(Math.max(len, 1));
+      copyTo(src, srcOff, address, len);
+      final Block previous = blocks.put(key, new Block(address, len));
+      if (previous != null) {
+        free(previous);
+      }
+      size += len;
+      int evicted = 0;
+      Iterator<Map.Entry<Key, Block>> it = blocks.entrySet().iterator();
+      while (size > capacity && it.hasNext()) {
+        final Block eldest = it.next().getValue();
+        it.remove();
+        free(eldest);
+        evicted++;
+      }
+      return evicted;
+    }
+
+    synchronized void clear() {
+      for (Block block : blocks.values()) {
+        free(block);
+      }
+      blocks.clear();
+    }
+
+    synchronized long getSize() {
+      return size;
+    }
+
+    synchronized int getBlockCount() {
+      return blocks.size();
+    }
+
+    private void free(Block block) {
+      Platform.freeMemory(block.address);
+      size -= block.length;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.util;
+
+import java.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+
+/**
+ * Which codecs the native library can use on this host. The library of a codec
+ * is loaded on first use, so probing a codec loads its library, and a codec
+ * whose library is missing falls back to the first available codec.
+ */
+public enum IntelCompressionCodecCapabilities {
+  ;
+
+  private static final Logger LOG = LoggerFactory.getLogger(IntelCompressionCodecCapabilities.class);
+
+  private static final Set<String> warnedFallbacks = new HashSet<String>();
+
+  /**
+   * A codec and the library behind it.
+   */
+  public static final class Capability {
+    private final int id;
+    private final String codec;
+    private final boolean available;
+    private final String libraryName;
+    private final String libraryVersion;
+
+    Capability(int id, String codec, boolean available, String libraryName,
+        String libraryVersion) {
+      this.id = id;
+      this.codec = codec;
+      this.available = available;
+      this.libraryName = libraryName;
+      this.libraryVersion = libraryVersion;
+    }
+
+    /** @return the codec id written in the block header */
+    public int getId() {
+      return id;
+    }
+
+    public String getCodec() {
+      return codec;
+    }
+
+    public boolean isAvailable() {
+      return available;
+    }
+
+    public String getLibraryName() {
+      return libraryName;
+    }
+
+    public String getLibraryVersion() {
+      return libraryVersion;
+    }
+
+    @Override
+    public String toString() {
+      return codec + "(" + (available ? "available" : "unavailable")
+          + ", library=" + libraryName + ", version=" + libraryVersion + ")";
+    }
+  }
+
+  /**
+   * Probe every codec, loading the libraries not loaded yet.
+   */
+  public static List<Capability> getCapabilities() {
+    String[] names = IntelCompressionCodecJNI.getCodecNames();
+    List<Capability> capabilities = new ArrayList<Capability>(names.length);
+    for (int i = 0; i < names.length; i++) {
+      capabilities.add(new Capability(i, names[i],
+          IntelCompressionCodecJNI.isCodecAvailable(i),
+          IntelCompressionCodecJNI.getLibraryName(i),
+          IntelCompressionCodecJNI.getLibraryVersion(i)));
+    }
+    return capabilities;
+  }
+
+  /**
+   * @return whether the library of the codec can be loaded
+   */
+  public static boolean isAvailable(String codec) {
+    String[] names = IntelCompressionCodecJNI.getCodecNames();
+    for (int i = 1; i < names.length; i++) {
+      if (codec.startsWith(names[i])) {
+        return IntelCompressionCodecJNI.isCodecAvailable(i);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Return the codec streams configured with the given codec will use, which
+   * differs from it when the codec is unknown or its library is missing.
+   */
+  public static String resolve(String codec) {
+    String resolved = IntelCompressionCodecJNI.getCodecNames()[
+        IntelCompressionCodecJNI.resolveCodec(codec)];
+    if (!codec.startsWith(resolved)) {
+      synchronized (warnedFallbacks) {
+        if (warnedFallbacks.add(codec)) {
+          LOG.warn("Codec " + codec + " is unavailable, fall back to codec " + resolved);
+        }
+      }
+      return resolved;
+    }
+    return codec;
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Java view of the native <code>intel_codec_header_t</code> which prefixes every
+ * block produced by {@link com.intel.compression.jni.IntelCompressionCodecJNI#compress}.
+ * All fields are little-endian 32-bit integers: magic, codec, compressed size
+ * (including this header) and uncompressed size.
+ */
+public enum IntelCompressionCodecHeader {
+  ;
+
+  public static final int HEADER_LENGTH = 16;
+
+  /** Codec ids, must match <code>intel_codec_t</code>. */
+  public static final int CODEC_RAW = 0;
+  public static final int CODEC_LZ4_IPP = 1;
+  public static final int CODEC_LZ4_HC_IPP = 2;
+  public static final int CODEC_ZLIB_IPP = 3;
+  public static final int CODEC_IGZIP = 4;
+  public static final int CODEC_ZSTD = 5;
+
+  private static final int MAGIC_OFFSET = 0;
+  private static final int CODEC_OFFSET = 4;
+  private static final int COMPRESSED_SIZE_OFFSET = 8;
+  private static final int UNCOMPRESSED_SIZE_OFFSET = 12;
+
+  /**
+   * @return the magic the native wrapper of the codec writes and checks
+   */
+  public static int magic(int codec) {
+    switch (codec) {
+      case CODEC_RAW:
+        return magic('I', 'R', 'A', 'W');
+      case CODEC_LZ4_IPP:
+      case CODEC_LZ4_HC_IPP:
+        return magic('L', 'Z', '4', 'I');
+      case CODEC_ZLIB_IPP:
+        return magic('Z', 'L', 'B', 'I');
+      case CODEC_IGZIP:
+        return magic('I', 'S', 'A', 'L');
+      case CODEC_ZSTD:
+        return magic('Z', 'S', 'T', 'D');
+      default:
+        throw new IllegalArgumentException("Unknown codec id " + codec);
+    }
+  }
+
+  private static int magic(char b0, char b1, char b2, char b3) {
+    return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+  }
+
+  public static void write(ByteBuffer buf, int off, int codec,
+      int compressedSize, int uncompressedSize) {
+    putIntLE(buf, off + MAGIC_OFFSET, magic(codec));
+    putIntLE(buf, off + CODEC_OFFSET, codec);
+    putIntLE(buf, off + COMPRESSED_SIZE_OFFSET, compressedSize);
+    putIntLE(buf, off + UNCOMPRESSED_SIZE_OFFSET, uncompressedSize);
+  }
+
+  public static int getMagic(ByteBuffer buf, int off) {
+    return getIntLE(buf, off + MAGIC_OFFSET);
+  }
+
+  public static int getCodec(ByteBuffer buf, int off) {
+    return getIntLE(buf, off + CODEC_OFFSET);
+  }
+
+  public static int getCompressedSize(ByteBuffer buf, int off) {
+    return getIntLE(buf, off + COMPRESSED_SIZE_OFFSET);
+  }
+
+  public static int getUncompressedSize(ByteBuffer buf, int off) {
+    return getIntLE(buf, off + UNCOMPRESSED_SIZE_OFFSET);
+  }
+
+  public static int getIntLE(ByteBuffer buf, int off) {
+    return (buf.get(off) & 0xFF)
+        | ((buf.get(off + 1) & 0xFF) << 8)
+        | ((buf.get(off + 2) & 0xFF) << 16)
+        | ((buf.get(off + 3) & 0xFF) << 24);
+  }
+
+  public static void putIntLE(ByteBuffer buf, int off, int i) {
+    buf.put(off, (byte) i);
+    buf.put(off + 1, (byte) (i >>> 8));
+    buf.put(off + 2, (byte) (i >>> 16));
+    buf.put(off + 3, (byte) (i >>> 24));
+  }
+}
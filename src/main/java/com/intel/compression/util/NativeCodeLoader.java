@@ -18,10 +18,20 @@
 package com.intel.compression.util;
 
 import java.util.*;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +40,8 @@ public enum NativeCodeLoader {
 
   private static final Logger LOG = LoggerFactory.getLogger(NativeCodeLoader.class);
   private static final String LIBRARY_NAME = "IntelCompressionCodec";
+  /** System property of the directory bundled native libraries are extracted to. */
+  public static final String CACHE_DIR_KEY = "com.intel.compression.native.cacheDir";
   private static boolean nativeCodeLoaded = false;
 
   static {
@@ -104,61 +116,164 @@ public enum NativeCodeLoader {
       throw new UnsupportedOperationException("Unsupported OS/arch, cannot find "
           + resourceName + ". Please try building from source.");
     }
-    File tempLib;
+    File libFile;
     try {
-      tempLib = File.createTempFile("lib" + LIBRARY_NAME, "." + os().libExtension);
-      // copy to tempLib
-      FileOutputStream out = new FileOutputStream(tempLib);
+      byte[] library;
       try {
-        byte[] buf = new byte[4096];
-        while (true) {
-          int read = is.read(buf);
-          if (read == -1) {
-            break;
-          }
-          out.write(buf, 0, read);
-        }
-        try {
-          out.close();
-          out = null;
-        } catch (IOException e) {
-          // ignore
-        }
-        try {
-          System.load(tempLib.getAbsolutePath());
-        } catch (UnsatisfiedLinkError e) {
-          LOG.info("Failed to load native lib" + LIBRARY_NAME + "." + os().libExtension
-              + " from the embedded jar package");
-          throw e;
-        }
-        nativeCodeLoaded = true;
-        LOG.info("Loaded native lib" + LIBRARY_NAME + "." + os().libExtension
-            + " from the embedded jar package");
+        library = readFully(is);
       } finally {
-        try {
-          if (out != null) {
-            out.close();
-          }
-        } catch (IOException e) {
-          // ignore
-        }
-        if (tempLib != null && tempLib.exists()) {
-          if (!nativeCodeLoaded) {
-            if (tempLib.delete()) {
-               LOG.info("Successfully delete temp native lib");
-            } else {
-               LOG.error("Failed to delete temp native lib");
-            }
-          } else {
-            // try to delete on exit, does it work on Windows?
-            tempLib.deleteOnExit();
-          }
-        }
+        is.close();
+      }
+      try {
+        libFile = extractToCache(library);
+      } catch (IOException e) {
+        LOG.warn("Failed to cache native lib" + LIBRARY_NAME + "." + os().libExtension
+            + " in " + cacheDir() + ", extract it to a temp file", e);
+        libFile = extractToTempFile(library);
       }
     } catch (IOException e) {
       LOG.error("Failed to load native lib" + LIBRARY_NAME + "." + os().libExtension);
       throw new ExceptionInInitializerError("Cannot unpack " + LIBRARY_NAME);
     }
+    try {
+      System.load(libFile.getAbsolutePath());
+    } catch (UnsatisfiedLinkError e) {
+      LOG.info("Failed to load native lib" + LIBRARY_NAME + "." + os().libExtension
+          + " from the embedded jar package");
+      throw e;
+    }
+    nativeCodeLoaded = true;
+    LOG.info("Loaded native lib" + LIBRARY_NAME + "." + os().libExtension
+        + " from the embedded jar package via " + libFile);
+  }
+
+  /**
+   * The directory the bundled library is extracted to, shared by every JVM of
+   * the user. Set the system property {@value #CACHE_DIR_KEY} to override it.
+   */
+  private static File cacheDir() {
+    String dir = System.getProperty(CACHE_DIR_KEY);
+    if (dir == null || dir.isEmpty()) {
+      dir = System.getProperty("java.io.tmpdir") + File.separator
+          + "intel-compression-codec-" + System.getProperty("user.name");
+    }
+    return new File(dir);
+  }
+
+  /**
+   * Extract the library into the cache directory, named by the SHA-256 of its
+   * content. A library extracted by an earlier JVM is reused only if its
+   * content still has that digest; otherwise the library is written to a
+   * temp file in the same directory and renamed, so concurrent JVMs never load
+   * a partially written library. The directory must be private to the user,
+   * see {@link #privateDirectory(Path)}.
+   */
+  private static File extractToCache(byte[] library) throws IOException {
+    final Path dir = privateDirectory(cacheDir().toPath());
+    final byte[] digest = sha256(library);
+    final Path libFile = dir.resolve("lib" + LIBRARY_NAME + "-" + toHex(digest)
+        + "." + os().libExtension);
+    if (isIntact(libFile, digest)) {
+      LOG.debug("Reuse native lib " + libFile);
+      return libFile.toFile();
+    }
+
+    // temp files are created readable by the owner only
+    Path tempLib = Files.createTempFile(dir, "lib" + LIBRARY_NAME, ".tmp");
+    try {
+      Files.write(tempLib, library);
+      try {
+        Files.move(tempLib, libFile, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempLib, libFile, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tempLib);
+    }
+    if (!isIntact(libFile, digest)) {
+      throw new IOException("Extracted native lib " + libFile + " doesn't match the bundled one");
+    }
+    LOG.info("Extracted native lib to " + libFile);
+    return libFile.toFile();
+  }
+
+  /**
+   * Create the directory accessible by the current user only, or check that an
+   * existing one is owned by the current user and restrict its permissions,
+   * so no other user can replace the libraries loaded from it.
+   */
+  private static Path privateDirectory(Path dir) throws IOException {
+    final boolean posix = dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+    final Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+    if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+      if (posix) {
+        Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(ownerOnly));
+      } else {
+        Files.createDirectories(dir);
+      }
+    }
+    if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+      throw new IOException(dir + " is not a directory");
+    }
+    if (!isOwnedByCurrentUser(dir)) {
+      throw new IOException(dir + " is not owned by " + System.getProperty("user.name"));
+    }
+    if (posix && !Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS).equals(ownerOnly)) {
+      Files.setPosixFilePermissions(dir, ownerOnly);
+    }
+    return dir;
+  }
+
+  private static boolean isOwnedByCurrentUser(Path path) throws IOException {
+    final UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService()
+        .lookupPrincipalByName(System.getProperty("user.name"));
+    return user.equals(Files.getOwner(path, LinkOption.NOFOLLOW_LINKS));
+  }
+
+  /**
+   * @return true if the file is a regular file of the current user whose
+   *         content has the SHA-256 digest
+   */
+  private static boolean isIntact(Path file, byte[] digest) throws IOException {
+    if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) || !isOwnedByCurrentUser(file)) {
+      return false;
+    }
+    return MessageDigest.isEqual(digest, sha256(Files.readAllBytes(file)));
+  }
+
+  private static File extractToTempFile(byte[] library) throws IOException {
+    // temp files are created readable by the owner only
+    File tempLib = Files.createTempFile("lib" + LIBRARY_NAME, "." + os().libExtension).toFile();
+    // try to delete on exit, does it work on Windows?
+    tempLib.deleteOnExit();
+    Files.write(tempLib.toPath(), library);
+    return tempLib;
+  }
+
+  private static byte[] readFully(InputStream is) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+    byte[] buf = new byte[64 * 1024];
+    int read;
+    while ((read = is.read(buf)) != -1) {
+      out.write(buf, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] sha256(byte[] data) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(data);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
   }
 
 }
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The 32-bit xxHash, the checksum of the LZ4 frame format.
+ */
+public enum XXHash32 {
+  ;
+
+  private static final int PRIME1 = 0x9E3779B1;
+  private static final int PRIME2 = 0x85EBCA77;
+  private static final int PRIME3 = 0xC2B2AE3D;
+  private static final int PRIME4 = 0x27D4EB2F;
+  private static final int PRIME5 = 0x165667B1;
+
+  /**
+   * Hash len bytes of the buffer from the absolute offset, the position,
+   * limit and byte order of the buffer are left alone.
+   */
+  public static int hash(ByteBuffer buf, int off, int len, int seed) {
+    final ByteBuffer in = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    final int end = off + len;
+    int h;
+    if (len >= 16) {
+      int v1 = seed + PRIME1 + PRIME2;
+      int v2 = seed + PRIME2;
+      int v3 = seed;
+      int v4 = seed - PRIME1;
+      final int limit = end - 16;
+      do {
+        v1 = round(v1, in.getInt(off));
+        v2 = round(v2, in.getInt(off + 4));
+        v3 = round(v3, in.getInt(off + 8));
+        v4 = round(v4, in.getInt(off + 12));
+        off += 16;
+      } while (off <= limit);
+      h = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7)
+          + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+    } else {
+      h = seed + PRIME5;
+    }
+    h += len;
+
+    while (off <= end - 4) {
+      h = Integer.rotateLeft(h + in.getInt(off) * PRIME3, 17) * PRIME4;
+      off += 4;
+    }
+    while (off < end) {
+      h = Integer.rotateLeft(h + (in.get(off) & 0xFF) * PRIME5, 11) * PRIME1;
+      off++;
+    }
+
+    h ^= h >>> 15;
+    h *= PRIME2;
+    h ^= h >>> 13;
+    h *= PRIME3;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  public static int hash(byte[] buf, int off, int len, int seed) {
+    return hash(ByteBuffer.wrap(buf), off, len, seed);
+  }
+
+  private static int round(int acc, int input) {
+    return Integer.rotateLeft(acc + input * PRIME2, 13) * PRIME1;
+  }
+}
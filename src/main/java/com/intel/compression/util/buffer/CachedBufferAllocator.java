@@ -22,6 +22,7 @@ import java.util.*;
 import java.nio.ByteBuffer;
 
 import com.intel.compression.jni.IntelCompressionCodecJNI;
+import com.intel.compression.util.jfr.IntelCompressionCodecEvents;
 
 /**
  * Cached buffer
@@ -89,14 +90,8 @@ public class CachedBufferAllocator implements BufferAllocator
   {
     synchronized (this) {
       if (directByteBufferQueue.isEmpty()) {
-        if (useNativeBuffer)
-        {
-          return (ByteBuffer)IntelCompressionCodecJNI.allocNativeBuffer(size, align);
-        }
-        else
-        {
-          return ByteBuffer.allocateDirect(size);
-        }
+        IntelCompressionCodecEvents.bufferPoolMiss(getClass().getSimpleName(), size, true);
+        return newDirectByteBuffer(useNativeBuffer, size, align);
       }
       else {
         return directByteBufferQueue.pollFirst();
@@ -104,6 +99,26 @@ public class CachedBufferAllocator implements BufferAllocator
     }
   }
 
+  /**
+   * Allocate a new direct byte buffer when there is no cached one
+   *
+   * @param useNativeBuffer whether to alloc the buffer in jni
+   * @param size the size of the direct byte buffer to be allocated
+   * @param align the alignment of the native buffer
+   * @return direct byte buffer, the new direct byte buffer
+   */
+  protected ByteBuffer newDirectByteBuffer(boolean useNativeBuffer, int size, int align)
+  {
+    if (useNativeBuffer)
+    {
+      return (ByteBuffer)IntelCompressionCodecJNI.allocNativeBuffer(size, align);
+    }
+    else
+    {
+      return ByteBuffer.allocateDirect(size);
+    }
+  }
+
   /**
    * Release a direct byte buffer
    *
@@ -129,6 +144,7 @@ public class CachedBufferAllocator implements BufferAllocator
   {
     synchronized (this) {
       if (byteArrayQueue.isEmpty()) {
+        IntelCompressionCodecEvents.bufferPoolMiss(getClass().getSimpleName(), size, false);
         return new byte[size];
       }
       else {
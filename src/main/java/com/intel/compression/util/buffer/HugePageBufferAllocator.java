@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intel.compression.util.buffer;
+
+import java.util.*;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+
+/**
+ * Cached buffer whose direct buffers are slabs carved out of the native arena.
+ * The arena reserves large regions backed by transparent huge pages where the
+ * kernel supports them, which keeps the TLB footprint of the codec buffers small.
+ * Arena slabs are never freed, so the allocators are kept strongly reachable
+ * and every released buffer stays cached for reuse.
+ */
+public class HugePageBufferAllocator extends CachedBufferAllocator
+{
+  private static final Logger LOG = LoggerFactory.getLogger(HugePageBufferAllocator.class);
+
+  private static BufferAllocatorFactory factory = new BufferAllocatorFactory()
+  {
+    @Override
+    public BufferAllocator getBufferAllocator(int bufferSize)
+    {
+      return HugePageBufferAllocator.getHugePageAllocator(bufferSize);
+    }
+  };
+
+  private static final Map<Integer, HugePageBufferAllocator> allocatorTable =
+      new HashMap<Integer, HugePageBufferAllocator>();
+
+  private static boolean logged = false;
+
+  public HugePageBufferAllocator(int bufferSize)
+  {
+    super(bufferSize);
+  }
+
+  public static BufferAllocatorFactory getHugePageBufferAllocatorFactory()
+  {
+    return factory;
+  }
+
+  public static synchronized HugePageBufferAllocator getHugePageAllocator(int bufferSize)
+  {
+    HugePageBufferAllocator result = allocatorTable.get(bufferSize);
+    if (result == null) {
+      if (!logged) {
+        LOG.info("Allocate codec buffers from native arena, huge pages "
+            + (IntelCompressionCodecJNI.isHugePageArena() ? "enabled" : "unavailable"));
+        logged = true;
+      }
+      result = new HugePageBufferAllocator(bufferSize);
+      allocatorTable.put(bufferSize, result);
+    }
+    return result;
+  }
+
+  /**
+   * Carve a new direct byte buffer out of the native arena, the buffer is
+   * always native so useNativeBuffer is ignored
+   *
+   * @param useNativeBuffer ignored
+   * @param size the size of the direct byte buffer to be allocated
+   * @param align the alignment of the arena slab
+   * @return direct byte buffer, the new direct byte buffer
+   */
+  @Override
+  protected ByteBuffer newDirectByteBuffer(boolean useNativeBuffer, int size, int align)
+  {
+    return (ByteBuffer)IntelCompressionCodecJNI.allocArenaBuffer(size, align);
+  }
+}
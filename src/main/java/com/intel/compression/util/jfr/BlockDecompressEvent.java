@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intel.compression.util.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.intel.compression.BlockDecompress")
+@Label("Block Decompress")
+@Category({"Intel Codec", "Compression"})
+@Description("A block read and decompressed by a codec stream or decompressor")
+@StackTrace(false)
+final class BlockDecompressEvent extends Event {
+
+  @Label("Codec")
+  String codec;
+
+  @Label("Compressed Size")
+  @DataAmount
+  int compressedSize;
+
+  @Label("Uncompressed Size")
+  @DataAmount
+  int uncompressedSize;
+
+  @Label("Native Duration")
+  @Description("Time spent in the codec")
+  @Timespan(Timespan.NANOSECONDS)
+  long nativeDuration;
+
+  @Label("Blocked Duration")
+  @Description("Time blocked reading the block from the underlying stream")
+  @Timespan(Timespan.NANOSECONDS)
+  long blockedDuration;
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intel.compression.util.jfr;
+
+import com.intel.compression.jni.IntelCompressionCodecJNI;
+
+/**
+ * Java Flight Recorder events of the codec: block compress and decompress,
+ * stream open and close, and buffer pool misses, all under the "Intel Codec"
+ * category. Events cost an allocation the JIT usually removes and a flag check
+ * unless a recording enables them, and every method is a no-op on JVMs
+ * without JFR.
+ */
+public enum IntelCompressionCodecEvents {
+  ;
+
+  private static final boolean AVAILABLE = jfrAvailable();
+
+  private static volatile String[] codecNames;
+
+  private static boolean jfrAvailable() {
+    try {
+      Class.forName("jdk.jfr.FlightRecorder");
+      return JfrEvents.isAvailable();
+    } catch (Throwable t) {
+      return false;
+    }
+  }
+
+  /**
+   * @return whether the events can be recorded on this JVM
+   */
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  /**
+   * @return the name of the codec id of a block header, null for a negative id
+   */
+  public static String codecName(int codec) {
+    if (codec < 0) {
+      return null;
+    }
+    String[] names = codecNames;
+    if (names == null) {
+      codecNames = names = IntelCompressionCodecJNI.getCodecNames();
+    }
+    return codec < names.length ? names[codec] : String.valueOf(codec);
+  }
+
+  public static void blockCompressed(String codec, int level, int uncompressedSize,
+      int compressedSize, long nativeNanos, long blockedNanos) {
+    if (AVAILABLE) {
+      JfrEvents.blockCompressed(codec, level, uncompressedSize, compressedSize,
+          nativeNanos, blockedNanos);
+    }
+  }
+
+  public static void blockDecompressed(int codec, int compressedSize, int uncompressedSize,
+      long nativeNanos, long blockedNanos) {
+    if (AVAILABLE) {
+      JfrEvents.blockDecompressed(codecName(codec), compressedSize, uncompressedSize,
+          nativeNanos, blockedNanos);
+    }
+  }
+
+  public static void streamOpened(String stream, String codec, int level, int blockSize) {
+    if (AVAILABLE) {
+      JfrEvents.streamOpened(stream, codec, level, blockSize);
+    }
+  }
+
+  public static void streamClosed(String stream, String codec, long blocks,
+      long uncompressedBytes, long compressedBytes, long nativeNanos, long blockedNanos) {
+    if (AVAILABLE) {
+      JfrEvents.streamClosed(stream, codec, blocks, uncompressedBytes, compressedBytes,
+          nativeNanos, blockedNanos);
+    }
+  }
+
+  /**
+   * Close event of a reader, which only learns the codec from its blocks.
+   *
+   * @param codec  the codec id of the last block read, -1 if there was none
+   */
+  public static void streamClosed(String stream, int codec, long blocks,
+      long uncompressedBytes, long compressedBytes, long nativeNanos, long blockedNanos) {
+    if (AVAILABLE) {
+      JfrEvents.streamClosed(stream, codecName(codec), blocks, uncompressedBytes,
+          compressedBytes, nativeNanos, blockedNanos);
+    }
+  }
+
+  public static void bufferPoolMiss(String allocator, int bufferSize, boolean direct) {
+    if (AVAILABLE) {
+      JfrEvents.bufferPoolMiss(allocator, bufferSize, direct);
+    }
+  }
+}
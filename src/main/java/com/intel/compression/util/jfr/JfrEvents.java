@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intel.compression.util.jfr;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * The only class touching the event classes, loaded once JFR is known to be
+ * present. Events are committed only while a recording enables them.
+ */
+final class JfrEvents {
+
+  private JfrEvents() {
+  }
+
+  static boolean isAvailable() {
+    return FlightRecorder.isAvailable();
+  }
+
+  static void blockCompressed(String codec, int level, int uncompressedSize, int compressedSize,
+      long nativeNanos, long blockedNanos) {
+    BlockCompressEvent event = new BlockCompressEvent();
+    if (event.shouldCommit()) {
+      event.codec = codec;
+      event.level = level;
+      event.uncompressedSize = uncompressedSize;
+      event.compressedSize = compressedSize;
+      event.nativeDuration = nativeNanos;
+      event.blockedDuration = blockedNanos;
+      event.commit();
+    }
+  }
+
+  static void blockDecompressed(String codec, int compressedSize, int uncompressedSize,
+      long nativeNanos, long blockedNanos) {
+    BlockDecompressEvent event = new BlockDecompressEvent();
+    if (event.shouldCommit()) {
+      event.codec = codec;
+      event.compressedSize = compressedSize;
+      event.uncompressedSize = uncompressedSize;
+      event.nativeDuration = nativeNanos;
+      event.blockedDuration = blockedNanos;
+      event.commit();
+    }
+  }
+
+  static void streamOpened(String stream, String codec, int level, int blockSize) {
+    StreamOpenEvent event = new StreamOpenEvent();
+    if (event.shouldCommit()) {
+      event.stream = stream;
+      event.codec = codec;
+      event.level = level;
+      event.blockSize = blockSize;
+      event.commit();
+    }
+  }
+
+  static void streamClosed(String stream, String codec, long blocks, long uncompressedBytes,
+      long compressedBytes, long nativeNanos, long blockedNanos) {
+    StreamCloseEvent event = new StreamCloseEvent();
+    if (event.shouldCommit()) {
+      event.stream = stream;
+      event.codec = codec;
+      event.blocks = blocks;
+      event.uncompressedBytes = uncompressedBytes;
+      event.compressedBytes = compressedBytes;
+      event.nativeDuration = nativeNanos;
+      event.blockedDuration = blockedNanos;
+      event.commit();
+    }
+  }
+
+  static void bufferPoolMiss(String allocator, int bufferSize, boolean direct) {
+    BufferPoolMissEvent event = new BufferPoolMissEvent();
+    if (event.shouldCommit()) {
+      event.allocator = allocator;
+      event.bufferSize = bufferSize;
+      event.direct = direct;
+      event.commit();
+    }
+  }
+}
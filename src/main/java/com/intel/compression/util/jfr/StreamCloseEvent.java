@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intel.compression.util.jfr;
+
+import jdk.jfr.*;
+
+@Name("com.intel.compression.StreamClose")
+@Label("Stream Close")
+@Category({"Intel Codec", "Stream"})
+@Description("A codec stream was closed, with the totals of its blocks")
+@StackTrace(false)
+final class StreamCloseEvent extends Event {
+
+  @Label("Stream")
+  String stream;
+
+  @Label("Codec")
+  String codec;
+
+  @Label("Blocks")
+  long blocks;
+
+  @Label("Uncompressed Bytes")
+  @DataAmount
+  long uncompressedBytes;
+
+  @Label("Compressed Bytes")
+  @DataAmount
+  long compressedBytes;
+
+  @Label("Native Duration")
+  @Description("Total time spent in the codec")
+  @Timespan(Timespan.NANOSECONDS)
+  long nativeDuration;
+
+  @Label("Blocked Duration")
+  @Description("Total time blocked on the underlying stream")
+  @Timespan(Timespan.NANOSECONDS)
+  long blockedDuration;
+}
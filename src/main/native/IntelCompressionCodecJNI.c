@@ -22,17 +22,21 @@
 
 #include <stdlib.h>
 #include <string.h>
+#include <pthread.h>
 
 #include "IntelCompressionCodecJNI.h"
 #include "lz4_ipp_wrapper.h"
 #include "zlib_ipp_wrapper.h"
 #include "igzip_wrapper.h"
 #include "zstd_wrapper.h"
+#include "native_arena.h"
+#include "block_filter.h"
 
 static int32_t raw_wrapper_compress(intel_codec_context_t *context,
     const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen);
 static int32_t raw_wrapper_decompress(intel_codec_context_t *context,
     const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen);
+static uint32_t raw_wrapper_compress_bound(uint32_t srcLen);
 static char *raw_wrapper_get_library_name();
 
 /* A helper macro to 'throw' a java exception. */
@@ -45,48 +49,106 @@ static char *raw_wrapper_get_library_name();
     } \
 }
 
+typedef enum intel_codec_state
+{
+    INTEL_CODEC_STATE_UNKNOWN     = 0,
+    INTEL_CODEC_STATE_AVAILABLE   = 1,
+    INTEL_CODEC_STATE_UNAVAILABLE = 2,
+} intel_codec_state_t;
+
 typedef struct intel_codec_dest
 {
-    const char*             name;
-    compress_func           compress;
-    decompress_func         decompress;
-    init_func               init;
-    get_library_name_func   get_library_name;
+    const char*                 name;
+    compress_func               compress;
+    decompress_func             decompress;
+    compress_bound_func         compress_bound;
+    compress_func               compress_bare;
+    decompress_func             decompress_bare;
+    init_func                   init;
+    get_library_name_func       get_library_name;
+    get_library_version_func    get_library_version;
+    check_params_func           check_params;
+    int32_t                     state;
 } intel_codec_desc_t;
 
 static intel_codec_desc_t intel_codec_table[] =
 {
-    {"raw", raw_wrapper_compress, raw_wrapper_decompress, NULL, raw_wrapper_get_library_name},
-    {"lz4-ipp", lz4_ipp_wrapper_compress, lz4_ipp_wrapper_decompress, lz4_ipp_wrapper_init, NULL},
-    {"lz4-hc-ipp", lz4_ipp_wrapper_compress_hc, lz4_ipp_wrapper_decompress, NULL, NULL},
-    {"zlib-ipp", zlib_ipp_wrapper_compress, zlib_ipp_wrapper_decompress, zlib_ipp_wrapper_init, NULL},
-    {"igzip", igzip_wrapper_compress, igzip_wrapper_decompress, igzip_wrapper_init, NULL},
-    {"zstd", zstd_wrapper_compress, zstd_wrapper_decompress, zstd_wrapper_init, zstd_wrapper_get_library_name},
+    {"raw", raw_wrapper_compress, raw_wrapper_decompress, raw_wrapper_compress_bound, NULL, NULL, NULL, raw_wrapper_get_library_name, NULL, NULL},
+    {"lz4-ipp", lz4_ipp_wrapper_compress, lz4_ipp_wrapper_decompress, lz4_ipp_wrapper_compress_bound, lz4_ipp_wrapper_compress_bare, lz4_ipp_wrapper_decompress_bare, lz4_ipp_wrapper_init, lz4_ipp_wrapper_get_library_name, lz4_ipp_wrapper_get_library_version, NULL},
+    {"lz4-hc-ipp", lz4_ipp_wrapper_compress_hc, lz4_ipp_wrapper_decompress, lz4_ipp_wrapper_compress_bound, lz4_ipp_wrapper_compress_hc_bare, lz4_ipp_wrapper_decompress_bare, lz4_ipp_wrapper_init, lz4_ipp_wrapper_get_library_name, lz4_ipp_wrapper_get_library_version, NULL},
+    {"zlib-ipp", zlib_ipp_wrapper_compress, zlib_ipp_wrapper_decompress, zlib_ipp_wrapper_compress_bound, NULL, NULL, zlib_ipp_wrapper_init, zlib_ipp_wrapper_get_library_name, zlib_ipp_wrapper_get_library_version, zlib_ipp_wrapper_check_params},
+    {"igzip", igzip_wrapper_compress, igzip_wrapper_decompress, igzip_wrapper_compress_bound, NULL, NULL, igzip_wrapper_init, igzip_wrapper_get_library_name, NULL, igzip_wrapper_check_params},
+    {"zstd", zstd_wrapper_compress, zstd_wrapper_decompress, zstd_wrapper_compress_bound, zstd_wrapper_compress_bare, zstd_wrapper_decompress_bare, zstd_wrapper_init, zstd_wrapper_get_library_name, zstd_wrapper_get_library_version, zstd_wrapper_check_params},
 };
 
+#define INTEL_CODEC_COUNT (sizeof(intel_codec_table) / sizeof(intel_codec_table[0]))
+
+/* serializes the lazy init of the codecs, lz4 and lz4-hc share one library */
+static pthread_mutex_t intel_codec_init_mutex = PTHREAD_MUTEX_INITIALIZER;
+
 /*
- * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
- * Method:    init
- * Signature: ()V
+ * Load the library of the codec on first use.
+ * Return 0 if the codec is available.
  */
-JNIEXPORT void JNICALL
-Java_com_intel_compression_jni_IntelCompressionCodecJNI_init(
-        JNIEnv *env, jclass cls)
+static int32_t intel_codec_ensure_init(int codec)
 {
-    int i = 0;
-    for (i = 0; i < sizeof(intel_codec_table) / sizeof( intel_codec_table[0]); i++)
+    intel_codec_desc_t *desc = &intel_codec_table[codec];
+    int32_t state = __atomic_load_n(&desc->state, __ATOMIC_ACQUIRE);
+    if (state == INTEL_CODEC_STATE_UNKNOWN)
     {
-        if (intel_codec_table[i].init)
+        pthread_mutex_lock(&intel_codec_init_mutex);
+        state = desc->state;
+        if (state == INTEL_CODEC_STATE_UNKNOWN)
         {
-            int ret = intel_codec_table[i].init();
-            if (ret)
+            state = (desc->init == NULL || desc->init() == 0)
+                ? INTEL_CODEC_STATE_AVAILABLE : INTEL_CODEC_STATE_UNAVAILABLE;
+            if (state == INTEL_CODEC_STATE_UNAVAILABLE)
             {
-                char msg[128];
-                snprintf(msg, 128, "Can't load codec %s's library!", intel_codec_table[i].name);
-                THROW(env, "java/lang/UnsatisfiedLinkError", msg);
+                fprintf(stderr, "Can't load codec %s's library!\n", desc->name);
             }
+            __atomic_store_n(&desc->state, state, __ATOMIC_RELEASE);
         }
+        pthread_mutex_unlock(&intel_codec_init_mutex);
+    }
+    return state == INTEL_CODEC_STATE_AVAILABLE ? 0 : -1;
+}
+
+/*
+ * Find the codec by name, falling back to the first available codec when
+ * the name is unknown or the library of the codec can't be loaded.
+ */
+static int intel_codec_resolve(const char *codec_name)
+{
+    int i = 0;
+    int codec = -1;
+    for (i = 1; i < INTEL_CODEC_COUNT; i++)
+    {
+        if (strncmp(codec_name, intel_codec_table[i].name, strlen(intel_codec_table[i].name)) == 0)
+        {
+            codec = i;
+            break;
+        }
+    }
+
+    if ((codec >= 0) && (intel_codec_ensure_init(codec) == 0))
+    {
+        return codec;
+    }
+
+    for (i = 1; i < INTEL_CODEC_COUNT; i++)
+    {
+        if (intel_codec_ensure_init(i) == 0)
+        {
+            break;
+        }
+    }
+    if (i == INTEL_CODEC_COUNT)
+    {
+        i = INTEL_CODEC_RAW;
     }
+    fprintf(stderr, "Can't %s codec %s, fallback to codec %s\n",
+        codec < 0 ? "find" : "load", codec_name, intel_codec_table[i].name);
+    return i;
 }
 
 /*
@@ -111,6 +173,61 @@ Java_com_intel_compression_jni_IntelCompressionCodecJNI_allocNativeBuffer(
     }
 }
 
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    allocArenaBuffer
+ * Signature: (II)Ljava/lang/Object;
+ */
+JNIEXPORT jobject JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_allocArenaBuffer(
+        JNIEnv *env, jclass cls, jint capacity, jint align)
+{
+    void *buffer = native_arena_alloc(capacity, align);
+    if (buffer != NULL)
+    {
+        return (*env)->NewDirectByteBuffer(env, buffer, capacity);
+    }
+    else
+    {
+        THROW(env, "java/lang/OutOfMemoryError", "Error alloc the arena buffer");
+        return NULL;
+    }
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    isHugePageArena
+ * Signature: ()Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_isHugePageArena(
+        JNIEnv *env, jclass cls)
+{
+    return native_arena_huge_pages_enabled() ? JNI_TRUE : JNI_FALSE;
+}
+
+/*
+ * Allocate a compress context with every parameter at its default.
+ */
+static intel_codec_context_t *intel_codec_create_context(JNIEnv *env,
+        jstring codec_name_from_java, jint level)
+{
+    intel_codec_context_t *context = calloc(1, sizeof(intel_codec_context_t));
+    if (context == NULL)
+    {
+        THROW(env, "java/lang/OutOfMemoryError", "Error alloc the compress context");
+        return NULL;
+    }
+
+    context->level = level;
+
+    const char *codec_name = (*env)->GetStringUTFChars(env, codec_name_from_java, NULL);
+    context->codec = intel_codec_resolve(codec_name);
+    (*env)->ReleaseStringUTFChars(env, codec_name_from_java, codec_name);
+
+    return context;
+}
+
 /*
  * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
  * Method:    createCompressContext
@@ -120,39 +237,109 @@ JNIEXPORT jlong JNICALL
 Java_com_intel_compression_jni_IntelCompressionCodecJNI_createCompressContext(
         JNIEnv *env, jclass cls, jstring codec_name_from_java, jint level)
 {
-    intel_codec_context_t *context = malloc(sizeof(intel_codec_context_t));
+    return (jlong)intel_codec_create_context(env, codec_name_from_java, level);
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    createCompressContextWithParams
+ * Signature: (Ljava/lang/String;I[I)J
+ */
+JNIEXPORT jlong JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_createCompressContextWithParams(
+        JNIEnv *env, jclass cls, jstring codec_name_from_java, jint level, jintArray params)
+{
+    if ((*env)->GetArrayLength(env, params) != INTEL_CODEC_PARAM_COUNT)
+    {
+        THROW(env, "java/lang/IllegalArgumentException", "Wrong number of codec parameters.");
+        return (jlong)0;
+    }
+
+    intel_codec_context_t *context = intel_codec_create_context(env, codec_name_from_java, level);
     if (context == NULL)
     {
-        THROW(env, "java/lang/OutOfMemoryError", "Error alloc the compress context");
         return (jlong)0;
     }
+    (*env)->GetIntArrayRegion(env, params, 0, INTEL_CODEC_PARAM_COUNT, context->params);
 
-    context->level = level;
-    context->codec = 0;
+    /* a codec resolved as a fallback ignores the parameters of the codec asked for */
+    check_params_func check_params = intel_codec_table[context->codec].check_params;
+    const char *error = check_params != NULL ? check_params(context) : NULL;
+    if (error != NULL)
+    {
+        char msg[256];
+        snprintf(msg, sizeof(msg), "Unsupported parameters for codec %s: %s",
+            intel_codec_table[context->codec].name, error);
+        free(context);
+        THROW(env, "java/lang/IllegalArgumentException", msg);
+        return (jlong)0;
+    }
 
-    int i = 0;
+    return (jlong)context;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    resolveCodec
+ * Signature: (Ljava/lang/String;)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_resolveCodec(
+        JNIEnv *env, jclass cls, jstring codec_name_from_java)
+{
     const char *codec_name = (*env)->GetStringUTFChars(env, codec_name_from_java, NULL);
-    for (i = 1; i < (sizeof(intel_codec_table) / sizeof(intel_codec_table[0])); i++)
+    int codec = intel_codec_resolve(codec_name);
+    (*env)->ReleaseStringUTFChars(env, codec_name_from_java, codec_name);
+    return codec;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    getCodecNames
+ * Signature: ()[Ljava/lang/String;
+ */
+JNIEXPORT jobjectArray JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_getCodecNames(
+        JNIEnv *env, jclass cls)
+{
+    jclass string_class = (*env)->FindClass(env, "java/lang/String");
+    if (string_class == NULL)
     {
-        if (strncmp(codec_name, intel_codec_table[i].name, strlen(intel_codec_table[i].name)) == 0)
-        {
-            context->codec = i;
-            break;
-        }
+        return NULL;
     }
-
-    if (i == (sizeof(intel_codec_table) / sizeof(intel_codec_table[0])))
+    jobjectArray names = (*env)->NewObjectArray(env, INTEL_CODEC_COUNT, string_class, NULL);
+    if (names == NULL)
+    {
+        return NULL;
+    }
+    int i = 0;
+    for (i = 0; i < INTEL_CODEC_COUNT; i++)
     {
-        if (i > 1)
+        jstring name = (*env)->NewStringUTF(env, intel_codec_table[i].name);
+        if (name == NULL)
         {
-            context->codec = 1;
-            fprintf(stderr, "Can't find codec %s, fallback to codec %s\n", codec_name, intel_codec_table[1].name);
+            return NULL;
         }
+        (*env)->SetObjectArrayElement(env, names, i, name);
+        (*env)->DeleteLocalRef(env, name);
     }
+    return names;
+}
 
-    (*env)->ReleaseStringUTFChars(env, codec_name_from_java, codec_name);
-
-    return (jlong)context;
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    isCodecAvailable
+ * Signature: (I)Z
+ */
+JNIEXPORT jboolean JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_isCodecAvailable(
+        JNIEnv *env, jclass cls, jint codec)
+{
+    if ((codec >= 0) && (codec < INTEL_CODEC_COUNT))
+    {
+        return intel_codec_ensure_init(codec) == 0 ? JNI_TRUE : JNI_FALSE;
+    }
+    return JNI_FALSE;
 }
 
 /*
@@ -164,7 +351,7 @@ JNIEXPORT jlong JNICALL
 Java_com_intel_compression_jni_IntelCompressionCodecJNI_createDecompressContext(
         JNIEnv *env, jclass cls)
 {
-    intel_codec_context_t *context = malloc(sizeof(intel_codec_context_t));
+    intel_codec_context_t *context = calloc(1, sizeof(intel_codec_context_t));
     if (context == NULL)
     {
         THROW(env, "java/lang/OutOfMemoryError", "Error alloc the decompress context");
@@ -174,6 +361,19 @@ Java_com_intel_compression_jni_IntelCompressionCodecJNI_createDecompressContext(
     return (jlong)context;
 }
 
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    setLevel
+ * Signature: (JI)V
+ */
+JNIEXPORT void JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_setLevel(
+        JNIEnv *env, jclass cls, jlong contextFromJava, jint level)
+{
+    intel_codec_context_t *context = (intel_codec_context_t *)contextFromJava;
+    context->level = level;
+}
+
 /*
  * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
  * Method:    destroyContext
@@ -187,6 +387,33 @@ Java_com_intel_compression_jni_IntelCompressionCodecJNI_destroyContext(
     free(context);
 }
 
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    compressBound
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_compressBound(
+        JNIEnv *env, jclass cls, jlong contextFromJava, jint srcLen)
+{
+    intel_codec_context_t *context = (intel_codec_context_t *)contextFromJava;
+    /* a block the codec fails on is stored raw */
+    uint32_t bound = raw_wrapper_compress_bound(srcLen);
+
+    if ((context->codec >= 0)
+        && (context->codec < (sizeof(intel_codec_table) / sizeof(intel_codec_table[0])))
+        && (intel_codec_table[context->codec].compress_bound != NULL))
+    {
+        uint32_t codec_bound = intel_codec_table[context->codec].compress_bound(srcLen);
+        if (codec_bound > bound)
+        {
+            bound = codec_bound;
+        }
+    }
+
+    return bound;
+}
+
 /*
  * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
  * Method:    compress
@@ -278,6 +505,14 @@ Java_com_intel_compression_jni_IntelCompressionCodecJNI_decompress(
         && (header->codec < (sizeof(intel_codec_table) / sizeof(intel_codec_table[0])))
         && (intel_codec_table[header->codec].decompress != NULL))
     {
+        if (intel_codec_ensure_init(header->codec) != 0)
+        {
+            char msg[128];
+            snprintf(msg, 128, "Can't load codec %s's library!", intel_codec_table[header->codec].name);
+            THROW(env, "java/lang/UnsatisfiedLinkError", msg);
+            return 0;
+        }
+
         uncompressed_size = destLen;
         int ret = intel_codec_table[header->codec].decompress(
             context, in, srcLen, out, &uncompressed_size);
@@ -294,6 +529,169 @@ Java_com_intel_compression_jni_IntelCompressionCodecJNI_decompress(
     return uncompressed_size;
 }
 
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    compressBlock
+ * Signature: (JJIJI)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_compressBlock(
+        JNIEnv *env, jclass cls, jlong contextFromJava,
+        jlong srcAddress, jint srcLen, jlong destAddress, jint destLen)
+{
+    intel_codec_context_t *context = (intel_codec_context_t *)contextFromJava;
+    uint32_t compressed_size = destLen;
+
+    if ((context->codec < 0) || (context->codec >= INTEL_CODEC_COUNT)
+        || (intel_codec_table[context->codec].compress_bare == NULL))
+    {
+        THROW(env, "java/lang/UnsupportedOperationException", "Codec has no bare block format.");
+        return 0;
+    }
+
+    if (intel_codec_table[context->codec].compress_bare(context,
+            (const uint8_t *)srcAddress, srcLen, (uint8_t *)destAddress, &compressed_size) != 0)
+    {
+        THROW(env, "java/lang/InternalError", "Could not compress data.");
+        return 0;
+    }
+
+    return compressed_size;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    decompressBlock
+ * Signature: (IJIJI)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_decompressBlock(
+        JNIEnv *env, jclass cls, jint codec,
+        jlong srcAddress, jint srcLen, jlong destAddress, jint destLen)
+{
+    uint32_t uncompressed_size = destLen;
+
+    if ((codec < 0) || (codec >= INTEL_CODEC_COUNT)
+        || (intel_codec_table[codec].decompress_bare == NULL))
+    {
+        THROW(env, "java/lang/UnsupportedOperationException", "Codec has no bare block format.");
+        return 0;
+    }
+
+    if (intel_codec_ensure_init(codec) != 0)
+    {
+        char msg[128];
+        snprintf(msg, 128, "Can't load codec %s's library!", intel_codec_table[codec].name);
+        THROW(env, "java/lang/UnsatisfiedLinkError", msg);
+        return 0;
+    }
+
+    if (intel_codec_table[codec].decompress_bare(NULL,
+            (const uint8_t *)srcAddress, srcLen, (uint8_t *)destAddress, &uncompressed_size) != 0)
+    {
+        THROW(env, "java/lang/InternalError", "Could not decompress data.");
+        return 0;
+    }
+
+    return uncompressed_size;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    decompressLZ4BlockWithPrefix
+ * Signature: (JIJII)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_decompressLZ4BlockWithPrefix(
+        JNIEnv *env, jclass cls, jlong srcAddress, jint srcLen,
+        jlong destAddress, jint destLen, jint prefixLen)
+{
+    uint32_t uncompressed_size = destLen;
+
+    if (intel_codec_ensure_init(INTEL_CODEC_LZ4_IPP) != 0)
+    {
+        THROW(env, "java/lang/UnsatisfiedLinkError", "Can't load codec lz4-ipp's library!");
+        return 0;
+    }
+
+    if (!lz4_ipp_wrapper_has_prefix_api())
+    {
+        THROW(env, "java/lang/UnsupportedOperationException",
+            "Linked LZ4 blocks need LZ4_decompress_safe_usingDict of codec lz4-ipp's library!");
+        return 0;
+    }
+
+    if (lz4_ipp_wrapper_decompress_prefix((const uint8_t *)srcAddress, srcLen,
+            (uint8_t *)destAddress, &uncompressed_size, prefixLen) != 0)
+    {
+        THROW(env, "java/lang/InternalError", "Could not decompress data.");
+        return 0;
+    }
+
+    return uncompressed_size;
+}
+
+static jint block_filter_jni(JNIEnv *env, jboolean reverse, jint filter, jint elementSize,
+        jobject srcBuffer, jint srcOff, jobject destBuffer, jint destOff, jint len)
+{
+    uint8_t* in;
+    uint8_t* out;
+    int32_t ret;
+
+    in = (uint8_t*)(*env)->GetDirectBufferAddress(env, srcBuffer);
+    if (in == NULL)
+    {
+        THROW(env, "java/lang/OutOfMemoryError", "Can't get filter input buffer");
+        return 0;
+    }
+
+    out = (uint8_t*)(*env)->GetDirectBufferAddress(env, destBuffer);
+    if (out == NULL)
+    {
+        THROW(env, "java/lang/OutOfMemoryError", "Can't get filter output buffer");
+        return 0;
+    }
+
+    ret = reverse
+        ? block_filter_reverse(filter, elementSize, in + srcOff, out + destOff, len)
+        : block_filter_apply(filter, elementSize, in + srcOff, out + destOff, len);
+    if (ret != 0)
+    {
+        THROW(env, "java/lang/IllegalArgumentException", "Unsupported filter or element size.");
+        return 0;
+    }
+
+    return len;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    applyFilter
+ * Signature: (IILjava/nio/ByteBuffer;ILjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_applyFilter(
+        JNIEnv *env, jclass cls, jint filter, jint elementSize,
+        jobject srcBuffer, jint srcOff, jobject destBuffer, jint destOff, jint len)
+{
+    return block_filter_jni(env, JNI_FALSE, filter, elementSize,
+        srcBuffer, srcOff, destBuffer, destOff, len);
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    reverseFilter
+ * Signature: (IILjava/nio/ByteBuffer;ILjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_reverseFilter(
+        JNIEnv *env, jclass cls, jint filter, jint elementSize,
+        jobject srcBuffer, jint srcOff, jobject destBuffer, jint destOff, jint len)
+{
+    return block_filter_jni(env, JNI_TRUE, filter, elementSize,
+        srcBuffer, srcOff, destBuffer, destOff, len);
+}
+
 /*
  * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
  * Method:    getLibraryName
@@ -314,6 +712,419 @@ Java_com_intel_compression_jni_IntelCompressionCodecJNI_getLibraryName(
     }
 }
 
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    getLibraryVersion
+ * Signature: (I)Ljava/lang/String;
+ */
+JNIEXPORT jstring JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_getLibraryVersion(
+        JNIEnv *env, jclass cls, jint codec)
+{
+    if ((codec >= 0)
+        && (codec < (sizeof(intel_codec_table) / sizeof(intel_codec_table[0])))
+        && (intel_codec_table[codec].get_library_version != NULL)
+        && (intel_codec_ensure_init(codec) == 0))
+    {
+        const char *version = intel_codec_table[codec].get_library_version();
+        if (version != NULL)
+        {
+            return (*env)->NewStringUTF(env, version);
+        }
+    }
+    return (*env)->NewStringUTF(env, "Unavailable");
+}
+
+/*
+ * Load the library of igzip for the gzip streams.
+ * Return 0 if its stateful API is available.
+ */
+static int32_t gzip_stream_ensure_init(JNIEnv *env)
+{
+    if ((intel_codec_ensure_init(INTEL_CODEC_IGZIP) != 0) || !igzip_wrapper_has_stream_api())
+    {
+        THROW(env, "java/lang/UnsatisfiedLinkError",
+            "Can't load the stateful deflate and inflate of codec igzip's library!");
+        return -1;
+    }
+    return 0;
+}
+
+/*
+ * Load the library of zstd for the zstd streams.
+ * Return 0 if its streaming API is available.
+ */
+static int32_t zstd_stream_ensure_init(JNIEnv *env)
+{
+    if ((intel_codec_ensure_init(INTEL_CODEC_ZSTD) != 0) || !zstd_wrapper_has_stream_api())
+    {
+        THROW(env, "java/lang/UnsatisfiedLinkError",
+            "Can't load the streaming API of codec zstd's library!");
+        return -1;
+    }
+    return 0;
+}
+
+/*
+ * Get the addresses of the ranges of the direct buffers of a stream.
+ * Return 0 on success.
+ */
+static int32_t codec_stream_buffers(JNIEnv *env, jobject srcBuffer, jint srcOff,
+        jobject destBuffer, jint destOff, uint8_t **in, uint8_t **out)
+{
+    *in = (uint8_t*)(*env)->GetDirectBufferAddress(env, srcBuffer);
+    if (*in == NULL)
+    {
+        THROW(env, "java/lang/OutOfMemoryError", "Can't get stream input buffer");
+        return -1;
+    }
+
+    *out = (uint8_t*)(*env)->GetDirectBufferAddress(env, destBuffer);
+    if (*out == NULL)
+    {
+        THROW(env, "java/lang/OutOfMemoryError", "Can't get stream output buffer");
+        return -1;
+    }
+
+    *in += srcOff;
+    *out += destOff;
+    return 0;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    createGzipDeflater
+ * Signature: (II)J
+ */
+JNIEXPORT jlong JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_createGzipDeflater(
+        JNIEnv *env, jclass cls, jint level, jint levelBufSize)
+{
+    if (gzip_stream_ensure_init(env) != 0)
+    {
+        return (jlong)0;
+    }
+    const char *error = igzip_wrapper_check_level_buf_size(level, levelBufSize);
+    if (error != NULL)
+    {
+        THROW(env, "java/lang/IllegalArgumentException", error);
+        return (jlong)0;
+    }
+    igzip_wrapper_deflater_t *deflater = igzip_wrapper_deflater_create(level, levelBufSize);
+    if (deflater == NULL)
+    {
+        THROW(env, "java/lang/OutOfMemoryError", "Error alloc the gzip deflater");
+        return (jlong)0;
+    }
+    return (jlong)deflater;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    resetGzipDeflater
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_resetGzipDeflater(
+        JNIEnv *env, jclass cls, jlong deflater)
+{
+    igzip_wrapper_deflater_reset((igzip_wrapper_deflater_t *)deflater);
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    gzipDeflate
+ * Signature: (JLjava/nio/ByteBuffer;IILjava/nio/ByteBuffer;IIZ[I)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_gzipDeflate(
+        JNIEnv *env, jclass cls, jlong deflater,
+        jobject srcBuffer, jint srcOff, jint srcLen,
+        jobject destBuffer, jint destOff, jint destLen, jboolean finish, jintArray progress)
+{
+    uint8_t* in;
+    uint8_t* out;
+    uint32_t consumed, produced;
+    int ended;
+
+    if (codec_stream_buffers(env, srcBuffer, srcOff, destBuffer, destOff, &in, &out) != 0)
+    {
+        return 0;
+    }
+
+    if (igzip_wrapper_deflate((igzip_wrapper_deflater_t *)deflater, in, srcLen, out, destLen,
+            finish, &consumed, &produced, &ended) != 0)
+    {
+        THROW(env, "java/lang/InternalError", "Could not compress data.");
+        return 0;
+    }
+
+    jint result[2] = {(jint)consumed, ended};
+    (*env)->SetIntArrayRegion(env, progress, 0, 2, result);
+    return (jint)produced;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    destroyGzipDeflater
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_destroyGzipDeflater(
+        JNIEnv *env, jclass cls, jlong deflater)
+{
+    igzip_wrapper_deflater_destroy((igzip_wrapper_deflater_t *)deflater);
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    createGzipInflater
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_createGzipInflater(
+        JNIEnv *env, jclass cls)
+{
+    if (gzip_stream_ensure_init(env) != 0)
+    {
+        return (jlong)0;
+    }
+    igzip_wrapper_inflater_t *inflater = igzip_wrapper_inflater_create();
+    if (inflater == NULL)
+    {
+        THROW(env, "java/lang/OutOfMemoryError", "Error alloc the gzip inflater");
+        return (jlong)0;
+    }
+    return (jlong)inflater;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    resetGzipInflater
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_resetGzipInflater(
+        JNIEnv *env, jclass cls, jlong inflater)
+{
+    igzip_wrapper_inflater_reset((igzip_wrapper_inflater_t *)inflater);
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    gzipInflate
+ * Signature: (JLjava/nio/ByteBuffer;IILjava/nio/ByteBuffer;II[I)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_gzipInflate(
+        JNIEnv *env, jclass cls, jlong inflater,
+        jobject srcBuffer, jint srcOff, jint srcLen,
+        jobject destBuffer, jint destOff, jint destLen, jintArray progress)
+{
+    uint8_t* in;
+    uint8_t* out;
+    uint32_t consumed, produced, crc;
+    int ended;
+
+    if (codec_stream_buffers(env, srcBuffer, srcOff, destBuffer, destOff, &in, &out) != 0)
+    {
+        return 0;
+    }
+
+    if (igzip_wrapper_inflate((igzip_wrapper_inflater_t *)inflater, in, srcLen, out, destLen,
+            &consumed, &produced, &ended, &crc) != 0)
+    {
+        THROW(env, "java/io/IOException", "Invalid deflate data in gzip member.");
+        return 0;
+    }
+
+    jint result[3] = {(jint)consumed, ended, (jint)crc};
+    (*env)->SetIntArrayRegion(env, progress, 0, 3, result);
+    return (jint)produced;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    destroyGzipInflater
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_destroyGzipInflater(
+        JNIEnv *env, jclass cls, jlong inflater)
+{
+    igzip_wrapper_inflater_destroy((igzip_wrapper_inflater_t *)inflater);
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    createZstdCStream
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_createZstdCStream(
+        JNIEnv *env, jclass cls, jlong contextFromJava)
+{
+    intel_codec_context_t *context = (intel_codec_context_t *)contextFromJava;
+    if (context->codec != INTEL_CODEC_ZSTD)
+    {
+        THROW(env, "java/lang/IllegalArgumentException", "Not a compress context of codec zstd");
+        return (jlong)0;
+    }
+    if (zstd_stream_ensure_init(env) != 0)
+    {
+        return (jlong)0;
+    }
+    zstd_wrapper_cstream_t *cstream = zstd_wrapper_cstream_create(context);
+    if (cstream == NULL)
+    {
+        THROW(env, "java/lang/OutOfMemoryError", "Error alloc the zstd compress stream");
+        return (jlong)0;
+    }
+    return (jlong)cstream;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    resetZstdCStream
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_resetZstdCStream(
+        JNIEnv *env, jclass cls, jlong cstream)
+{
+    if (zstd_wrapper_cstream_reset((zstd_wrapper_cstream_t *)cstream) != 0)
+    {
+        THROW(env, "java/lang/InternalError", "Could not reset the zstd compress stream.");
+    }
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    zstdCompressStream
+ * Signature: (JLjava/nio/ByteBuffer;IILjava/nio/ByteBuffer;IIZ[I)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_zstdCompressStream(
+        JNIEnv *env, jclass cls, jlong cstream,
+        jobject srcBuffer, jint srcOff, jint srcLen,
+        jobject destBuffer, jint destOff, jint destLen, jboolean finish, jintArray progress)
+{
+    uint8_t* in;
+    uint8_t* out;
+    uint32_t consumed, produced;
+    int ended;
+
+    if (codec_stream_buffers(env, srcBuffer, srcOff, destBuffer, destOff, &in, &out) != 0)
+    {
+        return 0;
+    }
+
+    if (zstd_wrapper_cstream_compress((zstd_wrapper_cstream_t *)cstream, in, srcLen, out, destLen,
+            finish, &consumed, &produced, &ended) != 0)
+    {
+        THROW(env, "java/lang/InternalError", "Could not compress data.");
+        return 0;
+    }
+
+    jint result[2] = {(jint)consumed, ended};
+    (*env)->SetIntArrayRegion(env, progress, 0, 2, result);
+    return (jint)produced;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    destroyZstdCStream
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_destroyZstdCStream(
+        JNIEnv *env, jclass cls, jlong cstream)
+{
+    zstd_wrapper_cstream_destroy((zstd_wrapper_cstream_t *)cstream);
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    createZstdDStream
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_createZstdDStream(
+        JNIEnv *env, jclass cls)
+{
+    if (zstd_stream_ensure_init(env) != 0)
+    {
+        return (jlong)0;
+    }
+    zstd_wrapper_dstream_t *dstream = zstd_wrapper_dstream_create();
+    if (dstream == NULL)
+    {
+        THROW(env, "java/lang/OutOfMemoryError", "Error alloc the zstd decompress stream");
+        return (jlong)0;
+    }
+    return (jlong)dstream;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    resetZstdDStream
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_resetZstdDStream(
+        JNIEnv *env, jclass cls, jlong dstream)
+{
+    if (zstd_wrapper_dstream_reset((zstd_wrapper_dstream_t *)dstream) != 0)
+    {
+        THROW(env, "java/lang/InternalError", "Could not reset the zstd decompress stream.");
+    }
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    zstdDecompressStream
+ * Signature: (JLjava/nio/ByteBuffer;IILjava/nio/ByteBuffer;II[I)I
+ */
+JNIEXPORT jint JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_zstdDecompressStream(
+        JNIEnv *env, jclass cls, jlong dstream,
+        jobject srcBuffer, jint srcOff, jint srcLen,
+        jobject destBuffer, jint destOff, jint destLen, jintArray progress)
+{
+    uint8_t* in;
+    uint8_t* out;
+    uint32_t consumed, produced;
+    int ended;
+
+    if (codec_stream_buffers(env, srcBuffer, srcOff, destBuffer, destOff, &in, &out) != 0)
+    {
+        return 0;
+    }
+
+    if (zstd_wrapper_dstream_decompress((zstd_wrapper_dstream_t *)dstream, in, srcLen, out, destLen,
+            &consumed, &produced, &ended) != 0)
+    {
+        THROW(env, "java/io/IOException", "Invalid data in zstd frame.");
+        return 0;
+    }
+
+    jint result[2] = {(jint)consumed, ended};
+    (*env)->SetIntArrayRegion(env, progress, 0, 2, result);
+    return (jint)produced;
+}
+
+/*
+ * Class:     com_intel_compression_jni_IntelCompressionCodecJNI
+ * Method:    destroyZstdDStream
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL
+Java_com_intel_compression_jni_IntelCompressionCodecJNI_destroyZstdDStream(
+        JNIEnv *env, jclass cls, jlong dstream)
+{
+    zstd_wrapper_dstream_destroy((zstd_wrapper_dstream_t *)dstream);
+}
+
 static int32_t raw_wrapper_compress(intel_codec_context_t *context,
         const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
 {
@@ -326,6 +1137,11 @@ static int32_t raw_wrapper_compress(intel_codec_context_t *context,
     return 0;
 }
 
+static uint32_t raw_wrapper_compress_bound(uint32_t srcLen)
+{
+    return srcLen + sizeof(intel_codec_header_t);
+}
+
 static int32_t raw_wrapper_decompress(intel_codec_context_t *context,
         const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
 {
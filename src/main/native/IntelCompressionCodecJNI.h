@@ -35,10 +35,25 @@ typedef enum intel_codec
     INTEL_CODEC_ZLIB_FPGA  = 6,
 } intel_codec_t;
 
+/* must match the ids of com.intel.compression.util.CodecParameter */
+typedef enum intel_codec_param
+{
+    INTEL_CODEC_PARAM_LZ4_ACCELERATION      = 0,
+    INTEL_CODEC_PARAM_ZSTD_WINDOW_LOG       = 1,
+    INTEL_CODEC_PARAM_ZSTD_STRATEGY         = 2,
+    INTEL_CODEC_PARAM_ZSTD_LONG_DISTANCE    = 3,
+    INTEL_CODEC_PARAM_ZLIB_MEM_LEVEL        = 4,
+    INTEL_CODEC_PARAM_ZLIB_STRATEGY         = 5,
+    INTEL_CODEC_PARAM_IGZIP_LEVEL_BUF_SIZE  = 6,
+    INTEL_CODEC_PARAM_COUNT                 = 7,
+} intel_codec_param_t;
+
 typedef struct intel_codec_context
 {
     int codec;
     int level;
+    /* indexed by intel_codec_param_t, 0 keeps the default of the library */
+    int params[INTEL_CODEC_PARAM_COUNT];
 } intel_codec_context_t;
 
 typedef struct intel_codec_header
@@ -57,8 +72,15 @@ typedef int32_t (*compress_func)(intel_codec_context_t *context,
 typedef int32_t (*decompress_func)(intel_codec_context_t *context,
     const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen);
 
+typedef uint32_t (*compress_bound_func)(uint32_t srcLen);
+
+/* return NULL if the codec can apply the params of the context, else the reason */
+typedef const char* (*check_params_func)(intel_codec_context_t *context);
+
 typedef char* (*get_library_name_func)();
 
+typedef const char* (*get_library_version_func)();
+
 #ifdef __cplusplus
 }
 #endif
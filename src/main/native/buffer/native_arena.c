@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#define _GNU_SOURCE
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <pthread.h>
+#include <sys/mman.h>
+
+#include "native_arena.h"
+
+#define NATIVE_ARENA_HUGE_PAGE_SIZE (2UL * 1024 * 1024)
+#define NATIVE_ARENA_REGION_SIZE    (64UL * 1024 * 1024)
+#define NATIVE_ARENA_MIN_ALIGN      64
+#define NATIVE_ARENA_THP_ENABLED    "/sys/kernel/mm/transparent_hugepage/enabled"
+
+typedef struct native_arena
+{
+    uint8_t *cursor;
+    size_t remaining;
+    int32_t huge_pages;     /* -1 until probed */
+} native_arena_t;
+
+static native_arena_t g_native_arena = {NULL, 0, -1};
+static pthread_mutex_t g_native_arena_lock = PTHREAD_MUTEX_INITIALIZER;
+
+static size_t native_arena_round_up(size_t size, size_t align)
+{
+    return (size + align - 1) & ~(align - 1);
+}
+
+static int32_t native_arena_probe_huge_pages(void)
+{
+#ifdef MADV_HUGEPAGE
+    char mode[128];
+    int32_t enabled = 0;
+    FILE *file = fopen(NATIVE_ARENA_THP_ENABLED, "r");
+    if (file == NULL)
+    {
+        return 0;
+    }
+    if (fgets(mode, sizeof(mode), file) != NULL)
+    {
+        /* "always [madvise] never" means madvise(MADV_HUGEPAGE) takes effect */
+        enabled = (strstr(mode, "[never]") == NULL);
+    }
+    fclose(file);
+    return enabled;
+#else
+    return 0;
+#endif
+}
+
+/* Map a region of the given size aligned to the huge page size. */
+static uint8_t *native_arena_map_region(size_t size)
+{
+    size_t reserved = size + NATIVE_ARENA_HUGE_PAGE_SIZE;
+    uint8_t *base = mmap(NULL, reserved, PROT_READ | PROT_WRITE,
+            MAP_PRIVATE | MAP_ANONYMOUS, -1, 0);
+    if (base == MAP_FAILED)
+    {
+        fprintf(stderr, "Native arena: failed to map a region of %zu bytes\n", size);
+        return NULL;
+    }
+
+    uint8_t *region = (uint8_t *)native_arena_round_up((uintptr_t)base,
+            NATIVE_ARENA_HUGE_PAGE_SIZE);
+    size_t head = region - base;
+    size_t tail = reserved - head - size;
+    if (head > 0)
+    {
+        munmap(base, head);
+    }
+    if (tail > 0)
+    {
+        munmap(region + size, tail);
+    }
+
+#ifdef MADV_HUGEPAGE
+    if (g_native_arena.huge_pages == 1 && madvise(region, size, MADV_HUGEPAGE) != 0)
+    {
+        fprintf(stderr, "Native arena: huge pages unavailable, fallback to normal pages\n");
+        g_native_arena.huge_pages = 0;
+    }
+#endif
+
+    return region;
+}
+
+void *native_arena_alloc(size_t size, size_t align)
+{
+    native_arena_t *arena = &g_native_arena;
+    void *slab = NULL;
+
+    if (align < NATIVE_ARENA_MIN_ALIGN)
+    {
+        align = NATIVE_ARENA_MIN_ALIGN;
+    }
+    if ((align & (align - 1)) != 0 || align > NATIVE_ARENA_HUGE_PAGE_SIZE || size == 0)
+    {
+        return NULL;
+    }
+    size = native_arena_round_up(size, align);
+
+    pthread_mutex_lock(&g_native_arena_lock);
+    if (arena->huge_pages < 0)
+    {
+        arena->huge_pages = native_arena_probe_huge_pages();
+    }
+
+    if (size > NATIVE_ARENA_REGION_SIZE / 2)
+    {
+        /* Large slabs get a dedicated region instead of wasting the current one. */
+        slab = native_arena_map_region(native_arena_round_up(size, NATIVE_ARENA_HUGE_PAGE_SIZE));
+    }
+    else
+    {
+        size_t padding = native_arena_round_up((uintptr_t)arena->cursor, align)
+            - (uintptr_t)arena->cursor;
+        if (arena->cursor == NULL || padding + size > arena->remaining)
+        {
+            uint8_t *region = native_arena_map_region(NATIVE_ARENA_REGION_SIZE);
+            if (region != NULL)
+            {
+                arena->cursor = region;
+                arena->remaining = NATIVE_ARENA_REGION_SIZE;
+                padding = 0;
+            }
+        }
+        if (arena->cursor != NULL && padding + size <= arena->remaining)
+        {
+            slab = arena->cursor + padding;
+            arena->cursor += padding + size;
+            arena->remaining -= padding + size;
+        }
+    }
+    pthread_mutex_unlock(&g_native_arena_lock);
+
+    if (slab == NULL && posix_memalign(&slab, align, size) != 0)
+    {
+        slab = NULL;
+    }
+    return slab;
+}
+
+int32_t native_arena_huge_pages_enabled(void)
+{
+    native_arena_t *arena = &g_native_arena;
+    int32_t enabled;
+
+    pthread_mutex_lock(&g_native_arena_lock);
+    if (arena->huge_pages < 0)
+    {
+        arena->huge_pages = native_arena_probe_huge_pages();
+    }
+    enabled = arena->huge_pages;
+    pthread_mutex_unlock(&g_native_arena_lock);
+    return enabled;
+}
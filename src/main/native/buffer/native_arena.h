@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _NATIVE_ARENA_H_
+#define _NATIVE_ARENA_H_
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+#include <stddef.h>
+#include <stdint.h>
+
+/*
+ * Carve an aligned slab of the given size out of the process wide arena.
+ * The arena reserves large regions backed by transparent huge pages when
+ * the kernel supports them and falls back to normal pages otherwise.
+ * Slabs are never returned to the arena, callers are expected to cache
+ * and reuse them. Returns NULL if no memory is available.
+ */
+extern void *native_arena_alloc(size_t size, size_t align);
+
+/* 1 if arena regions are advised to use transparent huge pages, 0 otherwise. */
+extern int32_t native_arena_huge_pages_enabled(void);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif /* _NATIVE_ARENA_H_ */
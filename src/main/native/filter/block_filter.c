@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <string.h>
+
+#include "block_filter.h"
+
+/*
+ * The loops are written for the compiler to vectorize: the element size is a
+ * constant once the helpers are inlined for the common sizes, and the loops
+ * carry no dependency except for the delta decoder.
+ */
+
+static inline void shuffle(const uint8_t *src, uint8_t *dst, uint32_t n, uint32_t w)
+{
+    uint32_t i, j;
+
+    for (j = 0; j < w; j++)
+    {
+        for (i = 0; i < n; i++)
+        {
+            dst[j * n + i] = src[i * w + j];
+        }
+    }
+}
+
+static inline void unshuffle(const uint8_t *src, uint8_t *dst, uint32_t n, uint32_t w)
+{
+    uint32_t i, j;
+
+    for (i = 0; i < n; i++)
+    {
+        for (j = 0; j < w; j++)
+        {
+            dst[i * w + j] = src[j * n + i];
+        }
+    }
+}
+
+/* Transpose the 8x8 bit matrix whose rows are the bytes of x. */
+static inline uint64_t transpose8(uint64_t x)
+{
+    uint64_t t;
+
+    t = (x ^ (x >> 7)) & 0x00AA00AA00AA00AAULL;
+    x = x ^ t ^ (t << 7);
+    t = (x ^ (x >> 14)) & 0x0000CCCC0000CCCCULL;
+    x = x ^ t ^ (t << 14);
+    t = (x ^ (x >> 28)) & 0x00000000F0F0F0F0ULL;
+    x = x ^ t ^ (t << 28);
+    return x;
+}
+
+/*
+ * Bit plane (j * 8 + b) holds bit b of byte j of every element, eight
+ * elements per byte.
+ */
+static inline void bitshuffle(const uint8_t *src, uint8_t *dst, uint32_t n, uint32_t w)
+{
+    const uint32_t groups = n / 8;
+    uint32_t g, j, k;
+
+    for (j = 0; j < w; j++)
+    {
+        uint8_t *planes = dst + (size_t)j * 8 * groups;
+        for (g = 0; g < groups; g++)
+        {
+            const uint8_t *elements = src + (size_t)g * 8 * w + j;
+            uint64_t x = 0;
+            for (k = 0; k < 8; k++)
+            {
+                x |= (uint64_t)elements[k * w] << (8 * k);
+            }
+            x = transpose8(x);
+            for (k = 0; k < 8; k++)
+            {
+                planes[k * groups + g] = (uint8_t)(x >> (8 * k));
+            }
+        }
+    }
+}
+
+static inline void bitunshuffle(const uint8_t *src, uint8_t *dst, uint32_t n, uint32_t w)
+{
+    const uint32_t groups = n / 8;
+    uint32_t g, j, k;
+
+    for (j = 0; j < w; j++)
+    {
+        const uint8_t *planes = src + (size_t)j * 8 * groups;
+        for (g = 0; g < groups; g++)
+        {
+            uint8_t *elements = dst + (size_t)g * 8 * w + j;
+            uint64_t x = 0;
+            for (k = 0; k < 8; k++)
+            {
+                x |= (uint64_t)planes[k * groups + g] << (8 * k);
+            }
+            x = transpose8(x);
+            for (k = 0; k < 8; k++)
+            {
+                elements[k * w] = (uint8_t)(x >> (8 * k));
+            }
+        }
+    }
+}
+
+static inline void delta_encode(const uint8_t *src, uint8_t *dst, uint32_t len, uint32_t w)
+{
+    uint32_t i;
+
+    for (i = 0; i < w && i < len; i++)
+    {
+        dst[i] = src[i];
+    }
+    for (i = w; i < len; i++)
+    {
+        dst[i] = src[i] - src[i - w];
+    }
+}
+
+static inline void delta_decode(const uint8_t *src, uint8_t *dst, uint32_t len, uint32_t w)
+{
+    uint32_t i;
+
+    for (i = 0; i < w && i < len; i++)
+    {
+        dst[i] = src[i];
+    }
+    for (i = w; i < len; i++)
+    {
+        dst[i] = src[i] + dst[i - w];
+    }
+}
+
+#define BLOCK_FILTER_DISPATCH(fn, a, b, c, w) \
+    switch (w) \
+    { \
+        case 2: fn(a, b, c, 2); break; \
+        case 4: fn(a, b, c, 4); break; \
+        case 8: fn(a, b, c, 8); break; \
+        default: fn(a, b, c, w); break; \
+    }
+
+static int32_t block_filter_run(int32_t filter, int32_t reverse, uint32_t w,
+    const uint8_t *src, uint8_t *dst, uint32_t len)
+{
+    uint32_t n;
+    uint32_t filtered;
+
+    if (w == 0 || w > BLOCK_FILTER_MAX_ELEMENT_SIZE)
+    {
+        return -1;
+    }
+    n = len / w;
+
+    switch (filter)
+    {
+        case BLOCK_FILTER_SHUFFLE:
+            if (reverse)
+            {
+                BLOCK_FILTER_DISPATCH(unshuffle, src, dst, n, w);
+            }
+            else
+            {
+                BLOCK_FILTER_DISPATCH(shuffle, src, dst, n, w);
+            }
+            filtered = n * w;
+            break;
+        case BLOCK_FILTER_BITSHUFFLE:
+            n -= n % 8;
+            if (reverse)
+            {
+                BLOCK_FILTER_DISPATCH(bitunshuffle, src, dst, n, w);
+            }
+            else
+            {
+                BLOCK_FILTER_DISPATCH(bitshuffle, src, dst, n, w);
+            }
+            filtered = n * w;
+            break;
+        case BLOCK_FILTER_DELTA:
+            if (reverse)
+            {
+                BLOCK_FILTER_DISPATCH(delta_decode, src, dst, len, w);
+            }
+            else
+            {
+                BLOCK_FILTER_DISPATCH(delta_encode, src, dst, len, w);
+            }
+            filtered = len;
+            break;
+        default:
+            return -1;
+    }
+
+    memcpy(dst + filtered, src + filtered, len - filtered);
+    return 0;
+}
+
+int32_t block_filter_apply(int32_t filter, uint32_t elementSize,
+    const uint8_t *src, uint8_t *dst, uint32_t len)
+{
+    return block_filter_run(filter, 0, elementSize, src, dst, len);
+}
+
+int32_t block_filter_reverse(int32_t filter, uint32_t elementSize,
+    const uint8_t *src, uint8_t *dst, uint32_t len)
+{
+    return block_filter_run(filter, 1, elementSize, src, dst, len);
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _BLOCK_FILTER_H_
+#define _BLOCK_FILTER_H_
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+#include <stdint.h>
+
+/* Filter ids, must match com.intel.compression.util.BlockFilter. */
+#define BLOCK_FILTER_SHUFFLE    1
+#define BLOCK_FILTER_BITSHUFFLE 2
+#define BLOCK_FILTER_DELTA      3
+
+#define BLOCK_FILTER_MAX_ELEMENT_SIZE 16
+
+/*
+ * Transform len bytes of fixed-width elements of elementSize bytes from src
+ * into dst, which must not overlap, so that the codec finds more matches.
+ *  - shuffle groups the n-th byte of every element together
+ *  - bitshuffle groups the n-th bit of every element together
+ *  - delta replaces every byte by its difference to the byte one element before
+ * Trailing bytes which don't fill an element, or for bitshuffle a group of 8
+ * elements, are copied as they are. Returns -1 for an unknown filter or
+ * element size, 0 otherwise.
+ */
+extern int32_t block_filter_apply(int32_t filter, uint32_t elementSize,
+    const uint8_t *src, uint8_t *dst, uint32_t len);
+
+/* Invert block_filter_apply with the same filter and element size. */
+extern int32_t block_filter_reverse(int32_t filter, uint32_t elementSize,
+    const uint8_t *src, uint8_t *dst, uint32_t len);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif /* _BLOCK_FILTER_H_ */
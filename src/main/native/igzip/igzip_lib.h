@@ -85,13 +85,17 @@ extern "C" {
 #define ISAL_DEF_MAX_HDR_SIZE 328
 #define ISAL_DEF_MAX_CODE_LEN 15
 #define ISAL_DEF_HIST_SIZE (32*IGZIP_K)
+#define ISAL_DEF_MAX_HIST_BITS 15
+#define ISAL_DEF_MAX_MATCH 258
+#define ISAL_DEF_MIN_MATCH 3
 
 #define ISAL_DEF_LIT_SYMBOLS 257
 #define ISAL_DEF_LEN_SYMBOLS 29
 #define ISAL_DEF_DIST_SYMBOLS 30
 #define ISAL_DEF_LIT_LEN_SYMBOLS (ISAL_DEF_LIT_SYMBOLS + ISAL_DEF_LEN_SYMBOLS)
 
-#define ISAL_LOOK_AHEAD (18 * 16)	/* Max repeat length, rounded up to 32 byte boundary */
+/* Max repeat length, rounded up to 32 byte boundary */
+#define ISAL_LOOK_AHEAD ((ISAL_DEF_MAX_MATCH + 31) & ~31)
 
 /******************************************************************************/
 /* Deflate Implemenation Specific Defines */
@@ -115,9 +119,14 @@ extern "C" {
 
 #define ISAL_LIMIT_HASH_UPDATE
 
-#ifndef IGZIP_HASH_SIZE
-#define IGZIP_HASH_SIZE  (8 * IGZIP_K)
-#endif
+#define IGZIP_HASH8K_HASH_SIZE (8 * IGZIP_K)
+#define IGZIP_HASH_HIST_SIZE IGZIP_HIST_SIZE
+#define IGZIP_HASH_MAP_HASH_SIZE IGZIP_HIST_SIZE
+
+#define IGZIP_LVL0_HASH_SIZE  (8 * IGZIP_K)
+#define IGZIP_LVL1_HASH_SIZE  IGZIP_HASH8K_HASH_SIZE
+#define IGZIP_LVL2_HASH_SIZE  IGZIP_HASH_HIST_SIZE
+#define IGZIP_LVL3_HASH_SIZE  IGZIP_HASH_MAP_HASH_SIZE
 
 #ifdef LONGER_HUFFTABLE
 enum {IGZIP_DIST_TABLE_SIZE = 8*1024};
@@ -155,8 +164,9 @@ enum {IGZIP_LIT_TABLE_SIZE = ISAL_DEF_LIT_SYMBOLS};
 #define INVALID_PARAM -8
 #define STATELESS_OVERFLOW -1
 #define ISAL_INVALID_OPERATION -9
-#define ISAL_INVALID_LEVEL -4	/* Invalid Compression level set */
 #define ISAL_INVALID_STATE -3
+#define ISAL_INVALID_LEVEL -4	/* Invalid Compression level set */
+#define ISAL_INVALID_LEVEL_BUF -5 /* Invalid buffer specified for the compression level */
 /**
  *  @enum isal_zstate_state
  *  @brief Compression State please note ZSTATE_TRL only applies for GZIP compression
@@ -185,6 +195,8 @@ enum isal_zstate_state {
 	ZSTATE_TMP_BODY,	//!< Temporary Body state
 	ZSTATE_TMP_FLUSH_READ_BUFFER, //!< Flush buffer
 	ZSTATE_TMP_FLUSH_ICF_BUFFER,
+	ZSTATE_TMP_TYPE0_HDR, //! Temporary Type0 block header to be written
+	ZSTATE_TMP_TYPE0_BODY, //!< Temporary Type0 block body to be written
 	ZSTATE_TMP_SYNC_FLUSH, //!< Write sync flush block
 	ZSTATE_TMP_FLUSH_WRITE_BUFFER, //!< Flush bitbuf
 	ZSTATE_TMP_TRL,	//!< Temporary Trailer state
@@ -200,6 +212,21 @@ enum isal_zstate_state {
 #define ISAL_DECODE_LONG_BITS 12
 #define ISAL_DECODE_SHORT_BITS 10
 
+#define ISAL_L_REM (21 - ISAL_DECODE_LONG_BITS)
+#define ISAL_S_REM (15 - ISAL_DECODE_SHORT_BITS)
+
+#define ISAL_L_DUP ((1 << ISAL_L_REM) - (ISAL_L_REM + 1))
+#define ISAL_S_DUP ((1 << ISAL_S_REM) - (ISAL_S_REM + 1))
+
+#define ISAL_L_UNUSED ((1 << ISAL_L_REM) - (1 << ((ISAL_L_REM)/2)) - (1 << ((ISAL_L_REM + 1)/2)) + 1)
+#define ISAL_S_UNUSED ((1 << ISAL_S_REM) - (1 << ((ISAL_S_REM)/2)) - (1 << ((ISAL_S_REM + 1)/2)) + 1)
+
+#define ISAL_L_SIZE (ISAL_DEF_LIT_LEN_SYMBOLS + ISAL_L_DUP + ISAL_L_UNUSED)
+#define ISAL_S_SIZE (ISAL_DEF_DIST_SYMBOLS + ISAL_S_DUP + ISAL_S_UNUSED)
+
+#define ISAL_HUFF_CODE_LARGE_LONG_ALIGNED (ISAL_L_SIZE + (-ISAL_L_SIZE & 0xf))
+#define ISAL_HUFF_CODE_SMALL_LONG_ALIGNED (ISAL_S_SIZE + (-ISAL_S_SIZE & 0xf))
+
 /* Current state of decompression */
 enum isal_block_state {
 	ISAL_BLOCK_NEW_HDR,	/* Just starting a new block */
@@ -207,7 +234,14 @@ enum isal_block_state {
 	ISAL_BLOCK_TYPE0,	/* Decoding a type 0 block */
 	ISAL_BLOCK_CODED,	/* Decoding a huffman coded block */
 	ISAL_BLOCK_INPUT_DONE,	/* Decompression of input is completed */
-	ISAL_BLOCK_FINISH	/* Decompression of input is completed and all data has been flushed to output */
+	ISAL_BLOCK_FINISH,	/* Decompression of input is completed and all data has been flushed to output */
+	ISAL_GZIP_EXTRA_LEN,
+	ISAL_GZIP_EXTRA,
+	ISAL_GZIP_NAME,
+	ISAL_GZIP_COMMENT,
+	ISAL_GZIP_HCRC,
+	ISAL_ZLIB_DICT,
+	ISAL_CHECKSUM_CHECK,
 };
 
 
@@ -217,14 +251,23 @@ enum isal_block_state {
 #define ISAL_GZIP_NO_HDR	2
 #define ISAL_ZLIB	3
 #define ISAL_ZLIB_NO_HDR	4
+#define ISAL_ZLIB_NO_HDR_VER	5
+#define ISAL_GZIP_NO_HDR_VER	6
 
 /* Inflate Return values */
 #define ISAL_DECOMP_OK 0	/* No errors encountered while decompressing */
 #define ISAL_END_INPUT 1	/* End of input reached */
 #define ISAL_OUT_OVERFLOW 2	/* End of output reached */
+#define ISAL_NAME_OVERFLOW 3	/* End of gzip name buffer reached */
+#define ISAL_COMMENT_OVERFLOW 4	/* End of gzip name buffer reached */
+#define ISAL_EXTRA_OVERFLOW 5	/* End of extra buffer reached */
+#define ISAL_NEED_DICT 6 /* Stream needs a dictionary to continue */
 #define ISAL_INVALID_BLOCK -1	/* Invalid deflate block found */
 #define ISAL_INVALID_SYMBOL -2	/* Invalid deflate symbol found */
 #define ISAL_INVALID_LOOKBACK -3	/* Invalid lookback distance found */
+#define ISAL_INVALID_WRAPPER -4 /* Invalid gzip/zlib wrapper found */
+#define ISAL_UNSUPPORTED_METHOD -5	/* Gzip/zlib wrapper specifies unsupported compress method */
+#define ISAL_INCORRECT_CHECKSUM -6 /* Incorrect checksum found */
 
 /******************************************************************************/
 /* Compression structures */
@@ -233,7 +276,7 @@ enum isal_block_state {
 struct isal_huff_histogram {
 	uint64_t lit_len_histogram[ISAL_DEF_LIT_LEN_SYMBOLS]; //!< Histogram of Literal/Len symbols seen
 	uint64_t dist_histogram[ISAL_DEF_DIST_SYMBOLS]; //!< Histogram of Distance Symbols seen
-	uint16_t hash_table[IGZIP_HASH_SIZE]; //!< Tmp space used as a hash table
+	uint16_t hash_table[IGZIP_LVL0_HASH_SIZE]; //!< Tmp space used as a hash table
 };
 
 struct isal_mod_hist {
@@ -242,12 +285,17 @@ struct isal_mod_hist {
 };
 
 #define ISAL_DEF_MIN_LEVEL 0
-#define ISAL_DEF_MAX_LEVEL 1
+#define ISAL_DEF_MAX_LEVEL 3
 
 /* Defines used set level data sizes */
+/* has to be at least sizeof(struct level_buf) + sizeof(struct lvlX_buf */
 #define ISAL_DEF_LVL0_REQ 0
-#define ISAL_DEF_LVL1_REQ 4 * IGZIP_K /* has to be at least sizeof(struct level_2_buf) */
+#define ISAL_DEF_LVL1_REQ (4 * IGZIP_K + 2 * IGZIP_LVL1_HASH_SIZE)
 #define ISAL_DEF_LVL1_TOKEN_SIZE 4
+#define ISAL_DEF_LVL2_REQ (4 * IGZIP_K + 2 * IGZIP_LVL2_HASH_SIZE)
+#define ISAL_DEF_LVL2_TOKEN_SIZE 4
+#define ISAL_DEF_LVL3_REQ 4 * IGZIP_K + 4 * 4 * IGZIP_K + 2 * IGZIP_LVL3_HASH_SIZE
+#define ISAL_DEF_LVL3_TOKEN_SIZE 4
 
 /* Data sizes for level specific data options */
 #define ISAL_DEF_LVL0_MIN ISAL_DEF_LVL0_REQ
@@ -264,6 +312,20 @@ struct isal_mod_hist {
 #define ISAL_DEF_LVL1_EXTRA_LARGE (ISAL_DEF_LVL1_REQ + ISAL_DEF_LVL1_TOKEN_SIZE * 128 * IGZIP_K)
 #define ISAL_DEF_LVL1_DEFAULT ISAL_DEF_LVL1_LARGE
 
+#define ISAL_DEF_LVL2_MIN (ISAL_DEF_LVL2_REQ + ISAL_DEF_LVL2_TOKEN_SIZE * 1 * IGZIP_K)
+#define ISAL_DEF_LVL2_SMALL (ISAL_DEF_LVL2_REQ + ISAL_DEF_LVL2_TOKEN_SIZE * 16 * IGZIP_K)
+#define ISAL_DEF_LVL2_MEDIUM (ISAL_DEF_LVL2_REQ + ISAL_DEF_LVL2_TOKEN_SIZE * 32 * IGZIP_K)
+#define ISAL_DEF_LVL2_LARGE (ISAL_DEF_LVL2_REQ + ISAL_DEF_LVL2_TOKEN_SIZE * 64 * IGZIP_K)
+#define ISAL_DEF_LVL2_EXTRA_LARGE (ISAL_DEF_LVL2_REQ + ISAL_DEF_LVL2_TOKEN_SIZE * 128 * IGZIP_K)
+#define ISAL_DEF_LVL2_DEFAULT ISAL_DEF_LVL2_LARGE
+
+#define ISAL_DEF_LVL3_MIN (ISAL_DEF_LVL3_REQ + ISAL_DEF_LVL3_TOKEN_SIZE * 1 * IGZIP_K)
+#define ISAL_DEF_LVL3_SMALL (ISAL_DEF_LVL3_REQ + ISAL_DEF_LVL3_TOKEN_SIZE * 16 * IGZIP_K)
+#define ISAL_DEF_LVL3_MEDIUM (ISAL_DEF_LVL3_REQ + ISAL_DEF_LVL3_TOKEN_SIZE * 32 * IGZIP_K)
+#define ISAL_DEF_LVL3_LARGE (ISAL_DEF_LVL3_REQ + ISAL_DEF_LVL3_TOKEN_SIZE * 64 * IGZIP_K)
+#define ISAL_DEF_LVL3_EXTRA_LARGE (ISAL_DEF_LVL3_REQ + ISAL_DEF_LVL3_TOKEN_SIZE * 128 * IGZIP_K)
+#define ISAL_DEF_LVL3_DEFAULT ISAL_DEF_LVL3_LARGE
+
 #define IGZIP_NO_HIST 0
 #define IGZIP_HIST 1
 #define IGZIP_DICT_HIST 2
@@ -277,6 +339,31 @@ struct BitBuf2 {
 	uint8_t *m_out_start;	//!< start of buffer to write to
 };
 
+/** @brief Holds the zlib header information*/
+struct isal_zlib_header {
+	uint32_t info;		//!< base-2 logarithm of the LZ77 window size minus 8
+	uint32_t level;		//!< Compression level (fastest, fast, default, maximum)
+	uint32_t dict_id;	//!< Dictionary id
+	uint32_t dict_flag;	//!< Whether a preset dictionary is used
+};
+
+/** @brief Holds the gzip header information*/
+struct isal_gzip_header {
+	uint32_t text;		//!< Optional Text hint
+	uint32_t time;		//!< Unix modification time in gzip header
+	uint32_t xflags;	//!< xflags in gzip header
+	uint32_t os;		//!< OS in gzip header
+	uint8_t *extra;		//!< Extra field in gzip header
+	uint32_t extra_buf_len;	//!< Length of extra buffer
+	uint32_t extra_len;	//!< Actual length of gzip header extra field
+	char *name;		//!< Name in gzip header
+	uint32_t name_buf_len;	//!< Length of name buffer
+	char *comment;		//!< Comments in gzip header
+	uint32_t comment_buf_len;	//!< Length of comment buffer
+	uint32_t hcrc;		//!< Header crc or header crc flag
+	uint32_t flags;		//!< Internal data
+};
+
 /* Variable prefixes:
  * b_ : Measured wrt the start of the buffer
  * f_ : Measured wrt the start of the file (aka file_start)
@@ -284,15 +371,19 @@ struct BitBuf2 {
 
 /** @brief Holds the internal state information for input and output compression streams*/
 struct isal_zstate {
-	uint8_t *file_start;	//!< pointer to where file would logically start
-	struct BitBuf2 bitbuf;	//!< Bit Buffer
-	uint32_t crc;		//!< Current crc
+	uint32_t total_in_start; //!< Not used, may be replaced with something else
+	uint32_t block_next;	//!< Start of current deflate block in the input
+	uint32_t block_end;	//!< End of current deflate block in the input
+	uint32_t dist_mask;	//!< Distance mask used.
+	uint32_t hash_mask;
 	enum isal_zstate_state state;	//!< Current state in processing the data stream
-	uint16_t has_wrap_hdr;	//!< keeps track of wrapper header
-	uint16_t has_eob_hdr;	//!< keeps track of eob hdr (with BFINAL set)
-	uint16_t has_eob;	//!< keeps track of eob on the last deflate block
-	uint16_t has_hist;	//!< flag to track if there is match history
-	struct isal_mod_hist hist;
+	struct BitBuf2 bitbuf;	//!< Bit Buffer
+	uint32_t crc;		//!< Current checksum without finalize step if any (adler)
+	uint8_t has_wrap_hdr;	//!< keeps track of wrapper header
+	uint8_t has_eob_hdr;	//!< keeps track of eob hdr (with BFINAL set)
+	uint8_t has_eob;	//!< keeps track of eob on the last deflate block
+	uint8_t has_hist;	//!< flag to track if there is match history
+	uint16_t has_level_buf_init; //!< flag to track if user supplied memory has been initialized.
 	uint32_t count;	//!< used for partial header/trailer writes
 	uint8_t tmp_out_buff[16];	//!< temporary array
 	uint32_t tmp_out_start;	//!< temporary variable
@@ -302,8 +393,7 @@ struct isal_zstate {
 	uint8_t buffer[2 * IGZIP_HIST_SIZE + ISAL_LOOK_AHEAD];	//!< Internal buffer
 
 	/* Stream should be setup such that the head is cache aligned*/
-	uint16_t head[IGZIP_HASH_SIZE];	//!< Hash array
-
+	uint16_t head[IGZIP_LVL0_HASH_SIZE];	//!< Hash array
 };
 
 /** @brief Holds the huffman tree used to huffman encode the input stream **/
@@ -337,7 +427,8 @@ struct isal_zstream {
 	uint8_t * level_buf; //!< User allocated buffer required for different compression levels
 	uint16_t end_of_stream;	//!< non-zero if this is the last input buffer
 	uint16_t flush;	//!< Flush type can be NO_FLUSH, SYNC_FLUSH or FULL_FLUSH
-	uint32_t gzip_flag; //!< Indicate if gzip compression is to be performed
+	uint16_t gzip_flag; //!< Indicate if gzip compression is to be performed
+	uint16_t hist_bits; //!< Log base 2 of maximum lookback distance, 0 is use default
 
 	struct isal_zstate internal_state;	//!< Internal state for this stream
 };
@@ -393,14 +484,14 @@ struct isal_zstream {
 
 /* Large lookup table for decoding huffman codes */
 struct inflate_huff_code_large {
-	uint16_t short_code_lookup[1 << (ISAL_DECODE_LONG_BITS)];
-	uint16_t long_code_lookup[288 + (1 << (15 - ISAL_DECODE_LONG_BITS))];
+	uint32_t short_code_lookup[1 << (ISAL_DECODE_LONG_BITS)];
+	uint16_t long_code_lookup[ISAL_HUFF_CODE_LARGE_LONG_ALIGNED];
 };
 
 /* Small lookup table for decoding huffman codes */
 struct inflate_huff_code_small {
 	uint16_t short_code_lookup[1 << (ISAL_DECODE_SHORT_BITS)];
-	uint16_t long_code_lookup[32 + (1 << (15 - ISAL_DECODE_SHORT_BITS))];
+	uint16_t long_code_lookup[ISAL_HUFF_CODE_SMALL_LONG_ALIGNED];
 };
 
 /** @brief Holds decompression state information*/
@@ -418,11 +509,19 @@ struct inflate_state {
 	uint32_t dict_length;	//!< Length of dictionary used
 	uint32_t bfinal;	//!< Flag identifying final block
 	uint32_t crc_flag;	//!< Flag identifying whether to track of crc
-	uint32_t crc;		//!< Contains crc of output if crc_flag is set
-	int32_t type0_block_len;	//!< Length left to read of type 0 block when outbuffer overflow occured
-	int32_t copy_overflow_length; 	//!< Length left to copy when outbuffer overflow occured
-	int32_t copy_overflow_distance;	//!< Lookback distance when outbuffer overlow occured
-	int32_t tmp_in_size;	//!< Number of bytes in tmp_in_buffer
+	uint32_t crc;		//!< Contains crc or adler32 of output if crc_flag is set
+	uint32_t hist_bits; //!< Log base 2 of maximum lookback distance
+	union {
+		int32_t type0_block_len;	//!< Length left to read of type 0 block when outbuffer overflow occurred
+		int32_t count; //!< Count of bytes remaining to be parsed
+		uint32_t dict_id;
+	};
+	int32_t write_overflow_lits;
+	int32_t write_overflow_len;
+	int32_t copy_overflow_length; 	//!< Length left to copy when outbuffer overflow occurred
+	int32_t copy_overflow_distance;	//!< Lookback distance when outbuffer overflow occurred
+	int16_t wrapper_flag;
+	int16_t tmp_in_size;	//!< Number of bytes in tmp_in_buffer
 	int32_t tmp_out_valid;	//!< Number of bytes in tmp_out_buffer
 	int32_t tmp_out_processed;	//!< Number of bytes processed in tmp_out_buffer
 	uint8_t tmp_in_buffer[ISAL_DEF_MAX_HDR_SIZE];	//!< Temporary buffer containing data from the input stream
@@ -707,6 +806,57 @@ int isal_inflate(struct inflate_state *state);
  */
 int isal_inflate_stateless(struct inflate_state *state);
 
+/******************************************************************************/
+/* Gzip header functions */
+/******************************************************************************/
+/**
+ * @brief Initialize gzip header structure to default values
+ *
+ * @param gz_hdr: Gzip header structure
+ * @returns none
+ */
+void isal_gzip_header_init(struct isal_gzip_header *gz_hdr);
+
+/**
+ * @brief Write gzip header to output stream
+ *
+ * Writes the gzip header to the output stream. On entry this function assumes
+ * that the output buffer has been initialized, so stream->next_out,
+ * stream->avail_out and stream->total_out have been set. If the output buffer
+ * contains insufficient space, stream is not modified.
+ *
+ * @param stream: Structure holding state information on the compression stream.
+ * @param gz_hdr: Structure holding the gzip header information to encode.
+ *
+ * @returns Returns 0 if the header is sucessfully written, otherwise returns
+ * the minimum size required to sucessfully write the gzip header to the output
+ * buffer.
+ */
+uint32_t isal_write_gzip_header(struct isal_zstream * stream, struct isal_gzip_header *gz_hdr);
+
+/**
+ * @brief Read and return gzip header information
+ *
+ * On entry state must be initialized and next_in pointing to a gzip compressed
+ * buffer. The buffers gz_hdr->extra, gz_hdr->name, gz_hdr->comments and the
+ * buffer lengths must be set to record the corresponding field, or set to NULL
+ * to disregard that gzip header information. If one of these buffers overflows,
+ * the user can reallocate a larger buffer and call this function again to
+ * continue reading the header information.
+ *
+ * @param state: Structure holding state information on the decompression stream.
+ * @param gz_hdr: Structure to return data encoded in the gzip header
+ * @returns ISAL_DECOMP_OK (header was successfully parsed)
+ *          ISAL_END_INPUT (all input was parsed),
+ *          ISAL_NAME_OVERFLOW (gz_hdr->name overflowed while parsing),
+ *          ISAL_COMMENT_OVERFLOW (gz_hdr->comment overflowed while parsing),
+ *          ISAL_EXTRA_OVERFLOW (gz_hdr->extra overflowed while parsing),
+ *          ISAL_INVALID_WRAPPER (invalid gzip header found),
+ *          ISAL_UNSUPPORTED_METHOD (deflate is not the compression method),
+ *          ISAL_INCORRECT_CHECKSUM (gzip header checksum was incorrect)
+ */
+int isal_read_gzip_header (struct inflate_state *state, struct isal_gzip_header *gz_hdr);
+
 #ifdef __cplusplus
 }
 #endif
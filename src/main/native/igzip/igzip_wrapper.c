@@ -22,24 +22,83 @@
 
 #include "IntelCompressionCodecJNI.h"
 #include "igzip_lib.h"
+#include "igzip_wrapper.h"
 
-/* 0 <= level <= 1 */
+/* ISAL_DEF_MIN_LEVEL <= level <= ISAL_DEF_MAX_LEVEL */
 typedef void (*dlsym_isal_deflate_stateless_init)(struct isal_zstream *stream);
 typedef int (*dlsym_isal_deflate_stateless)(struct isal_zstream *stream);
 typedef void (*dlsym_isal_inflate_init)(struct inflate_state *state);
 typedef int (*dlsym_isal_inflate_stateless)(struct inflate_state *state);
 
+/* stateful API, needed by the gzip streams */
+typedef void (*dlsym_isal_deflate_init)(struct isal_zstream *stream);
+typedef int (*dlsym_isal_deflate)(struct isal_zstream *stream);
+typedef int (*dlsym_isal_inflate)(struct inflate_state *state);
+
 typedef struct igzip_wrapper_context {                                                                                                     int magic;
     dlsym_isal_deflate_stateless_init isal_deflate_stateless_init_func;
     dlsym_isal_deflate_stateless isal_deflate_stateless_func;
     dlsym_isal_inflate_init isal_inflate_init_func;
     dlsym_isal_inflate_stateless isal_inflate_stateless_func;
+    dlsym_isal_deflate_init isal_deflate_init_func;
+    dlsym_isal_deflate isal_deflate_func;
+    dlsym_isal_inflate isal_inflate_func;
 } igzip_wrapper_context_t;
 
+struct igzip_wrapper_deflater
+{
+    struct isal_zstream stream;
+    int level;
+    uint8_t *level_buf;
+    uint32_t level_buf_size;
+};
+
+struct igzip_wrapper_inflater
+{
+    struct inflate_state state;
+};
+
 igzip_wrapper_context_t g_igzip_wrapper_context;
 
 #define IGZIP_LIBRARY_NAME "libisal.so"
 
+/*
+ * Return the minimum size of the level buffer of the level, 0 for level 0
+ * which doesn't use it.
+ */
+static uint32_t igzip_wrapper_level_buf_min(int level)
+{
+    switch (level)
+    {
+    case 1:
+        return ISAL_DEF_LVL1_MIN;
+    case 2:
+        return ISAL_DEF_LVL2_MIN;
+    case 3:
+        return ISAL_DEF_LVL3_MIN;
+    default:
+        return ISAL_DEF_LVL0_MIN;
+    }
+}
+
+/*
+ * Return the size of the level buffer used when levelBufferSize isn't set.
+ */
+static uint32_t igzip_wrapper_level_buf_default(int level)
+{
+    switch (level)
+    {
+    case 1:
+        return ISAL_DEF_LVL1_EXTRA_LARGE;
+    case 2:
+        return ISAL_DEF_LVL2_EXTRA_LARGE;
+    case 3:
+        return ISAL_DEF_LVL3_EXTRA_LARGE;
+    default:
+        return ISAL_DEF_LVL0_EXTRA_LARGE;
+    }
+}
+
 int32_t igzip_wrapper_init(void)
 {
     igzip_wrapper_context_t *igzip_wrapper_context = &g_igzip_wrapper_context;
@@ -84,11 +143,44 @@ int32_t igzip_wrapper_init(void)
         return -1;
     }
 
+    /* the gzip streams are unavailable without the stateful API */
+    igzip_wrapper_context->isal_deflate_init_func = dlsym(lib, "isal_deflate_init");
+    igzip_wrapper_context->isal_deflate_func = dlsym(lib, "isal_deflate");
+    igzip_wrapper_context->isal_inflate_func = dlsym(lib, "isal_inflate");
+
     igzip_wrapper_context->magic = ('I' | ('S' << 8) | ('A' << 16) | ('L' << 24));
 
     return 0;
 }
 
+/*
+ * Check the level buffer of level_buf_size bytes, 0 for the default, against
+ * the minimum of the level.
+ * Return NULL if it is large enough, else the error.
+ */
+const char *igzip_wrapper_check_level_buf_size(int level, uint32_t level_buf_size)
+{
+    if (level_buf_size != 0 && level_buf_size < igzip_wrapper_level_buf_min(level))
+    {
+        switch (level)
+        {
+        case 1:
+            return "levelBufferSize is below the minimum of level 1";
+        case 2:
+            return "levelBufferSize is below the minimum of level 2";
+        default:
+            return "levelBufferSize is below the minimum of level 3";
+        }
+    }
+    return NULL;
+}
+
+const char *igzip_wrapper_check_params(intel_codec_context_t *context)
+{
+    return igzip_wrapper_check_level_buf_size(context->level,
+        context->params[INTEL_CODEC_PARAM_IGZIP_LEVEL_BUF_SIZE]);
+}
+
 int32_t igzip_wrapper_compress(intel_codec_context_t *context,
     const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
 {
@@ -99,7 +191,9 @@ int32_t igzip_wrapper_compress(intel_codec_context_t *context,
     header->uncompressed_size = srcLen;
 
     struct isal_zstream stream;
-    uint32_t level_buf_size = ISAL_DEF_LVL1_EXTRA_LARGE;
+    uint32_t level_buf_size = context->params[INTEL_CODEC_PARAM_IGZIP_LEVEL_BUF_SIZE] != 0
+        ? context->params[INTEL_CODEC_PARAM_IGZIP_LEVEL_BUF_SIZE]
+        : igzip_wrapper_level_buf_default(context->level);
     uint8_t *level_buf = NULL;
 
     igzip_wrapper_context->isal_deflate_stateless_init_func(&stream);
@@ -121,6 +215,10 @@ int32_t igzip_wrapper_compress(intel_codec_context_t *context,
     stream.level_buf = level_buf;
     stream.level_buf_size = level_buf_size;
     int ret = igzip_wrapper_context->isal_deflate_stateless_func(&stream);
+    if (level_buf != NULL)
+    {
+        free(level_buf);
+    }
     if (ret != COMP_OK)
     {
         if (ret == STATELESS_OVERFLOW)
@@ -147,16 +245,11 @@ int32_t igzip_wrapper_compress(intel_codec_context_t *context,
 
     *dstLen = header->compressed_size = stream.total_out + sizeof(intel_codec_header_t);
 
-    if (level_buf != NULL)
-    {
-        free(level_buf);
-    }
-
     return 0;
 }
 
 int32_t igzip_wrapper_decompress(intel_codec_context_t *context,
-    uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
 {
     igzip_wrapper_context_t *igzip_wrapper_context = &g_igzip_wrapper_context;
     intel_codec_header_t *header = (intel_codec_header_t *)src;
@@ -210,7 +303,156 @@ int32_t igzip_wrapper_decompress(intel_codec_context_t *context,
     return 0;
 }
 
+uint32_t igzip_wrapper_compress_bound(uint32_t srcLen)
+{
+    /* worst case is a dynamic header followed by stored blocks of 64KB */
+    return srcLen + 5 * (srcLen / 0xFFFF + 1) + ISAL_DEF_MAX_HDR_SIZE
+        + sizeof(intel_codec_header_t);
+}
+
 char *igzip_wrapper_get_library_name()
 {
     return IGZIP_LIBRARY_NAME;
 }
+
+int32_t igzip_wrapper_has_stream_api(void)
+{
+    igzip_wrapper_context_t *igzip_wrapper_context = &g_igzip_wrapper_context;
+    return igzip_wrapper_context->isal_deflate_init_func != NULL
+        && igzip_wrapper_context->isal_deflate_func != NULL
+        && igzip_wrapper_context->isal_inflate_func != NULL;
+}
+
+/*
+ * The deflater writes a gzip member, the generic gzip header, the deflate
+ * stream and the trailer with the crc32 and the length of the input.
+ */
+igzip_wrapper_deflater_t *igzip_wrapper_deflater_create(int level, uint32_t level_buf_size)
+{
+    igzip_wrapper_deflater_t *deflater = calloc(1, sizeof(igzip_wrapper_deflater_t));
+    if (deflater == NULL)
+    {
+        return NULL;
+    }
+    deflater->level = level;
+    if (level >= 1)
+    {
+        deflater->level_buf_size = level_buf_size != 0
+            ? level_buf_size : igzip_wrapper_level_buf_default(level);
+        deflater->level_buf = malloc(deflater->level_buf_size);
+        if (deflater->level_buf == NULL)
+        {
+            free(deflater);
+            return NULL;
+        }
+    }
+    igzip_wrapper_deflater_reset(deflater);
+    return deflater;
+}
+
+void igzip_wrapper_deflater_reset(igzip_wrapper_deflater_t *deflater)
+{
+    igzip_wrapper_context_t *igzip_wrapper_context = &g_igzip_wrapper_context;
+    struct isal_zstream *stream = &deflater->stream;
+    igzip_wrapper_context->isal_deflate_init_func(stream);
+    stream->level = deflater->level;
+    stream->level_buf = deflater->level_buf;
+    stream->level_buf_size = deflater->level_buf_size;
+    stream->flush = NO_FLUSH;
+    stream->gzip_flag = IGZIP_GZIP;
+}
+
+/*
+ * Compress as much of src into dst as fits, ending the member when finish
+ * is set. Set ended once the trailer is written.
+ * Return 0 on success, else the isal error.
+ */
+int32_t igzip_wrapper_deflate(igzip_wrapper_deflater_t *deflater,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t dstLen, int finish,
+    uint32_t *consumed, uint32_t *produced, int *ended)
+{
+    igzip_wrapper_context_t *igzip_wrapper_context = &g_igzip_wrapper_context;
+    struct isal_zstream *stream = &deflater->stream;
+    stream->next_in = (uint8_t *)src;
+    stream->avail_in = srcLen;
+    stream->next_out = dst;
+    stream->avail_out = dstLen;
+    stream->end_of_stream = finish ? 1 : 0;
+    int ret = igzip_wrapper_context->isal_deflate_func(stream);
+    *consumed = srcLen - stream->avail_in;
+    *produced = dstLen - stream->avail_out;
+    /* with the end of stream set, isal only returns early when the output is full */
+    *ended = finish && stream->avail_in == 0 && stream->avail_out > 0;
+    return ret;
+}
+
+void igzip_wrapper_deflater_destroy(igzip_wrapper_deflater_t *deflater)
+{
+    free(deflater->level_buf);
+    free(deflater);
+}
+
+/*
+ * The inflater decodes the raw deflate stream of a gzip member and computes
+ * the crc32 of the output, the caller parses the gzip header and trailer.
+ */
+igzip_wrapper_inflater_t *igzip_wrapper_inflater_create(void)
+{
+    igzip_wrapper_inflater_t *inflater = malloc(sizeof(igzip_wrapper_inflater_t));
+    if (inflater == NULL)
+    {
+        return NULL;
+    }
+    igzip_wrapper_inflater_reset(inflater);
+    return inflater;
+}
+
+void igzip_wrapper_inflater_reset(igzip_wrapper_inflater_t *inflater)
+{
+    igzip_wrapper_context_t *igzip_wrapper_context = &g_igzip_wrapper_context;
+    igzip_wrapper_context->isal_inflate_init_func(&inflater->state);
+    inflater->state.crc_flag = ISAL_GZIP_NO_HDR;
+}
+
+/*
+ * Decompress as much of src into dst as fits. Set ended once the deflate
+ * stream is complete, the bytes following it are left unconsumed.
+ * Return 0 on success, else the isal error.
+ */
+int32_t igzip_wrapper_inflate(igzip_wrapper_inflater_t *inflater,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t dstLen,
+    uint32_t *consumed, uint32_t *produced, int *ended, uint32_t *crc)
+{
+    igzip_wrapper_context_t *igzip_wrapper_context = &g_igzip_wrapper_context;
+    struct inflate_state *state = &inflater->state;
+    state->next_in = (uint8_t *)src;
+    state->avail_in = srcLen;
+    state->next_out = dst;
+    state->avail_out = dstLen;
+    int ret = igzip_wrapper_context->isal_inflate_func(state);
+    if (ret < 0)
+    {
+        return ret;
+    }
+    *consumed = srcLen - state->avail_in;
+    *produced = dstLen - state->avail_out;
+    *ended = state->block_state == ISAL_BLOCK_FINISH;
+    if (*ended)
+    {
+        /* give back the whole bytes past the stream read ahead into the bit buffer */
+        uint32_t unread = state->read_in_length / 8;
+        if (unread > *consumed)
+        {
+            unread = *consumed;
+        }
+        *consumed -= unread;
+        state->read_in_length -= unread * 8;
+    }
+    *crc = state->crc;
+    return 0;
+}
+
+void igzip_wrapper_inflater_destroy(igzip_wrapper_inflater_t *inflater)
+{
+    free(inflater);
+}
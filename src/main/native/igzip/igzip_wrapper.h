@@ -34,6 +34,38 @@ extern int32_t igzip_wrapper_compress(intel_codec_context_t *context,
 extern int32_t igzip_wrapper_decompress(intel_codec_context_t *context,
     const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen);
 
+extern uint32_t igzip_wrapper_compress_bound(uint32_t srcLen);
+
+extern const char *igzip_wrapper_check_params(intel_codec_context_t *context);
+
+extern const char *igzip_wrapper_check_level_buf_size(int level, uint32_t level_buf_size);
+
+typedef struct igzip_wrapper_deflater igzip_wrapper_deflater_t;
+
+typedef struct igzip_wrapper_inflater igzip_wrapper_inflater_t;
+
+extern int32_t igzip_wrapper_has_stream_api(void);
+
+extern igzip_wrapper_deflater_t *igzip_wrapper_deflater_create(int level, uint32_t level_buf_size);
+
+extern void igzip_wrapper_deflater_reset(igzip_wrapper_deflater_t *deflater);
+
+extern int32_t igzip_wrapper_deflate(igzip_wrapper_deflater_t *deflater,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t dstLen, int finish,
+    uint32_t *consumed, uint32_t *produced, int *ended);
+
+extern void igzip_wrapper_deflater_destroy(igzip_wrapper_deflater_t *deflater);
+
+extern igzip_wrapper_inflater_t *igzip_wrapper_inflater_create(void);
+
+extern void igzip_wrapper_inflater_reset(igzip_wrapper_inflater_t *inflater);
+
+extern int32_t igzip_wrapper_inflate(igzip_wrapper_inflater_t *inflater,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t dstLen,
+    uint32_t *consumed, uint32_t *produced, int *ended, uint32_t *crc);
+
+extern void igzip_wrapper_inflater_destroy(igzip_wrapper_inflater_t *inflater);
+
 extern char *igzip_wrapper_get_library_name();
 
 #ifdef __cplusplus
@@ -32,10 +32,17 @@ typedef size_t (*dlsym_LZ4_IPP_compress_hc)(const uint8_t* src, uint8_t* dst,
 typedef size_t (*dlsym_LZ4_IPP_decompress)(const uint8_t* src, uint8_t* dst,
         int compressedSize, int dstCapacity);
 
+typedef int (*dlsym_LZ4_decompress_safe_usingDict)(const uint8_t* src, uint8_t* dst,
+        int compressedSize, int dstCapacity, const uint8_t* dictStart, int dictSize);
+
+typedef const char *(*dlsym_LZ4_versionString)(void);
+
 typedef struct lz4_ipp_wrapper_context {                                                                                                     int magic;
     dlsym_LZ4_IPP_compress compress;
     dlsym_LZ4_IPP_compress_hc compress_hc;
     dlsym_LZ4_IPP_decompress decompress;
+    dlsym_LZ4_decompress_safe_usingDict decompress_using_dict;
+    dlsym_LZ4_versionString version;
 } lz4_ipp_wrapper_context_t;
 
 lz4_ipp_wrapper_context_t g_lz4_ipp_wrapper_context;
@@ -75,11 +82,99 @@ int32_t lz4_ipp_wrapper_init(void)
         return -1;
     }
 
+    /* only linked blocks need it, older libraries may not export it */
+    lz4_ipp_wrapper_context->decompress_using_dict = dlsym(lib, "LZ4_decompress_safe_usingDict");
+
+    /* the version is informational, older libraries may not export it */
+    lz4_ipp_wrapper_context->version = dlsym(lib, "LZ4_versionString");
+
     lz4_ipp_wrapper_context->magic = ('L' | ('Z' << 8) | ('4' << 16) | ('I' << 24));
 
     return 0;
 }
 
+/*
+ * The bare functions read and write a plain LZ4 block without the
+ * intel_codec_header_t, for formats carrying the sizes themselves.
+ */
+int32_t lz4_ipp_wrapper_compress_bare(intel_codec_context_t *context,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
+{
+    lz4_ipp_wrapper_context_t *lz4_ipp_wrapper_context = &g_lz4_ipp_wrapper_context;
+    /* the level is the acceleration unless the acceleration is set itself */
+    int acceleration = context->params[INTEL_CODEC_PARAM_LZ4_ACCELERATION];
+    int compressed_size = lz4_ipp_wrapper_context->compress(
+            src, dst, srcLen, *dstLen, acceleration > 0 ? acceleration : context->level);
+
+    if (compressed_size <= 0)
+    {
+        return -1;
+    }
+
+    *dstLen = compressed_size;
+    return 0;
+}
+
+int32_t lz4_ipp_wrapper_compress_hc_bare(intel_codec_context_t *context,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
+{
+    lz4_ipp_wrapper_context_t *lz4_ipp_wrapper_context = &g_lz4_ipp_wrapper_context;
+    int compressed_size = lz4_ipp_wrapper_context->compress_hc(
+            src, dst, srcLen, *dstLen, context->level);
+
+    if (compressed_size <= 0)
+    {
+        return -1;
+    }
+
+    *dstLen = compressed_size;
+    return 0;
+}
+
+int32_t lz4_ipp_wrapper_decompress_bare(intel_codec_context_t *context,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
+{
+    lz4_ipp_wrapper_context_t *lz4_ipp_wrapper_context = &g_lz4_ipp_wrapper_context;
+    int uncompressed_size = lz4_ipp_wrapper_context->decompress(
+        src, dst, srcLen, *dstLen);
+
+    if (uncompressed_size < 0)
+    {
+        return -1;
+    }
+
+    *dstLen = uncompressed_size;
+    return 0;
+}
+
+/*
+ * Return whether the library can decompress linked blocks.
+ */
+int32_t lz4_ipp_wrapper_has_prefix_api(void)
+{
+    return g_lz4_ipp_wrapper_context.decompress_using_dict != NULL;
+}
+
+/*
+ * Decompress a bare LZ4 block whose matches may reach into the prefixLen
+ * bytes right before dst, as the linked blocks of an LZ4 frame do.
+ */
+int32_t lz4_ipp_wrapper_decompress_prefix(const uint8_t *src, uint32_t srcLen,
+    uint8_t *dst, uint32_t *dstLen, uint32_t prefixLen)
+{
+    lz4_ipp_wrapper_context_t *lz4_ipp_wrapper_context = &g_lz4_ipp_wrapper_context;
+    int uncompressed_size = lz4_ipp_wrapper_context->decompress_using_dict(
+        src, dst, srcLen, *dstLen, dst - prefixLen, prefixLen);
+
+    if (uncompressed_size < 0)
+    {
+        return -1;
+    }
+
+    *dstLen = uncompressed_size;
+    return 0;
+}
+
 int32_t lz4_ipp_wrapper_compress(intel_codec_context_t *context,
     const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
 {
@@ -89,13 +184,9 @@ int32_t lz4_ipp_wrapper_compress(intel_codec_context_t *context,
     header->codec = INTEL_CODEC_LZ4_IPP;
     header->uncompressed_size = srcLen;
 
-    int compressed_size;
-    uint8_t *compressed_buffer = dst + sizeof(intel_codec_header_t);
-    compressed_size = lz4_ipp_wrapper_context->compress(
-            src, compressed_buffer, srcLen, *dstLen,
-            context->level);
-
-    if (compressed_size == 0)
+    uint32_t compressed_size = *dstLen - sizeof(intel_codec_header_t);
+    if (lz4_ipp_wrapper_compress_bare(context, src, srcLen,
+            dst + sizeof(intel_codec_header_t), &compressed_size) != 0)
     {
         return -1;
     }
@@ -113,13 +204,9 @@ int32_t lz4_ipp_wrapper_compress_hc(intel_codec_context_t *context,
     header->codec = INTEL_CODEC_LZ4_HC_IPP;
     header->uncompressed_size = srcLen;
 
-    int compressed_size;
-    uint8_t *compressed_buffer = dst + sizeof(intel_codec_header_t);
-    compressed_size = lz4_ipp_wrapper_context->compress_hc(
-            src, compressed_buffer, srcLen, *dstLen,
-            context->level);
-
-    if (compressed_size == 0)
+    uint32_t compressed_size = *dstLen - sizeof(intel_codec_header_t);
+    if (lz4_ipp_wrapper_compress_hc_bare(context, src, srcLen,
+            dst + sizeof(intel_codec_header_t), &compressed_size) != 0)
     {
         return -1;
     }
@@ -129,20 +216,22 @@ int32_t lz4_ipp_wrapper_compress_hc(intel_codec_context_t *context,
 }
 
 int32_t lz4_ipp_wrapper_decompress(intel_codec_context_t *context,
-    uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
 {
     lz4_ipp_wrapper_context_t *lz4_ipp_wrapper_context = &g_lz4_ipp_wrapper_context;
     intel_codec_header_t *header = (intel_codec_header_t *)src;
-    uint8_t *compressed_buffer = src + sizeof(intel_codec_header_t);
     if (header->magic != lz4_ipp_wrapper_context->magic)
     {
         fprintf(stderr, "Wrong magic header for LZ4 IPP codec\n");
         return -1;
     }
-    int dstCapacity = *dstLen;
-    int uncompressed_size = lz4_ipp_wrapper_context->decompress(
-        compressed_buffer, dst,
-        header->compressed_size - sizeof(intel_codec_header_t), dstCapacity);
+    uint32_t uncompressed_size = *dstLen;
+    if (lz4_ipp_wrapper_decompress_bare(context, src + sizeof(intel_codec_header_t),
+            header->compressed_size - sizeof(intel_codec_header_t), dst, &uncompressed_size) != 0)
+    {
+        fprintf(stderr, "Malformed block for LZ4 IPP codec\n");
+        return -1;
+    }
     if (uncompressed_size != header->uncompressed_size)
     {
         fprintf(stderr, "Wrong uncompressed size for LZ4 IPP codec, should %d but after decompress is %d\n", header->uncompressed_size, uncompressed_size);
@@ -152,6 +241,18 @@ int32_t lz4_ipp_wrapper_decompress(intel_codec_context_t *context,
     return 0;
 }
 
+uint32_t lz4_ipp_wrapper_compress_bound(uint32_t srcLen)
+{
+    /* LZ4_COMPRESSBOUND */
+    return srcLen + (srcLen / 255) + 16 + sizeof(intel_codec_header_t);
+}
+
+const char *lz4_ipp_wrapper_get_library_version()
+{
+    lz4_ipp_wrapper_context_t *lz4_ipp_wrapper_context = &g_lz4_ipp_wrapper_context;
+    return lz4_ipp_wrapper_context->version != NULL ? lz4_ipp_wrapper_context->version() : NULL;
+}
+
 char *lz4_ipp_wrapper_get_library_name()
 {
     return LZ4_IPP_LIBRARY_NAME;
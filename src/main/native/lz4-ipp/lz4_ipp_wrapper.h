@@ -37,8 +37,26 @@ extern int32_t lz4_ipp_wrapper_compress_hc(intel_codec_context_t *context,
 extern int32_t lz4_ipp_wrapper_decompress(intel_codec_context_t *context,
     const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen);
 
+extern uint32_t lz4_ipp_wrapper_compress_bound(uint32_t srcLen);
+
+extern int32_t lz4_ipp_wrapper_compress_bare(intel_codec_context_t *context,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen);
+
+extern int32_t lz4_ipp_wrapper_compress_hc_bare(intel_codec_context_t *context,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen);
+
+extern int32_t lz4_ipp_wrapper_decompress_bare(intel_codec_context_t *context,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen);
+
+extern int32_t lz4_ipp_wrapper_has_prefix_api(void);
+
+extern int32_t lz4_ipp_wrapper_decompress_prefix(const uint8_t *src, uint32_t srcLen,
+    uint8_t *dst, uint32_t *dstLen, uint32_t prefixLen);
+
 extern char *lz4_ipp_wrapper_get_library_name();
 
+extern const char *lz4_ipp_wrapper_get_library_version();
+
 #ifdef __cplusplus
 }
 #endif
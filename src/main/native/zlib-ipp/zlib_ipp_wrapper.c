@@ -29,9 +29,21 @@ typedef size_t (*dlsym_compress2)(uint8_t *dest, size_t *destLen,
 typedef size_t (*dlsym_uncompress)(uint8_t *dest, size_t *destLen,
         const uint8_t *source, size_t sourceLen);
 
+typedef const char *(*dlsym_zlibVersion)(void);
+
+/* the stream API, needed by the memLevel and strategy parameters */
+typedef int (*dlsym_deflateInit2_)(z_streamp strm, int level, int method,
+        int windowBits, int memLevel, int strategy, const char *version, int stream_size);
+typedef int (*dlsym_deflate)(z_streamp strm, int flush);
+typedef int (*dlsym_deflateEnd)(z_streamp strm);
+
 typedef struct zlib_ipp_wrapper_context {                                                                                                     int magic;
     dlsym_compress2 compress;
     dlsym_uncompress decompress;
+    dlsym_zlibVersion version;
+    dlsym_deflateInit2_ deflate_init2;
+    dlsym_deflate deflate_stream;
+    dlsym_deflateEnd deflate_end;
 } zlib_ipp_wrapper_context_t;
 
 zlib_ipp_wrapper_context_t g_zlib_ipp_wrapper_context;
@@ -64,11 +76,81 @@ int32_t zlib_ipp_wrapper_init(void)
         return -1;
     }
 
+    /* the version is informational, older libraries may not export it */
+    zlib_ipp_wrapper_context->version = dlsym(lib, "zlibVersion");
+
+    zlib_ipp_wrapper_context->deflate_init2 = dlsym(lib, "deflateInit2_");
+    zlib_ipp_wrapper_context->deflate_stream = dlsym(lib, "deflate");
+    zlib_ipp_wrapper_context->deflate_end = dlsym(lib, "deflateEnd");
+    if (zlib_ipp_wrapper_context->deflate_stream == NULL || zlib_ipp_wrapper_context->deflate_end == NULL)
+    {
+        zlib_ipp_wrapper_context->deflate_init2 = NULL;
+    }
+
     zlib_ipp_wrapper_context->magic = ('Z' | ('L' << 8) | ('B' << 16) | ('I' << 24));
 
     return 0;
 }
 
+static int zlib_ipp_wrapper_has_params(intel_codec_context_t *context)
+{
+    return context->params[INTEL_CODEC_PARAM_ZLIB_MEM_LEVEL] != 0
+        || context->params[INTEL_CODEC_PARAM_ZLIB_STRATEGY] != 0;
+}
+
+/* initialize the stream the way compress2() does but with the parameters of the context */
+static int zlib_ipp_wrapper_deflate_init(z_stream *stream, intel_codec_context_t *context)
+{
+    zlib_ipp_wrapper_context_t *zlib_ipp_wrapper_context = &g_zlib_ipp_wrapper_context;
+    int mem_level = context->params[INTEL_CODEC_PARAM_ZLIB_MEM_LEVEL];
+    memset(stream, 0, sizeof(z_stream));
+    return zlib_ipp_wrapper_context->deflate_init2(stream, context->level, Z_DEFLATED,
+            MAX_WBITS, mem_level != 0 ? mem_level : 8,
+            context->params[INTEL_CODEC_PARAM_ZLIB_STRATEGY], ZLIB_VERSION, (int)sizeof(z_stream));
+}
+
+const char *zlib_ipp_wrapper_check_params(intel_codec_context_t *context)
+{
+    zlib_ipp_wrapper_context_t *zlib_ipp_wrapper_context = &g_zlib_ipp_wrapper_context;
+    if (!zlib_ipp_wrapper_has_params(context))
+    {
+        return NULL;
+    }
+    if (zlib_ipp_wrapper_context->deflate_init2 == NULL)
+    {
+        return "the zlib library has no deflateInit2";
+    }
+    z_stream stream;
+    int ret = zlib_ipp_wrapper_deflate_init(&stream, context);
+    if (ret != Z_OK)
+    {
+        return ret == Z_STREAM_ERROR ? "memLevel or strategy out of range" : "deflateInit2 failed";
+    }
+    zlib_ipp_wrapper_context->deflate_end(&stream);
+    return NULL;
+}
+
+/* compress2() with the memLevel and strategy of the context */
+static int zlib_ipp_wrapper_compress2_params(intel_codec_context_t *context,
+        uint8_t *dest, size_t *destLen, const uint8_t *source, size_t sourceLen)
+{
+    zlib_ipp_wrapper_context_t *zlib_ipp_wrapper_context = &g_zlib_ipp_wrapper_context;
+    z_stream stream;
+    int ret = zlib_ipp_wrapper_deflate_init(&stream, context);
+    if (ret != Z_OK)
+    {
+        return ret;
+    }
+    stream.next_in = (uint8_t *)source;
+    stream.avail_in = sourceLen;
+    stream.next_out = dest;
+    stream.avail_out = *destLen;
+    ret = zlib_ipp_wrapper_context->deflate_stream(&stream, Z_FINISH);
+    *destLen = stream.total_out;
+    zlib_ipp_wrapper_context->deflate_end(&stream);
+    return ret == Z_STREAM_END ? Z_OK : (ret == Z_OK ? Z_BUF_ERROR : ret);
+}
+
 int32_t zlib_ipp_wrapper_compress(intel_codec_context_t *context,
         const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
 {
@@ -80,7 +162,11 @@ int32_t zlib_ipp_wrapper_compress(intel_codec_context_t *context,
 
     uint8_t *compressed_buffer = dst + sizeof(intel_codec_header_t);
     size_t compressed_size = *dstLen - sizeof(intel_codec_header_t);
-    int ret = zlib_ipp_wrapper_context->compress(
+    int ret = zlib_ipp_wrapper_has_params(context)
+        ? zlib_ipp_wrapper_compress2_params(context,
+            compressed_buffer, &compressed_size,
+            src, (size_t)srcLen)
+        : zlib_ipp_wrapper_context->compress(
             compressed_buffer, &compressed_size,
             src, (size_t)srcLen,
             context->level);
@@ -142,6 +228,19 @@ int32_t zlib_ipp_wrapper_decompress(intel_codec_context_t *context,
     return 0;
 }
 
+uint32_t zlib_ipp_wrapper_compress_bound(uint32_t srcLen)
+{
+    /* compressBound() of zlib */
+    return srcLen + (srcLen >> 12) + (srcLen >> 14) + (srcLen >> 25) + 13
+        + sizeof(intel_codec_header_t);
+}
+
+const char *zlib_ipp_wrapper_get_library_version()
+{
+    zlib_ipp_wrapper_context_t *zlib_ipp_wrapper_context = &g_zlib_ipp_wrapper_context;
+    return zlib_ipp_wrapper_context->version != NULL ? zlib_ipp_wrapper_context->version() : NULL;
+}
+
 char *zlib_ipp_wrapper_get_library_name()
 {
     return ZLIB_IPP_LIBRARY_NAME;
@@ -34,8 +34,14 @@ extern int32_t zlib_ipp_wrapper_compress(intel_codec_context_t *context,
 extern int32_t zlib_ipp_wrapper_decompress(intel_codec_context_t *context,
     const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen);
 
+extern uint32_t zlib_ipp_wrapper_compress_bound(uint32_t srcLen);
+
+extern const char *zlib_ipp_wrapper_check_params(intel_codec_context_t *context);
+
 extern char *zlib_ipp_wrapper_get_library_name();
 
+extern const char *zlib_ipp_wrapper_get_library_version();
+
 #ifdef __cplusplus
 }
 #endif
@@ -19,8 +19,10 @@
 #include <stdlib.h>
 #include <string.h>
 #include <dlfcn.h>
+#include <pthread.h>
 
 #include "IntelCompressionCodecJNI.h"
+#include "zstd_wrapper.h"
 
 typedef size_t (*dlsym_ZSTD_compress)(void* dst, size_t dstCapacity,
         const void* src, size_t srcSize,
@@ -29,14 +31,96 @@ typedef size_t (*dlsym_ZSTD_decompress)(void* dst, size_t dstCapacity,
         const void* src, size_t compressedSize);
 typedef unsigned (*dlsym_ZSTD_isError)(size_t code);
 
+typedef const char *(*dlsym_ZSTD_versionString)(void);
+typedef const char *(*dlsym_ZSTD_getErrorName)(size_t code);
+
+/* advanced API of zstd 1.4.0 and later, needed by the tuning parameters */
+typedef void *(*dlsym_ZSTD_createCCtx)(void);
+typedef size_t (*dlsym_ZSTD_freeCCtx)(void *cctx);
+typedef size_t (*dlsym_ZSTD_CCtx_reset)(void *cctx, int reset);
+typedef size_t (*dlsym_ZSTD_CCtx_setParameter)(void *cctx, int param, int value);
+typedef size_t (*dlsym_ZSTD_compress2)(void *cctx, void *dst, size_t dstCapacity,
+        const void *src, size_t srcSize);
+
+/* streaming API, needed by the zstd streams */
+typedef struct zstd_wrapper_in_buffer
+{
+    const void *src;
+    size_t size;
+    size_t pos;
+} zstd_wrapper_in_buffer_t;
+
+typedef struct zstd_wrapper_out_buffer
+{
+    void *dst;
+    size_t size;
+    size_t pos;
+} zstd_wrapper_out_buffer_t;
+
+typedef void *(*dlsym_ZSTD_createCStream)(void);
+typedef size_t (*dlsym_ZSTD_freeCStream)(void *zcs);
+typedef size_t (*dlsym_ZSTD_initCStream)(void *zcs, int compressionLevel);
+typedef size_t (*dlsym_ZSTD_compressStream)(void *zcs,
+        zstd_wrapper_out_buffer_t *output, zstd_wrapper_in_buffer_t *input);
+typedef size_t (*dlsym_ZSTD_endStream)(void *zcs, zstd_wrapper_out_buffer_t *output);
+typedef void *(*dlsym_ZSTD_createDStream)(void);
+typedef size_t (*dlsym_ZSTD_freeDStream)(void *zds);
+typedef size_t (*dlsym_ZSTD_initDStream)(void *zds);
+typedef size_t (*dlsym_ZSTD_decompressStream)(void *zds,
+        zstd_wrapper_out_buffer_t *output, zstd_wrapper_in_buffer_t *input);
+
+/* values of ZSTD_cParameter and ZSTD_ResetDirective in zstd.h */
+#define ZSTD_C_COMPRESSION_LEVEL        100
+#define ZSTD_C_WINDOW_LOG               101
+#define ZSTD_C_STRATEGY                 107
+#define ZSTD_C_ENABLE_LONG_DISTANCE     160
+#define ZSTD_RESET_SESSION_AND_PARAMS   3
+
+/* the largest window decoders accept unless their windowLogMax is raised */
+#define ZSTD_WINDOWLOG_LIMIT_DEFAULT    27
+
 typedef struct zstd_wrapper_context {                                                                                                     int magic;
     dlsym_ZSTD_compress compress;
     dlsym_ZSTD_decompress decompress;
     dlsym_ZSTD_isError isError;
+    dlsym_ZSTD_versionString version;
+    dlsym_ZSTD_getErrorName getErrorName;
+    dlsym_ZSTD_createCCtx createCCtx;
+    dlsym_ZSTD_freeCCtx freeCCtx;
+    dlsym_ZSTD_CCtx_reset reset;
+    dlsym_ZSTD_CCtx_setParameter setParameter;
+    dlsym_ZSTD_compress2 compress2;
+    dlsym_ZSTD_createCStream createCStream;
+    dlsym_ZSTD_freeCStream freeCStream;
+    dlsym_ZSTD_initCStream initCStream;
+    dlsym_ZSTD_compressStream compressStream;
+    dlsym_ZSTD_endStream endStream;
+    dlsym_ZSTD_createDStream createDStream;
+    dlsym_ZSTD_freeDStream freeDStream;
+    dlsym_ZSTD_initDStream initDStream;
+    dlsym_ZSTD_decompressStream decompressStream;
+    /* the ZSTD_CCtx of the calling thread, contexts may be shared by threads */
+    pthread_key_t cctx_key;
 } zstd_wrapper_context_t;
 
+struct zstd_wrapper_cstream
+{
+    void *cstream;
+    intel_codec_context_t context;
+};
+
+struct zstd_wrapper_dstream
+{
+    void *dstream;
+};
+
 zstd_wrapper_context_t g_zstd_wrapper_context;
 
+static void zstd_wrapper_free_cctx(void *cctx)
+{
+    g_zstd_wrapper_context.freeCCtx(cctx);
+}
+
 #define ZSTD_LIBRARY_NAME "libzstd.so"
 
 int32_t zstd_wrapper_init(void)
@@ -72,11 +156,167 @@ int32_t zstd_wrapper_init(void)
         return -1;
     }
 
+    /* the version is informational, older libraries may not export it */
+    zstd_wrapper_context->version = dlsym(lib, "ZSTD_versionString");
+    zstd_wrapper_context->getErrorName = dlsym(lib, "ZSTD_getErrorName");
+
+    /* without the advanced API only the level can be set */
+    zstd_wrapper_context->createCCtx = dlsym(lib, "ZSTD_createCCtx");
+    zstd_wrapper_context->freeCCtx = dlsym(lib, "ZSTD_freeCCtx");
+    zstd_wrapper_context->reset = dlsym(lib, "ZSTD_CCtx_reset");
+    zstd_wrapper_context->setParameter = dlsym(lib, "ZSTD_CCtx_setParameter");
+    zstd_wrapper_context->compress2 = dlsym(lib, "ZSTD_compress2");
+    if (zstd_wrapper_context->createCCtx == NULL || zstd_wrapper_context->freeCCtx == NULL
+        || zstd_wrapper_context->reset == NULL || zstd_wrapper_context->setParameter == NULL
+        || zstd_wrapper_context->compress2 == NULL
+        || pthread_key_create(&zstd_wrapper_context->cctx_key, zstd_wrapper_free_cctx) != 0)
+    {
+        zstd_wrapper_context->compress2 = NULL;
+    }
+
+    /* the zstd streams are unavailable without the streaming API */
+    zstd_wrapper_context->createCStream = dlsym(lib, "ZSTD_createCStream");
+    zstd_wrapper_context->freeCStream = dlsym(lib, "ZSTD_freeCStream");
+    zstd_wrapper_context->initCStream = dlsym(lib, "ZSTD_initCStream");
+    zstd_wrapper_context->compressStream = dlsym(lib, "ZSTD_compressStream");
+    zstd_wrapper_context->endStream = dlsym(lib, "ZSTD_endStream");
+    zstd_wrapper_context->createDStream = dlsym(lib, "ZSTD_createDStream");
+    zstd_wrapper_context->freeDStream = dlsym(lib, "ZSTD_freeDStream");
+    zstd_wrapper_context->initDStream = dlsym(lib, "ZSTD_initDStream");
+    zstd_wrapper_context->decompressStream = dlsym(lib, "ZSTD_decompressStream");
+
     zstd_wrapper_context->magic = ('Z' | ('S' << 8) | ('T' << 16) | ('D' << 24));
 
     return 0;
 }
 
+/*
+ * The bare functions read and write a standard zstd frame without the
+ * intel_codec_header_t, for formats carrying the sizes themselves.
+ */
+static int zstd_wrapper_has_params(intel_codec_context_t *context)
+{
+    return context->params[INTEL_CODEC_PARAM_ZSTD_WINDOW_LOG] != 0
+        || context->params[INTEL_CODEC_PARAM_ZSTD_STRATEGY] != 0
+        || context->params[INTEL_CODEC_PARAM_ZSTD_LONG_DISTANCE] != 0;
+}
+
+/*
+ * Set the level and the parameters of the context on the cctx.
+ * Return 0 on success, else the zstd error code.
+ */
+static size_t zstd_wrapper_set_params(void *cctx, intel_codec_context_t *context)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    static const int params[][2] =
+    {
+        {INTEL_CODEC_PARAM_ZSTD_WINDOW_LOG, ZSTD_C_WINDOW_LOG},
+        {INTEL_CODEC_PARAM_ZSTD_STRATEGY, ZSTD_C_STRATEGY},
+        {INTEL_CODEC_PARAM_ZSTD_LONG_DISTANCE, ZSTD_C_ENABLE_LONG_DISTANCE},
+    };
+    size_t ret = zstd_wrapper_context->reset(cctx, ZSTD_RESET_SESSION_AND_PARAMS);
+    if (!zstd_wrapper_context->isError(ret))
+    {
+        ret = zstd_wrapper_context->setParameter(cctx, ZSTD_C_COMPRESSION_LEVEL, context->level);
+    }
+    int i;
+    for (i = 0; i < sizeof(params) / sizeof(params[0]) && !zstd_wrapper_context->isError(ret); i++)
+    {
+        int value = context->params[params[i][0]];
+        if (value != 0)
+        {
+            ret = zstd_wrapper_context->setParameter(cctx, params[i][1], value);
+        }
+    }
+    return zstd_wrapper_context->isError(ret) ? ret : 0;
+}
+
+static void *zstd_wrapper_get_cctx()
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    void *cctx = pthread_getspecific(zstd_wrapper_context->cctx_key);
+    if (cctx == NULL)
+    {
+        cctx = zstd_wrapper_context->createCCtx();
+        if (cctx != NULL && pthread_setspecific(zstd_wrapper_context->cctx_key, cctx) != 0)
+        {
+            zstd_wrapper_context->freeCCtx(cctx);
+            cctx = NULL;
+        }
+    }
+    return cctx;
+}
+
+const char *zstd_wrapper_check_params(intel_codec_context_t *context)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    if (!zstd_wrapper_has_params(context))
+    {
+        return NULL;
+    }
+    if (context->params[INTEL_CODEC_PARAM_ZSTD_WINDOW_LOG] > ZSTD_WINDOWLOG_LIMIT_DEFAULT)
+    {
+        return "windowLog is above 27, zstd decoders reject such frames by default";
+    }
+    if (zstd_wrapper_context->compress2 == NULL)
+    {
+        return "the zstd library has no advanced API, it needs version 1.4.0 or later";
+    }
+    void *cctx = zstd_wrapper_get_cctx();
+    if (cctx == NULL)
+    {
+        return "can't create a zstd compress context";
+    }
+    size_t ret = zstd_wrapper_set_params(cctx, context);
+    if (ret != 0)
+    {
+        return zstd_wrapper_context->getErrorName != NULL
+            ? zstd_wrapper_context->getErrorName(ret) : "parameter rejected by zstd";
+    }
+    return NULL;
+}
+
+int32_t zstd_wrapper_compress_bare(intel_codec_context_t *context,
+        const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    size_t compressed_size;
+    if (zstd_wrapper_has_params(context))
+    {
+        void *cctx = zstd_wrapper_get_cctx();
+        if (cctx == NULL || zstd_wrapper_set_params(cctx, context) != 0)
+        {
+            return -1;
+        }
+        compressed_size = zstd_wrapper_context->compress2(cctx, dst, *dstLen, src, srcLen);
+    }
+    else
+    {
+        compressed_size = zstd_wrapper_context->compress(
+                dst, *dstLen, src, srcLen, context->level);
+    }
+    if (zstd_wrapper_context->isError(compressed_size))
+    {
+        return -1;
+    }
+    *dstLen = compressed_size;
+    return 0;
+}
+
+int32_t zstd_wrapper_decompress_bare(intel_codec_context_t *context,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    size_t uncompressed_size = zstd_wrapper_context->decompress(
+            dst, *dstLen, src, srcLen);
+    if (zstd_wrapper_context->isError(uncompressed_size))
+    {
+        return -1;
+    }
+    *dstLen = uncompressed_size;
+    return 0;
+}
+
 int32_t zstd_wrapper_compress(intel_codec_context_t *context,
         const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen)
 {
@@ -86,12 +326,14 @@ int32_t zstd_wrapper_compress(intel_codec_context_t *context,
     header->codec = INTEL_CODEC_ZSTD;
     header->uncompressed_size = srcLen;
 
-    int dstCapacity = *dstLen;
-    uint8_t *compressed_buffer = dst + sizeof(intel_codec_header_t);
-    int compressed_size = zstd_wrapper_context->compress(
-            compressed_buffer, dstCapacity, src, srcLen, context->level);
+    uint32_t compressed_size = *dstLen - sizeof(intel_codec_header_t);
+    if (zstd_wrapper_compress_bare(context, src, srcLen,
+            dst + sizeof(intel_codec_header_t), &compressed_size) != 0)
+    {
+        return -1;
+    }
     *dstLen = header->compressed_size = compressed_size + sizeof(intel_codec_header_t);
-    return zstd_wrapper_context->isError(compressed_size) ? -1 : 0;
+    return 0;
 }
 
 int32_t zstd_wrapper_decompress(intel_codec_context_t *context,
@@ -99,16 +341,18 @@ int32_t zstd_wrapper_decompress(intel_codec_context_t *context,
 {
     zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
     intel_codec_header_t *header = (intel_codec_header_t *)src;
-    const uint8_t *compressed_buffer = src + sizeof(intel_codec_header_t);
     if (header->magic != zstd_wrapper_context->magic)
     {
         fprintf(stderr, "Wrong magic header for ZSTD codec\n");
         return -1;
     }
-    int dstCapacity = *dstLen;
-    int uncompressed_size = zstd_wrapper_context->decompress(
-            dst, dstCapacity,
-            compressed_buffer, header->compressed_size - sizeof(intel_codec_header_t));
+    uint32_t uncompressed_size = *dstLen;
+    if (zstd_wrapper_decompress_bare(context, src + sizeof(intel_codec_header_t),
+            header->compressed_size - sizeof(intel_codec_header_t), dst, &uncompressed_size) != 0)
+    {
+        fprintf(stderr, "Malformed block for ZSTD codec\n");
+        return -1;
+    }
     if (uncompressed_size != header->uncompressed_size)
     {
         fprintf(stderr, "Wrong uncompressed size for ZSTD codec, should %d but after decompress is %d\n",
@@ -116,10 +360,173 @@ int32_t zstd_wrapper_decompress(intel_codec_context_t *context,
         return -1;
     }
     *dstLen = uncompressed_size;
-    return zstd_wrapper_context->isError(uncompressed_size) ? -1 : 0;
+    return 0;
+}
+
+uint32_t zstd_wrapper_compress_bound(uint32_t srcLen)
+{
+    /* ZSTD_COMPRESSBOUND */
+    return srcLen + (srcLen >> 8)
+        + ((srcLen < (128 << 10)) ? (((128 << 10) - srcLen) >> 11) : 0)
+        + sizeof(intel_codec_header_t);
+}
+
+const char *zstd_wrapper_get_library_version()
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    return zstd_wrapper_context->version != NULL ? zstd_wrapper_context->version() : NULL;
 }
 
 char *zstd_wrapper_get_library_name()
 {
     return ZSTD_LIBRARY_NAME;
 }
+
+int32_t zstd_wrapper_has_stream_api(void)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    return zstd_wrapper_context->createCStream != NULL
+        && zstd_wrapper_context->freeCStream != NULL
+        && zstd_wrapper_context->initCStream != NULL
+        && zstd_wrapper_context->compressStream != NULL
+        && zstd_wrapper_context->endStream != NULL
+        && zstd_wrapper_context->createDStream != NULL
+        && zstd_wrapper_context->freeDStream != NULL
+        && zstd_wrapper_context->initDStream != NULL
+        && zstd_wrapper_context->decompressStream != NULL;
+}
+
+/*
+ * The compress stream writes one standard zstd frame with the level and
+ * the parameters of the context, which is copied.
+ */
+zstd_wrapper_cstream_t *zstd_wrapper_cstream_create(intel_codec_context_t *context)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    zstd_wrapper_cstream_t *cstream = malloc(sizeof(zstd_wrapper_cstream_t));
+    if (cstream == NULL)
+    {
+        return NULL;
+    }
+    cstream->context = *context;
+    cstream->cstream = zstd_wrapper_context->createCStream();
+    if (cstream->cstream == NULL || zstd_wrapper_cstream_reset(cstream) != 0)
+    {
+        zstd_wrapper_cstream_destroy(cstream);
+        return NULL;
+    }
+    return cstream;
+}
+
+int32_t zstd_wrapper_cstream_reset(zstd_wrapper_cstream_t *cstream)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    /* a ZSTD_CStream is a ZSTD_CCtx since zstd 1.3.0, the parameters need 1.4.0 */
+    size_t ret = zstd_wrapper_has_params(&cstream->context)
+        ? zstd_wrapper_set_params(cstream->cstream, &cstream->context)
+        : zstd_wrapper_context->initCStream(cstream->cstream, cstream->context.level);
+    return zstd_wrapper_context->isError(ret) ? -1 : 0;
+}
+
+/*
+ * Compress as much of src into dst as fits, ending the frame when finish
+ * is set. Set ended once the frame is completely written.
+ * Return 0 on success, else -1.
+ */
+int32_t zstd_wrapper_cstream_compress(zstd_wrapper_cstream_t *cstream,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t dstLen, int finish,
+    uint32_t *consumed, uint32_t *produced, int *ended)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    zstd_wrapper_in_buffer_t input = {src, srcLen, 0};
+    zstd_wrapper_out_buffer_t output = {dst, dstLen, 0};
+    size_t ret = 0;
+    *ended = 0;
+    if (srcLen > 0)
+    {
+        ret = zstd_wrapper_context->compressStream(cstream->cstream, &output, &input);
+    }
+    if (!zstd_wrapper_context->isError(ret) && finish && input.pos == input.size)
+    {
+        /* returns the number of bytes left to flush */
+        ret = zstd_wrapper_context->endStream(cstream->cstream, &output);
+        *ended = ret == 0;
+    }
+    if (zstd_wrapper_context->isError(ret))
+    {
+        return -1;
+    }
+    *consumed = input.pos;
+    *produced = output.pos;
+    return 0;
+}
+
+void zstd_wrapper_cstream_destroy(zstd_wrapper_cstream_t *cstream)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    if (cstream->cstream != NULL)
+    {
+        zstd_wrapper_context->freeCStream(cstream->cstream);
+    }
+    free(cstream);
+}
+
+/*
+ * The decompress stream reads one zstd frame, written by any zstd encoder.
+ */
+zstd_wrapper_dstream_t *zstd_wrapper_dstream_create(void)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    zstd_wrapper_dstream_t *dstream = malloc(sizeof(zstd_wrapper_dstream_t));
+    if (dstream == NULL)
+    {
+        return NULL;
+    }
+    dstream->dstream = zstd_wrapper_context->createDStream();
+    if (dstream->dstream == NULL || zstd_wrapper_dstream_reset(dstream) != 0)
+    {
+        zstd_wrapper_dstream_destroy(dstream);
+        return NULL;
+    }
+    return dstream;
+}
+
+int32_t zstd_wrapper_dstream_reset(zstd_wrapper_dstream_t *dstream)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    return zstd_wrapper_context->isError(
+        zstd_wrapper_context->initDStream(dstream->dstream)) ? -1 : 0;
+}
+
+/*
+ * Decompress as much of src into dst as fits. Set ended once the frame is
+ * completely decoded and flushed, the bytes following it are left unconsumed.
+ * Return 0 on success, else -1.
+ */
+int32_t zstd_wrapper_dstream_decompress(zstd_wrapper_dstream_t *dstream,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t dstLen,
+    uint32_t *consumed, uint32_t *produced, int *ended)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    zstd_wrapper_in_buffer_t input = {src, srcLen, 0};
+    zstd_wrapper_out_buffer_t output = {dst, dstLen, 0};
+    size_t ret = zstd_wrapper_context->decompressStream(dstream->dstream, &output, &input);
+    if (zstd_wrapper_context->isError(ret))
+    {
+        return -1;
+    }
+    *consumed = input.pos;
+    *produced = output.pos;
+    *ended = ret == 0;
+    return 0;
+}
+
+void zstd_wrapper_dstream_destroy(zstd_wrapper_dstream_t *dstream)
+{
+    zstd_wrapper_context_t *zstd_wrapper_context = &g_zstd_wrapper_context;
+    if (dstream->dstream != NULL)
+    {
+        zstd_wrapper_context->freeDStream(dstream->dstream);
+    }
+    free(dstream);
+}
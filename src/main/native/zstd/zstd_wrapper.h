@@ -34,8 +34,46 @@ extern int32_t zstd_wrapper_compress(intel_codec_context_t *context,
 extern int32_t zstd_wrapper_decompress(intel_codec_context_t *context,
     const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen);
 
+extern uint32_t zstd_wrapper_compress_bound(uint32_t srcLen);
+
+extern const char *zstd_wrapper_check_params(intel_codec_context_t *context);
+
+extern int32_t zstd_wrapper_compress_bare(intel_codec_context_t *context,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen);
+
+extern int32_t zstd_wrapper_decompress_bare(intel_codec_context_t *context,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t *dstLen);
+
+typedef struct zstd_wrapper_cstream zstd_wrapper_cstream_t;
+
+typedef struct zstd_wrapper_dstream zstd_wrapper_dstream_t;
+
+extern int32_t zstd_wrapper_has_stream_api(void);
+
+extern zstd_wrapper_cstream_t *zstd_wrapper_cstream_create(intel_codec_context_t *context);
+
+extern int32_t zstd_wrapper_cstream_reset(zstd_wrapper_cstream_t *cstream);
+
+extern int32_t zstd_wrapper_cstream_compress(zstd_wrapper_cstream_t *cstream,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t dstLen, int finish,
+    uint32_t *consumed, uint32_t *produced, int *ended);
+
+extern void zstd_wrapper_cstream_destroy(zstd_wrapper_cstream_t *cstream);
+
+extern zstd_wrapper_dstream_t *zstd_wrapper_dstream_create(void);
+
+extern int32_t zstd_wrapper_dstream_reset(zstd_wrapper_dstream_t *dstream);
+
+extern int32_t zstd_wrapper_dstream_decompress(zstd_wrapper_dstream_t *dstream,
+    const uint8_t *src, uint32_t srcLen, uint8_t *dst, uint32_t dstLen,
+    uint32_t *consumed, uint32_t *produced, int *ended);
+
+extern void zstd_wrapper_dstream_destroy(zstd_wrapper_dstream_t *dstream);
+
 extern char *zstd_wrapper_get_library_name();
 
+extern const char *zstd_wrapper_get_library_version();
+
 #ifdef __cplusplus
 }
 #endif
@@ -20,12 +20,20 @@ package com.intel.compression.spark
 import java.io._
 
 import com.intel.compression.spark._
+import com.intel.compression.util.{AdaptiveLevelController, BlockFilter, CodecParameters,
+  IntelCompressionCodecCapabilities}
+import com.intel.compression.util.buffer.{CachedBufferAllocator, HugePageBufferAllocator}
 
 import org.apache.spark.io._
 import org.apache.spark.SparkConf
 
 class IntelCompressionCodec(conf: SparkConf) extends CompressionCodec {
 
+  if (conf.getBoolean("spark.io.compression.codec.intel.useHugePageBuffer", false)) {
+    CachedBufferAllocator.setBufferAllocatorFactory(
+      HugePageBufferAllocator.getHugePageBufferAllocatorFactory())
+  }
+
   override def compressedOutputStream(s: OutputStream): OutputStream = {
     /**
      *  @param codec the algorithm used for compression
@@ -33,13 +41,61 @@ class IntelCompressionCodec(conf: SparkConf) extends CompressionCodec {
      *  @param bufferSize the size of the buffer used for compression
      *  @param useNativeBuffer whether to enable alloc native buffer in jni
      */
-    val codec = conf.get("spark.io.compression.codec.intel.codec", "lz4-ipp")
+    val codec = IntelCompressionCodecCapabilities.resolve(
+        conf.get("spark.io.compression.codec.intel.codec", "lz4-ipp"))
     val level = conf.getInt("spark.io.compression.codec.intel.level." + codec, 1)
     val bufferSize = conf.getSizeAsBytes("spark.io.compression.codec.intel.blockSize",
         "1024k").toInt
     val useNativeBuffer = conf.getBoolean("spark.io.compression.codec.intel.useNativeBuffer",
         false)
-    new IntelCompressionCodecBlockOutputStream(s, codec, level, bufferSize, useNativeBuffer)
+    new IntelCompressionCodecBlockOutputStream(s, codec, level, bufferSize, useNativeBuffer,
+        levelController(codec, level), smallBlockThreshold,
+        conf.getBoolean("spark.io.compression.codec.intel.compactFrame", false),
+        BlockFilter.forName(conf.get("spark.io.compression.codec.intel.filter", "none")),
+        conf.getInt("spark.io.compression.codec.intel.filter.elementSize", 8), dedupWindow,
+        codecParameters(codec))
+  }
+
+  /**
+   *  @return the tuning parameters of the codec, each configured with a key ending in the
+   *          codec and the parameter name, unsupported parameters are rejected
+   */
+  private def codecParameters(codec: String): CodecParameters = {
+    val parameters = new CodecParameters(codec)
+    conf.getAllWithPrefix("spark.io.compression.codec.intel.param." + codec + ".").foreach {
+      case (name, value) => parameters.set(name, value)
+    }
+    parameters
+  }
+
+  /**
+   *  @return the number of recent blocks kept to write and resolve references to repeated
+   *          blocks, 0 if blocks are not deduplicated
+   */
+  private def dedupWindow: Int = conf.getInt("spark.io.compression.codec.intel.dedupWindow", 0)
+
+  /**
+   *  @return the size below which blocks skip the JNI call and the native codec setup,
+   *          0 if every block goes through the configured codec
+   */
+  private def smallBlockThreshold: Int =
+    conf.getSizeAsBytes("spark.io.compression.codec.intel.smallBlockThreshold", "0").toInt
+
+  /**
+   *  @return the controller adjusting the level of the codec between the configured bounds,
+   *          shared by the process or private to the stream, null if the level is fixed
+   */
+  private def levelController(codec: String, level: Int): AdaptiveLevelController = {
+    val minLevel = conf.getInt("spark.io.compression.codec.intel.adaptiveLevel.min." + codec,
+        AdaptiveLevelController.defaultMinLevel(codec))
+    val maxLevel = conf.getInt("spark.io.compression.codec.intel.adaptiveLevel.max." + codec,
+        AdaptiveLevelController.defaultMaxLevel(codec))
+    conf.get("spark.io.compression.codec.intel.adaptiveLevel", "none") match {
+      case "stream" => new AdaptiveLevelController(codec, level, minLevel, maxLevel)
+      case "process" => AdaptiveLevelController.getProcessController(codec, level, minLevel,
+          maxLevel)
+      case _ => null
+    }
   }
 
   override def compressedInputStream(s: InputStream): InputStream = {
@@ -51,6 +107,9 @@ class IntelCompressionCodec(conf: SparkConf) extends CompressionCodec {
         "1024k").toInt
     val useNativeBuffer = conf.getBoolean("spark.io.compression.codec.intel.useNativeBuffer",
         false)
-    new IntelCompressionCodecBlockInputStream(s, bufferSize, useNativeBuffer)
+    val borrowBuffers = conf.getBoolean(
+        "spark.io.compression.codec.intel.borrowInputBuffers", false)
+    new IntelCompressionCodecBlockInputStream(s, bufferSize, useNativeBuffer,
+        smallBlockThreshold, borrowBuffers, dedupWindow)
   }
 }